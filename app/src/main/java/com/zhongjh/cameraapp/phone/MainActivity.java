@@ -27,7 +27,7 @@ import com.zhongjh.cameraapp.databinding.ActivityMainBinding;
 import com.zhongjh.progresslibrary.entity.MultiMediaView;
 import com.zhongjh.progresslibrary.listener.MaskProgressLayoutListener;
 import com.zhongjh.progresslibrary.widget.MaskProgressLayout;
-import com.zhongjh.videoedit.VideoEditManager;
+import com.zhongjh.videoedit.Mp4VideoEditManager;
 
 import java.util.ArrayList;
 import java.util.Set;
@@ -259,8 +259,8 @@ public class MainActivity extends BaseActivity {
         }
 
         if (mBinding.cbVideoEdit.isChecked()) {
-            // 启动这个即可开启视频编辑功能
-            cameraSetting.videoEdit(new VideoEditManager());
+            // 启动这个即可开启视频编辑功能，Mp4VideoEditManager 直接拼接MP4，不支持的视频自动改用ffmpeg
+            cameraSetting.videoEdit(new Mp4VideoEditManager());
         }
 
         // 开启点击即开启录制(失去点击拍照功能)
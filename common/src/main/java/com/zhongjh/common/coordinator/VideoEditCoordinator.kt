@@ -1,6 +1,7 @@
 package com.zhongjh.common.coordinator
 
 import com.zhongjh.common.listener.VideoEditListener
+import java.io.File
 import java.util.*
 
 /**
@@ -32,6 +33,47 @@ interface VideoEditCoordinator {
      */
     fun merge(newPath: String?, paths: ArrayList<String?>?, txtPath: String?)
 
+    /**
+     * 把多个视频追加到已经合并好的视频后面，完成后同样回调合并事件
+     * 分段录制每录完一段就追加一次，只需要写入新的分段，不需要每次都重新合并所有分段
+     * 失败或者取消时 targetPath 保持追加前的内容
+     * 默认实现是以前的完整合并：把合并好的视频改名为 [appendBackupPath]，再和新的分段一起重新合并到 targetPath，
+     * 每次都会重新写入之前所有的数据，失败时 targetPath 不保证是追加前的内容
+     *
+     * @param targetPath 已经合并好的视频，不存在或者是空文件时新建
+     * @param paths      追加的多个视频
+     * @param txtPath    多个视频的集合地址文本，用 ffmpeg 才能合并
+     */
+    @JvmDefault
+    fun append(targetPath: String?, paths: ArrayList<String?>?, txtPath: String?) {
+        val target = File(targetPath!!)
+        if (target.length() == 0L) {
+            merge(targetPath, paths, txtPath)
+            return
+        }
+        val backup = File(appendBackupPath(targetPath))
+        backup.delete()
+        if (!target.renameTo(backup)) {
+            target.copyTo(backup, true)
+        }
+        val mergePaths = ArrayList<String?>(paths!!.size + 1)
+        mergePaths.add(backup.path)
+        mergePaths.addAll(paths)
+        merge(targetPath, mergePaths, txtPath)
+    }
+
+    /**
+     * 撤销最后一次 [append]，targetPath 恢复成最后一次追加前的内容
+     * 只能在追加完成、没有正在追加的时候调用，不支持撤销时返回false，调用方需要重新合并
+     *
+     * @param targetPath 已经合并好的视频
+     * @return 是否撤销成功
+     */
+    @JvmDefault
+    fun undoAppend(targetPath: String?): Boolean {
+        return false
+    }
+
     /**
      * 压缩视频
      *
@@ -59,4 +101,18 @@ interface VideoEditCoordinator {
      * 关闭压缩事件，不销毁
      */
     fun onCompressDispose()
+
+    companion object {
+
+        /**
+         * 默认的 [append] 重新合并时，合并好的视频改名成的文件，合并完成后可以删除
+         *
+         * @param targetPath 已经合并好的视频
+         * @return 改名后的文件地址
+         */
+        @JvmStatic
+        fun appendBackupPath(targetPath: String): String {
+            return "$targetPath.append"
+        }
+    }
 }
\ No newline at end of file
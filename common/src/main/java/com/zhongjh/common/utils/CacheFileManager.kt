@@ -0,0 +1,292 @@
+package com.zhongjh.common.utils
+
+import android.util.Log
+import java.io.File
+import java.util.*
+
+/**
+ * 缓存文件管理
+ * 记录 [MediaStoreCompat] 在缓存目录创建的每个文件，总大小超过限制时按照最近最少使用删除不属于存活会话的文件
+ * 进程启动后第一次打开界面时在子线程清理以前崩溃或者中途退出遗留的缓存文件
+ * 大小是增量统计的，只重新获取存活会话中还可能在写入的文件大小，不会重新扫描缓存目录
+ * 获取文件大小、删除文件都在子线程执行
+ *
+ * @author zhongjh
+ */
+object CacheFileManager {
+
+    private const val TAG = "CacheFileManager"
+
+    /**
+     * 默认的缓存大小
+     */
+    const val DEFAULT_MAX_SIZE = 200L * 1024 * 1024
+
+    /**
+     * 只清理这些前缀的文件，避免删除缓存目录里面别的文件
+     */
+    private val FILE_PREFIXES = arrayOf("JPEG_", "VIDEO_", "AUDIO_")
+
+    private val lock = Any()
+
+    /**
+     * 记录的文件，按照访问顺序排序
+     */
+    private val entries = LinkedHashMap<String, Entry>(16, 0.75f, true)
+
+    /**
+     * 存活的会话，最后一个是当前会话
+     */
+    private val liveSessions = ArrayList<Int>()
+    private var nextSession = 0
+    private var totalSize = 0L
+    private var maxSize = DEFAULT_MAX_SIZE
+    private var swept = false
+    private var trimScheduled = false
+
+    private class Entry(val file: File, val session: Int) {
+        var size = 0L
+
+        /**
+         * 会话结束前文件可能还在写入，需要重新获取大小
+         */
+        var dirty = true
+
+        /**
+         * 已经不再记录
+         */
+        var removed = false
+    }
+
+    /**
+     * 设置缓存的最大字节数
+     *
+     * @param maxSize 最大字节数
+     */
+    @JvmStatic
+    fun setMaxSize(maxSize: Long) {
+        synchronized(lock) {
+            this.maxSize = maxSize
+        }
+        scheduleTrim()
+    }
+
+    /**
+     * 开始一个会话，会话结束前创建的缓存文件不会被删除
+     *
+     * @return 会话id
+     */
+    @JvmStatic
+    fun beginSession(): Int {
+        synchronized(lock) {
+            val session = ++nextSession
+            liveSessions.add(session)
+            return session
+        }
+    }
+
+    /**
+     * 结束会话，会话的文件可以被删除
+     *
+     * @param session 会话id
+     */
+    @JvmStatic
+    fun endSession(session: Int) {
+        synchronized(lock) {
+            liveSessions.remove(session)
+        }
+        scheduleTrim()
+    }
+
+    /**
+     * 记录新创建的缓存文件，属于当前会话，没有存活的会话则不记录，由下次启动时清理
+     *
+     * @param file 缓存文件
+     */
+    @JvmStatic
+    fun track(file: File) {
+        synchronized(lock) {
+            if (liveSessions.isEmpty() || entries.containsKey(file.path)) {
+                return
+            }
+            entries[file.path] = Entry(file, liveSessions[liveSessions.size - 1])
+        }
+        scheduleTrim()
+    }
+
+    /**
+     * 读取或者再次使用了缓存文件，更新最近使用的顺序
+     *
+     * @param file 缓存文件
+     */
+    @JvmStatic
+    fun touch(file: File) {
+        synchronized(lock) {
+            entries[file.path]
+        }
+    }
+
+    /**
+     * 缓存文件已经被删除或者移走，不再记录
+     *
+     * @param file 缓存文件
+     */
+    @JvmStatic
+    fun remove(file: File) {
+        synchronized(lock) {
+            val entry = entries.remove(file.path) ?: return
+            entry.removed = true
+            totalSize -= entry.size
+        }
+    }
+
+    /**
+     * @return 最近一次统计的缓存文件总大小
+     */
+    @JvmStatic
+    fun getSize(): Long {
+        synchronized(lock) {
+            return totalSize
+        }
+    }
+
+    /**
+     * 在子线程清理以前遗留的缓存文件，每个进程只执行一次
+     * 只删除没有记录、并且在清理开始前修改的文件
+     *
+     * @param directories 缓存目录
+     */
+    @JvmStatic
+    fun sweepOrphans(directories: Collection<File>) {
+        synchronized(lock) {
+            if (swept) {
+                return
+            }
+            swept = true
+        }
+        val startTime = System.currentTimeMillis()
+        ThreadUtils.executeByIo(object : ThreadUtils.BaseSimpleBaseTask<Long>() {
+            override fun doInBackground(): Long {
+                var deletedSize = 0L
+                for (directory in HashSet(directories)) {
+                    val files = directory.listFiles() ?: continue
+                    for (file in files) {
+                        if (isOrphan(file, startTime)) {
+                            val size = file.length()
+                            if (file.delete()) {
+                                deletedSize += size
+                            }
+                        }
+                    }
+                }
+                return deletedSize
+            }
+
+            override fun onSuccess(result: Long) {
+                Log.i(TAG, "sweepOrphans: $result")
+            }
+        })
+    }
+
+    private fun isOrphan(file: File, startTime: Long): Boolean {
+        if (!file.isFile || file.lastModified() >= startTime || FILE_PREFIXES.none { file.name.startsWith(it) }) {
+            return false
+        }
+        synchronized(lock) {
+            return !entries.containsKey(file.path)
+        }
+    }
+
+    /**
+     * 在子线程统计大小并且删除超过的文件，多次调用只执行一次
+     */
+    private fun scheduleTrim() {
+        synchronized(lock) {
+            if (trimScheduled) {
+                return
+            }
+            trimScheduled = true
+        }
+        ThreadUtils.executeByIo(object : ThreadUtils.BaseSimpleBaseTask<Long>() {
+            override fun doInBackground(): Long {
+                synchronized(lock) {
+                    trimScheduled = false
+                }
+                refresh()
+                return trim()
+            }
+
+            override fun onSuccess(result: Long) {
+                if (result > 0) {
+                    Log.i(TAG, "trim: $result")
+                }
+            }
+        })
+    }
+
+    /**
+     * 重新获取还可能在写入的文件大小，获取大小时不持有锁
+     */
+    private fun refresh() {
+        val dirtyEntries = ArrayList<Entry>()
+        val liveEntries = HashSet<Entry>()
+        synchronized(lock) {
+            for (entry in entries.values) {
+                if (entry.dirty) {
+                    dirtyEntries.add(entry)
+                    if (liveSessions.contains(entry.session)) {
+                        liveEntries.add(entry)
+                    }
+                }
+            }
+        }
+        for (entry in dirtyEntries) {
+            val size = entry.file.length()
+            val exists = size > 0 || entry.file.exists()
+            synchronized(lock) {
+                if (!entry.removed) {
+                    totalSize += size - entry.size
+                    entry.size = size
+                    // 获取大小前会话已经结束，之后不会再写入
+                    if (!liveEntries.contains(entry)) {
+                        entry.dirty = false
+                        if (!exists) {
+                            entries.remove(entry.file.path)
+                            entry.removed = true
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 超过最大字节数时删除最久没有使用、不属于存活会话的文件，删除文件时不持有锁
+     *
+     * @return 删除的字节数
+     */
+    private fun trim(): Long {
+        val victims = ArrayList<Entry>()
+        synchronized(lock) {
+            val iterator = entries.values.iterator()
+            while (totalSize > maxSize && iterator.hasNext()) {
+                val entry = iterator.next()
+                if (entry.dirty || liveSessions.contains(entry.session)) {
+                    continue
+                }
+                iterator.remove()
+                entry.removed = true
+                totalSize -= entry.size
+                victims.add(entry)
+            }
+        }
+        var deletedSize = 0L
+        for (entry in victims) {
+            if (entry.file.delete()) {
+                deletedSize += entry.size
+            }
+        }
+        return deletedSize
+    }
+
+}
@@ -33,14 +33,36 @@ class MediaStoreCompat(private val context: Context, var saveStrategy: SaveStrat
      * @return 文件
      */
     fun createFile(type: Int, isCache: Boolean): File {
+        return createFile(newFileName(type), type, isCache)
+    }
+
+    /**
+     * 创建会直接返回给调用方的缓存文件，例如编辑后的图片
+     * 放在缓存文件夹的子文件夹，不受 [CacheFileManager] 管理，不会因为超过缓存大小或者启动清理被删除
+     *
+     * @param type 0是图片 1是视频 2是音频
+     * @return 文件
+     */
+    fun createResultFile(type: Int): File {
+        val storageDir = File(getCacheDir(), RESULT_DIRECTORY)
+        if (!storageDir.exists()) {
+            storageDir.mkdirs()
+        }
+        return File(storageDir, newFileName(type))
+    }
+
+    /**
+     * @param type 0是图片 1是视频 2是音频
+     * @return 以时间命名的文件名
+     */
+    private fun newFileName(type: Int): String {
         val timeStamp = SimpleDateFormat("yyyyMMdd_HHmmssS", Locale.getDefault()).format(Date())
-        val fileName = when (type) {
+        return when (type) {
             0 -> String.format("JPEG_%s.jpg", timeStamp)
             1 -> String.format("VIDEO_%s.mp4", timeStamp)
             2 -> String.format("AUDIO_%s.mp3", timeStamp)
             else -> throw RuntimeException("The type must be 2-0.")
         }
-        return createFile(fileName, type, isCache)
     }
 
     /**
@@ -56,7 +78,7 @@ class MediaStoreCompat(private val context: Context, var saveStrategy: SaveStrat
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             // 29以上的版本都必须是私有的或者公共目录
             if (isCache) {
-                storageDir = File(context.externalCacheDir!!.path + File.separator + saveStrategy.directory)
+                storageDir = getCacheDir()
                 if (!storageDir.exists()) {
                     storageDir.mkdirs()
                 }
@@ -70,7 +92,7 @@ class MediaStoreCompat(private val context: Context, var saveStrategy: SaveStrat
             }
         } else {
             if (isCache) {
-                storageDir = File(context.externalCacheDir!!.path + File.separator + saveStrategy.directory)
+                storageDir = getCacheDir()
                 if (!storageDir.exists()) {
                     storageDir.mkdirs()
                 }
@@ -85,7 +107,19 @@ class MediaStoreCompat(private val context: Context, var saveStrategy: SaveStrat
                 }
             }
         }
-        return File(storageDir, fileName)
+        val file = File(storageDir, fileName)
+        if (isCache) {
+            // 记录缓存文件，超过缓存大小时删除
+            CacheFileManager.track(file)
+        }
+        return file
+    }
+
+    /**
+     * @return 缓存文件夹
+     */
+    fun getCacheDir(): File {
+        return File(context.externalCacheDir!!.path + File.separator + saveStrategy.directory)
     }
 
     /**
@@ -107,6 +141,8 @@ class MediaStoreCompat(private val context: Context, var saveStrategy: SaveStrat
     }
 
     fun getUri(path: String): Uri {
+        // 缓存文件再次被使用
+        CacheFileManager.touch(File(path))
         return FileProvider.getUriForFile(context, saveStrategy.authority!!, File(path))
     }
 
@@ -115,6 +151,12 @@ class MediaStoreCompat(private val context: Context, var saveStrategy: SaveStrat
     }
 
     companion object {
+
+        /**
+         * 返回给调用方的缓存文件所在的子文件夹
+         */
+        private const val RESULT_DIRECTORY = "result"
+
         /**
          * 检查设备是否具有相机特性。
          *
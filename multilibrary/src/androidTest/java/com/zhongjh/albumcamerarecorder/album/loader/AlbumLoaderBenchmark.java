@@ -0,0 +1,162 @@
+package com.zhongjh.albumcamerarecorder.album.loader;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Android10开始相册分组的耗时，结果输出到Log
+ * 模拟10万条数据、200个相册，比较以前遍历两次的分组和现在遍历一次的 {@link AlbumLoader#groupAndroidTen}
+ *
+ * @author zhongjh
+ */
+@RunWith(AndroidJUnit4.class)
+public class AlbumLoaderBenchmark {
+
+    private static final String TAG = AlbumLoaderBenchmark.class.getSimpleName();
+    private static final int ROW_COUNT = 100_000;
+    private static final int BUCKET_COUNT = 200;
+    private static final int REPEAT = 5;
+    private static final String[] COLUMNS = {
+            MediaStore.Files.FileColumns._ID,
+            AlbumLoader.COLUMN_BUCKET_ID,
+            AlbumLoader.COLUMN_BUCKET_DISPLAY_NAME,
+            MediaStore.MediaColumns.MIME_TYPE,
+            MediaStore.MediaColumns.DATE_TAKEN};
+
+    private MatrixCursor mCursor;
+
+    @Before
+    public void setUp() {
+        // 跟查询结果一样按照时间倒序
+        mCursor = new MatrixCursor(COLUMNS, ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            int bucket = (i * 31) % BUCKET_COUNT;
+            mCursor.addRow(new Object[]{(long) (ROW_COUNT - i), (long) bucket, "bucket" + bucket,
+                    i % 10 == 0 ? "video/mp4" : "image/jpeg", (long) (ROW_COUNT - i) * 1000});
+        }
+    }
+
+    @Test
+    public void benchmark() {
+        // 预热
+        groupTwoPass(mCursor).close();
+        AlbumLoader.toCursor(AlbumLoader.groupAndroidTen(mCursor)).close();
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        Cursor twoPass = null;
+        for (int i = 0; i < REPEAT; i++) {
+            if (twoPass != null) {
+                twoPass.close();
+            }
+            mCursor.moveToPosition(-1);
+            twoPass = groupTwoPass(mCursor);
+        }
+        report("two pass", SystemClock.elapsedRealtimeNanos() - start);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        Cursor onePass = null;
+        for (int i = 0; i < REPEAT; i++) {
+            if (onePass != null) {
+                onePass.close();
+            }
+            onePass = AlbumLoader.toCursor(AlbumLoader.groupAndroidTen(mCursor));
+        }
+        report("one pass", SystemClock.elapsedRealtimeNanos() - start);
+
+        assertSameAlbums(twoPass, onePass);
+        twoPass.close();
+        onePass.close();
+    }
+
+    /**
+     * 以前的分组：先遍历一次统计每个相册的数量，再遍历一次取每个相册的封面
+     */
+    private static Cursor groupTwoPass(Cursor albums) {
+        Map<Long, Long> countMap = new HashMap<>(albums.getCount());
+        while (albums.moveToNext()) {
+            long bucketId = albums.getLong(albums.getColumnIndex(AlbumLoader.COLUMN_BUCKET_ID));
+            Long count = countMap.get(bucketId);
+            countMap.put(bucketId, count == null ? 1L : count + 1);
+        }
+
+        int totalCount = 0;
+        Uri allAlbumCoverUri = null;
+        MatrixCursor otherAlbums = new MatrixCursor(new String[]{MediaStore.Files.FileColumns._ID,
+                AlbumLoader.COLUMN_BUCKET_ID, AlbumLoader.COLUMN_BUCKET_DISPLAY_NAME,
+                MediaStore.MediaColumns.MIME_TYPE, AlbumLoader.COLUMN_URI, AlbumLoader.COLUMN_COUNT});
+        if (albums.moveToFirst()) {
+            allAlbumCoverUri = getUri(albums);
+            Set<Long> done = new HashSet<>();
+            do {
+                long bucketId = albums.getLong(albums.getColumnIndex(AlbumLoader.COLUMN_BUCKET_ID));
+                if (done.contains(bucketId)) {
+                    continue;
+                }
+                long count = Long.parseLong(String.valueOf(countMap.get(bucketId)));
+                otherAlbums.addRow(new String[]{
+                        Long.toString(albums.getLong(albums.getColumnIndex(MediaStore.Files.FileColumns._ID))),
+                        Long.toString(bucketId),
+                        albums.getString(albums.getColumnIndex(AlbumLoader.COLUMN_BUCKET_DISPLAY_NAME)),
+                        albums.getString(albums.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE)),
+                        getUri(albums).toString(),
+                        String.valueOf(count)});
+                done.add(bucketId);
+                totalCount += count;
+            } while (albums.moveToNext());
+        }
+
+        MatrixCursor allAlbum = new MatrixCursor(otherAlbums.getColumnNames());
+        allAlbum.addRow(new String[]{"-1", "-1", "All", null,
+                allAlbumCoverUri == null ? null : allAlbumCoverUri.toString(), String.valueOf(totalCount)});
+        return new MergeCursor(new Cursor[]{allAlbum, otherAlbums});
+    }
+
+    private static Uri getUri(Cursor cursor) {
+        long id = cursor.getLong(cursor.getColumnIndex(MediaStore.Files.FileColumns._ID));
+        String mimeType = cursor.getString(cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE));
+        Uri contentUri = mimeType.startsWith("video") ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+                : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+        return ContentUris.withAppendedId(contentUri, id);
+    }
+
+    /**
+     * 两种分组的相册、封面、数量都一样，全部的名称和id不比较
+     */
+    private static void assertSameAlbums(Cursor expected, Cursor actual) {
+        assertEquals(BUCKET_COUNT + 1, expected.getCount());
+        assertEquals(expected.getCount(), actual.getCount());
+        expected.moveToPosition(-1);
+        actual.moveToPosition(-1);
+        while (expected.moveToNext() && actual.moveToNext()) {
+            for (String column : new String[]{AlbumLoader.COLUMN_URI, AlbumLoader.COLUMN_COUNT}) {
+                assertEquals(expected.getString(expected.getColumnIndex(column)),
+                        actual.getString(actual.getColumnIndex(column)));
+            }
+        }
+    }
+
+    private static void report(String name, long nanos) {
+        Log.i(TAG, String.format(Locale.US, "%s: %.1fms per %d rows", name, nanos / 1e6 / REPEAT, ROW_COUNT));
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.zhongjh.albumcamerarecorder.album.loader;
+
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.zhongjh.common.entity.MultiMedia;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 相册列表绑定时的耗时、分配和GC次数，结果输出到Log
+ * 模拟1万条数据的相册来回滑动，比较以前每次绑定移动游标并且创建 {@link MultiMedia}，
+ * 和现在直接读取 {@link AlbumMediaSnapshot}
+ *
+ * @author zhongjh
+ */
+@RunWith(AndroidJUnit4.class)
+public class AlbumMediaSnapshotBenchmark {
+
+    private static final String TAG = AlbumMediaSnapshotBenchmark.class.getSimpleName();
+    private static final int ROW_COUNT = 10_000;
+    /**
+     * 来回滑动的次数
+     */
+    private static final int SCROLL_COUNT = 10;
+    private static final String[] COLUMNS = {
+            MediaStore.Files.FileColumns._ID,
+            MediaStore.MediaColumns.DISPLAY_NAME,
+            MediaStore.MediaColumns.DATE_TAKEN,
+            MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.MediaColumns.MIME_TYPE,
+            MediaStore.MediaColumns.SIZE,
+            "duration",
+            MediaStore.MediaColumns.WIDTH,
+            MediaStore.MediaColumns.HEIGHT,
+            "orientation"};
+
+    private MatrixCursor mCursor;
+    private AlbumMediaSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        mCursor = new MatrixCursor(COLUMNS, ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            boolean video = i % 10 == 0;
+            mCursor.addRow(new Object[]{(long) (ROW_COUNT - i), "IMG_" + i + ".jpg", (long) (ROW_COUNT - i) * 1000,
+                    0L, 0L, video ? "video/mp4" : (i % 25 == 0 ? "image/gif" : "image/jpeg"), 1024L,
+                    video ? 3000L : 0L, 1080, 1920, 0});
+        }
+        mSnapshot = AlbumMediaSnapshot.from(mCursor);
+    }
+
+    @Test
+    public void benchmark() {
+        // 预热，快照的uri第一次使用时创建
+        long expected = bindCursor();
+        assertEquals(expected, bindSnapshot());
+
+        Stats cursor = new Stats();
+        long checksum = 0;
+        cursor.start();
+        for (int i = 0; i < SCROLL_COUNT; i++) {
+            checksum += bindCursor();
+        }
+        cursor.stop();
+        report("cursor + MultiMedia", cursor);
+
+        Stats snapshot = new Stats();
+        long snapshotChecksum = 0;
+        snapshot.start();
+        for (int i = 0; i < SCROLL_COUNT; i++) {
+            snapshotChecksum += bindSnapshot();
+        }
+        snapshot.stop();
+        report("snapshot", snapshot);
+
+        assertEquals(checksum, snapshotChecksum);
+    }
+
+    /**
+     * 以前的绑定：移动游标，创建 {@link MultiMedia}，读取列表需要的值
+     */
+    private long bindCursor() {
+        long checksum = 0;
+        for (int position = 0; position < ROW_COUNT; position++) {
+            mCursor.moveToPosition(position);
+            MultiMedia item = MultiMedia.valueOf(mCursor);
+            checksum += checksum(item.getId(), item.getMediaUri().hashCode(), item.isGif(), item.isVideo(),
+                    item.getDuration());
+        }
+        return checksum;
+    }
+
+    private long bindSnapshot() {
+        long checksum = 0;
+        for (int position = 0; position < ROW_COUNT; position++) {
+            checksum += checksum(mSnapshot.getId(position), mSnapshot.getMediaUri(position).hashCode(),
+                    mSnapshot.isGif(position), mSnapshot.isVideo(position), mSnapshot.getDuration(position));
+        }
+        return checksum;
+    }
+
+    private static long checksum(long id, int uriHash, boolean gif, boolean video, long duration) {
+        return id * 31 + uriHash + (gif ? 1 : 0) + (video ? 2 : 0) + duration;
+    }
+
+    private static void report(String name, Stats stats) {
+        Log.i(TAG, String.format(Locale.US, "%s: %.1fms, %d objects, %d bytes, %d gc per %d binds",
+                name, stats.mNanos / 1e6, stats.mAllocCount, stats.mAllocSize, stats.mGcCount,
+                ROW_COUNT * SCROLL_COUNT));
+    }
+
+    /**
+     * 耗时、分配的对象数量和大小、GC次数
+     */
+    private static class Stats {
+
+        long mNanos;
+        long mAllocCount;
+        long mAllocSize;
+        long mGcCount;
+
+        @SuppressWarnings("deprecation")
+        void start() {
+            mGcCount = getGcCount();
+            Debug.resetGlobalAllocCount();
+            Debug.resetGlobalAllocSize();
+            Debug.startAllocCounting();
+            mNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        @SuppressWarnings("deprecation")
+        void stop() {
+            mNanos = SystemClock.elapsedRealtimeNanos() - mNanos;
+            Debug.stopAllocCounting();
+            mAllocCount = Debug.getGlobalAllocCount();
+            mAllocSize = Debug.getGlobalAllocSize();
+            mGcCount = getGcCount() - mGcCount;
+        }
+
+        /**
+         * @return 进程的GC次数，Android6.0以下获取不到返回0
+         */
+        private static long getGcCount() {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                return 0;
+            }
+            String count = Debug.getRuntimeStat("art.gc.gc-count");
+            return count == null ? 0 : Long.parseLong(count);
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.zhongjh.albumcamerarecorder.album.model;
+
+import android.content.ContentUris;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.zhongjh.albumcamerarecorder.utils.MultiMediaUtils;
+import com.zhongjh.common.entity.MultiMedia;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link SelectedItemCollection} 查询选择状态的耗时，结果输出到Log
+ * 模拟已经选择1000个数据时滑动列表：每次绑定查询一次序号和是否选择，
+ * 比较以前的线性查找、按照 keyOf 索引查找、按照id和uri索引查找
+ *
+ * @author zhongjh
+ */
+@RunWith(AndroidJUnit4.class)
+public class SelectedItemCollectionBenchmark {
+
+    private static final String TAG = SelectedItemCollectionBenchmark.class.getSimpleName();
+    private static final int SELECTED_COUNT = 1000;
+    private static final int BIND_COUNT = 20_000;
+
+    private final List<MultiMedia> mSelected = new ArrayList<>();
+    private final List<MultiMedia> mBound = new ArrayList<>();
+    private SelectedItemCollection mCollection;
+
+    @Before
+    public void setUp() {
+        mCollection = new SelectedItemCollection(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        mCollection.onCreate(null, false);
+        // 列表里面偶数id的数据已经选择
+        for (int i = 0; i < SELECTED_COUNT * 2; i++) {
+            MultiMedia item = newItem(i);
+            if (i % 2 == 0) {
+                mSelected.add(item);
+                mCollection.add(newItem(i));
+            }
+        }
+        for (int i = 0; i < BIND_COUNT; i++) {
+            mBound.add(newItem(i % (SELECTED_COUNT * 2)));
+        }
+    }
+
+    @Test
+    public void benchmark() {
+        int[] linear = new int[BIND_COUNT];
+        int[] keyed = new int[BIND_COUNT];
+        int[] byId = new int[BIND_COUNT];
+        // 预热
+        bindLinear(linear);
+        bindKeyed(keyed);
+        bindById(byId);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        bindLinear(linear);
+        report("linear", SystemClock.elapsedRealtimeNanos() - start);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        bindKeyed(keyed);
+        report("keyOf index", SystemClock.elapsedRealtimeNanos() - start);
+
+        start = SystemClock.elapsedRealtimeNanos();
+        bindById(byId);
+        report("id index", SystemClock.elapsedRealtimeNanos() - start);
+
+        for (int i = 0; i < BIND_COUNT; i++) {
+            assertEquals(linear[i], keyed[i]);
+            assertEquals(linear[i], byId[i]);
+        }
+    }
+
+    /**
+     * 以前的查询：复制列表后线性查找序号，再线性查找是否选择
+     */
+    private void bindLinear(int[] result) {
+        for (int i = 0; i < BIND_COUNT; i++) {
+            MultiMedia item = mBound.get(i);
+            int num = MultiMediaUtils.checkedNumOf(new ArrayList<>(mSelected), item);
+            result[i] = mSelected.contains(item) ? num : -num;
+        }
+    }
+
+    private void bindKeyed(int[] result) {
+        for (int i = 0; i < BIND_COUNT; i++) {
+            MultiMedia item = mBound.get(i);
+            int num = mCollection.checkedNumOf(item);
+            result[i] = mCollection.isSelected(item) ? num : -num;
+        }
+    }
+
+    private void bindById(int[] result) {
+        for (int i = 0; i < BIND_COUNT; i++) {
+            MultiMedia item = mBound.get(i);
+            int num = mCollection.checkedNumOf(item.getId(), item.getMediaUri());
+            result[i] = mCollection.isSelected(item.getId(), item.getMediaUri()) ? num : -num;
+        }
+    }
+
+    private static MultiMedia newItem(long id) {
+        MultiMedia item = new MultiMedia(id, "image/jpeg", 1024, 0);
+        item.setMediaUri(ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id));
+        return item;
+    }
+
+    private static void report(String name, long nanos) {
+        Log.i(TAG, String.format(Locale.US, "%s: %.1fms per %d binds", name, nanos / 1e6, BIND_COUNT));
+    }
+
+}
@@ -9,11 +9,16 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.provider.Settings;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.KeyEvent;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -24,13 +29,16 @@ import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentPagerAdapter;
+import androidx.viewpager.widget.ViewPager;
 
 import com.google.android.material.tabs.TabLayout;
 import com.zhongjh.albumcamerarecorder.album.MatissFragment;
 import com.zhongjh.albumcamerarecorder.camera.CameraFragment;
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
 import com.zhongjh.albumcamerarecorder.recorder.SoundRecordingFragment;
 import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
 import com.zhongjh.albumcamerarecorder.utils.AppUtils;
+import com.zhongjh.albumcamerarecorder.utils.CaptureLatencyTracer;
 import com.zhongjh.albumcamerarecorder.utils.HandleBackUtil;
 import com.zhongjh.albumcamerarecorder.utils.SelectableUtils;
 import com.zhongjh.albumcamerarecorder.widget.NoScrollViewPager;
@@ -38,8 +46,15 @@ import com.zhongjh.albumcamerarecorder.widget.NoScrollViewPager;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import com.zhongjh.common.entity.SaveStrategy;
+import com.zhongjh.common.utils.CacheFileManager;
+import com.zhongjh.common.utils.MediaStoreCompat;
 import com.zhongjh.common.utils.StatusBarUtils;
 
 import static androidx.core.content.PermissionChecker.PERMISSION_DENIED;
@@ -53,7 +68,7 @@ import static androidx.fragment.app.FragmentPagerAdapter.BEHAVIOR_RESUME_ONLY_CU
  */
 public class MainActivity extends AppCompatActivity {
 
-    private FragmentPagerAdapter adapterViewPager;
+    private MyPagerAdapter adapterViewPager;
 
     private final static int ALBUM = 0;
     private final static int CAMERA = 1;
@@ -66,6 +81,10 @@ public class MainActivity extends AppCompatActivity {
      * 跳转到设置界面
      */
     private static final int REQUEST_CODE_SETTING = 101;
+    /**
+     * 延迟创建的界面在创建前使用占位界面，占位界面的itemId加上该值，跟真正界面的itemId区分开
+     */
+    private static final int PLACEHOLDER_ITEM_ID = 100;
 
     /**
      * 底部控件
@@ -89,9 +108,30 @@ public class MainActivity extends AppCompatActivity {
      * 是否弹出提示多次拒绝权限的dialog
      */
     private boolean mIsShowDialog;
+    /**
+     * 第一次绘制的监听，用于统计耗时、开始空闲时创建其他界面
+     */
+    private ViewTreeObserver.OnDrawListener mFirstDrawListener;
+    /**
+     * 主线程空闲时每次创建一个延迟创建的界面
+     */
+    private final MessageQueue.IdleHandler mCreateTabIdleHandler = () -> adapterViewPager.createNextTab();
+    /**
+     * 缓存文件的会话，界面关闭前创建的缓存文件不会因为超过缓存大小被删除
+     */
+    private int mCacheSession;
+    /**
+     * 打开界面的耗时会话，没有设置 {@link GlobalSpec#captureLatencyListener} 时是0
+     */
+    private long mStartupSession;
+    /**
+     * 已经记录过的打开界面的阶段，每个阶段只记录第一次
+     */
+    private final Set<String> mStartupStages = new HashSet<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mStartupSession = CaptureLatencyTracer.begin(CaptureLatencyListener.STARTUP);
         mSpec = GlobalSpec.getInstance();
         setTheme(mSpec.themeId);
         StatusBarUtils.initStatusBar(MainActivity.this);
@@ -103,9 +143,39 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
         setContentView(R.layout.activity_main_zjh);
+        initCacheFileManager();
         requestPermissions();
     }
 
+    @Override
+    protected void onDestroy() {
+        Looper.myQueue().removeIdleHandler(mCreateTabIdleHandler);
+        mStartupSession = 0;
+        if (mCacheSession != 0) {
+            CacheFileManager.endSession(mCacheSession);
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * 设置缓存大小并且开始缓存文件的会话，进程启动后第一次打开时清理以前遗留的缓存文件
+     */
+    private void initCacheFileManager() {
+        CacheFileManager.setMaxSize(mSpec.cacheMaxSize);
+        mCacheSession = CacheFileManager.beginSession();
+        if (getExternalCacheDir() == null) {
+            return;
+        }
+        List<File> directories = new ArrayList<>();
+        for (SaveStrategy strategy : new SaveStrategy[]{mSpec.saveStrategy, mSpec.pictureStrategy,
+                mSpec.videoStrategy, mSpec.audioStrategy}) {
+            if (strategy != null) {
+                directories.add(new MediaStoreCompat(getApplicationContext(), strategy).getCacheDir());
+            }
+        }
+        CacheFileManager.sweepOrphans(directories);
+    }
+
     @Override
     public void onBackPressed() {
         if (!HandleBackUtil.handleBackPress(this)) {
@@ -216,6 +286,24 @@ public class MainActivity extends AppCompatActivity {
             mVpPager.setOffscreenPageLimit(3);
             // 根据配置默认选第几个
             mVpPager.setCurrentItem(mDefaultPosition);
+            if (mSpec.lazyTabs) {
+                // 滑动到旁边的界面时创建该界面
+                mVpPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+                    @Override
+                    public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+                        if (positionOffset > 0) {
+                            adapterViewPager.createTab(position);
+                            adapterViewPager.createTab(position + 1);
+                        }
+                    }
+
+                    @Override
+                    public void onPageSelected(int position) {
+                        adapterViewPager.createTab(position);
+                    }
+                });
+            }
+            traceFirstFrame();
             // 判断只有一个的时候
             if (adapterViewPager.getCount() <= 1) {
                 // 则隐藏底部
@@ -229,6 +317,39 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
+    /**
+     * 记录打开界面后第一次到达某个阶段，只能在主线程调用
+     *
+     * @param stage 阶段
+     */
+    public void markStartup(String stage) {
+        if (mStartupStages.add(stage)) {
+            CaptureLatencyTracer.mark(mStartupSession, stage);
+        }
+    }
+
+    /**
+     * 记录第一次绘制的耗时，延迟创建界面的话，绘制完默认界面后在空闲时创建其他界面
+     */
+    private void traceFirstFrame() {
+        ViewTreeObserver viewTreeObserver = getWindow().getDecorView().getViewTreeObserver();
+        mFirstDrawListener = () -> {
+            markStartup(CaptureLatencyListener.STARTUP_FIRST_FRAME);
+            // 绘制过程中不能移除监听
+            mVpPager.post(() -> {
+                if (mFirstDrawListener == null) {
+                    return;
+                }
+                getWindow().getDecorView().getViewTreeObserver().removeOnDrawListener(mFirstDrawListener);
+                mFirstDrawListener = null;
+                if (mSpec.lazyTabs) {
+                    Looper.myQueue().addIdleHandler(mCreateTabIdleHandler);
+                }
+            });
+        };
+        viewTreeObserver.addOnDrawListener(mFirstDrawListener);
+    }
+
     /**
      * 请求权限
      */
@@ -377,6 +498,14 @@ public class MainActivity extends AppCompatActivity {
         int numItems;// 数量
 
         ArrayList<String> mTitles = new ArrayList<>(); // 标题
+        /**
+         * 延迟创建时每个界面是否已经创建，不延迟创建的为null
+         */
+        boolean[] mCreatedTabs;
+        /**
+         * 是否已经准备刷新
+         */
+        boolean mIsNotifyPending;
 
         public MyPagerAdapter(@NonNull FragmentManager fm, int behavior, GlobalSpec mSpec) {
             super(fm, behavior);
@@ -413,6 +542,73 @@ public class MainActivity extends AppCompatActivity {
                 mTitles.add(getString(R.string.z_multi_library_sound_recording));
             }
 
+            if (mSpec.lazyTabs && numItems > 1) {
+                // 只创建默认的界面
+                mCreatedTabs = new boolean[numItems];
+                mCreatedTabs[mDefaultPosition] = true;
+            }
+        }
+
+        /**
+         * 创建延迟创建的界面，替换掉占位界面
+         *
+         * @param position 索引
+         */
+        void createTab(int position) {
+            if (mCreatedTabs == null || position < 0 || position >= numItems || mCreatedTabs[position]) {
+                return;
+            }
+            mCreatedTabs[position] = true;
+            if (!mIsNotifyPending) {
+                // 可能是在滑动的回调里面，等回调结束再刷新
+                mIsNotifyPending = true;
+                mVpPager.post(() -> {
+                    mIsNotifyPending = false;
+                    notifyDataSetChanged();
+                });
+            }
+        }
+
+        /**
+         * 创建下一个还没创建的界面
+         *
+         * @return 是否还有没创建的界面
+         */
+        boolean createNextTab() {
+            if (mCreatedTabs == null) {
+                return false;
+            }
+            for (int i = 0; i < numItems; i++) {
+                if (!mCreatedTabs[i]) {
+                    createTab(i);
+                    break;
+                }
+            }
+            for (boolean created : mCreatedTabs) {
+                if (!created) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isTabCreated(int position) {
+            return mCreatedTabs == null || mCreatedTabs[position];
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return isTabCreated(position) ? position : PLACEHOLDER_ITEM_ID + position;
+        }
+
+        @Override
+        public int getItemPosition(@NonNull Object object) {
+            if (object instanceof PlaceholderFragment
+                    && isTabCreated(((PlaceholderFragment) object).getPosition())) {
+                // 已经创建了真正的界面，移除占位界面
+                return POSITION_NONE;
+            }
+            return super.getItemPosition(object);
         }
 
         // Returns total number of pages
@@ -425,6 +621,9 @@ public class MainActivity extends AppCompatActivity {
         @NonNull
         @Override
         public Fragment getItem(int position) {
+            if (!isTabCreated(position)) {
+                return PlaceholderFragment.newInstance(position);
+            }
             if (mTitles.get(position).equals(getString(R.string.z_multi_library_album))) {
                 if (adapterViewPager.getCount() <= 1) {
                     return MatissFragment.newInstance(0);
@@ -445,4 +644,31 @@ public class MainActivity extends AppCompatActivity {
 
     }
 
+    /**
+     * 延迟创建的界面在创建前的占位界面
+     */
+    public static class PlaceholderFragment extends Fragment {
+
+        private static final String ARGUMENTS_POSITION = "position";
+
+        static PlaceholderFragment newInstance(int position) {
+            PlaceholderFragment fragment = new PlaceholderFragment();
+            Bundle args = new Bundle();
+            args.putInt(ARGUMENTS_POSITION, position);
+            fragment.setArguments(args);
+            return fragment;
+        }
+
+        int getPosition() {
+            return getArguments() != null ? getArguments().getInt(ARGUMENTS_POSITION) : -1;
+        }
+
+        @Override
+        public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                                 @Nullable Bundle savedInstanceState) {
+            return new View(inflater.getContext());
+        }
+
+    }
+
 }
@@ -2,7 +2,6 @@ package com.zhongjh.albumcamerarecorder.album;
 
 
 import android.app.Activity;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.TypedArray;
@@ -26,6 +25,7 @@ import android.widget.TextView;
 import com.zhongjh.albumcamerarecorder.MainActivity;
 import com.zhongjh.albumcamerarecorder.R;
 import com.zhongjh.albumcamerarecorder.album.entity.Album;
+import com.zhongjh.albumcamerarecorder.album.entity.SelectionResult;
 import com.zhongjh.albumcamerarecorder.album.model.AlbumCollection;
 import com.zhongjh.albumcamerarecorder.album.model.SelectedItemCollection;
 import com.zhongjh.albumcamerarecorder.album.ui.mediaselection.MediaSelectionFragment;
@@ -38,9 +38,12 @@ import com.zhongjh.albumcamerarecorder.preview.BasePreviewActivity;
 import com.zhongjh.albumcamerarecorder.preview.SelectedPreviewActivity;
 import com.zhongjh.albumcamerarecorder.settings.AlbumSpec;
 import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
-import com.zhongjh.albumcamerarecorder.utils.PathUtils;
+import com.zhongjh.albumcamerarecorder.utils.MediaStoreBatchResolver;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
@@ -52,13 +55,13 @@ import com.zhongjh.common.enums.MultimediaTypes;
 import com.zhongjh.common.utils.ColorFilterUtil;
 import com.zhongjh.common.utils.DisplayMetricsUtils;
 import com.zhongjh.common.utils.StatusBarUtils;
+import com.zhongjh.common.utils.ThreadUtils;
 import com.zhongjh.common.widget.IncapableDialog;
 
 import static android.app.Activity.RESULT_OK;
 import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_MULTIMEDIA_CHOICE;
 import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_MULTIMEDIA_TYPES;
-import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_RESULT_SELECTION;
-import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_RESULT_SELECTION_PATH;
+import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_RESULT_SELECTION_BATCH;
 
 /**
  * 相册
@@ -74,6 +77,10 @@ public class MatissFragment extends Fragment implements AlbumCollection.AlbumCal
     public static final String ARGUMENTS_MARGIN_BOTTOM = "arguments_margin_bottom";
 
     private static final String CHECK_STATE = "checkState";
+    /**
+     * 组装选择结果时每一批查询路径的数量
+     */
+    private static final int APPLY_BATCH_SIZE = 100;
 
     private AppCompatActivity mActivity;
     private Context mContext;
@@ -93,6 +100,10 @@ public class MatissFragment extends Fragment implements AlbumCollection.AlbumCal
     private final AlbumCollection mAlbumCollection = new AlbumCollection();
     private SelectedItemCollection mSelectedCollection;
     private AlbumSpec mAlbumSpec;
+    /**
+     * 组装选择结果的任务，不为null就是正在组装中
+     */
+    private ThreadUtils.BaseSimpleBaseTask<Intent> mApplyTask;
 
     /**
      * 专辑下拉框控件
@@ -227,20 +238,7 @@ public class MatissFragment extends Fragment implements AlbumCollection.AlbumCal
         });
 
         // 确认当前选择的图片
-        mViewHolder.buttonApply.setOnClickListener(view -> {
-            Intent result = new Intent();
-            // 获取选择的图片的url集合
-            ArrayList<Uri> selectedUris = (ArrayList<Uri>) mSelectedCollection.asListOfUri();
-            result.putParcelableArrayListExtra(EXTRA_RESULT_SELECTION, selectedUris);
-            ArrayList<String> selectedPaths = (ArrayList<String>) mSelectedCollection.asListOfString();
-            result.putStringArrayListExtra(EXTRA_RESULT_SELECTION_PATH, selectedPaths);
-            result.putExtra(EXTRA_MULTIMEDIA_TYPES, getMultimediaType(selectedUris));
-            result.putExtra(EXTRA_MULTIMEDIA_CHOICE, true);
-            // 是否启用原图
-            result.putExtra(EXTRA_RESULT_ORIGINAL_ENABLE, mOriginalEnable);
-            mActivity.setResult(RESULT_OK, result);
-            mActivity.finish();
-        });
+        mViewHolder.buttonApply.setOnClickListener(view -> applySelection(new ArrayList<>(mSelectedCollection.asList())));
 
         // 点击原图
         mViewHolder.originalLayout.setOnClickListener(view -> {
@@ -270,42 +268,151 @@ public class MatissFragment extends Fragment implements AlbumCollection.AlbumCal
     }
 
     /**
-     * 根据uri列表返回当前全部的类型
+     * 在子线程组装选择的结果，完成后关闭界面
+     * 路径分批查询，每一批完成后刷新按钮的进度，组装过程中再次点击按钮则取消
+     *
+     * @param selected 选择的数据
+     */
+    private void applySelection(ArrayList<MultiMedia> selected) {
+        if (mApplyTask != null) {
+            ThreadUtils.cancel(mApplyTask);
+            return;
+        }
+        mViewHolder.buttonApply.setText(getString(R.string.z_multi_library_button_sure_progress, 0, selected.size()));
+        mApplyTask = new ThreadUtils.BaseSimpleBaseTask<Intent>() {
+            @Override
+            public Intent doInBackground() {
+                ArrayList<Uri> selectedUris = new ArrayList<>(selected.size());
+                ArrayList<String> selectedPaths = new ArrayList<>(selected.size());
+                for (int start = 0; start < selected.size(); start += APPLY_BATCH_SIZE) {
+                    if (isCanceled()) {
+                        return null;
+                    }
+                    int end = Math.min(start + APPLY_BATCH_SIZE, selected.size());
+                    List<MultiMedia> batch = selected.subList(start, end);
+                    for (MultiMedia item : batch) {
+                        selectedUris.add(item.getMediaUri() != null ? item.getMediaUri() : item.getUri());
+                    }
+                    selectedPaths.addAll(mSelectedCollection.getPaths(batch));
+                    ThreadUtils.runOnUiThread(() -> {
+                        if (mApplyTask == this) {
+                            mViewHolder.buttonApply.setText(getString(R.string.z_multi_library_button_sure_progress, end, selected.size()));
+                        }
+                    });
+                }
+                Intent result = new Intent();
+                // uri和path合并成一个数据，减少Intent的大小，
+                // 不再同时写入旧的列表，调用方通过 MultiMediaSetting.obtainResult、obtainPathResult 读取
+                result.putExtra(EXTRA_RESULT_SELECTION_BATCH, new SelectionResult(selectedUris, selectedPaths));
+                result.putExtra(EXTRA_MULTIMEDIA_TYPES, getMultimediaType(selected));
+                result.putExtra(EXTRA_MULTIMEDIA_CHOICE, true);
+                // 是否启用原图
+                result.putExtra(EXTRA_RESULT_ORIGINAL_ENABLE, mOriginalEnable);
+                return result;
+            }
+
+            @Override
+            public void onSuccess(Intent result) {
+                mApplyTask = null;
+                mActivity.setResult(RESULT_OK, result);
+                mActivity.finish();
+            }
+
+            @Override
+            public void onCancel() {
+                super.onCancel();
+                onApplyFinished(this);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                onApplyFinished(this);
+            }
+        };
+        ThreadUtils.executeByIo(mApplyTask);
+    }
+
+    /**
+     * 组装结果的任务取消或者失败后，恢复底部按钮
+     * 界面销毁时已经把 mApplyTask 置空，不再刷新控件
+     *
+     * @param task 结束的任务
+     */
+    private void onApplyFinished(ThreadUtils.BaseSimpleBaseTask<Intent> task) {
+        if (mApplyTask != task || !isAdded()) {
+            return;
+        }
+        mApplyTask = null;
+        updateBottomToolbar();
+    }
+
+    /**
+     * 根据选择的数据返回当前全部的类型
+     * 优先使用相册查询时已经获取的类型，只有类型未知的数据才批量查询
      *
-     * @param selectedUris uri列表
+     * @param items 选择的数据
      * @return 返回当前全部的类型
      */
-    private int getMultimediaType(ArrayList<Uri> selectedUris) {
+    private int getMultimediaType(List<MultiMedia> items) {
         // 图片类型的数量
         int isImageSize = 0;
         // 视频的数量
         int isVideoSize = 0;
-        ContentResolver resolver = mContext.getContentResolver();
-        // 循环判断类型
-        for (Uri uri : selectedUris) {
-            for (MimeType type : MimeType.ofImage()) {
-                if (type.checkType(resolver, uri)) {
+        // 类型未知的uri
+        List<Uri> unknownUris = new ArrayList<>();
+        for (MultiMedia item : items) {
+            if (item.getMimeType() != null) {
+                if (item.isImage()) {
                     isImageSize++;
-                    break;
+                } else if (item.isVideo()) {
+                    isVideoSize++;
                 }
+            } else {
+                unknownUris.add(item.getMediaUri() != null ? item.getMediaUri() : item.getUri());
             }
-            for (MimeType type : MimeType.ofVideo()) {
-                if (type.checkType(resolver, uri)) {
+        }
+        // 批量查询未知的类型
+        if (!unknownUris.isEmpty()) {
+            Map<Uri, String> mimeTypes = MediaStoreBatchResolver.getMimeTypes(mContext, unknownUris);
+            for (Uri uri : unknownUris) {
+                String mimeType = mimeTypes.get(uri);
+                if (isMimeTypeOf(MimeType.ofImage(), mimeType)) {
+                    isImageSize++;
+                } else if (isMimeTypeOf(MimeType.ofVideo(), mimeType)) {
                     isVideoSize++;
-                    break;
                 }
             }
         }
         // 判断是纯图片还是纯视频
-        if (selectedUris.size() == isImageSize) {
+        if (items.size() == isImageSize) {
             return MultimediaTypes.PICTURE;
         }
-        if (selectedUris.size() == isVideoSize) {
+        if (items.size() == isVideoSize) {
             return MultimediaTypes.VIDEO;
         }
         return MultimediaTypes.BLEND;
     }
 
+    /**
+     * 类型是否属于某个类型集合
+     *
+     * @param types    类型集合
+     * @param mimeType 类型
+     * @return 是否属于
+     */
+    private boolean isMimeTypeOf(Set<MimeType> types, String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        for (MimeType type : types) {
+            if (type.toString().equals(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -315,6 +422,14 @@ public class MatissFragment extends Fragment implements AlbumCollection.AlbumCal
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // 取消组装结果的任务
+        if (mApplyTask != null) {
+            ThreadUtils.BaseSimpleBaseTask<Intent> applyTask = mApplyTask;
+            mApplyTask = null;
+            ThreadUtils.cancel(applyTask);
+        }
+        mSelectedCollection.cancelListOfString();
+        mSelectedCollection.cancelAcceptable();
         // 销毁相册model
         mAlbumCollection.onDestroy();
 //        mAlbumSpec.onCheckedListener = null;
@@ -344,24 +459,7 @@ public class MatissFragment extends Fragment implements AlbumCollection.AlbumCal
                     SelectedItemCollection.COLLECTION_UNDEFINED);
             // 如果在预览界面点击了确定
             if (data.getBooleanExtra(BasePreviewActivity.EXTRA_RESULT_APPLY, false)) {
-                Intent result = new Intent();
-                ArrayList<Uri> selectedUris = new ArrayList<>();
-                ArrayList<String> selectedPaths = new ArrayList<>();
-                if (selected != null) {
-                    for (MultiMedia item : selected) {
-                        // 添加uri和path
-                        selectedUris.add(item.getMediaUri());
-                        selectedPaths.add(PathUtils.getPath(getContext(), item.getMediaUri()));
-                    }
-                }
-                result.putParcelableArrayListExtra(EXTRA_RESULT_SELECTION, selectedUris);
-                result.putStringArrayListExtra(EXTRA_RESULT_SELECTION_PATH, selectedPaths);
-                result.putExtra(EXTRA_MULTIMEDIA_TYPES, getMultimediaType(selectedUris));
-                result.putExtra(EXTRA_MULTIMEDIA_CHOICE, true);
-                // 是否启用原图
-                result.putExtra(EXTRA_RESULT_ORIGINAL_ENABLE, mOriginalEnable);
-                mActivity.setResult(RESULT_OK, result);
-                mActivity.finish();
+                applySelection(selected != null ? selected : new ArrayList<>());
             } else {
                 // 点击了返回
                 mSelectedCollection.overwrite(selected, collectionType);
@@ -483,6 +581,21 @@ public class MatissFragment extends Fragment implements AlbumCollection.AlbumCal
         });
     }
 
+    @Override
+    public void onAlbumUpdated(Cursor cursor) {
+        // 更新相册列表的数量和封面
+        mAlbumsSpinnerAdapter.swapCursor(cursor);
+        if (!cursor.moveToPosition(mAlbumCollection.getCurrentSelection())) {
+            return;
+        }
+        Album album = Album.valueOf(cursor);
+        // 只有全部是否为空发生变化时才需要重新显示
+        boolean empty = album.isAll() && album.isEmpty();
+        if (empty != (mViewHolder.emptyView.getVisibility() == View.VISIBLE)) {
+            onAlbumSelected(album);
+        }
+    }
+
     @Override
     public void onAlbumReset() {
         // 重置相册列表
@@ -531,8 +644,12 @@ public class MatissFragment extends Fragment implements AlbumCollection.AlbumCal
         updateBottomToolbar();
         // 触发选择的接口事件
         if (mAlbumSpec.onSelectedListener != null) {
-            mAlbumSpec.onSelectedListener.onSelected(
-                    mSelectedCollection.asListOfUri(), mSelectedCollection.asListOfString());
+            // 路径在子线程查询
+            mSelectedCollection.asListOfString((uris, paths) -> {
+                if (mAlbumSpec.onSelectedListener != null) {
+                    mAlbumSpec.onSelectedListener.onSelected(uris, paths);
+                }
+            });
         }
     }
 
@@ -18,6 +18,8 @@ package com.zhongjh.albumcamerarecorder.album.base;
 import android.database.Cursor;
 import android.provider.MediaStore;
 
+import java.util.List;
+
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -59,6 +61,25 @@ public abstract class BaseRecyclerViewCursorAdapter<VH extends RecyclerView.View
         onBindViewHolder(holder, mCursor);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull VH holder, int position, @NonNull List<Object> payloads) {
+        // 有payload的时候先尝试局部刷新，不支持的payload再完整绑定
+        if (payloads.isEmpty() || !onBindViewHolderPayloads(holder, payloads)) {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    /**
+     * 局部刷新，不需要移动游标，也不需要重新加载图片
+     *
+     * @param holder   控件
+     * @param payloads 刷新的内容
+     * @return 是否已经处理，返回false则会完整绑定
+     */
+    protected boolean onBindViewHolderPayloads(VH holder, List<Object> payloads) {
+        return false;
+    }
+
     @Override
     public int getItemViewType(int position) {
         if (!mCursor.moveToPosition(position)) {
@@ -120,6 +141,32 @@ public abstract class BaseRecyclerViewCursorAdapter<VH extends RecyclerView.View
         }
     }
 
+    /**
+     * 追加分页数据，只刷新新增的部分
+     *
+     * @param newCursor     数据源，需要包含旧数据源的全部数据
+     * @param positionStart 新增数据的起始索引
+     * @param itemCount     新增数据的数量
+     */
+    public void appendCursor(Cursor newCursor, int positionStart, int itemCount) {
+        if (newCursor == null) {
+            return;
+        }
+        mCursor = newCursor;
+        mRowIdColumn = mCursor.getColumnIndexOrThrow(MediaStore.Files.FileColumns._ID);
+        notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    /**
+     * 替换数据源但是不刷新，由子类自行通知具体的变化
+     *
+     * @param newCursor 数据源
+     */
+    protected void replaceCursor(Cursor newCursor) {
+        mCursor = newCursor;
+        mRowIdColumn = newCursor == null ? -1 : newCursor.getColumnIndexOrThrow(MediaStore.Files.FileColumns._ID);
+    }
+
     protected Cursor getCursor() {
         return mCursor;
     }
@@ -0,0 +1,32 @@
+package com.zhongjh.albumcamerarecorder.album.engine;
+
+import android.content.Context;
+import android.net.Uri;
+
+/**
+ * 可选的缩略图预加载接口
+ * {@link ImageEngine} 的实现类同时实现该接口后，相册列表滑动时会提前加载即将显示的缩略图
+ * 预加载的参数需要跟 {@link ImageEngine#loadThumbnail} 一致，才能命中同一个缓存
+ *
+ * @author zhongjh
+ */
+public interface ImagePreloadEngine {
+
+    /**
+     * 预加载缩略图到缓存
+     *
+     * @param context 上下文
+     * @param resize  原始图像的所需大小，跟 {@link ImageEngine#loadThumbnail} 的 resize 一致
+     * @param uri     加载图像的URI
+     */
+    void preload(Context context, int resize, Uri uri);
+
+    /**
+     * 取消预加载，已经加载完成的缓存不受影响
+     *
+     * @param context 上下文
+     * @param resize  原始图像的所需大小
+     * @param uri     加载图像的URI
+     */
+    void cancelPreload(Context context, int resize, Uri uri);
+}
@@ -22,7 +22,12 @@ import android.widget.ImageView;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.Priority;
+import com.bumptech.glide.request.target.Target;
 import com.zhongjh.albumcamerarecorder.album.engine.ImageEngine;
+import com.zhongjh.albumcamerarecorder.album.engine.ImagePreloadEngine;
+
+import java.util.HashMap;
+import java.util.Map;
 
 
 /**
@@ -30,7 +35,12 @@ import com.zhongjh.albumcamerarecorder.album.engine.ImageEngine;
  * @author zhongjh
  */
 
-public class GlideEngine implements ImageEngine {
+public class GlideEngine implements ImageEngine, ImagePreloadEngine {
+
+    /**
+     * 预加载中的请求，用于取消
+     */
+    private final Map<String, Target<?>> mPreloadTargets = new HashMap<>();
 
     @Override
     public void loadThumbnail(Context context, int resize, Drawable placeholder, ImageView imageView, Uri uri) {
@@ -102,6 +112,31 @@ public class GlideEngine implements ImageEngine {
                 .into(imageView);
     }
 
+    @Override
+    public void preload(Context context, int resize, Uri uri) {
+        String key = uri + "#" + resize;
+        if (mPreloadTargets.containsKey(key)) {
+            return;
+        }
+        // 参数跟 loadThumbnail 保持一致，才能命中同一个缓存
+        Target<?> target = Glide.with(context)
+                .load(uri)
+                .asBitmap()
+                .override(resize, resize)
+                .centerCrop()
+                .priority(Priority.LOW)
+                .preload(resize, resize);
+        mPreloadTargets.put(key, target);
+    }
+
+    @Override
+    public void cancelPreload(Context context, int resize, Uri uri) {
+        Target<?> target = mPreloadTargets.remove(uri + "#" + resize);
+        if (target != null) {
+            Glide.clear(target);
+        }
+    }
+
     @Override
     public boolean supportAnimatedGif() {
         return true;
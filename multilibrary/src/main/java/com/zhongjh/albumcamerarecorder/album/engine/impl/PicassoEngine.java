@@ -22,13 +22,14 @@ import android.widget.ImageView;
 
 import com.squareup.picasso.Picasso;
 import com.zhongjh.albumcamerarecorder.album.engine.ImageEngine;
+import com.zhongjh.albumcamerarecorder.album.engine.ImagePreloadEngine;
 
 
 /**
  * {@link ImageEngine} implementation using Picasso.
  * @author zhongjh
  */
-public class PicassoEngine implements ImageEngine {
+public class PicassoEngine implements ImageEngine, ImagePreloadEngine {
 
     @Override
     public void loadThumbnail(Context context, int resize, Drawable placeholder, ImageView imageView, Uri uri) {
@@ -73,6 +74,29 @@ public class PicassoEngine implements ImageEngine {
         loadImage(context, resizeX, resizeY, imageView, uri);
     }
 
+    @Override
+    public void preload(Context context, int resize, Uri uri) {
+        // 参数跟 loadThumbnail 保持一致，才能命中同一个缓存，tag用于取消
+        Picasso.with(context).load(uri)
+                .resize(resize, resize)
+                .centerCrop()
+                .priority(Picasso.Priority.LOW)
+                .tag(preloadTag(resize, uri))
+                .fetch();
+    }
+
+    @Override
+    public void cancelPreload(Context context, int resize, Uri uri) {
+        Picasso.with(context).cancelTag(preloadTag(resize, uri));
+    }
+
+    /**
+     * 预加载的tag，每个uri、尺寸对应一个tag
+     */
+    private String preloadTag(int resize, Uri uri) {
+        return "preload#" + resize + "#" + uri;
+    }
+
     @Override
     public boolean supportAnimatedGif() {
         return false;
@@ -0,0 +1,137 @@
+package com.zhongjh.albumcamerarecorder.album.entity;
+
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 相册选择的结果，uri和path一一对应
+ * 序列化时把uri、path拆分成 前缀 + 最后一段，相同的前缀只写入一次，
+ * 例如 content://media/external/images/media/ 和 同一个文件夹 的路径，选择数量多的时候能明显减少Intent的大小
+ *
+ * @author zhongjh
+ */
+public class SelectionResult implements Parcelable {
+
+    public static final Creator<SelectionResult> CREATOR = new Creator<SelectionResult>() {
+        @NonNull
+        @Override
+        public SelectionResult createFromParcel(Parcel source) {
+            return new SelectionResult(source);
+        }
+
+        @Override
+        public SelectionResult[] newArray(int size) {
+            return new SelectionResult[size];
+        }
+    };
+
+    private final ArrayList<Uri> mUris;
+    private final ArrayList<String> mPaths;
+
+    public SelectionResult(ArrayList<Uri> uris, ArrayList<String> paths) {
+        mUris = uris;
+        mPaths = paths;
+    }
+
+    SelectionResult(Parcel source) {
+        String[] prefixes = source.createStringArray();
+        int uriSize = source.readInt();
+        mUris = new ArrayList<>(uriSize);
+        for (int i = 0; i < uriSize; i++) {
+            String uri = readSplit(source, prefixes);
+            mUris.add(uri == null ? null : Uri.parse(uri));
+        }
+        int pathSize = source.readInt();
+        mPaths = new ArrayList<>(pathSize);
+        for (int i = 0; i < pathSize; i++) {
+            mPaths.add(readSplit(source, prefixes));
+        }
+    }
+
+    public ArrayList<Uri> getUris() {
+        return mUris;
+    }
+
+    public ArrayList<String> getPaths() {
+        return mPaths;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        // 先收集所有前缀
+        Map<String, Integer> prefixIndexes = new HashMap<>();
+        List<String> prefixes = new ArrayList<>();
+        List<String> uriStrings = new ArrayList<>(mUris.size());
+        for (Uri uri : mUris) {
+            String value = uri == null ? null : uri.toString();
+            uriStrings.add(value);
+            addPrefix(value, prefixIndexes, prefixes);
+        }
+        for (String path : mPaths) {
+            addPrefix(path, prefixIndexes, prefixes);
+        }
+        dest.writeStringArray(prefixes.toArray(new String[0]));
+        dest.writeInt(uriStrings.size());
+        for (String value : uriStrings) {
+            writeSplit(dest, value, prefixIndexes);
+        }
+        dest.writeInt(mPaths.size());
+        for (String path : mPaths) {
+            writeSplit(dest, path, prefixIndexes);
+        }
+    }
+
+    /**
+     * 获取前缀，也就是最后一个 / 之前（包括 /）的部分
+     */
+    private static int prefixEnd(String value) {
+        return value.lastIndexOf('/') + 1;
+    }
+
+    private static void addPrefix(String value, Map<String, Integer> prefixIndexes, List<String> prefixes) {
+        if (value == null) {
+            return;
+        }
+        String prefix = value.substring(0, prefixEnd(value));
+        if (!prefixIndexes.containsKey(prefix)) {
+            prefixIndexes.put(prefix, prefixes.size());
+            prefixes.add(prefix);
+        }
+    }
+
+    /**
+     * 写入前缀的索引和最后一段，null 的索引写入 -1
+     */
+    private static void writeSplit(Parcel dest, String value, Map<String, Integer> prefixIndexes) {
+        if (value == null) {
+            dest.writeInt(-1);
+            return;
+        }
+        int end = prefixEnd(value);
+        Integer index = prefixIndexes.get(value.substring(0, end));
+        dest.writeInt(index == null ? -1 : index);
+        dest.writeString(value.substring(end));
+    }
+
+    private static String readSplit(Parcel source, String[] prefixes) {
+        int index = source.readInt();
+        if (index < 0) {
+            return null;
+        }
+        return prefixes[index] + source.readString();
+    }
+
+}
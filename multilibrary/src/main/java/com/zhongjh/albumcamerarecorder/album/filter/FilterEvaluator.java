@@ -0,0 +1,122 @@
+package com.zhongjh.albumcamerarecorder.album.filter;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.zhongjh.albumcamerarecorder.R;
+import com.zhongjh.albumcamerarecorder.album.utils.PhotoMetadataUtils;
+import com.zhongjh.albumcamerarecorder.utils.MediaStoreBatchResolver;
+import com.zhongjh.common.entity.IncapableCause;
+import com.zhongjh.common.entity.MultiMedia;
+import com.zhongjh.common.utils.ThreadUtils;
+
+import java.util.Collections;
+
+/**
+ * 过滤器的执行和缓存
+ * 类型检查和 {@link BaseFilter} 都在子线程中执行
+ * 相册数据的结果按照 uri + date_modified 缓存，文件没有修改过的话再次选择、预览都不会重新执行过滤器
+ * 过滤器可能会在多个线程中同时执行，需要保证线程安全
+ *
+ * @author zhongjh
+ */
+public final class FilterEvaluator {
+
+    /**
+     * 缓存的数量
+     */
+    private static final int CACHE_SIZE = 1000;
+    /**
+     * 可以选择的结果，因为 LruCache 不能保存null
+     */
+    private static final IncapableCause ACCEPTABLE = new IncapableCause("");
+    private static final LruCache<String, IncapableCause> CACHE = new LruCache<>(CACHE_SIZE);
+
+    private FilterEvaluator() {
+    }
+
+    /**
+     * 在子线程中判断该数据能否选择，结果在主线程回调
+     * 界面销毁时需要通过 {@link ThreadUtils#cancel} 取消返回的任务，取消后不再回调
+     *
+     * @param context  上下文
+     * @param item     数据
+     * @param callback 回调
+     * @return 执行过滤器的任务
+     */
+    public static ThreadUtils.BaseSimpleBaseTask<IncapableCause> evaluate(final Context context, final MultiMedia item,
+                                                                         final Callback callback) {
+        ThreadUtils.BaseSimpleBaseTask<IncapableCause> task = new ThreadUtils.BaseSimpleBaseTask<IncapableCause>() {
+            @Override
+            public IncapableCause doInBackground() {
+                return evaluateBlocking(context, item);
+            }
+
+            @Override
+            public void onSuccess(IncapableCause result) {
+                callback.onResult(result == ACCEPTABLE ? null : result);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                // 过滤器异常的时候不能选择，不在主线程重新执行过滤器
+                callback.onResult(new IncapableCause(context.getString(R.string.z_multi_library_error_filter)));
+            }
+        };
+        ThreadUtils.executeByIo(task);
+        return task;
+    }
+
+    /**
+     * 判断数据能否选择，需要在子线程调用
+     *
+     * @param context 上下文
+     * @param item    数据
+     * @return 缓存里面的值，可以选择的时候是 {@link #ACCEPTABLE}
+     */
+    private static IncapableCause evaluateBlocking(Context context, MultiMedia item) {
+        // 相册数据的修改时间作为缓存的key
+        Uri uri = item.getMediaUri();
+        String key = null;
+        if (uri != null) {
+            String date = MediaStoreBatchResolver.getDateModified(context, Collections.singletonList(uri)).get(uri);
+            key = date == null ? null : uri + "@" + date;
+        }
+        IncapableCause cause = key == null ? null : CACHE.get(key);
+        return cause != null ? cause : cache(key, PhotoMetadataUtils.isAcceptable(context, item));
+    }
+
+    /**
+     * 缓存结果
+     *
+     * @param key   缓存的key，null则不缓存
+     * @param cause 结果
+     * @return 缓存里面的值，可以选择的时候是 {@link #ACCEPTABLE}
+     */
+    private static IncapableCause cache(String key, IncapableCause cause) {
+        IncapableCause value = cause == null ? ACCEPTABLE : cause;
+        if (key != null) {
+            CACHE.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 清除缓存，过滤器的配置改变后调用
+     */
+    public static void clear() {
+        CACHE.evictAll();
+    }
+
+    public interface Callback {
+        /**
+         * 判断完成
+         *
+         * @param cause null代表可以选择
+         */
+        void onResult(IncapableCause cause);
+    }
+
+}
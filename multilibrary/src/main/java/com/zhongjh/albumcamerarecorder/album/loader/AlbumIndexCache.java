@@ -0,0 +1,425 @@
+package com.zhongjh.albumcamerarecorder.album.loader;
+
+import android.annotation.SuppressLint;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 相册列表的磁盘缓存
+ * 保存上一次分组好的相册列表以及当时 MediaStore 的水位线，下次打开时先直接显示缓存，再核对水位线，
+ * 水位线没变就继续使用缓存，Android 11 以上如果只是新增了数据，则根据 generation 只查询新增的部分合并进缓存
+ *
+ * @author zhongjh
+ */
+public class AlbumIndexCache {
+
+    private static final String TAG = AlbumIndexCache.class.getSimpleName();
+    private static final String FILE_NAME = "album_index";
+    /**
+     * 文件格式的版本，格式变化时递增，旧文件直接作废
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final long GENERATION_UNSUPPORTED = -1;
+    private static final Uri QUERY_URI = MediaStore.Files.getContentUri("external");
+
+    private final Context mContext;
+    private final File mFile;
+    /**
+     * 查询条件，不同的条件(例如仅显示图片)对应的相册列表不同
+     */
+    private final String mKey;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+
+    AlbumIndexCache(Context context, String selection, String[] selectionArgs) {
+        mContext = context.getApplicationContext();
+        mFile = new File(mContext.getCacheDir(), FILE_NAME);
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mKey = selection + "|" + TextUtils.join(",", selectionArgs);
+    }
+
+    /**
+     * 删除缓存，下次打开会重新全量查询
+     *
+     * @param context 上下文
+     */
+    public static void clear(Context context) {
+        File file = new File(context.getApplicationContext().getCacheDir(), FILE_NAME);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "clear: delete failed");
+        }
+    }
+
+    /**
+     * 获取上一次保存的相册列表，不核对水位线，用于先显示再核对
+     *
+     * @return 相册列表，缓存不存在返回null
+     */
+    @Nullable
+    List<Bucket> readCached() {
+        Index index = read();
+        return index == null ? null : index.buckets;
+    }
+
+    /**
+     * 获取仍然有效的缓存
+     *
+     * @param current 当前的水位线 {@link #queryWatermark()}
+     * @return 有效的相册列表，缓存不存在或者已经失效返回null
+     */
+    @Nullable
+    List<Bucket> readValid(Watermark current) {
+        Index index = read();
+        if (index == null) {
+            return null;
+        }
+        if (index.watermark.equals(current)) {
+            return index.buckets;
+        }
+        if (applyDelta(index, current)) {
+            index.watermark = current;
+            write(index.buckets, current);
+            return index.buckets;
+        }
+        return null;
+    }
+
+    /**
+     * 保存相册列表
+     *
+     * @param buckets   相册列表
+     * @param watermark 查询之前获取的水位线，查询期间有变化的话下次打开会重新同步
+     */
+    void write(List<Bucket> buckets, Watermark watermark) {
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(mKey);
+            out.writeUTF(watermark.version);
+            out.writeLong(watermark.generation);
+            out.writeLong(watermark.count);
+            out.writeLong(watermark.maxId);
+            out.writeLong(watermark.maxDateModified);
+            out.writeInt(buckets.size());
+            for (Bucket bucket : buckets) {
+                out.writeLong(bucket.bucketId);
+                out.writeLong(bucket.fileId);
+                writeNullableString(out, bucket.displayName);
+                writeNullableString(out, bucket.mimeType);
+                out.writeLong(bucket.dateTaken);
+                out.writeLong(bucket.count);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "write: " + e.getMessage());
+            return;
+        }
+        // 先写临时文件再重命名，避免中途崩溃留下不完整的缓存
+        if (!temp.renameTo(mFile)) {
+            Log.w(TAG, "write: rename failed");
+        }
+    }
+
+    /**
+     * 获取当前 MediaStore 的水位线
+     * Android 11 以上并且只有一个外部存储卷时使用 generation，否则使用数量、最大id、最大修改时间
+     *
+     * @return 水位线
+     */
+    Watermark queryWatermark() {
+        Watermark watermark = new Watermark();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            watermark.version = MediaStore.getVersion(mContext);
+        }
+        watermark.count = queryCount();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Set<String> volumeNames = MediaStore.getExternalVolumeNames(mContext);
+            if (volumeNames.size() == 1) {
+                watermark.generation = MediaStore.getGeneration(mContext, volumeNames.iterator().next());
+                return watermark;
+            }
+        }
+        // 按有索引的列倒序只取一条，不需要遍历全部数据
+        watermark.maxId = queryMax(MediaStore.Files.FileColumns._ID);
+        watermark.maxDateModified = queryMax(MediaStore.MediaColumns.DATE_MODIFIED);
+        return watermark;
+    }
+
+    /**
+     * 查询当前条件的数量
+     * Android 11 以上使用 provider 返回的总数，Android 10 之前使用 COUNT(*)，都不支持的情况才遍历
+     *
+     * @return 数量
+     */
+    private long queryCount() {
+        ContentResolver resolver = mContext.getContentResolver();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle queryArgs = newQueryArgs(null);
+            try (Cursor cursor = resolver.query(QUERY_URI, new String[]{MediaStore.Files.FileColumns._ID}, queryArgs, null)) {
+                if (cursor != null && cursor.getExtras().containsKey(ContentResolver.EXTRA_TOTAL_COUNT)) {
+                    return cursor.getExtras().getInt(ContentResolver.EXTRA_TOTAL_COUNT);
+                }
+            }
+        } else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            try (Cursor cursor = resolver.query(QUERY_URI, new String[]{"COUNT(*)"},
+                    mSelection, mSelectionArgs, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    return cursor.getLong(0);
+                }
+            }
+        }
+        try (Cursor cursor = resolver.query(QUERY_URI, new String[]{MediaStore.Files.FileColumns._ID},
+                mSelection, mSelectionArgs, null)) {
+            return cursor == null ? 0 : cursor.getCount();
+        }
+    }
+
+    /**
+     * 查询当前条件某一列的最大值，倒序后只取一条
+     *
+     * @param column 列名
+     * @return 最大值，没有数据返回0
+     */
+    private long queryMax(String column) {
+        ContentResolver resolver = mContext.getContentResolver();
+        String[] projection = {column};
+        Cursor cursor;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            cursor = resolver.query(QUERY_URI, projection, newQueryArgs(column + " DESC"), null);
+        } else {
+            // Android 11 之前 sortOrder 可以直接带上 LIMIT
+            cursor = resolver.query(QUERY_URI, projection, mSelection, mSelectionArgs, column + " DESC LIMIT 1");
+        }
+        try (Cursor result = cursor) {
+            return result != null && result.moveToFirst() ? result.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * 当前条件只取一条的查询参数，Android 11 开始不能在 sortOrder 里面带 LIMIT
+     *
+     * @param sortOrder 排序，可以为null
+     * @return 查询参数
+     */
+    @SuppressLint("InlinedApi")
+    private Bundle newQueryArgs(@Nullable String sortOrder) {
+        Bundle queryArgs = new Bundle();
+        queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, mSelection);
+        queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, mSelectionArgs);
+        if (sortOrder != null) {
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+        }
+        queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, 1);
+        return queryArgs;
+    }
+
+    /**
+     * 根据 generation 合并新增的数据
+     * 只处理新增，如果有修改或者删除就返回false重新全量查询
+     *
+     * @param index   缓存
+     * @param current 当前的水位线
+     * @return 是否合并成功
+     */
+    @SuppressLint("InlinedApi")
+    private boolean applyDelta(Index index, Watermark current) {
+        Watermark cached = index.watermark;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R
+                || cached.generation == GENERATION_UNSUPPORTED
+                || current.generation < cached.generation
+                || !cached.version.equals(current.version)) {
+            return false;
+        }
+        LongSparseArray<Bucket> bucketMap = new LongSparseArray<>();
+        for (Bucket bucket : index.buckets) {
+            bucketMap.put(bucket.bucketId, bucket);
+        }
+        ContentResolver resolver = mContext.getContentResolver();
+        String selection = mSelection + " AND " + MediaStore.MediaColumns.GENERATION_MODIFIED + ">" + cached.generation;
+        String[] projection = {
+                MediaStore.Files.FileColumns._ID,
+                AlbumLoader.COLUMN_BUCKET_ID,
+                AlbumLoader.COLUMN_BUCKET_DISPLAY_NAME,
+                MediaStore.MediaColumns.MIME_TYPE,
+                MediaStore.MediaColumns.DATE_TAKEN,
+                MediaStore.MediaColumns.GENERATION_ADDED};
+        long total = 0;
+        try (Cursor cursor = resolver.query(QUERY_URI, projection, selection, mSelectionArgs, null)) {
+            if (cursor == null) {
+                return false;
+            }
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(5) <= cached.generation) {
+                    // 旧数据被修改了，可能换了相册，无法增量处理
+                    return false;
+                }
+                long bucketId = cursor.getLong(1);
+                long dateTaken = cursor.getLong(4);
+                Bucket bucket = bucketMap.get(bucketId);
+                if (bucket == null) {
+                    bucket = new Bucket(bucketId, cursor.getLong(0), cursor.getString(2),
+                            cursor.getString(3), dateTaken);
+                    bucketMap.put(bucketId, bucket);
+                    index.buckets.add(bucket);
+                } else if (dateTaken > bucket.dateTaken) {
+                    bucket.setCover(cursor.getLong(0), cursor.getString(3), dateTaken);
+                }
+                bucket.count++;
+            }
+        }
+        for (Bucket bucket : index.buckets) {
+            total += bucket.count;
+        }
+        if (total != current.count) {
+            // 数量对不上说明期间有删除
+            return false;
+        }
+        // 相册按照封面时间倒序，跟全量查询的顺序一致
+        Collections.sort(index.buckets, (o1, o2) -> Long.compare(o2.dateTaken, o1.dateTaken));
+        return true;
+    }
+
+    @Nullable
+    private Index read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != FORMAT_VERSION || !mKey.equals(in.readUTF())) {
+                return null;
+            }
+            Index index = new Index();
+            index.watermark = new Watermark();
+            index.watermark.version = in.readUTF();
+            index.watermark.generation = in.readLong();
+            index.watermark.count = in.readLong();
+            index.watermark.maxId = in.readLong();
+            index.watermark.maxDateModified = in.readLong();
+            int size = in.readInt();
+            index.buckets = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Bucket bucket = new Bucket(in.readLong(), in.readLong(), readNullableString(in),
+                        readNullableString(in), 0);
+                bucket.dateTaken = in.readLong();
+                bucket.count = in.readLong();
+                index.buckets.add(bucket);
+            }
+            return index;
+        } catch (IOException e) {
+            Log.w(TAG, "read: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * 缓存的内容
+     */
+    private static class Index {
+        Watermark watermark;
+        List<Bucket> buckets;
+    }
+
+    /**
+     * MediaStore 的水位线，任何一个值变化都代表数据有变化
+     */
+    static class Watermark {
+        String version = "";
+        long generation = GENERATION_UNSUPPORTED;
+        long count;
+        long maxId;
+        long maxDateModified;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Watermark)) {
+                return false;
+            }
+            Watermark other = (Watermark) o;
+            return version.equals(other.version)
+                    && generation == other.generation
+                    && count == other.count
+                    && maxId == other.maxId
+                    && maxDateModified == other.maxDateModified;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = version.hashCode();
+            result = 31 * result + Long.valueOf(generation).hashCode();
+            result = 31 * result + Long.valueOf(count).hashCode();
+            result = 31 * result + Long.valueOf(maxId).hashCode();
+            result = 31 * result + Long.valueOf(maxDateModified).hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * 分组后的单个相册
+     */
+    static class Bucket {
+        final long bucketId;
+        /**
+         * 封面的id
+         */
+        long fileId;
+        final String displayName;
+        /**
+         * 封面的类型
+         */
+        String mimeType;
+        /**
+         * 封面的拍摄时间
+         */
+        long dateTaken;
+        long count;
+
+        Bucket(long bucketId, long fileId, String displayName, String mimeType, long dateTaken) {
+            this.bucketId = bucketId;
+            this.fileId = fileId;
+            this.displayName = displayName;
+            this.mimeType = mimeType;
+            this.dateTaken = dateTaken;
+        }
+
+        void setCover(long fileId, String mimeType, long dateTaken) {
+            this.fileId = fileId;
+            this.mimeType = mimeType;
+            this.dateTaken = dateTaken;
+        }
+    }
+
+}
@@ -24,6 +24,7 @@ import android.database.MergeCursor;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.MediaStore;
+import android.util.LongSparseArray;
 
 import androidx.loader.content.CursorLoader;
 
@@ -32,10 +33,8 @@ import com.zhongjh.common.enums.MimeType;
 import com.zhongjh.albumcamerarecorder.album.entity.Album;
 import com.zhongjh.albumcamerarecorder.settings.AlbumSpec;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -45,8 +44,8 @@ import java.util.Set;
  */
 public class AlbumLoader extends CursorLoader {
 
-    private static final String COLUMN_BUCKET_ID = "bucket_id";
-    private static final String COLUMN_BUCKET_DISPLAY_NAME = "bucket_display_name";
+    static final String COLUMN_BUCKET_ID = "bucket_id";
+    static final String COLUMN_BUCKET_DISPLAY_NAME = "bucket_display_name";
     public static final String COLUMN_URI = "uri";
     public static final String COLUMN_COUNT = "count";
     private static final Uri QUERY_URI = MediaStore.Files.getContentUri("external");
@@ -70,7 +69,8 @@ public class AlbumLoader extends CursorLoader {
             MediaStore.Files.FileColumns._ID,
             COLUMN_BUCKET_ID,
             COLUMN_BUCKET_DISPLAY_NAME,
-            MediaStore.MediaColumns.MIME_TYPE};
+            MediaStore.MediaColumns.MIME_TYPE,
+            MediaStore.MediaColumns.DATE_TAKEN};
 
     // === params for showSingleMediaType: false ===
 
@@ -108,7 +108,20 @@ public class AlbumLoader extends CursorLoader {
 
     private static final String BUCKET_ORDER_BY = "datetaken DESC";
 
-    private AlbumLoader(Context context, String selection, String[] selectionArgs) {
+    /**
+     * 相册列表的磁盘缓存，没有启用则为null
+     */
+    private final AlbumIndexCache mIndexCache;
+    /**
+     * 是否已经尝试过直接返回缓存，只有第一次加载直接返回
+     */
+    private boolean mCacheLoaded;
+    /**
+     * 返回的是未核对的缓存，返回之后需要再加载一次核对水位线
+     */
+    private volatile boolean mReconcilePending;
+
+    private AlbumLoader(Context context, String selection, String[] selectionArgs, AlbumIndexCache indexCache) {
         super(
                 context,
                 QUERY_URI,
@@ -117,149 +130,168 @@ public class AlbumLoader extends CursorLoader {
                 selectionArgs,
                 BUCKET_ORDER_BY
         );
+        mIndexCache = indexCache;
     }
 
     public static CursorLoader newInstance(Context context) {
         String selection;
+        // 不带 GROUP BY 的条件，用于缓存的水位线查询
+        String plainSelection;
         String[] selectionArgs;
         if (AlbumSpec.getInstance().onlyShowImages()) {
+            plainSelection = SELECTION_FOR_SINGLE_MEDIA_TYPE_29;
             selection = beforeAndroidTen()
-                    ? SELECTION_FOR_SINGLE_MEDIA_TYPE : SELECTION_FOR_SINGLE_MEDIA_TYPE_29;
+                    ? SELECTION_FOR_SINGLE_MEDIA_TYPE : plainSelection;
             selectionArgs = getSelectionArgsForSingleMediaType(
                     MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
         } else if (AlbumSpec.getInstance().onlyShowVideos()) {
+            plainSelection = SELECTION_FOR_SINGLE_MEDIA_TYPE_29;
             selection = beforeAndroidTen()
-                    ? SELECTION_FOR_SINGLE_MEDIA_TYPE : SELECTION_FOR_SINGLE_MEDIA_TYPE_29;
+                    ? SELECTION_FOR_SINGLE_MEDIA_TYPE : plainSelection;
             selectionArgs = getSelectionArgsForSingleMediaType(
                     MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
         } else {
-            selection = beforeAndroidTen() ? SELECTION : SELECTION_29;
+            plainSelection = SELECTION_29;
+            selection = beforeAndroidTen() ? SELECTION : plainSelection;
             selectionArgs = SELECTION_ARGS;
         }
-        return new AlbumLoader(context, selection, selectionArgs);
+        AlbumIndexCache indexCache = null;
+        if (AlbumSpec.getInstance().albumIndexCache) {
+            indexCache = new AlbumIndexCache(context, plainSelection, selectionArgs);
+        }
+        return new AlbumLoader(context, selection, selectionArgs, indexCache);
     }
 
     @Override
     public Cursor loadInBackground() {
-        Cursor albums = super.loadInBackground();
-        MatrixCursor allAlbum = new MatrixCursor(COLUMNS);
-
-        int totalCount = 0;
-        Uri allAlbumCoverUri = null;
-        if (beforeAndroidTen()) {
-            return loadInBackgroundBeforeAndroidTen(albums, allAlbum, totalCount);
-        } else {
-            // Pseudo GROUP BY
-            Map<Long, Long> countMap = null;
-            if (albums != null) {
-                countMap = new HashMap<>(albums.getCount());
-                while (albums.moveToNext()) {
-                    long bucketId = albums.getLong(albums.getColumnIndex(COLUMN_BUCKET_ID));
-
-                    Long count = countMap.get(bucketId);
-                    if (count == null) {
-                        count = 1L;
-                    } else {
-                        count++;
-                    }
-                    countMap.put(bucketId, count);
+        AlbumIndexCache.Watermark watermark = null;
+        if (mIndexCache != null) {
+            if (!mCacheLoaded) {
+                mCacheLoaded = true;
+                // 先直接显示上次的缓存，水位线在下一次加载中核对
+                List<AlbumIndexCache.Bucket> cached = mIndexCache.readCached();
+                if (cached != null) {
+                    mReconcilePending = true;
+                    return toCursor(cached);
                 }
             }
-
-            MatrixCursor otherAlbums = new MatrixCursor(COLUMNS);
-            if (albums != null) {
-                if (albums.moveToFirst()) {
-                    allAlbumCoverUri = getUri(albums);
-
-                    Set<Long> done = new HashSet<>();
-
-                    do {
-                        long bucketId = albums.getLong(albums.getColumnIndex(COLUMN_BUCKET_ID));
-
-                        if (done.contains(bucketId)) {
-                            continue;
-                        }
-
-                        long fileId = albums.getLong(
-                                albums.getColumnIndex(MediaStore.Files.FileColumns._ID));
-                        String bucketDisplayName = albums.getString(
-                                albums.getColumnIndex(COLUMN_BUCKET_DISPLAY_NAME));
-                        String mimeType = albums.getString(
-                                albums.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE));
-                        Uri uri = getUri(albums);
-                        long count = 0;
-                        if (countMap.get(bucketId) != null) {
-                            count = Long.parseLong(String.valueOf(countMap.get(bucketId)));
-                        }
-
-                        otherAlbums.addRow(new String[]{
-                                Long.toString(fileId),
-                                Long.toString(bucketId),
-                                bucketDisplayName,
-                                mimeType,
-                                uri.toString(),
-                                String.valueOf(count)});
-                        done.add(bucketId);
-
-                        totalCount += count;
-                    } while (albums.moveToNext());
-                }
+            // 水位线没变或者只是新增了数据，就不需要全量查询
+            watermark = mIndexCache.queryWatermark();
+            List<AlbumIndexCache.Bucket> cached = mIndexCache.readValid(watermark);
+            if (cached != null) {
+                return toCursor(cached);
             }
+        }
 
-            allAlbum.addRow(new String[]{
-                    Album.ALBUM_ID_ALL,
-                    Album.ALBUM_ID_ALL, Album.ALBUM_NAME_ALL, null,
-                    allAlbumCoverUri == null ? null : allAlbumCoverUri.toString(),
-                    String.valueOf(totalCount)});
+        Cursor albums = super.loadInBackground();
+        List<AlbumIndexCache.Bucket> buckets;
+        if (beforeAndroidTen()) {
+            buckets = groupBeforeAndroidTen(albums);
+        } else {
+            buckets = groupAndroidTen(albums);
+        }
+        if (albums != null) {
+            // 数据已经复制到 buckets ，原始游标不再需要
+            albums.close();
+        }
+        if (mIndexCache != null) {
+            mIndexCache.write(buckets, watermark);
+        }
+        return toCursor(buckets);
+    }
 
-            return new MergeCursor(new Cursor[]{allAlbum, otherAlbums});
+    /**
+     * Android10开始不支持 GROUP BY ，只能遍历全部数据自行分组
+     * 数据已经按时间倒序，所以每个相册第一次出现的那一行就是封面，只需要遍历一次
+     *
+     * @return 相册列表
+     */
+    static List<AlbumIndexCache.Bucket> groupAndroidTen(Cursor albums) {
+        List<AlbumIndexCache.Bucket> buckets = new ArrayList<>();
+        if (albums != null && albums.moveToFirst()) {
+            int idColumn = albums.getColumnIndex(MediaStore.Files.FileColumns._ID);
+            int bucketIdColumn = albums.getColumnIndex(COLUMN_BUCKET_ID);
+            int bucketDisplayNameColumn = albums.getColumnIndex(COLUMN_BUCKET_DISPLAY_NAME);
+            int mimeTypeColumn = albums.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE);
+            int dateTakenColumn = albums.getColumnIndex(MediaStore.MediaColumns.DATE_TAKEN);
+
+            // 以相册id作为key，避免装箱
+            LongSparseArray<AlbumIndexCache.Bucket> bucketMap = new LongSparseArray<>();
+            do {
+                long bucketId = albums.getLong(bucketIdColumn);
+                AlbumIndexCache.Bucket bucket = bucketMap.get(bucketId);
+                if (bucket == null) {
+                    bucket = new AlbumIndexCache.Bucket(bucketId,
+                            albums.getLong(idColumn),
+                            albums.getString(bucketDisplayNameColumn),
+                            albums.getString(mimeTypeColumn),
+                            albums.getLong(dateTakenColumn));
+                    bucketMap.put(bucketId, bucket);
+                    buckets.add(bucket);
+                }
+                bucket.count++;
+            } while (albums.moveToNext());
         }
+        return buckets;
     }
 
     /**
-     * Android10之前返回的数据
+     * Android10之前直接使用 GROUP BY 分组好的数据
      *
-     * @return 相册数据
+     * @return 相册列表
      */
-    private Cursor loadInBackgroundBeforeAndroidTen(Cursor albums, MatrixCursor allAlbum, int totalCount) {
-        Uri allAlbumCoverUri = null;
-        MatrixCursor otherAlbums = new MatrixCursor(COLUMNS);
+    private List<AlbumIndexCache.Bucket> groupBeforeAndroidTen(Cursor albums) {
+        List<AlbumIndexCache.Bucket> buckets = new ArrayList<>();
         if (albums != null) {
             while (albums.moveToNext()) {
-                long fileId = albums.getLong(
-                        albums.getColumnIndex(MediaStore.Files.FileColumns._ID));
-                long bucketId = albums.getLong(
-                        albums.getColumnIndex(COLUMN_BUCKET_ID));
-                String bucketDisplayName = albums.getString(
-                        albums.getColumnIndex(COLUMN_BUCKET_DISPLAY_NAME));
-                String mimeType = albums.getString(
-                        albums.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE));
-                Uri uri = getUri(albums);
-                int count = albums.getInt(albums.getColumnIndex(COLUMN_COUNT));
-
-                otherAlbums.addRow(new String[]{
-                        Long.toString(fileId),
-                        Long.toString(bucketId), bucketDisplayName, mimeType, uri.toString(),
-                        String.valueOf(count)});
-                totalCount += count;
-            }
-            if (albums.moveToFirst()) {
-                allAlbumCoverUri = getUri(albums);
+                AlbumIndexCache.Bucket bucket = new AlbumIndexCache.Bucket(
+                        albums.getLong(albums.getColumnIndex(COLUMN_BUCKET_ID)),
+                        albums.getLong(albums.getColumnIndex(MediaStore.Files.FileColumns._ID)),
+                        albums.getString(albums.getColumnIndex(COLUMN_BUCKET_DISPLAY_NAME)),
+                        albums.getString(albums.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE)),
+                        0);
+                bucket.count = albums.getInt(albums.getColumnIndex(COLUMN_COUNT));
+                buckets.add(bucket);
             }
         }
+        return buckets;
+    }
+
+    /**
+     * 转换成相册数据源，第一行是全部，第一个相册的封面也是全部的封面
+     *
+     * @param buckets 相册列表
+     * @return 相册数据
+     */
+    static Cursor toCursor(List<AlbumIndexCache.Bucket> buckets) {
+        long totalCount = 0;
+        MatrixCursor otherAlbums = new MatrixCursor(COLUMNS);
+        for (AlbumIndexCache.Bucket bucket : buckets) {
+            otherAlbums.addRow(new String[]{
+                    Long.toString(bucket.fileId),
+                    Long.toString(bucket.bucketId),
+                    bucket.displayName,
+                    bucket.mimeType,
+                    getUri(bucket.fileId, bucket.mimeType).toString(),
+                    String.valueOf(bucket.count)});
+            totalCount += bucket.count;
+        }
 
+        Uri allAlbumCoverUri = null;
+        if (!buckets.isEmpty()) {
+            allAlbumCoverUri = getUri(buckets.get(0).fileId, buckets.get(0).mimeType);
+        }
+        MatrixCursor allAlbum = new MatrixCursor(COLUMNS);
         allAlbum.addRow(new String[]{
-                Album.ALBUM_ID_ALL, Album.ALBUM_ID_ALL, Album.ALBUM_NAME_ALL, null,
+                Album.ALBUM_ID_ALL,
+                Album.ALBUM_ID_ALL, Album.ALBUM_NAME_ALL, null,
                 allAlbumCoverUri == null ? null : allAlbumCoverUri.toString(),
                 String.valueOf(totalCount)});
 
         return new MergeCursor(new Cursor[]{allAlbum, otherAlbums});
     }
 
-    private static Uri getUri(Cursor cursor) {
-        long id = cursor.getLong(cursor.getColumnIndex(MediaStore.Files.FileColumns._ID));
-        String mimeType = cursor.getString(
-                cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE));
+    private static Uri getUri(long id, String mimeType) {
         Uri contentUri;
 
         if (MimeType.isImage(mimeType)) {
@@ -274,6 +306,28 @@ public class AlbumLoader extends CursorLoader {
         return ContentUris.withAppendedId(contentUri, id);
     }
 
+    @Override
+    public void deliverResult(Cursor cursor) {
+        super.deliverResult(cursor);
+        reconcileIfPending();
+    }
+
+    @Override
+    protected void onStartLoading() {
+        super.onStartLoading();
+        reconcileIfPending();
+    }
+
+    /**
+     * 返回缓存之后再加载一次，核对水位线，有变化的话会再返回一次新的相册列表
+     */
+    private void reconcileIfPending() {
+        if (mReconcilePending && isStarted()) {
+            mReconcilePending = false;
+            forceLoad();
+        }
+    }
+
     @Override
     public void onContentChanged() {
         // FIXME a dirty way to fix loading multiple times
@@ -0,0 +1,25 @@
+package com.zhongjh.albumcamerarecorder.album.loader;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * 带有列式快照的游标，快照在加载器的子线程中创建
+ * 其他地方仍然可以当作普通的游标使用
+ *
+ * @author zhongjh
+ */
+public class AlbumMediaCursor extends CursorWrapper {
+
+    private final AlbumMediaSnapshot mSnapshot;
+
+    public AlbumMediaCursor(Cursor cursor, AlbumMediaSnapshot snapshot) {
+        super(cursor);
+        mSnapshot = snapshot;
+    }
+
+    public AlbumMediaSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+}
@@ -16,12 +16,18 @@
  */
 package com.zhongjh.albumcamerarecorder.album.loader;
 
+import android.annotation.SuppressLint;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.database.MergeCursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
 import android.provider.MediaStore;
+import android.text.TextUtils;
+
 import androidx.loader.content.CursorLoader;
 
 
@@ -29,6 +35,12 @@ import com.zhongjh.albumcamerarecorder.album.entity.Album;
 import com.zhongjh.albumcamerarecorder.settings.AlbumSpec;
 import com.zhongjh.common.utils.MediaStoreCompat;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
 /**
  * 将图像和视频加载到单个光标中
  * @author zhongjh
@@ -40,9 +52,13 @@ public class AlbumMediaLoader extends CursorLoader {
             MediaStore.MediaColumns.DISPLAY_NAME,
             MediaStore.MediaColumns.DATE_TAKEN,
             MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.DATE_MODIFIED,
             MediaStore.MediaColumns.MIME_TYPE,
             MediaStore.MediaColumns.SIZE,
-            "duration"};
+            "duration",
+            MediaStore.MediaColumns.WIDTH,
+            MediaStore.MediaColumns.HEIGHT,
+            "orientation"};
 
     // === params for album ALL && showSingleMediaType: false ===
 
@@ -104,13 +120,44 @@ public class AlbumMediaLoader extends CursorLoader {
 
     // ===============================================================
 
-    private static final String ORDER_BY = "case ifnull(" + MediaStore.Images.Media.DATE_TAKEN + ",0)" +
+    /**
+     * 排序值：有拍摄时间用拍摄时间，否则用修改时间
+     */
+    private static final String SORT_KEY = "case ifnull(" + MediaStore.Images.Media.DATE_TAKEN + ",0)" +
             " when 0 then " + MediaStore.Images.Media.DATE_MODIFIED + "*1000" +
             " else " + MediaStore.Images.Media.DATE_TAKEN +
-            " end" + " DESC , " + MediaStore.Images.ImageColumns._ID + " DESC";
+            " end";
+
+    private static final String ORDER_BY = SORT_KEY + " DESC , " + MediaStore.Images.ImageColumns._ID + " DESC";
+
+    /**
+     * 分页的条件，查询排在上一页最后一条之后的数据(keyset分页)
+     * 因为 SORT_KEY 是表达式没有类型亲和性，绑定字符串参数会按文本比较，所以这里直接拼接数值
+     */
+    private static final String SELECTION_PAGE_FORMAT = " AND (" + SORT_KEY + "<%1$d"
+            + " OR (" + SORT_KEY + "=%1$d AND " + MediaStore.Files.FileColumns._ID + "<%2$d))";
+    /**
+     * 增量更新的条件，查询排在第一条之前的数据，也就是新增的数据
+     */
+    private static final String SELECTION_NEWER_FORMAT = " AND (" + SORT_KEY + ">%1$d"
+            + " OR (" + SORT_KEY + "=%1$d AND " + MediaStore.Files.FileColumns._ID + ">%2$d))";
+    /**
+     * 每次 IN(...) 查询的最大数量，避免超过sqlite的参数上限
+     */
+    private static final int MAX_IN_SIZE = 500;
+
+    /**
+     * 每页数量，0表示不分页
+     */
+    private final int mPageSize;
+    /**
+     * 上次统计的数据总数，-1表示没有统计
+     */
+    private volatile int mRowCount = -1;
 
-    private AlbumMediaLoader(Context context, String selection, String[] selectionArgs) {
+    private AlbumMediaLoader(Context context, String selection, String[] selectionArgs, int pageSize) {
         super(context, QUERY_URI, PROJECTION, selection, selectionArgs, ORDER_BY);
+        mPageSize = pageSize;
     }
 
     /**
@@ -120,6 +167,17 @@ public class AlbumMediaLoader extends CursorLoader {
      * @return 游标数据源
      */
     public static CursorLoader newInstance(Context context, Album album) {
+        return newInstance(context, album, 0);
+    }
+
+    /**
+     * 返回数据源
+     * @param context 上下文
+     * @param album 专辑
+     * @param pageSize 每页数量，0表示不分页
+     * @return 游标数据源，分页的情况下只包含第一页
+     */
+    public static AlbumMediaLoader newInstance(Context context, Album album, int pageSize) {
         String selection;
         String[] selectionArgs;
         boolean enableCapture;
@@ -149,21 +207,199 @@ public class AlbumMediaLoader extends CursorLoader {
                 selectionArgs = getSelectionAlbumArgs(album.getId());
             }
         }
-        return new AlbumMediaLoader(context, selection, selectionArgs);
+        return new AlbumMediaLoader(context, selection, selectionArgs, pageSize);
     }
 
     @Override
     public Cursor loadInBackground() {
-        Cursor result = super.loadInBackground();
+        Cursor result;
+        if (mPageSize > 0) {
+            result = queryPage(getSelection());
+        } else {
+            result = super.loadInBackground();
+        }
+        // 记录总数，之后变化时通过总数判断是否有数据被删除
+        if (mPageSize > 0) {
+            mRowCount = count();
+        } else {
+            mRowCount = result == null ? -1 : result.getCount();
+        }
+        // 在子线程中创建列式快照，列表绑定时直接读取快照
+        AlbumMediaSnapshot snapshot = AlbumMediaSnapshot.from(result);
         if (!MediaStoreCompat.hasCameraFeature(getContext())) {
-            return result;
+            return new AlbumMediaCursor(result, snapshot);
         }
         MatrixCursor dummy = new MatrixCursor(PROJECTION);
-        return new MergeCursor(new Cursor[]{dummy, result});
+        return new AlbumMediaCursor(new MergeCursor(new Cursor[]{dummy, result}), snapshot);
+    }
+
+    /**
+     * 查询下一页，需要在子线程调用
+     *
+     * @param lastSortKey 上一页最后一条数据的排序值 {@link #getSortKey(Cursor)}
+     * @param lastId      上一页最后一条数据的id
+     * @return 游标数据源，带有该页的快照
+     */
+    public AlbumMediaCursor loadNextPage(long lastSortKey, long lastId) {
+        Cursor page = queryPage(getSelection() + String.format(Locale.US, SELECTION_PAGE_FORMAT, lastSortKey, lastId));
+        if (page == null) {
+            return null;
+        }
+        return new AlbumMediaCursor(page, AlbumMediaSnapshot.from(page));
+    }
+
+    /**
+     * 查询比当前第一条数据更新的数据，需要在子线程调用
+     *
+     * @param firstSortKey 当前第一条数据的排序值，没有数据则传 {@link Long#MIN_VALUE}
+     * @param firstId      当前第一条数据的id
+     * @return 游标数据源，带有快照
+     */
+    public AlbumMediaCursor loadNewer(long firstSortKey, long firstId) {
+        String selection = getSelection() + String.format(Locale.US, SELECTION_NEWER_FORMAT, firstSortKey, firstId);
+        Cursor cursor = getContext().getContentResolver().query(QUERY_URI, PROJECTION, selection,
+                getSelectionArgs(), ORDER_BY);
+        if (cursor == null) {
+            return null;
+        }
+        return new AlbumMediaCursor(cursor, AlbumMediaSnapshot.from(cursor));
+    }
+
+    /**
+     * 重新统计总数，跟上次比较判断是否可能有数据被删除，需要在子线程调用
+     * 每次增量更新都要调用，包括不需要检查总数的时候，这样记录的总数才包含之前新增和删除的数据
+     * 总数少于上次的总数加上新增的数量才需要通过 {@link #findDeleted} 查询，
+     * 排在第一条之后的新增数据会抵消同时被删除的数据，这种情况下要等下一次变化才能发现
+     *
+     * @param insertedCount 排在第一条之前的新增数量
+     * @return 是否可能有数据被删除
+     */
+    public boolean isRowCountDropped(int insertedCount) {
+        int previous = mRowCount;
+        int count = count();
+        mRowCount = count;
+        return previous < 0 || count < 0 || count < previous + insertedCount;
+    }
+
+    /**
+     * 清除统计的总数，下次 {@link #isRowCountDropped} 一定返回true
+     */
+    public void resetRowCount() {
+        mRowCount = -1;
+    }
+
+    /**
+     * 统计当前条件的数据总数
+     *
+     * @return 总数，查询失败返回-1
+     */
+    private int count() {
+        String[] projection = {MediaStore.Files.FileColumns._ID};
+        try (Cursor cursor = getContext().getContentResolver().query(QUERY_URI, projection, getSelection(),
+                getSelectionArgs(), null)) {
+            return cursor == null ? -1 : cursor.getCount();
+        }
+    }
+
+    /**
+     * 查询快照中已经被删除的数据，需要在子线程调用
+     *
+     * @param snapshot 快照
+     * @return 被删除的数据的索引，从小到大排序
+     */
+    public int[] findDeleted(AlbumMediaSnapshot snapshot) {
+        ContentResolver resolver = getContext().getContentResolver();
+        String[] projection = {MediaStore.Files.FileColumns._ID};
+        Set<Long> existing = new HashSet<>();
+        List<Long> ids = new ArrayList<>(MAX_IN_SIZE);
+        for (int start = 0; start < snapshot.getCount(); start += MAX_IN_SIZE) {
+            ids.clear();
+            for (int i = start; i < Math.min(start + MAX_IN_SIZE, snapshot.getCount()); i++) {
+                ids.add(snapshot.getId(i));
+            }
+            String selection = MediaStore.Files.FileColumns._ID + " IN(" + TextUtils.join(",", ids) + ")";
+            try (Cursor cursor = resolver.query(QUERY_URI, projection, selection, null, null)) {
+                if (cursor == null) {
+                    // 查询失败的时候当作没有删除
+                    existing.addAll(ids);
+                    continue;
+                }
+                while (cursor.moveToNext()) {
+                    existing.add(cursor.getLong(0));
+                }
+            }
+        }
+        List<Integer> deleted = new ArrayList<>();
+        for (int i = 0; i < snapshot.getCount(); i++) {
+            if (!existing.contains(snapshot.getId(i))) {
+                deleted.add(i);
+            }
+        }
+        int[] positions = new int[deleted.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = deleted.get(i);
+        }
+        return positions;
+    }
+
+    /**
+     * 查询一页数据
+     *
+     * @param selection 条件
+     * @return 游标数据源
+     */
+    private Cursor queryPage(String selection) {
+        ContentResolver resolver = getContext().getContentResolver();
+        Cursor cursor;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // Android 11 开始不允许在排序里面拼接 limit
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, getSelectionArgs());
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, ORDER_BY);
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, mPageSize);
+            cursor = resolver.query(QUERY_URI, PROJECTION, queryArgs, null);
+        } else {
+            cursor = resolver.query(QUERY_URI, PROJECTION, selection, getSelectionArgs(),
+                    ORDER_BY + " limit " + mPageSize);
+        }
+        if (cursor != null) {
+            // 跟CursorLoader一样，在子线程中先填充CursorWindow
+            cursor.getCount();
+        }
+        return cursor;
+    }
+
+    /**
+     * 获取当前行的排序值，跟 {@link #SORT_KEY} 的计算方式一致
+     *
+     * @param cursor 游标
+     * @return 排序值
+     */
+    @SuppressLint("Range")
+    public static long getSortKey(Cursor cursor) {
+        return getSortKey(cursor, cursor.getColumnIndex(MediaStore.MediaColumns.DATE_TAKEN),
+                cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED));
+    }
+
+    /**
+     * 获取当前行的排序值，遍历多行时先查好列的索引，不需要每一行都查询
+     *
+     * @param cursor             游标
+     * @param dateTakenColumn    {@link MediaStore.MediaColumns#DATE_TAKEN} 的列索引
+     * @param dateModifiedColumn {@link MediaStore.MediaColumns#DATE_MODIFIED} 的列索引
+     * @return 排序值
+     */
+    public static long getSortKey(Cursor cursor, int dateTakenColumn, int dateModifiedColumn) {
+        long dateTaken = cursor.getLong(dateTakenColumn);
+        if (dateTaken == 0) {
+            return cursor.getLong(dateModifiedColumn) * 1000;
+        }
+        return dateTaken;
     }
 
     @Override
     public void onContentChanged() {
-        // FIXME a dirty way to fix loading multiple times
+        // 数据变化由 AlbumMediaCollection 增量更新，这里不再整个重新加载
     }
 }
@@ -0,0 +1,370 @@
+package com.zhongjh.albumcamerarecorder.album.loader;
+
+import android.annotation.SuppressLint;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import com.zhongjh.common.entity.MultiMedia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 相册数据的列式快照
+ * 在子线程中把游标的数据一次性读取到基本类型的数组，类型(mimeType)只保存一个编号，
+ * 列表绑定时直接读取数组，不需要移动游标，也不需要每次创建 {@link MultiMedia}
+ * 只有选择或者预览的时候才通过 {@link #get(int)} 创建 {@link MultiMedia}
+ * 除了uri缓存以外的数组创建后不会再修改，可以在多个线程中读取；
+ * uri缓存 {@link #getMediaUri(int)} 只在主线程写入，子线程合并、删除时复制过去的缓存可能缺少刚创建的uri，
+ * 缺少的会重新创建，结果一样
+ *
+ * @author zhongjh
+ */
+public class AlbumMediaSnapshot {
+
+    private static final Uri IMAGE_URI = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+    private static final Uri VIDEO_URI = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+    private static final Uri FILE_URI = MediaStore.Files.getContentUri("external");
+
+    private final int mCount;
+    private final long[] mIds;
+    /**
+     * 排序值，跟 {@link AlbumMediaLoader#getSortKey(Cursor)} 一致
+     */
+    private final long[] mSortKeys;
+    private final long[] mSizes;
+    private final long[] mDurations;
+    /**
+     * 图片未旋转前的宽高，以及旋转角度，用于预览时不需要再打开文件读取
+     */
+    private final int[] mWidths;
+    private final int[] mHeights;
+    private final int[] mOrientations;
+    /**
+     * 类型的编号，对应 {@link #mMimeTypes} 的索引
+     */
+    private final short[] mMimeCodes;
+    /**
+     * 类型表，相同的类型只保存一次
+     */
+    private final String[] mMimeTypes;
+    private final boolean[] mMimeIsImage;
+    private final boolean[] mMimeIsVideo;
+    private final boolean[] mMimeIsGif;
+    /**
+     * 第一次使用时才创建的uri，之后重复使用，不是线程安全的，只在主线程写入
+     */
+    private final Uri[] mUris;
+
+    private AlbumMediaSnapshot(int count, long[] ids, long[] sortKeys, long[] sizes, long[] durations,
+                               int[] widths, int[] heights, int[] orientations,
+                               short[] mimeCodes, List<String> mimeTypes) {
+        mCount = count;
+        mIds = ids;
+        mSortKeys = sortKeys;
+        mSizes = sizes;
+        mDurations = durations;
+        mWidths = widths;
+        mHeights = heights;
+        mOrientations = orientations;
+        mMimeCodes = mimeCodes;
+        int mimeCount = mimeTypes.size();
+        mMimeTypes = mimeTypes.toArray(new String[0]);
+        mMimeIsImage = new boolean[mimeCount];
+        mMimeIsVideo = new boolean[mimeCount];
+        mMimeIsGif = new boolean[mimeCount];
+        // 每种类型只判断一次，规则跟 MultiMedia 一致
+        MultiMedia probe = new MultiMedia();
+        for (int i = 0; i < mimeCount; i++) {
+            probe.setMimeType(mMimeTypes[i]);
+            mMimeIsImage[i] = probe.isImage();
+            mMimeIsVideo[i] = probe.isVideo();
+            mMimeIsGif[i] = probe.isGif();
+        }
+        mUris = new Uri[count];
+    }
+
+    /**
+     * 读取游标的全部数据，需要在子线程调用，不会修改游标以外的状态
+     *
+     * @param cursor 游标
+     * @return 快照
+     */
+    @SuppressLint("Range")
+    public static AlbumMediaSnapshot from(Cursor cursor) {
+        int count = cursor == null ? 0 : cursor.getCount();
+        long[] ids = new long[count];
+        long[] sortKeys = new long[count];
+        long[] sizes = new long[count];
+        long[] durations = new long[count];
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        int[] orientations = new int[count];
+        short[] mimeCodes = new short[count];
+        List<String> mimeTypes = new ArrayList<>();
+        if (count > 0) {
+            int idColumn = cursor.getColumnIndex(MediaStore.Files.FileColumns._ID);
+            int mimeColumn = cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE);
+            int sizeColumn = cursor.getColumnIndex(MediaStore.MediaColumns.SIZE);
+            int durationColumn = cursor.getColumnIndex("duration");
+            int widthColumn = cursor.getColumnIndex(MediaStore.MediaColumns.WIDTH);
+            int heightColumn = cursor.getColumnIndex(MediaStore.MediaColumns.HEIGHT);
+            int orientationColumn = cursor.getColumnIndex("orientation");
+            int dateTakenColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_TAKEN);
+            int dateModifiedColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+            int i = 0;
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext() && i < count) {
+                ids[i] = cursor.getLong(idColumn);
+                sortKeys[i] = AlbumMediaLoader.getSortKey(cursor, dateTakenColumn, dateModifiedColumn);
+                sizes[i] = cursor.getLong(sizeColumn);
+                durations[i] = cursor.getLong(durationColumn);
+                widths[i] = widthColumn < 0 ? 0 : cursor.getInt(widthColumn);
+                heights[i] = heightColumn < 0 ? 0 : cursor.getInt(heightColumn);
+                orientations[i] = orientationColumn < 0 ? 0 : cursor.getInt(orientationColumn);
+                mimeCodes[i] = codeOf(cursor.getString(mimeColumn), mimeTypes);
+                i++;
+            }
+            count = i;
+        }
+        return new AlbumMediaSnapshot(count, ids, sortKeys, sizes, durations, widths, heights, orientations,
+                mimeCodes, mimeTypes);
+    }
+
+    /**
+     * 获取类型的编号，新的类型添加到类型表
+     */
+    private static short codeOf(String mimeType, List<String> mimeTypes) {
+        int index = mimeTypes.indexOf(mimeType);
+        if (index < 0) {
+            index = mimeTypes.size();
+            mimeTypes.add(mimeType);
+        }
+        return (short) index;
+    }
+
+    /**
+     * 把下一页追加到当前数据的后面，返回新的快照，当前快照不变
+     *
+     * @param page 下一页的快照
+     * @return 包含两者数据的快照
+     */
+    public AlbumMediaSnapshot append(AlbumMediaSnapshot page) {
+        int count = mCount + page.mCount;
+        long[] ids = Arrays.copyOf(mIds, count);
+        long[] sortKeys = Arrays.copyOf(mSortKeys, count);
+        long[] sizes = Arrays.copyOf(mSizes, count);
+        long[] durations = Arrays.copyOf(mDurations, count);
+        int[] widths = Arrays.copyOf(mWidths, count);
+        int[] heights = Arrays.copyOf(mHeights, count);
+        int[] orientations = Arrays.copyOf(mOrientations, count);
+        short[] mimeCodes = Arrays.copyOf(mMimeCodes, count);
+        System.arraycopy(page.mIds, 0, ids, mCount, page.mCount);
+        System.arraycopy(page.mSortKeys, 0, sortKeys, mCount, page.mCount);
+        System.arraycopy(page.mSizes, 0, sizes, mCount, page.mCount);
+        System.arraycopy(page.mDurations, 0, durations, mCount, page.mCount);
+        System.arraycopy(page.mWidths, 0, widths, mCount, page.mCount);
+        System.arraycopy(page.mHeights, 0, heights, mCount, page.mCount);
+        System.arraycopy(page.mOrientations, 0, orientations, mCount, page.mCount);
+        // 下一页的类型编号需要转换成合并后的类型表
+        List<String> mimeTypes = new ArrayList<>(Arrays.asList(mMimeTypes));
+        short[] pageCodes = new short[page.mMimeTypes.length];
+        for (int i = 0; i < pageCodes.length; i++) {
+            pageCodes[i] = codeOf(page.mMimeTypes[i], mimeTypes);
+        }
+        for (int i = 0; i < page.mCount; i++) {
+            mimeCodes[mCount + i] = pageCodes[page.mMimeCodes[i]];
+        }
+        AlbumMediaSnapshot snapshot = new AlbumMediaSnapshot(count, ids, sortKeys, sizes, durations,
+                widths, heights, orientations, mimeCodes, mimeTypes);
+        // 已经创建过的uri继续使用
+        System.arraycopy(mUris, 0, snapshot.mUris, 0, mCount);
+        System.arraycopy(page.mUris, 0, snapshot.mUris, mCount, page.mCount);
+        return snapshot;
+    }
+
+    /**
+     * 删除某些索引的数据，返回新的快照，当前快照不变
+     *
+     * @param positions 要删除的索引，从小到大排序
+     * @return 删除后的快照
+     */
+    public AlbumMediaSnapshot remove(int[] positions) {
+        int count = mCount - positions.length;
+        long[] ids = new long[count];
+        long[] sortKeys = new long[count];
+        long[] sizes = new long[count];
+        long[] durations = new long[count];
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        int[] orientations = new int[count];
+        short[] mimeCodes = new short[count];
+        Uri[] uris = new Uri[count];
+        int next = 0;
+        int target = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (next < positions.length && positions[next] == i) {
+                next++;
+                continue;
+            }
+            ids[target] = mIds[i];
+            sortKeys[target] = mSortKeys[i];
+            sizes[target] = mSizes[i];
+            durations[target] = mDurations[i];
+            widths[target] = mWidths[i];
+            heights[target] = mHeights[i];
+            orientations[target] = mOrientations[i];
+            mimeCodes[target] = mMimeCodes[i];
+            uris[target] = mUris[i];
+            target++;
+        }
+        AlbumMediaSnapshot snapshot = new AlbumMediaSnapshot(count, ids, sortKeys, sizes, durations,
+                widths, heights, orientations, mimeCodes, new ArrayList<>(Arrays.asList(mMimeTypes)));
+        System.arraycopy(uris, 0, snapshot.mUris, 0, count);
+        return snapshot;
+    }
+
+    /**
+     * 创建以当前快照作为数据的游标，增量更新后使用
+     *
+     * @return 游标
+     */
+    public AlbumMediaCursor newCursor() {
+        return new AlbumMediaCursor(new AlbumMediaSnapshotCursor(this), this);
+    }
+
+    /**
+     * 如果游标带有快照就返回它的快照
+     *
+     * @param cursor 游标
+     * @return 快照，没有则返回null
+     */
+    public static AlbumMediaSnapshot of(Cursor cursor) {
+        if (cursor instanceof AlbumMediaCursor) {
+            return ((AlbumMediaCursor) cursor).getSnapshot();
+        }
+        return null;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    public long getSortKey(int position) {
+        return mSortKeys[position];
+    }
+
+    public long getSize(int position) {
+        return mSizes[position];
+    }
+
+    public long getDuration(int position) {
+        return mDurations[position];
+    }
+
+    public int getWidth(int position) {
+        return mWidths[position];
+    }
+
+    public int getHeight(int position) {
+        return mHeights[position];
+    }
+
+    public int getOrientation(int position) {
+        return mOrientations[position];
+    }
+
+    public String getMimeType(int position) {
+        return mMimeTypes[mMimeCodes[position]];
+    }
+
+    public boolean isImage(int position) {
+        return mMimeIsImage[mMimeCodes[position]];
+    }
+
+    public boolean isVideo(int position) {
+        return mMimeIsVideo[mMimeCodes[position]];
+    }
+
+    public boolean isGif(int position) {
+        return mMimeIsGif[mMimeCodes[position]];
+    }
+
+    /**
+     * 查找id对应的索引
+     *
+     * @param id 相册数据的id
+     * @return 索引，找不到则返回-1
+     */
+    public int indexOf(long id) {
+        for (int i = 0; i < mCount; i++) {
+            if (mIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 查找多个id对应的索引
+     *
+     * @param ids 相册数据的id
+     * @return 索引，从小到大排序，找不到的id不会在里面
+     */
+    public int[] indexesOf(Set<Long> ids) {
+        int[] positions = new int[Math.min(ids.size(), mCount)];
+        int size = 0;
+        for (int i = 0; i < mCount && size < positions.length; i++) {
+            if (ids.contains(mIds[i])) {
+                positions[size++] = i;
+            }
+        }
+        return Arrays.copyOf(positions, size);
+    }
+
+    /**
+     * 获取相册uri，规则跟 {@link MultiMedia} 一致，创建后会缓存起来
+     * 只在主线程调用
+     *
+     * @param position 索引
+     * @return uri
+     */
+    public Uri getMediaUri(int position) {
+        Uri uri = mUris[position];
+        if (uri == null) {
+            Uri contentUri;
+            if (isImage(position)) {
+                contentUri = IMAGE_URI;
+            } else if (isVideo(position)) {
+                contentUri = VIDEO_URI;
+            } else {
+                contentUri = FILE_URI;
+            }
+            uri = ContentUris.withAppendedId(contentUri, mIds[position]);
+            mUris[position] = uri;
+        }
+        return uri;
+    }
+
+    /**
+     * 创建该索引的数据，用于选择、预览
+     *
+     * @param position 索引
+     * @return 数据
+     */
+    public MultiMedia get(int position) {
+        MultiMedia multiMedia = new MultiMedia(mIds[position], getMimeType(position),
+                mSizes[position], mDurations[position]);
+        multiMedia.setMediaUri(getMediaUri(position));
+        return multiMedia;
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.zhongjh.albumcamerarecorder.album.loader;
+
+import android.database.AbstractCursor;
+import android.provider.MediaStore;
+
+/**
+ * 以快照作为数据的游标，增量更新后的数据没有对应的数据库游标时使用
+ * 列跟 {@link AlbumMediaLoader} 查询的一致，没有保存的列返回null，时间都由排序值换算
+ *
+ * @author zhongjh
+ */
+class AlbumMediaSnapshotCursor extends AbstractCursor {
+
+    private static final String[] COLUMNS = {
+            MediaStore.Files.FileColumns._ID,
+            MediaStore.MediaColumns.DISPLAY_NAME,
+            MediaStore.MediaColumns.DATE_TAKEN,
+            MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.MediaColumns.MIME_TYPE,
+            MediaStore.MediaColumns.SIZE,
+            "duration",
+            MediaStore.MediaColumns.WIDTH,
+            MediaStore.MediaColumns.HEIGHT,
+            "orientation"};
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_DISPLAY_NAME = 1;
+    private static final int COLUMN_DATE_TAKEN = 2;
+    private static final int COLUMN_MIME_TYPE = 5;
+    private static final int COLUMN_SIZE = 6;
+    private static final int COLUMN_DURATION = 7;
+    private static final int COLUMN_WIDTH = 8;
+    private static final int COLUMN_HEIGHT = 9;
+    private static final int COLUMN_ORIENTATION = 10;
+
+    private final AlbumMediaSnapshot mSnapshot;
+
+    AlbumMediaSnapshotCursor(AlbumMediaSnapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    @Override
+    public int getCount() {
+        return mSnapshot.getCount();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMNS;
+    }
+
+    @Override
+    public String getString(int column) {
+        if (column == COLUMN_MIME_TYPE) {
+            return mSnapshot.getMimeType(mPos);
+        }
+        if (column == COLUMN_DISPLAY_NAME) {
+            return null;
+        }
+        return String.valueOf(getLong(column));
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        switch (column) {
+            case COLUMN_ID:
+                return mSnapshot.getId(mPos);
+            case COLUMN_DATE_TAKEN:
+                return mSnapshot.getSortKey(mPos);
+            case COLUMN_SIZE:
+                return mSnapshot.getSize(mPos);
+            case COLUMN_DURATION:
+                return mSnapshot.getDuration(mPos);
+            case COLUMN_WIDTH:
+                return mSnapshot.getWidth(mPos);
+            case COLUMN_HEIGHT:
+                return mSnapshot.getHeight(mPos);
+            case COLUMN_ORIENTATION:
+                return mSnapshot.getOrientation(mPos);
+            case COLUMN_MIME_TYPE:
+            case COLUMN_DISPLAY_NAME:
+                return 0;
+            default:
+                // date_added、date_modified 是秒
+                return mSnapshot.getSortKey(mPos) / 1000;
+        }
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return column == COLUMN_DISPLAY_NAME
+                || (column == COLUMN_MIME_TYPE && mSnapshot.getMimeType(mPos) == null);
+    }
+
+}
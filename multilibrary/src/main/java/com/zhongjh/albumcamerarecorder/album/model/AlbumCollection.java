@@ -56,6 +56,9 @@ public class AlbumCollection implements LoaderManager.LoaderCallbacks<Cursor> {
         if (!mLoadFinished) {
             mLoadFinished = true;
             mCallbacks.onAlbumLoadFinished(data);
+        } else {
+            // 先显示的缓存核对后有变化，旧的游标会被关闭，需要替换
+            mCallbacks.onAlbumUpdated(data);
         }
     }
 
@@ -140,6 +143,13 @@ public class AlbumCollection implements LoaderManager.LoaderCallbacks<Cursor> {
          */
         void onAlbumLoadFinished(Cursor cursor);
 
+        /**
+         * 相册列表再次加载完成，例如缓存核对后的结果，不需要重新选择相册
+         *
+         * @param cursor 数据源
+         */
+        void onAlbumUpdated(Cursor cursor);
+
         /**
          * 重置相册
          */
@@ -16,9 +16,17 @@
  */
 package com.zhongjh.albumcamerarecorder.album.model;
 
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.MergeCursor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.FragmentActivity;
@@ -26,9 +34,17 @@ import androidx.loader.app.LoaderManager;
 import androidx.loader.content.Loader;
 
 import com.zhongjh.albumcamerarecorder.album.entity.Album;
+import com.zhongjh.albumcamerarecorder.album.loader.AlbumMediaCursor;
 import com.zhongjh.albumcamerarecorder.album.loader.AlbumMediaLoader;
+import com.zhongjh.albumcamerarecorder.album.loader.AlbumMediaSnapshot;
+import com.zhongjh.common.utils.ThreadUtils;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * 多媒体数据源
@@ -37,10 +53,65 @@ import java.lang.ref.WeakReference;
 public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Cursor> {
     private static final int LOADER_ID = 2;
     private static final String ARGS_ALBUM = "args_album";
+    /**
+     * 相册数据变化后延迟多久再增量更新，连续的变化只更新一次
+     */
+    private static final long CHANGE_DELAY_MILLIS = 300;
     private WeakReference<Context> mContext;
     private LoaderManager mLoaderManager;
     private AlbumMediaCallbacks mCallbacks;
 
+    /**
+     * 每页数量，0表示不分页
+     */
+    private int mPageSize;
+    /**
+     * 当前的加载器，分页时用于查询下一页
+     */
+    private AlbumMediaLoader mLoader;
+    /**
+     * 加载器返回的第一页数据，由加载器负责关闭
+     */
+    private Cursor mFirstPage;
+    /**
+     * 后面追加的分页数据，由当前类负责关闭
+     */
+    private final List<Cursor> mPages = new ArrayList<>();
+    /**
+     * 当前全部数据的快照
+     */
+    private AlbumMediaSnapshot mSnapshot;
+    /**
+     * 是否还有下一页
+     */
+    private boolean mHasNextPage;
+    /**
+     * 正在查询下一页的线程
+     */
+    private ThreadUtils.BaseSimpleBaseTask<AlbumMediaCursor> mNextPageTask;
+    /**
+     * 增量更新后，数据跟加载器的游标不再一致，之后都使用快照的游标
+     */
+    private boolean mSnapshotChanged;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mChangeRunnable = this::loadChanges;
+    /**
+     * 监听相册数据的变化
+     */
+    private ContentObserver mContentObserver;
+    /**
+     * 正在查询增量数据的线程
+     */
+    private ThreadUtils.BaseSimpleBaseTask<Changes> mChangesTask;
+    /**
+     * Android 11 开始通知里面带有被删除的uri，直接从快照中删除，不需要查询
+     */
+    private final Set<Long> mDeletedIds = new HashSet<>();
+    /**
+     * 不知道变化的类型，需要通过总数判断是否有数据被删除
+     */
+    private boolean mRowCountCheck;
+
     @NonNull
     @Override
     @SuppressWarnings("all")
@@ -52,7 +123,8 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
         }
 
         // 根据专辑返回图片数据源
-        return AlbumMediaLoader.newInstance(context, album);
+        mLoader = AlbumMediaLoader.newInstance(context, album, mPageSize);
+        return mLoader;
     }
 
     @Override
@@ -62,7 +134,18 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
             return;
         }
 
+        // 重新加载后，旧的分页数据作废
+        List<Cursor> oldPages = new ArrayList<>(mPages);
+        cancelNextPage();
+        cancelChanges();
+        mSnapshotChanged = false;
+        mPages.clear();
+        mFirstPage = data;
+        mSnapshot = AlbumMediaSnapshot.of(data);
+        mHasNextPage = mPageSize > 0 && data != null && data.getCount() >= mPageSize;
         mCallbacks.onAlbumMediaLoad(data);
+        // 适配器已经切换到新数据后才关闭
+        closeCursors(oldPages);
     }
 
     @Override
@@ -73,6 +156,13 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
         }
 
         mCallbacks.onAlbumMediaReset();
+        cancelNextPage();
+        cancelChanges();
+        closeCursors(mPages);
+        mPages.clear();
+        mFirstPage = null;
+        mSnapshot = null;
+        mHasNextPage = false;
     }
 
     public void onCreate(@NonNull FragmentActivity context, @NonNull AlbumMediaCallbacks callbacks) {
@@ -85,6 +175,14 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
         if (mLoaderManager != null) {
             mLoaderManager.destroyLoader(LOADER_ID);
         }
+        unregisterContentObserver();
+        cancelNextPage();
+        cancelChanges();
+        closeCursors(mPages);
+        mPages.clear();
+        mFirstPage = null;
+        mSnapshot = null;
+        mLoader = null;
         mCallbacks = null;
     }
 
@@ -93,6 +191,16 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
      * @param target 专辑
      */
     public void load(@Nullable Album target) {
+        load(target, 0);
+    }
+
+    /**
+     * 加载图片
+     * @param target   专辑
+     * @param pageSize 每页数量，0表示不分页
+     */
+    public void load(@Nullable Album target, int pageSize) {
+        mPageSize = pageSize;
         Bundle args = new Bundle();
         args.putParcelable(ARGS_ALBUM, target);
         mLoaderManager.initLoader(LOADER_ID, args, this);
@@ -108,6 +216,295 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
         mLoaderManager.restartLoader(LOADER_ID, args, this);
     }
 
+    /**
+     * 监听相册数据的变化，新增、删除的数据通过 {@link AlbumMediaCallbacks#onAlbumMediaChanged} 增量更新
+     */
+    public void registerContentObserver() {
+        Context context = mContext.get();
+        if (context == null || mContentObserver != null) {
+            return;
+        }
+        mContentObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                // Android 11 以下不知道变化的类型
+                mRowCountCheck = true;
+                scheduleChanges();
+            }
+
+            @Override
+            public void onChange(boolean selfChange, @NonNull Collection<Uri> uris, int flags) {
+                if ((flags & ContentResolver.NOTIFY_DELETE) != 0) {
+                    for (Uri uri : uris) {
+                        long id = parseId(uri);
+                        if (id >= 0) {
+                            mDeletedIds.add(id);
+                        } else {
+                            mRowCountCheck = true;
+                        }
+                    }
+                } else if ((flags & ContentResolver.NOTIFY_INSERT) == 0) {
+                    // 修改(例如移到回收站)也可能让数据不再符合条件
+                    mRowCountCheck = true;
+                }
+                scheduleChanges();
+            }
+        };
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Files.getContentUri("external"), true, mContentObserver);
+    }
+
+    private void unregisterContentObserver() {
+        mHandler.removeCallbacks(mChangeRunnable);
+        Context context = mContext == null ? null : mContext.get();
+        if (context != null && mContentObserver != null) {
+            context.getContentResolver().unregisterContentObserver(mContentObserver);
+        }
+        mContentObserver = null;
+    }
+
+    /**
+     * 延迟增量更新，连续的变化只更新一次
+     */
+    private void scheduleChanges() {
+        mHandler.removeCallbacks(mChangeRunnable);
+        mHandler.postDelayed(mChangeRunnable, CHANGE_DELAY_MILLIS);
+    }
+
+    /**
+     * 查询比第一条数据更新的数据，以及已经被删除的数据
+     */
+    private void loadChanges() {
+        if (mLoader == null || mSnapshot == null || mCallbacks == null) {
+            return;
+        }
+        if (mNextPageTask != null || mChangesTask != null) {
+            // 正在加载下一页或者正在增量更新，完成后再更新
+            scheduleChanges();
+            return;
+        }
+        final AlbumMediaLoader loader = mLoader;
+        final AlbumMediaSnapshot snapshot = mSnapshot;
+        final long firstSortKey = snapshot.getCount() > 0 ? snapshot.getSortKey(0) : Long.MIN_VALUE;
+        final long firstId = snapshot.getCount() > 0 ? snapshot.getId(0) : Long.MIN_VALUE;
+        final Set<Long> deletedIds = new HashSet<>(mDeletedIds);
+        final boolean rowCountCheck = mRowCountCheck;
+        mDeletedIds.clear();
+        mRowCountCheck = false;
+        mChangesTask = new ThreadUtils.BaseSimpleBaseTask<Changes>() {
+            @Override
+            public Changes doInBackground() {
+                AlbumMediaSnapshot inserted;
+                AlbumMediaCursor newer = loader.loadNewer(firstSortKey, firstId);
+                if (newer == null) {
+                    inserted = AlbumMediaSnapshot.from(null);
+                } else {
+                    inserted = newer.getSnapshot();
+                    // 只需要快照
+                    closeCursor(newer);
+                }
+                // 每次都重新统计总数，只有新增或者按id删除的变化也要更新，否则总数偏小会漏掉之后被删除的数据
+                boolean rowCountDropped = loader.isRowCountDropped(inserted.getCount());
+                // 总数没有减少的话不需要逐个查询快照中的数据是否还存在
+                int[] removedPositions;
+                if (rowCountCheck && rowCountDropped) {
+                    removedPositions = loader.findDeleted(snapshot);
+                } else {
+                    removedPositions = snapshot.indexesOf(deletedIds);
+                }
+                if (inserted.getCount() == 0 && removedPositions.length == 0) {
+                    return null;
+                }
+                AlbumMediaSnapshot result = removedPositions.length == 0 ? snapshot : snapshot.remove(removedPositions);
+                if (inserted.getCount() > 0) {
+                    result = inserted.append(result);
+                }
+                return new Changes(result, inserted.getCount(), removedPositions);
+            }
+
+            @Override
+            public void onSuccess(Changes result) {
+                mChangesTask = null;
+                if (result == null || mCallbacks == null || loader != mLoader) {
+                    return;
+                }
+                if (snapshot != mSnapshot) {
+                    // 期间数据已经变化，重新查询，总数已经重新统计过，需要逐个查询
+                    restoreChanges(deletedIds, true);
+                    scheduleChanges();
+                    return;
+                }
+                mSnapshot = result.mSnapshot;
+                mSnapshotChanged = true;
+                mCallbacks.onAlbumMediaChanged(mSnapshot.newCursor(), result.mInsertedCount, result.mRemovedPositions);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                mChangesTask = null;
+                restoreChanges(deletedIds, rowCountCheck);
+            }
+        };
+        ThreadUtils.executeByIo(mChangesTask);
+    }
+
+    /**
+     * 增量更新没有生效，下次更新时再处理这些变化
+     *
+     * @param deletedIds    被删除的id
+     * @param rowCountCheck 是否需要检查总数
+     */
+    private void restoreChanges(Set<Long> deletedIds, boolean rowCountCheck) {
+        mDeletedIds.addAll(deletedIds);
+        mRowCountCheck |= rowCountCheck;
+        if (rowCountCheck && mLoader != null) {
+            mLoader.resetRowCount();
+        }
+    }
+
+    /**
+     * 获取uri中的id
+     *
+     * @param uri uri
+     * @return id，没有id返回-1
+     */
+    private static long parseId(Uri uri) {
+        try {
+            return ContentUris.parseId(uri);
+        } catch (NumberFormatException | UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private void cancelChanges() {
+        mHandler.removeCallbacks(mChangeRunnable);
+        if (mChangesTask != null) {
+            ThreadUtils.cancel(mChangesTask);
+            mChangesTask = null;
+        }
+    }
+
+    /**
+     * 是否还有下一页
+     *
+     * @return 是否
+     */
+    public boolean hasNextPage() {
+        return mHasNextPage && mNextPageTask == null && mChangesTask == null;
+    }
+
+    /**
+     * 加载下一页，如果正在加载或者没有下一页则忽略
+     */
+    public void loadNextPage() {
+        if (!hasNextPage() || mLoader == null || mFirstPage == null) {
+            return;
+        }
+        // 以上一页的最后一条作为下一页的起点
+        final long lastSortKey;
+        final long lastId;
+        if (mSnapshot != null && mSnapshot.getCount() > 0) {
+            lastSortKey = mSnapshot.getSortKey(mSnapshot.getCount() - 1);
+            lastId = mSnapshot.getId(mSnapshot.getCount() - 1);
+        } else {
+            Cursor lastPage = mPages.isEmpty() ? mFirstPage : mPages.get(mPages.size() - 1);
+            if (lastPage.isClosed() || !lastPage.moveToLast()) {
+                return;
+            }
+            lastSortKey = AlbumMediaLoader.getSortKey(lastPage);
+            lastId = lastPage.getLong(lastPage.getColumnIndexOrThrow(MediaStore.Files.FileColumns._ID));
+        }
+        final AlbumMediaLoader loader = mLoader;
+        final AlbumMediaSnapshot snapshot = mSnapshot;
+        mNextPageTask = new ThreadUtils.BaseSimpleBaseTask<AlbumMediaCursor>() {
+            @Override
+            public AlbumMediaCursor doInBackground() {
+                AlbumMediaCursor page = loader.loadNextPage(lastSortKey, lastId);
+                if (isCanceled()) {
+                    // 取消后不会再回调onSuccess，需要在这里关闭
+                    closeCursor(page);
+                    return null;
+                }
+                if (page != null && snapshot != null) {
+                    // 合并快照也放在子线程，返回的游标带有合并后的快照
+                    page = new AlbumMediaCursor(page.getWrappedCursor(), snapshot.append(page.getSnapshot()));
+                }
+                return page;
+            }
+
+            @Override
+            public void onSuccess(AlbumMediaCursor result) {
+                mNextPageTask = null;
+                if (mCallbacks == null || loader != mLoader || mFirstPage == null) {
+                    // 期间已经重新加载或者销毁了
+                    closeCursor(result);
+                    return;
+                }
+                onNextPageLoadFinished(result);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                mNextPageTask = null;
+            }
+        };
+        ThreadUtils.executeByIo(mNextPageTask);
+    }
+
+    /**
+     * 下一页加载完毕，合并成新的游标通知出去
+     *
+     * @param page 下一页数据
+     */
+    private void onNextPageLoadFinished(AlbumMediaCursor page) {
+        int itemCount = page == null ? 0 : page.getCount();
+        mHasNextPage = itemCount >= mPageSize;
+        if (itemCount == 0) {
+            closeCursor(page);
+            return;
+        }
+        Cursor[] cursors = new Cursor[mPages.size() + 2];
+        cursors[0] = mFirstPage;
+        int positionStart = mFirstPage.getCount();
+        for (int i = 0; i < mPages.size(); i++) {
+            cursors[i + 1] = mPages.get(i);
+            positionStart += mPages.get(i).getCount();
+        }
+        cursors[cursors.length - 1] = page;
+        mPages.add(page);
+        Cursor merged;
+        if (mSnapshot != null) {
+            positionStart = mSnapshot.getCount();
+            mSnapshot = page.getSnapshot();
+            // 增量更新过的话，游标的数据已经跟快照不一致
+            merged = mSnapshotChanged ? mSnapshot.newCursor() : new AlbumMediaCursor(new MergeCursor(cursors), mSnapshot);
+        } else {
+            merged = new MergeCursor(cursors);
+        }
+        mCallbacks.onAlbumMediaPageLoad(merged, positionStart, itemCount);
+    }
+
+    private void cancelNextPage() {
+        if (mNextPageTask != null) {
+            ThreadUtils.cancel(mNextPageTask);
+            mNextPageTask = null;
+        }
+    }
+
+    private static void closeCursors(List<Cursor> cursors) {
+        for (Cursor cursor : cursors) {
+            closeCursor(cursor);
+        }
+    }
+
+    private static void closeCursor(Cursor cursor) {
+        if (cursor != null && !cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
     public interface AlbumMediaCallbacks {
 
         /**
@@ -117,9 +514,42 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
          */
         void onAlbumMediaLoad(Cursor cursor);
 
+        /**
+         * 分页加载了下一页
+         *
+         * @param cursor        包含之前全部数据和下一页数据的光标
+         * @param positionStart 新增数据的起始索引
+         * @param itemCount     新增数据的数量
+         */
+        void onAlbumMediaPageLoad(Cursor cursor, int positionStart, int itemCount);
+
+        /**
+         * 相册数据增量更新，需要先 {@link #registerContentObserver()}
+         *
+         * @param cursor           更新后的全部数据
+         * @param insertedCount    插入到最前面的数量
+         * @param removedPositions 被删除的数据在更新前的索引，从小到大排序
+         */
+        void onAlbumMediaChanged(Cursor cursor, int insertedCount, int[] removedPositions);
+
         /**
          * 当一个已创建的加载器被重置从而使其数据无效时，此方法被调用
          */
         void onAlbumMediaReset();
     }
+
+    /**
+     * 增量更新的结果
+     */
+    private static class Changes {
+        final AlbumMediaSnapshot mSnapshot;
+        final int mInsertedCount;
+        final int[] mRemovedPositions;
+
+        Changes(AlbumMediaSnapshot snapshot, int insertedCount, int[] removedPositions) {
+            mSnapshot = snapshot;
+            mInsertedCount = insertedCount;
+            mRemovedPositions = removedPositions;
+        }
+    }
 }
@@ -5,18 +5,21 @@ import android.content.res.Resources;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.zhongjh.albumcamerarecorder.R;
 import com.zhongjh.albumcamerarecorder.album.entity.SelectedCountMessage;
-import com.zhongjh.albumcamerarecorder.album.utils.PhotoMetadataUtils;
+import com.zhongjh.albumcamerarecorder.album.filter.FilterEvaluator;
+import com.zhongjh.albumcamerarecorder.album.widget.CheckView;
 import com.zhongjh.albumcamerarecorder.settings.AlbumSpec;
 import com.zhongjh.albumcamerarecorder.utils.MultiMediaUtils;
-import com.zhongjh.albumcamerarecorder.utils.PathUtils;
 import com.zhongjh.albumcamerarecorder.utils.SelectableUtils;
 import com.zhongjh.common.entity.IncapableCause;
 import com.zhongjh.common.entity.MultiMedia;
+import com.zhongjh.common.utils.ThreadUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
 
@@ -72,6 +75,34 @@ public class SelectedItemCollection {
      * 当前选择的图片数量
      */
     private int mSelectedImageCount;
+    /**
+     * 数据源的索引，key 是 {@link #keyOf} 生成的标识，value 是该标识第一次出现的位置
+     */
+    private final HashMap<String, Integer> mPositions = new HashMap<>();
+    /**
+     * 数据源每个数据的数量，用于 {@link #isSelected} 的判断
+     */
+    private final HashMap<MultiMedia, Integer> mCounts = new HashMap<>();
+    /**
+     * 相册数据的索引，key 是 mediaUri，value 是第一次出现的位置，用于相册列表绑定时不创建 {@link MultiMedia} 直接查询
+     */
+    private final HashMap<Uri, Integer> mMediaUriPositions = new HashMap<>();
+    /**
+     * 索引是否需要重建，删除、重置数据源后位置会变化，下次查询时再重建
+     */
+    private boolean mIndexDirty = true;
+    /**
+     * 已经查询过的路径，跟当前选择的生命周期一致
+     */
+    private final LruCache<Uri, String> mPathCache = new LruCache<>(2000);
+    /**
+     * 正在查询路径的线程
+     */
+    private ThreadUtils.BaseSimpleBaseTask<List<String>> mPathsTask;
+    /**
+     * 正在执行过滤器的线程，界面销毁时取消
+     */
+    private final List<ThreadUtils.BaseSimpleBaseTask<IncapableCause>> mFilterTasks = new ArrayList<>();
 
     public SelectedItemCollection(Context context) {
         mContext = context;
@@ -98,6 +129,7 @@ public class SelectedItemCollection {
 
             mCollectionType = bundle.getInt(STATE_COLLECTION_TYPE, COLLECTION_UNDEFINED);
         }
+        mIndexDirty = true;
     }
 
     /**
@@ -129,6 +161,10 @@ public class SelectedItemCollection {
      */
     public boolean add(MultiMedia item) {
         boolean added = mItems.add(item);
+        if (added && !mIndexDirty) {
+            // 添加到末尾不会影响其他数据的位置，直接更新索引
+            addIndex(item, mItems.size() - 1);
+        }
         // 如果只选中了图片Item， mCollectionType设置为COLLECTION_IMAGE
         // 如果只选中了图片影音资源，mCollectionType设置为COLLECTION_IMAGE
         // 如果两种都选择了，mCollectionType设置为COLLECTION_MIXED
@@ -170,6 +206,7 @@ public class SelectedItemCollection {
         MultiMedia multiMedia = MultiMediaUtils.checkedMultiMediaOf(mItems, item);
         removed = mItems.remove(multiMedia);
         if (removed) {
+            mIndexDirty = true;
             if (mItems.size() == 0) {
                 // 如果删除后没有数据，设置当前类型为空
                 mCollectionType = COLLECTION_UNDEFINED;
@@ -197,6 +234,14 @@ public class SelectedItemCollection {
         }
         mItems.clear();
         mItems.addAll(items);
+        mIndexDirty = true;
+    }
+
+    /**
+     * 数据源中的数据被直接修改(例如编辑图片后更换了uri)后，需要调用该方法重建索引
+     */
+    public void refreshIndex() {
+        mIndexDirty = true;
     }
 
     /**
@@ -226,23 +271,55 @@ public class SelectedItemCollection {
     }
 
     /**
-     * 获取path的集合
+     * 在子线程获取path的集合，结果在主线程回调
+     * 再次调用会取消上一次还没有完成的查询，只回调最新的选择
      *
-     * @return list<path>
+     * @param callback 回调
      */
-    public List<String> asListOfString() {
-        List<String> paths = new ArrayList<>();
-        for (MultiMedia item : mItems) {
-            if (item.getMediaUri() != null) {
-                paths.add(PathUtils.getPath(mContext, item.getMediaUri()));
-            } else if (item.getUri() != null) {
-                paths.add(PathUtils.getPath(mContext, item.getUri()));
-            } else if (item.getUrl() != null) {
-                paths.add(item.getUrl());
+    public void asListOfString(final PathsCallback callback) {
+        cancelListOfString();
+        final List<Uri> uris = asListOfUri();
+        final List<MultiMedia> items = new ArrayList<>(mItems);
+        mPathsTask = new ThreadUtils.BaseSimpleBaseTask<List<String>>() {
+            @Override
+            public List<String> doInBackground() {
+                return getPaths(items);
+            }
+
+            @Override
+            public void onSuccess(List<String> result) {
+                mPathsTask = null;
+                callback.onResult(uris, result);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                mPathsTask = null;
             }
+        };
+        ThreadUtils.executeByIo(mPathsTask);
+    }
 
+    /**
+     * 取消 {@link #asListOfString(PathsCallback)} 还没有完成的查询，界面销毁时调用
+     */
+    public void cancelListOfString() {
+        if (mPathsTask != null) {
+            ThreadUtils.cancel(mPathsTask);
+            mPathsTask = null;
         }
-        return paths;
+    }
+
+    /**
+     * 获取数据的路径集合，查询过的路径会缓存起来
+     * 会批量查询数据库，需要在子线程调用
+     *
+     * @param items 数据列表
+     * @return 路径集合
+     */
+    public List<String> getPaths(List<MultiMedia> items) {
+        return MultiMediaUtils.getPaths(mContext, items, mPathCache);
     }
 
     /**
@@ -252,16 +329,81 @@ public class SelectedItemCollection {
      * @return 返回是否选择
      */
     public boolean isSelected(MultiMedia item) {
-        return mItems.contains(item);
+        ensureIndex();
+        return mCounts.containsKey(item);
+    }
+
+    /**
+     * 相册的数据是否在选择中，不需要创建 {@link MultiMedia}
+     *
+     * @param id       相册数据的id
+     * @param mediaUri 相册数据的uri
+     * @return 返回是否选择
+     */
+    public boolean isSelected(long id, Uri mediaUri) {
+        return checkedNumOf(id, mediaUri) != CheckView.UNCHECKED;
     }
 
     /**
      * 验证当前item是否满足可以被选中的条件
+     * 数量和类型冲突直接判断，过滤器通过 {@link FilterEvaluator} 在子线程中执行，结果在主线程回调
+     * 过滤器执行期间可能已经选择了别的数据，回调前重新判断数量和类型冲突
+     * 界面销毁时调用 {@link #cancelAcceptable()}，取消后不再回调
+     *
+     * @param item     数据item
+     * @param callback 回调，null代表可以选择
+     */
+    public void isAcceptable(MultiMedia item, FilterEvaluator.Callback callback) {
+        IncapableCause cause = checkSelectable(item);
+        if (cause != null) {
+            callback.onResult(cause);
+            return;
+        }
+        FilterCallback filterCallback = new FilterCallback(item, callback);
+        filterCallback.mTask = FilterEvaluator.evaluate(mContext, item, filterCallback);
+        mFilterTasks.add(filterCallback.mTask);
+    }
+
+    /**
+     * 取消 {@link #isAcceptable(MultiMedia, FilterEvaluator.Callback)} 还没有完成的过滤器，界面销毁时调用
+     */
+    public void cancelAcceptable() {
+        for (ThreadUtils.BaseSimpleBaseTask<IncapableCause> task : mFilterTasks) {
+            ThreadUtils.cancel(task);
+        }
+        mFilterTasks.clear();
+    }
+
+    /**
+     * 过滤器的回调，已经取消的任务即使在取消前完成了也不再回调
+     */
+    private class FilterCallback implements FilterEvaluator.Callback {
+
+        private final MultiMedia mItem;
+        private final FilterEvaluator.Callback mCallback;
+        private ThreadUtils.BaseSimpleBaseTask<IncapableCause> mTask;
+
+        FilterCallback(MultiMedia item, FilterEvaluator.Callback callback) {
+            mItem = item;
+            mCallback = callback;
+        }
+
+        @Override
+        public void onResult(IncapableCause cause) {
+            if (!mFilterTasks.remove(mTask)) {
+                return;
+            }
+            mCallback.onResult(cause != null ? cause : checkSelectable(mItem));
+        }
+    }
+
+    /**
+     * 验证数量和类型冲突，不包括过滤器
      *
      * @param item 数据item
      * @return 弹窗
      */
-    public IncapableCause isAcceptable(MultiMedia item) {
+    private IncapableCause checkSelectable(MultiMedia item) {
         boolean maxSelectableReached = false;
         int maxSelectable = 0;
         String type = "";
@@ -285,18 +427,18 @@ public class SelectedItemCollection {
                     type = selectedCountMessage.getType();
                 }
             }
-            return newIncapableCause(item, maxSelectableReached, maxSelectable, true, type);
+            return newSelectableCause(item, maxSelectableReached, maxSelectable, true, type);
         } else {
             // 非混合模式
             maxSelectableReached = maxSelectableReached();
             maxSelectable = currentMaxSelectable();
-            return newIncapableCause(item, maxSelectableReached, maxSelectable, false, null);
+            return newSelectableCause(item, maxSelectableReached, maxSelectable, false, null);
         }
 
     }
 
     /**
-     * 验证当前item是否满足可以被选中的条件
+     * 验证数量和类型冲突，不包括过滤器
      *
      * @param item                 数据item
      * @param maxSelectableReached 是否已经选择最大值
@@ -305,7 +447,7 @@ public class SelectedItemCollection {
      * @param type                 类型
      * @return 弹窗
      */
-    public IncapableCause newIncapableCause(MultiMedia item, boolean maxSelectableReached, int maxSelectable, boolean isMashup, String type) {
+    private IncapableCause newSelectableCause(MultiMedia item, boolean maxSelectableReached, int maxSelectable, boolean isMashup, String type) {
         // 检查是否超过最大设置数量
         if (maxSelectableReached) {
             String cause;
@@ -320,8 +462,7 @@ public class SelectedItemCollection {
             // 判断选择资源(图片跟视频)是否类型冲突
             return new IncapableCause(mContext.getString(R.string.z_multi_library_error_type_conflict));
         }
-        // 过滤文件
-        return PhotoMetadataUtils.isAcceptable(mContext, item);
+        return null;
     }
 
     /**
@@ -438,7 +579,111 @@ public class SelectedItemCollection {
      * @return 选择的索引，最终返回的选择了第几个
      */
     public int checkedNumOf(MultiMedia item) {
-        return MultiMediaUtils.checkedNumOf(new ArrayList<>(mItems), item);
+        String key = keyOf(item);
+        if (key == null) {
+            return CheckView.UNCHECKED;
+        }
+        ensureIndex();
+        Integer position = mPositions.get(key);
+        if (position != null && !key.equals(keyOf(mItems.get(position)))) {
+            // 数据被直接修改过，重建索引后再查询
+            mIndexDirty = true;
+            ensureIndex();
+            position = mPositions.get(key);
+        }
+        // 如果选择的为 -1 就是未选状态，否则选择基础数量+1
+        return position == null ? CheckView.UNCHECKED : position + 1;
+    }
+
+    /**
+     * 返回相册数据选择的num，不需要创建 {@link MultiMedia}，结果跟 {@link #checkedNumOf(MultiMedia)} 一致
+     *
+     * @param id       相册数据的id
+     * @param mediaUri 相册数据的uri
+     * @return 选择的索引，最终返回的选择了第几个
+     */
+    public int checkedNumOf(long id, Uri mediaUri) {
+        ensureIndex();
+        Integer position = mMediaUriPositions.get(mediaUri);
+        if (position == null) {
+            return CheckView.UNCHECKED;
+        }
+        MultiMedia item = mItems.get(position);
+        if (item.getId() != id || !mediaUri.equals(item.getMediaUri())) {
+            // 数据被直接修改过或者id不一致，按照原来的规则查询
+            for (int i = 0; i < mItems.size(); i++) {
+                item = mItems.get(i);
+                if (item.getId() == id && mediaUri.equals(item.getMediaUri())) {
+                    return i + 1;
+                }
+            }
+            return CheckView.UNCHECKED;
+        }
+        return position + 1;
+    }
+
+    /**
+     * 如果索引已经失效，就根据数据源重建索引
+     */
+    private void ensureIndex() {
+        if (!mIndexDirty) {
+            return;
+        }
+        mPositions.clear();
+        mCounts.clear();
+        mMediaUriPositions.clear();
+        for (int i = 0; i < mItems.size(); i++) {
+            addIndex(mItems.get(i), i);
+        }
+        mIndexDirty = false;
+    }
+
+    /**
+     * 添加某个数据的索引
+     *
+     * @param item     数据
+     * @param position 数据在数据源的位置
+     */
+    private void addIndex(MultiMedia item, int position) {
+        String key = keyOf(item);
+        if (key != null && !mPositions.containsKey(key)) {
+            mPositions.put(key, position);
+        }
+        if (item.getMediaUri() != null && !mMediaUriPositions.containsKey(item.getMediaUri())) {
+            mMediaUriPositions.put(item.getMediaUri(), position);
+        }
+        Integer count = mCounts.get(item);
+        mCounts.put(item, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * 生成数据的标识，规则跟 {@link MultiMediaUtils#checkedNumOf} 一致：
+     * 按 mediaUri、uri、drawableId、url 的优先级取第一个有值的属性，再加上id
+     *
+     * @param item 数据
+     * @return 标识，如果都没有值则返回null
+     */
+    private static String keyOf(MultiMedia item) {
+        if (item.getMediaUri() != null) {
+            return "m" + item.getId() + ":" + item.getMediaUri();
+        } else if (item.getUri() != null) {
+            return "u" + item.getId() + ":" + item.getUri();
+        } else if (item.getDrawableId() != -1) {
+            return "d" + item.getId() + ":" + item.getDrawableId();
+        } else if (item.getUrl() != null) {
+            return "l" + item.getId() + ":" + item.getUrl();
+        }
+        return null;
+    }
+
+    public interface PathsCallback {
+        /**
+         * 查询完成
+         *
+         * @param uris  uri的集合
+         * @param paths path的集合
+         */
+        void onResult(List<Uri> uris, List<String> paths);
     }
 
 }
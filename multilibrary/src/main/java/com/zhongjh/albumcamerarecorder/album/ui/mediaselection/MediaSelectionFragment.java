@@ -18,9 +18,11 @@ import android.widget.FrameLayout;
 import com.zhongjh.albumcamerarecorder.R;
 import com.zhongjh.albumcamerarecorder.album.MatissFragment;
 
+import com.zhongjh.albumcamerarecorder.album.engine.ImagePreloadEngine;
 import com.zhongjh.albumcamerarecorder.album.entity.Album;
 import com.zhongjh.albumcamerarecorder.album.utils.UiUtils;
 import com.zhongjh.albumcamerarecorder.settings.AlbumSpec;
+import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
 import com.zhongjh.albumcamerarecorder.album.model.AlbumMediaCollection;
 import com.zhongjh.albumcamerarecorder.album.model.SelectedItemCollection;
 import com.zhongjh.albumcamerarecorder.album.ui.mediaselection.adapter.AlbumMediaAdapter;
@@ -47,6 +49,11 @@ public class MediaSelectionFragment extends Fragment implements
     private RecyclerView mRecyclerView;
     private FrameLayout mFlMain;
     private AlbumMediaAdapter mAdapter;
+    private GridLayoutManager mLayoutManager;
+    /**
+     * 缩略图预加载，图片加载引擎实现了 {@link ImagePreloadEngine} 才有
+     */
+    private ThumbnailPrefetcher mThumbnailPrefetcher;
     /**
      * 选择接口事件
      */
@@ -148,12 +155,30 @@ public class MediaSelectionFragment extends Fragment implements
         } else {
             spanCount = albumSpec.spanCount;
         }
-        mRecyclerView.setLayoutManager(new GridLayoutManager(getContext(), spanCount));
+        mLayoutManager = new GridLayoutManager(getContext(), spanCount);
+        mRecyclerView.setLayoutManager(mLayoutManager);
 
         // 加载线，recyclerView加载数据
         int spacing = getResources().getDimensionPixelSize(R.dimen.media_grid_spacing);
         mRecyclerView.addItemDecoration(new MediaGridInset(spanCount, spacing, false));
         mRecyclerView.setAdapter(mAdapter);
+        if (albumSpec.pagingEnabled()) {
+            // 分页加载，滑动接近底部时预加载下一页
+            mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                    if (dy > 0) {
+                        loadNextPageIfNeeded();
+                    }
+                }
+            });
+        }
+        if (GlobalSpec.getInstance().imageEngine instanceof ImagePreloadEngine) {
+            // 根据滑动方向和速度预加载缩略图
+            mThumbnailPrefetcher = new ThumbnailPrefetcher(getContext(),
+                    (ImagePreloadEngine) GlobalSpec.getInstance().imageEngine, mAdapter, mLayoutManager);
+            mRecyclerView.addOnScrollListener(mThumbnailPrefetcher);
+        }
         mAlbumMediaCollection.onCreate(getActivity(), new AlbumMediaCollection.AlbumMediaCallbacks() {
 
             /**
@@ -163,7 +188,37 @@ public class MediaSelectionFragment extends Fragment implements
              */
             @Override
             public void onAlbumMediaLoad(Cursor cursor) {
+                cancelPrefetch();
                 mAdapter.swapCursor(cursor);
+                // 第一页不满一屏时无法滑动，需要主动加载下一页
+                mRecyclerView.post(() -> loadNextPageIfNeeded());
+            }
+
+            /**
+             * 分页加载了下一页
+             *
+             * @param cursor        光标数据
+             * @param positionStart 新增数据的起始索引
+             * @param itemCount     新增数据的数量
+             */
+            @Override
+            public void onAlbumMediaPageLoad(Cursor cursor, int positionStart, int itemCount) {
+                mAdapter.appendCursor(cursor, positionStart, itemCount);
+                mRecyclerView.post(() -> loadNextPageIfNeeded());
+            }
+
+            /**
+             * 相册数据增量更新，例如拍照后新增的图片
+             *
+             * @param cursor           更新后的全部数据
+             * @param insertedCount    插入到最前面的数量
+             * @param removedPositions 被删除的数据在更新前的索引
+             */
+            @Override
+            public void onAlbumMediaChanged(Cursor cursor, int insertedCount, int[] removedPositions) {
+                // 索引已经变化
+                cancelPrefetch();
+                mAdapter.changeCursor(cursor, insertedCount, removedPositions);
             }
 
             /**
@@ -172,13 +227,40 @@ public class MediaSelectionFragment extends Fragment implements
             @Override
             public void onAlbumMediaReset() {
                 // 此处是用于上面的onLoadFinished()的游标将被关闭时执行，我们需确保我们不再使用它
+                cancelPrefetch();
                 mAdapter.swapCursor(null);
             }
         });
-        mAlbumMediaCollection.load(album);
+        mAlbumMediaCollection.load(album, albumSpec.pageSize);
+        // 相册数据变化时增量更新
+        mAlbumMediaCollection.registerContentObserver();
+    }
+
+    /**
+     * 剩余未显示的数据不足半页时，预加载下一页
+     */
+    private void loadNextPageIfNeeded() {
+        if (mLayoutManager == null || !mAlbumMediaCollection.hasNextPage()) {
+            return;
+        }
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+        int threshold = Math.max(AlbumSpec.getInstance().pageSize / 2, mLayoutManager.getSpanCount());
+        if (lastVisible >= mAdapter.getItemCount() - threshold) {
+            mAlbumMediaCollection.loadNextPage();
+        }
+    }
+
+    /**
+     * 取消所有缩略图预加载
+     */
+    private void cancelPrefetch() {
+        if (mThumbnailPrefetcher != null) {
+            mThumbnailPrefetcher.cancelAll();
+        }
     }
 
     public void onDestroyData() {
+        cancelPrefetch();
         mAlbumMediaCollection.onDestroy();
     }
 
@@ -0,0 +1,117 @@
+package com.zhongjh.albumcamerarecorder.album.ui.mediaselection;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.SparseArray;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.zhongjh.albumcamerarecorder.album.engine.ImagePreloadEngine;
+import com.zhongjh.albumcamerarecorder.album.ui.mediaselection.adapter.AlbumMediaAdapter;
+
+/**
+ * 相册列表的缩略图预加载
+ * 根据滑动的方向和速度，提前加载即将显示的几行缩略图，滑出预加载范围的请求会被取消
+ *
+ * @author zhongjh
+ */
+class ThumbnailPrefetcher extends RecyclerView.OnScrollListener {
+
+    /**
+     * 最少预加载的行数
+     */
+    private static final int MIN_ROWS = 1;
+    /**
+     * 最多预加载的行数，避免快速滑动时请求过多
+     */
+    private static final int MAX_ROWS = 6;
+    /**
+     * 按照当前速度预估多少帧之后会显示的内容
+     */
+    private static final int LOOKAHEAD_FRAMES = 20;
+
+    private final Context mContext;
+    private final ImagePreloadEngine mEngine;
+    private final AlbumMediaAdapter mAdapter;
+    private final GridLayoutManager mLayoutManager;
+    /**
+     * 正在预加载的索引和uri
+     */
+    private final SparseArray<Uri> mPreloaded = new SparseArray<>();
+
+    ThumbnailPrefetcher(Context context, ImagePreloadEngine engine,
+                        AlbumMediaAdapter adapter, GridLayoutManager layoutManager) {
+        mContext = context.getApplicationContext();
+        mEngine = engine;
+        mAdapter = adapter;
+        mLayoutManager = layoutManager;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) {
+            return;
+        }
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+        View firstChild = recyclerView.getChildAt(0);
+        if (firstVisible == RecyclerView.NO_POSITION || firstChild == null || firstChild.getHeight() <= 0) {
+            return;
+        }
+        // 根据速度计算预加载的行数
+        int rows = (int) Math.ceil((double) Math.abs(dy) * LOOKAHEAD_FRAMES / firstChild.getHeight());
+        rows = Math.max(MIN_ROWS, Math.min(MAX_ROWS, rows));
+        int count = rows * mLayoutManager.getSpanCount();
+        int start;
+        int end;
+        if (dy > 0) {
+            start = lastVisible + 1;
+            end = Math.min(mAdapter.getItemCount() - 1, lastVisible + count);
+        } else {
+            start = Math.max(0, firstVisible - count);
+            end = firstVisible - 1;
+        }
+        int resize = mAdapter.getImageResize(recyclerView.getContext());
+        cancelOutside(start, end, resize);
+        for (int position = start; position <= end; position++) {
+            if (mPreloaded.get(position) != null) {
+                continue;
+            }
+            Uri uri = mAdapter.getThumbnailUri(position);
+            if (uri != null) {
+                mEngine.preload(mContext, resize, uri);
+                mPreloaded.put(position, uri);
+            }
+        }
+    }
+
+    /**
+     * 取消预加载范围之外的请求
+     *
+     * @param start  预加载范围的起始索引
+     * @param end    预加载范围的结束索引
+     * @param resize 缩略图大小
+     */
+    private void cancelOutside(int start, int end, int resize) {
+        for (int i = mPreloaded.size() - 1; i >= 0; i--) {
+            int position = mPreloaded.keyAt(i);
+            if (position < start || position > end) {
+                mEngine.cancelPreload(mContext, resize, mPreloaded.valueAt(i));
+                mPreloaded.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * 取消所有预加载，数据源变化或者界面销毁时调用
+     */
+    void cancelAll() {
+        if (mPreloaded.size() > 0) {
+            cancelOutside(0, -1, mAdapter.getImageResize(mContext));
+        }
+    }
+
+}
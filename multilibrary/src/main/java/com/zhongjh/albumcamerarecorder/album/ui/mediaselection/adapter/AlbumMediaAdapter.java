@@ -19,6 +19,7 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.database.Cursor;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -27,15 +28,22 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.zhongjh.albumcamerarecorder.MainActivity;
 import com.zhongjh.albumcamerarecorder.R;
 import com.zhongjh.albumcamerarecorder.album.base.BaseRecyclerViewCursorAdapter;
 import com.zhongjh.common.entity.IncapableCause;
 import com.zhongjh.common.entity.MultiMedia;
 
 import com.zhongjh.albumcamerarecorder.album.entity.Album;
+import com.zhongjh.albumcamerarecorder.album.loader.AlbumMediaSnapshot;
 import com.zhongjh.albumcamerarecorder.album.model.SelectedItemCollection;
 import com.zhongjh.albumcamerarecorder.album.widget.CheckView;
 import com.zhongjh.albumcamerarecorder.album.widget.MediaGrid;
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
 import com.zhongjh.albumcamerarecorder.settings.AlbumSpec;
 
 /**
@@ -47,6 +55,10 @@ public class AlbumMediaAdapter extends
         MediaGrid.OnMediaGridClickListener {
 
     private static final int VIEW_TYPE_MEDIA = 0x02;
+    /**
+     * 局部刷新选择状态，只刷新CheckView
+     */
+    private static final Object PAYLOAD_CHECK_STATE = new Object();
     private final SelectedItemCollection mSelectedCollection;
     private final Drawable mPlaceholder;
     private final AlbumSpec mAlbumSpec;
@@ -54,9 +66,24 @@ public class AlbumMediaAdapter extends
     private OnMediaClickListener mOnMediaClickListener;
     private final RecyclerView mRecyclerView;
     private int mImageResize;
+    /**
+     * 数据源的列式快照，有快照的时候绑定不需要移动游标
+     */
+    private AlbumMediaSnapshot mSnapshot;
+    /**
+     * 正在子线程中执行过滤器的数据，避免重复点击
+     */
+    private final Set<MultiMedia> mPendingChecks = new HashSet<>();
+    /**
+     * 用于记录打开界面后第一次绑定缩略图的耗时，记录后置为null
+     */
+    private MainActivity mStartupActivity;
 
     public AlbumMediaAdapter(Context context, SelectedItemCollection selectedCollection, RecyclerView recyclerView) {
         super(null);
+        if (context instanceof MainActivity) {
+            mStartupActivity = (MainActivity) context;
+        }
         mAlbumSpec = AlbumSpec.getInstance();
         mSelectedCollection = selectedCollection;
 
@@ -75,34 +102,166 @@ public class AlbumMediaAdapter extends
     }
 
 
+    @Override
+    public void swapCursor(Cursor newCursor) {
+        mSnapshot = AlbumMediaSnapshot.of(newCursor);
+        super.swapCursor(newCursor);
+    }
+
+    @Override
+    public void appendCursor(Cursor newCursor, int positionStart, int itemCount) {
+        if (newCursor != null) {
+            mSnapshot = AlbumMediaSnapshot.of(newCursor);
+        }
+        super.appendCursor(newCursor, positionStart, itemCount);
+    }
+
+    /**
+     * 增量更新数据源，只刷新新增和删除的部分
+     *
+     * @param newCursor        更新后的全部数据
+     * @param insertedCount    插入到最前面的数量
+     * @param removedPositions 被删除的数据在更新前的索引，从小到大排序
+     */
+    public void changeCursor(Cursor newCursor, int insertedCount, int[] removedPositions) {
+        boolean selectionChanged = removeDeletedSelection(removedPositions);
+        mSnapshot = AlbumMediaSnapshot.of(newCursor);
+        replaceCursor(newCursor);
+        // 从后往前删除，前面的索引不会受影响，连续的索引合并成一次
+        int end = removedPositions.length - 1;
+        while (end >= 0) {
+            int start = end;
+            while (start > 0 && removedPositions[start - 1] == removedPositions[start] - 1) {
+                start--;
+            }
+            notifyItemRangeRemoved(removedPositions[start], end - start + 1);
+            end = start - 1;
+        }
+        if (insertedCount > 0) {
+            notifyItemRangeInserted(0, insertedCount);
+        }
+        if (selectionChanged) {
+            // 选择的序号和启用状态都可能变化
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_CHECK_STATE);
+            if (mCheckStateListener != null) {
+                mCheckStateListener.onUpdate();
+            }
+        }
+    }
+
+    /**
+     * 被删除的数据如果已经选择了，从选择中移除
+     *
+     * @param removedPositions 被删除的数据在更新前的索引
+     * @return 选择是否变化
+     */
+    private boolean removeDeletedSelection(int[] removedPositions) {
+        if (mSnapshot == null) {
+            return false;
+        }
+        boolean removed = false;
+        for (int position : removedPositions) {
+            if (position < mSnapshot.getCount()
+                    && mSelectedCollection.isSelected(mSnapshot.getId(position), mSnapshot.getMediaUri(position))) {
+                removed |= mSelectedCollection.remove(mSnapshot.get(position));
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        if (mSnapshot == null || position >= mSnapshot.getCount()) {
+            super.onBindViewHolder(holder, position);
+            return;
+        }
+        // 直接读取快照，不移动游标也不创建MultiMedia
+        MediaGrid mediaGrid = ((MediaViewHolder) holder).mMediaGrid;
+        preBindMedia(holder, mediaGrid);
+        mediaGrid.bindMedia(mSnapshot, position);
+        setCheckStatus(mediaGrid);
+        markFirstThumbnail();
+    }
+
     @Override
     protected void onBindViewHolder(final RecyclerView.ViewHolder holder, Cursor cursor) {
         // 相片的item
-        MediaViewHolder mediaViewHolder = (MediaViewHolder) holder;
+        MediaGrid mediaGrid = ((MediaViewHolder) holder).mMediaGrid;
 
         final MultiMedia item = MultiMedia.valueOf(cursor);
-        // 传递相关的值
-        mediaViewHolder.mMediaGrid.preBindMedia(new MediaGrid.PreBindInfo(
-                getImageResize(mediaViewHolder.mMediaGrid.getContext()),
-                mPlaceholder,
-                mAlbumSpec.countable,
-                holder
-        ));
-        mediaViewHolder.mMediaGrid.bindMedia(item);
-        mediaViewHolder.mMediaGrid.setOnMediaGridClickListener(this);
-        setCheckStatus(item, mediaViewHolder.mMediaGrid);
+        preBindMedia(holder, mediaGrid);
+        mediaGrid.bindMedia(item);
+        setCheckStatus(mediaGrid);
+        markFirstThumbnail();
+    }
+
+    /**
+     * 传递相关的值，每个holder只需要传递一次
+     *
+     * @param holder    holder
+     * @param mediaGrid 控件
+     */
+    private void preBindMedia(RecyclerView.ViewHolder holder, MediaGrid mediaGrid) {
+        if (!mediaGrid.hasPreBindInfo()) {
+            mediaGrid.preBindMedia(new MediaGrid.PreBindInfo(
+                    getImageResize(mediaGrid.getContext()),
+                    mPlaceholder,
+                    mAlbumSpec.countable,
+                    holder
+            ));
+            mediaGrid.setOnMediaGridClickListener(this);
+        }
+    }
+
+    /**
+     * 第一次绑定缩略图时记录打开界面的耗时
+     */
+    private void markFirstThumbnail() {
+        if (mStartupActivity != null) {
+            mStartupActivity.markStartup(CaptureLatencyListener.STARTUP_FIRST_THUMBNAIL);
+            mStartupActivity = null;
+        }
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        // 只有一种类型，不需要移动游标
+        return VIEW_TYPE_MEDIA;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (mSnapshot != null && position < mSnapshot.getCount()) {
+            return mSnapshot.getId(position);
+        }
+        return super.getItemId(position);
+    }
+
+    @Override
+    protected boolean onBindViewHolderPayloads(RecyclerView.ViewHolder holder, List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_CHECK_STATE) {
+                return false;
+            }
+        }
+        MediaGrid mediaGrid = ((MediaViewHolder) holder).mMediaGrid;
+        if (!mediaGrid.isBound()) {
+            return false;
+        }
+        // 只刷新选择状态，不重新加载缩略图
+        setCheckStatus(mediaGrid);
+        return true;
     }
 
     /**
      * 设置当前选择状态
      *
-     * @param item      数据
      * @param mediaGrid holder
      */
-    private void setCheckStatus(MultiMedia item, MediaGrid mediaGrid) {
+    private void setCheckStatus(MediaGrid mediaGrid) {
         // 是否多选时,显示数字
         if (mAlbumSpec.countable) {
-            int checkedNum = mSelectedCollection.checkedNumOf(item);
+            int checkedNum = mSelectedCollection.checkedNumOf(mediaGrid.getMediaId(), mediaGrid.getMediaUri());
             if (checkedNum > 0) {
                 // 设置启用,设置数量
                 mediaGrid.setCheckEnabled(true);
@@ -119,7 +278,7 @@ public class AlbumMediaAdapter extends
             }
         } else {
             // 不显示字的情况
-            boolean selected = mSelectedCollection.isSelected(item);
+            boolean selected = mSelectedCollection.isSelected(mediaGrid.getMediaId(), mediaGrid.getMediaUri());
             // 如果被选中了，就设置选择
             if (selected) {
                 mediaGrid.setCheckEnabled(true);
@@ -150,23 +309,20 @@ public class AlbumMediaAdapter extends
 
     @Override
     public void onCheckViewClicked(CheckView checkView, MultiMedia item, RecyclerView.ViewHolder holder) {
+        boolean maxSelectableReached = mSelectedCollection.maxSelectableReached();
+        int position = holder.getAdapterPosition();
         // 是否多选模式,显示数字
         if (mAlbumSpec.countable) {
             // 获取当前选择的第几个
             int checkedNum = mSelectedCollection.checkedNumOf(item);
             if (checkedNum == CheckView.UNCHECKED) {
-                // 如果当前数据是未选状态
-                if (assertAddSelection(holder.itemView.getContext(), item)) {
-                    // 添加选择了当前数据
-                    mSelectedCollection.add(item);
-                    // 刷新数据源
-                    notifyCheckStateChanged();
-                }
+                // 如果当前数据是未选状态，验证通过后添加选择了当前数据
+                addSelectionIfAcceptable(holder, item);
             } else {
                 // 删除当前选择
                 mSelectedCollection.remove(item);
-                // 刷新数据
-                notifyCheckStateChanged();
+                // 刷新数据，后面的序号都要重新计算
+                notifyCheckStateChanged(position, false, maxSelectableReached);
             }
         } else {
             // 不是多选模式
@@ -174,22 +330,28 @@ public class AlbumMediaAdapter extends
                 // 如果当前已经被选中，再次选择就是取消了
                 mSelectedCollection.remove(item);
                 // 刷新数据源
-                notifyCheckStateChanged();
+                notifyCheckStateChanged(position, true, maxSelectableReached);
             } else {
-
-                if (assertAddSelection(holder.itemView.getContext(), item)) {
-                    mSelectedCollection.add(item);
-                    notifyCheckStateChanged();
-                }
+                addSelectionIfAcceptable(holder, item);
             }
         }
     }
 
     /**
-     * 刷新数据
+     * 刷新选择状态，只局部刷新CheckView
+     * 如果只影响了当前item，就只刷新当前item，否则刷新全部item的CheckView
+     *
+     * @param position                   点击的索引
+     * @param onlySelf                   是否只影响当前item，多选模式删除后，后面的序号会变化
+     * @param lastMaxSelectableReached   点击前是否已经选择最大数量，变化后其他item的启用状态也会变化
      */
-    private void notifyCheckStateChanged() {
-        notifyDataSetChanged();
+    private void notifyCheckStateChanged(int position, boolean onlySelf, boolean lastMaxSelectableReached) {
+        boolean maxSelectableChanged = lastMaxSelectableReached != mSelectedCollection.maxSelectableReached();
+        if (onlySelf && !maxSelectableChanged && position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position, PAYLOAD_CHECK_STATE);
+        } else {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_CHECK_STATE);
+        }
         if (mCheckStateListener != null) {
             mCheckStateListener.onUpdate();
         }
@@ -207,15 +369,33 @@ public class AlbumMediaAdapter extends
     }
 
     /**
-     * 验证当前item是否满足可以被选中的条件
+     * 验证当前item是否满足可以被选中的条件，满足则添加选择
+     * 过滤器在子线程中执行，回调时holder可能已经绑定了别的数据
      *
-     * @param context 上下文
-     * @param item    数据源
+     * @param holder holder
+     * @param item   数据源
      */
-    private boolean assertAddSelection(Context context, MultiMedia item) {
-        IncapableCause cause = mSelectedCollection.isAcceptable(item);
-        IncapableCause.handleCause(context, cause);
-        return cause == null;
+    private void addSelectionIfAcceptable(final RecyclerView.ViewHolder holder, final MultiMedia item) {
+        if (!mPendingChecks.add(item)) {
+            return;
+        }
+        final Context context = holder.itemView.getContext();
+        mSelectedCollection.isAcceptable(item, cause -> {
+            mPendingChecks.remove(item);
+            IncapableCause.handleCause(context, cause);
+            if (cause != null || mSelectedCollection.isSelected(item)) {
+                return;
+            }
+            boolean maxSelectableReached = mSelectedCollection.maxSelectableReached();
+            // 添加选择了当前数据
+            mSelectedCollection.add(item);
+            // 刷新数据源
+            int position = holder.getAdapterPosition();
+            if (((MediaViewHolder) holder).mMediaGrid.getMedia() != item) {
+                position = RecyclerView.NO_POSITION;
+            }
+            notifyCheckStateChanged(position, true, maxSelectableReached);
+        });
     }
 
     /**
@@ -268,16 +448,31 @@ public class AlbumMediaAdapter extends
             // 如果是-1就直接返回
             return;
         }
-        // 获取数据源
+        // 局部刷新能看到的选择状态
+        notifyItemRangeChanged(first, last - first + 1, PAYLOAD_CHECK_STATE);
+    }
+
+    /**
+     * 获取缩略图预加载使用的uri，gif和无效的索引返回null
+     *
+     * @param position 索引
+     * @return 缩略图的uri
+     */
+    public Uri getThumbnailUri(int position) {
+        if (mSnapshot != null && position < mSnapshot.getCount()) {
+            // gif使用的是 loadGifThumbnail，不在预加载范围
+            return mSnapshot.isGif(position) ? null : mSnapshot.getMediaUri(position);
+        }
         Cursor cursor = getCursor();
-        for (int i = first; i <= last; i++) {
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(first);
-            if (holder instanceof MediaViewHolder) {
-                if (cursor.moveToPosition(i)) {
-                    setCheckStatus(MultiMedia.valueOf(cursor), ((MediaViewHolder) holder).mMediaGrid);
-                }
-            }
+        if (cursor == null || cursor.isClosed() || !cursor.moveToPosition(position)) {
+            return null;
+        }
+        MultiMedia item = MultiMedia.valueOf(cursor);
+        // gif使用的是 loadGifThumbnail，不在预加载范围
+        if (item.isGif()) {
+            return null;
         }
+        return item.getMediaUri();
     }
 
     /**
@@ -286,7 +481,7 @@ public class AlbumMediaAdapter extends
      * @param context 上下文
      * @return 列表的每个格子的宽度 * 缩放比例
      */
-    private int getImageResize(Context context) {
+    public int getImageResize(Context context) {
         if (mImageResize == 0) {
             RecyclerView.LayoutManager lm = mRecyclerView.getLayoutManager();
             int spanCount = 0;
@@ -65,6 +65,34 @@ public final class PhotoMetadataUtils extends BasePhotoMetadataUtils {
             w = imageSize.y;
             h = imageSize.x;
         }
+        return getDisplaySize(w, h, activity);
+    }
+
+    /**
+     * 根据相册数据库的宽高和旋转角度计算，不需要打开文件
+     *
+     * @param width       图片未旋转前的宽度
+     * @param height      图片未旋转前的高度
+     * @param orientation 旋转角度
+     * @param activity    界面
+     * @return xy
+     */
+    public static Point getBitmapSize(int width, int height, int orientation, Activity activity) {
+        if (orientation == 90 || orientation == 270) {
+            return getDisplaySize(height, width, activity);
+        }
+        return getDisplaySize(width, height, activity);
+    }
+
+    /**
+     * 计算显示的宽高
+     *
+     * @param w        旋转后的宽度
+     * @param h        旋转后的高度
+     * @param activity 界面
+     * @return xy
+     */
+    private static Point getDisplaySize(int w, int h, Activity activity) {
         if (h == 0) {
             return new Point(MAX_WIDTH, MAX_WIDTH);
         }
@@ -110,6 +138,25 @@ public final class PhotoMetadataUtils extends BasePhotoMetadataUtils {
     }
 
 
+    /**
+     * 读取图片EXIF的旋转角度，需要在子线程调用
+     *
+     * @param resolver ContentResolver共享数据库
+     * @param uri      图片uri
+     * @return 旋转角度，0、90、180、270，读取失败返回0
+     */
+    public static int getOrientation(ContentResolver resolver, Uri uri) {
+        try (InputStream is = resolver.openInputStream(uri)) {
+            if (is == null) {
+                return 0;
+            }
+            return new androidx.exifinterface.media.ExifInterface(is).getRotationDegrees();
+        } catch (IOException e) {
+            Log.e(TAG, "could not read exif info of the image: " + uri);
+            return 0;
+        }
+    }
+
     /**
      * 过滤文件
      *
@@ -2,6 +2,7 @@ package com.zhongjh.albumcamerarecorder.album.widget;
 
 import android.content.Context;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import androidx.recyclerview.widget.RecyclerView;
 import android.text.format.DateUtils;
 import android.util.AttributeSet;
@@ -11,6 +12,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.zhongjh.albumcamerarecorder.R;
+import com.zhongjh.albumcamerarecorder.album.loader.AlbumMediaSnapshot;
 import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
 
 import com.zhongjh.common.entity.MultiMedia;
@@ -38,6 +40,11 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
      * 值
      */
     private MultiMedia mMedia;
+    /**
+     * 通过快照绑定时的数据源和索引，{@link #mMedia} 在需要的时候才创建
+     */
+    private AlbumMediaSnapshot mSnapshot;
+    private int mPosition;
     /**
      * 控件和一些别的变量
      */
@@ -74,10 +81,10 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
         if (mListener != null) {
             if (view == mThumbnail) {
                 // 图片的点击事件
-                mListener.onThumbnailClicked(mThumbnail, mMedia, mPreBindInfo.mViewHolder);
+                mListener.onThumbnailClicked(mThumbnail, getMedia(), mPreBindInfo.mViewHolder);
             } else if (view == mCheckView) {
                 // 勾选的点击事件
-                mListener.onCheckViewClicked(mCheckView, mMedia, mPreBindInfo.mViewHolder);
+                mListener.onCheckViewClicked(mCheckView, getMedia(), mPreBindInfo.mViewHolder);
             }
         }
     }
@@ -86,23 +93,91 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
         mPreBindInfo = info;
     }
 
+    /**
+     * 是否已经设置过 {@link PreBindInfo}
+     *
+     * @return 是否
+     */
+    public boolean hasPreBindInfo() {
+        return mPreBindInfo != null;
+    }
+
     /**
      * 绑定值
      * @param item 值
      */
     public void bindMedia(MultiMedia item) {
         mMedia = item;
+        mSnapshot = null;
+        setGifTag();
+        initCheckView();
+        setImage();
+        setVideoDuration();
+    }
+
+    /**
+     * 通过快照绑定值，不创建 {@link MultiMedia}
+     * @param snapshot 快照
+     * @param position 索引
+     */
+    public void bindMedia(AlbumMediaSnapshot snapshot, int position) {
+        mMedia = null;
+        mSnapshot = snapshot;
+        mPosition = position;
         setGifTag();
         initCheckView();
         setImage();
         setVideoDuration();
     }
 
+    /**
+     * 获取当前绑定的数据，通过快照绑定的话第一次获取时才创建
+     * @return 数据
+     */
+    public MultiMedia getMedia() {
+        if (mMedia == null && mSnapshot != null) {
+            mMedia = mSnapshot.get(mPosition);
+        }
+        return mMedia;
+    }
+
+    /**
+     * 获取当前绑定的数据的id
+     * @return id
+     */
+    public long getMediaId() {
+        return mSnapshot != null ? mSnapshot.getId(mPosition) : mMedia.getId();
+    }
+
+    /**
+     * 获取当前绑定的数据的相册uri
+     * @return uri
+     */
+    public Uri getMediaUri() {
+        return mSnapshot != null ? mSnapshot.getMediaUri(mPosition) : mMedia.getMediaUri();
+    }
+
+    /**
+     * 是否已经绑定了数据
+     * @return 是否
+     */
+    public boolean isBound() {
+        return mSnapshot != null || mMedia != null;
+    }
+
+    private boolean isGif() {
+        return mSnapshot != null ? mSnapshot.isGif(mPosition) : mMedia.isGif();
+    }
+
+    private boolean isVideo() {
+        return mSnapshot != null ? mSnapshot.isVideo(mPosition) : mMedia.isVideo();
+    }
+
     /**
      * 根据gif判断是否显示gif标志
      */
     private void setGifTag() {
-        mGifTag.setVisibility(mMedia.isGif() ? View.VISIBLE : View.GONE);
+        mGifTag.setVisibility(isGif() ? View.VISIBLE : View.GONE);
     }
 
     /**
@@ -141,12 +216,12 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
      * 设置图片或者gif图片
      */
     private void setImage() {
-        if (mMedia.isGif()) {
+        if (isGif()) {
             GlobalSpec.getInstance().imageEngine.loadGifThumbnail(getContext(), mPreBindInfo.mResize,
-                    mPreBindInfo.mPlaceholder, mThumbnail, mMedia.getMediaUri());
+                    mPreBindInfo.mPlaceholder, mThumbnail, getMediaUri());
         } else {
             GlobalSpec.getInstance().imageEngine.loadThumbnail(getContext(), mPreBindInfo.mResize,
-                    mPreBindInfo.mPlaceholder, mThumbnail, mMedia.getMediaUri());
+                    mPreBindInfo.mPlaceholder, mThumbnail, getMediaUri());
         }
     }
 
@@ -154,9 +229,10 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
      * 设置文本的时长（类似指视频的时长）
      */
     private void setVideoDuration() {
-        if (mMedia.isVideo()) {
+        if (isVideo()) {
+            long duration = mSnapshot != null ? mSnapshot.getDuration(mPosition) : mMedia.getDuration();
             mVideoDuration.setVisibility(VISIBLE);
-            mVideoDuration.setText(DateUtils.formatElapsedTime(mMedia.getDuration() / 1000));
+            mVideoDuration.setText(DateUtils.formatElapsedTime(duration / 1000));
         } else {
             mVideoDuration.setVisibility(GONE);
         }
@@ -0,0 +1,382 @@
+package com.zhongjh.albumcamerarecorder.album.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.util.AttributeSet;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+
+import com.zhongjh.common.utils.ThreadUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import it.sephiroth.android.library.imagezoom.ImageViewTouch;
+
+/**
+ * 支持分块解码的ImageViewTouch
+ * 底图仍然由 ImageEngine 加载，放大到底图的分辨率不够时，通过 {@link BitmapRegionDecoder} 只解码可见范围的分块，
+ * 分块的采样率根据当前的缩放计算，解码后的分块放进有大小上限的缓存
+ * 分块的key由采样率、列、行合成一个long，绘制时不创建临时对象
+ *
+ * @author zhongjh
+ */
+public class TileImageViewTouch extends ImageViewTouch {
+
+    /**
+     * 超过该像素数量的图片才使用分块解码
+     */
+    private static final long TILE_MIN_PIXELS = 4096L * 4096L;
+    /**
+     * 每个分块解码后的边长
+     */
+    private static final int TILE_SIZE = 512;
+    /**
+     * 每个分块最多占用的字节数，png、webp可能有透明度，按照ARGB_8888计算
+     */
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+    /**
+     * 分块缓存的初始字节数
+     */
+    private static final int MAX_CACHE_BYTES = 32 * 1024 * 1024;
+    /**
+     * key里面列、行各占的位数
+     */
+    private static final int KEY_BITS = 24;
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
+    private final LruCache<Long, Bitmap> mTileCache;
+    /**
+     * 分块缓存可以扩大到的字节数，可见分块超过这个大小时降低分块的分辨率
+     */
+    private final int mMaxCacheBytes;
+    /**
+     * 正在解码的分块
+     */
+    private final LongSparseArray<ThreadUtils.BaseSimpleBaseTask<Bitmap>> mPendingTiles = new LongSparseArray<>();
+    private final Matrix mRawToView = new Matrix();
+    private final Matrix mViewToRaw = new Matrix();
+    private final Matrix mTileMatrix = new Matrix();
+    private final RectF mVisibleRect = new RectF();
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private Uri mUri;
+    /**
+     * 图片的旋转角度，0、90、180、270
+     */
+    private int mOrientation;
+    private BitmapRegionDecoder mDecoder;
+    /**
+     * 图片未旋转前的宽高
+     */
+    private int mSourceWidth;
+    private int mSourceHeight;
+    private ThreadUtils.BaseSimpleBaseTask<BitmapRegionDecoder> mOpenTask;
+    /**
+     * 上一次绘制时可见的分块范围，不在范围内的分块取消解码
+     */
+    private int mVisibleSampleSize;
+    private int mVisibleColStart;
+    private int mVisibleColEnd;
+    private int mVisibleRowStart;
+    private int mVisibleRowEnd;
+
+    public TileImageViewTouch(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public TileImageViewTouch(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        int maxBytes = (int) Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 8);
+        mMaxCacheBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4);
+        mTileCache = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * 该图片是否需要分块解码，gif等格式 {@link BitmapRegionDecoder} 不支持
+     *
+     * @param mimeType 图片类型
+     * @param width    图片宽度
+     * @param height   图片高度
+     * @return 是否
+     */
+    public static boolean shouldTile(String mimeType, int width, int height) {
+        if (mimeType == null || (long) width * height < TILE_MIN_PIXELS) {
+            return false;
+        }
+        return "image/jpeg".equals(mimeType) || "image/png".equals(mimeType) || "image/webp".equals(mimeType);
+    }
+
+    /**
+     * 设置分块解码的图片，在子线程中创建 {@link BitmapRegionDecoder}
+     *
+     * @param uri         图片uri，null则关闭分块解码
+     * @param orientation 图片的旋转角度
+     */
+    public void setTileSource(Uri uri, int orientation) {
+        if (uri != null && uri.equals(mUri) && orientation == mOrientation) {
+            return;
+        }
+        recycleTiles();
+        mUri = uri;
+        mOrientation = orientation;
+        if (uri == null) {
+            return;
+        }
+        final Context context = getContext().getApplicationContext();
+        mOpenTask = new ThreadUtils.BaseSimpleBaseTask<BitmapRegionDecoder>() {
+            @Override
+            public BitmapRegionDecoder doInBackground() throws IOException {
+                try (InputStream is = context.getContentResolver().openInputStream(uri)) {
+                    if (is == null) {
+                        return null;
+                    }
+                    return BitmapRegionDecoder.newInstance(is, false);
+                }
+            }
+
+            @Override
+            public void onSuccess(BitmapRegionDecoder result) {
+                if (mOpenTask != this || result == null) {
+                    if (result != null) {
+                        result.recycle();
+                    }
+                    return;
+                }
+                mOpenTask = null;
+                mDecoder = result;
+                mSourceWidth = result.getWidth();
+                mSourceHeight = result.getHeight();
+                invalidate();
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                if (mOpenTask == this) {
+                    mOpenTask = null;
+                }
+            }
+        };
+        ThreadUtils.executeByIo(mOpenTask);
+    }
+
+    /**
+     * 释放分块解码的资源
+     */
+    public void recycleTiles() {
+        if (mOpenTask != null) {
+            ThreadUtils.cancel(mOpenTask);
+            mOpenTask = null;
+        }
+        cancelTiles(false);
+        mTileCache.evictAll();
+        if (mDecoder != null) {
+            // decodeRegion 和 recycle 是同步的，正在解码的分块会失败返回
+            mDecoder.recycle();
+            mDecoder = null;
+        }
+        mUri = null;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        recycleTiles();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        drawTiles(canvas);
+    }
+
+    /**
+     * 绘制可见范围的分块，缺少的分块提交到子线程解码
+     */
+    private void drawTiles(Canvas canvas) {
+        RectF bitmapRect = getBitmapRect();
+        if (mDecoder == null || getDrawable() == null || bitmapRect == null || bitmapRect.width() <= 0) {
+            return;
+        }
+        boolean rotated = mOrientation == 90 || mOrientation == 270;
+        int orientedWidth = rotated ? mSourceHeight : mSourceWidth;
+        // 屏幕上每个像素对应原图多少像素
+        float scale = bitmapRect.width() / orientedWidth;
+        float baseScale = (float) getDrawable().getIntrinsicWidth() / orientedWidth;
+        if (scale <= baseScale) {
+            // 底图的分辨率已经足够
+            cancelTiles(false);
+            return;
+        }
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1) {
+            sampleSize *= 2;
+        }
+        // 原图坐标 -> 旋转后的坐标 -> 控件坐标
+        mRawToView.reset();
+        if (mOrientation == 90) {
+            mRawToView.setRotate(90);
+            mRawToView.postTranslate(mSourceHeight, 0);
+        } else if (mOrientation == 180) {
+            mRawToView.setRotate(180);
+            mRawToView.postTranslate(mSourceWidth, mSourceHeight);
+        } else if (mOrientation == 270) {
+            mRawToView.setRotate(270);
+            mRawToView.postTranslate(0, mSourceWidth);
+        }
+        mRawToView.postScale(scale, scale);
+        mRawToView.postTranslate(bitmapRect.left, bitmapRect.top);
+        if (!mRawToView.invert(mViewToRaw)) {
+            return;
+        }
+        mVisibleRect.set(0, 0, getWidth(), getHeight());
+        mViewToRaw.mapRect(mVisibleRect);
+        if (!mVisibleRect.intersect(0, 0, mSourceWidth, mSourceHeight)) {
+            return;
+        }
+        // 可见的分块加上一圈余量都要放得进缓存，否则新解码的分块会挤掉其他可见的分块，一直重复解码
+        int tileRawSize;
+        long neededBytes;
+        while (true) {
+            tileRawSize = TILE_SIZE * sampleSize;
+            mVisibleColStart = (int) (mVisibleRect.left / tileRawSize);
+            mVisibleColEnd = (int) ((mVisibleRect.right - 1) / tileRawSize);
+            mVisibleRowStart = (int) (mVisibleRect.top / tileRawSize);
+            mVisibleRowEnd = (int) ((mVisibleRect.bottom - 1) / tileRawSize);
+            neededBytes = (long) (mVisibleColEnd - mVisibleColStart + 3)
+                    * (mVisibleRowEnd - mVisibleRowStart + 3) * TILE_BYTES;
+            if (neededBytes <= mMaxCacheBytes) {
+                break;
+            }
+            sampleSize *= 2;
+        }
+        if (1f / sampleSize <= baseScale) {
+            // 内存不够，分块的分辨率已经不比底图高
+            cancelTiles(false);
+            return;
+        }
+        if (neededBytes > mTileCache.maxSize()) {
+            mTileCache.resize((int) neededBytes);
+        }
+        mVisibleSampleSize = sampleSize;
+        for (int row = mVisibleRowStart; row <= mVisibleRowEnd; row++) {
+            for (int col = mVisibleColStart; col <= mVisibleColEnd; col++) {
+                long key = tileKey(sampleSize, col, row);
+                Bitmap tile = mTileCache.get(key);
+                if (tile == null) {
+                    requestTile(key, col, row, sampleSize);
+                    continue;
+                }
+                mTileMatrix.set(mRawToView);
+                mTileMatrix.preTranslate(col * tileRawSize, row * tileRawSize);
+                mTileMatrix.preScale(sampleSize, sampleSize);
+                canvas.drawBitmap(tile, mTileMatrix, mTilePaint);
+            }
+        }
+        // 已经不可见的分块不再解码
+        cancelTiles(true);
+    }
+
+    /**
+     * @return 分块的key，采样率、列、行合成一个long
+     */
+    private static long tileKey(int sampleSize, int col, int row) {
+        return ((long) sampleSize << (KEY_BITS * 2)) | ((col & KEY_MASK) << KEY_BITS) | (row & KEY_MASK);
+    }
+
+    /**
+     * @return 该分块是否在上一次绘制的可见范围内
+     */
+    private boolean isTileVisible(long key) {
+        int sampleSize = (int) (key >>> (KEY_BITS * 2));
+        int col = (int) ((key >>> KEY_BITS) & KEY_MASK);
+        int row = (int) (key & KEY_MASK);
+        return sampleSize == mVisibleSampleSize
+                && col >= mVisibleColStart && col <= mVisibleColEnd
+                && row >= mVisibleRowStart && row <= mVisibleRowEnd;
+    }
+
+    /**
+     * 在子线程解码分块
+     *
+     * @param key        分块的key
+     * @param col        分块的列
+     * @param row        分块的行
+     * @param sampleSize 采样率
+     */
+    private void requestTile(final long key, int col, int row, final int sampleSize) {
+        if (mPendingTiles.get(key) != null) {
+            return;
+        }
+        int tileRawSize = TILE_SIZE * sampleSize;
+        final Rect rect = new Rect(col * tileRawSize, row * tileRawSize,
+                Math.min((col + 1) * tileRawSize, mSourceWidth),
+                Math.min((row + 1) * tileRawSize, mSourceHeight));
+        final BitmapRegionDecoder decoder = mDecoder;
+        ThreadUtils.BaseSimpleBaseTask<Bitmap> task = new ThreadUtils.BaseSimpleBaseTask<Bitmap>() {
+            @Override
+            public Bitmap doInBackground() {
+                if (isCanceled()) {
+                    return null;
+                }
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sampleSize;
+                return decoder.decodeRegion(rect, options);
+            }
+
+            @Override
+            public void onSuccess(Bitmap result) {
+                if (mPendingTiles.get(key) == this) {
+                    mPendingTiles.remove(key);
+                }
+                if (result != null && decoder == mDecoder) {
+                    mTileCache.put(key, result);
+                    invalidate();
+                }
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                if (mPendingTiles.get(key) == this) {
+                    mPendingTiles.remove(key);
+                }
+            }
+
+            @Override
+            public void onCancel() {
+            }
+        };
+        mPendingTiles.put(key, task);
+        ThreadUtils.executeBySingle(task);
+    }
+
+    /**
+     * 取消正在解码的分块
+     *
+     * @param keepVisible 是否保留上一次绘制时可见的分块，false则全部取消
+     */
+    private void cancelTiles(boolean keepVisible) {
+        for (int i = mPendingTiles.size() - 1; i >= 0; i--) {
+            if (!keepVisible || !isTileVisible(mPendingTiles.keyAt(i))) {
+                ThreadUtils.cancel(mPendingTiles.valueAt(i));
+                mPendingTiles.removeAt(i);
+            }
+        }
+    }
+
+}
@@ -5,11 +5,14 @@ import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseLongArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -19,6 +22,7 @@ import android.widget.RelativeLayout;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -26,10 +30,12 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.otaliastudios.cameraview.CameraException;
 import com.otaliastudios.cameraview.CameraListener;
+import com.otaliastudios.cameraview.CameraOptions;
 import com.otaliastudios.cameraview.CameraView;
 import com.otaliastudios.cameraview.PictureResult;
 import com.otaliastudios.cameraview.VideoResult;
 import com.otaliastudios.cameraview.controls.Flash;
+import com.otaliastudios.cameraview.controls.PictureFormat;
 import com.zhongjh.albumcamerarecorder.MainActivity;
 import com.zhongjh.albumcamerarecorder.R;
 import com.zhongjh.albumcamerarecorder.camera.adapter.PhotoAdapter;
@@ -46,10 +52,15 @@ import com.zhongjh.albumcamerarecorder.camera.listener.ErrorListener;
 import com.zhongjh.albumcamerarecorder.camera.listener.OperateCameraListener;
 import com.zhongjh.albumcamerarecorder.camera.util.FileUtil;
 import com.zhongjh.albumcamerarecorder.camera.util.LogUtil;
+import com.zhongjh.albumcamerarecorder.camera.util.ThumbnailUtil;
 import com.zhongjh.albumcamerarecorder.camera.widget.PhotoVideoLayoutBase;
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
 import com.zhongjh.albumcamerarecorder.settings.CameraSpec;
 import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
 import com.zhongjh.albumcamerarecorder.utils.BitmapUtils;
+import com.zhongjh.albumcamerarecorder.utils.CaptureLatencyTracer;
+import com.zhongjh.albumcamerarecorder.utils.MediaStoreBatchResolver;
+import com.zhongjh.albumcamerarecorder.utils.MediaStorePublisher;
 import com.zhongjh.albumcamerarecorder.utils.PackageManagerUtils;
 import com.zhongjh.albumcamerarecorder.utils.SelectableUtils;
 import com.zhongjh.albumcamerarecorder.utils.ViewBusinessUtils;
@@ -57,17 +68,24 @@ import com.zhongjh.albumcamerarecorder.widget.BaseOperationLayout;
 import com.zhongjh.albumcamerarecorder.widget.ChildClickableFrameLayout;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import com.zhongjh.common.listener.VideoEditListener;
 import com.zhongjh.common.utils.MediaStoreCompat;
 import com.zhongjh.common.utils.StatusBarUtils;
 import com.zhongjh.common.utils.ThreadUtils;
 
-import org.jetbrains.annotations.NotNull;
-
 import it.sephiroth.android.library.imagezoom.ImageViewTouch;
 
 import static com.zhongjh.albumcamerarecorder.camera.common.Constants.TYPE_PICTURE;
@@ -89,6 +107,18 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
 
     private final String TAG = CameraLayout.class.getSimpleName();
     private final static int PROGRESS_MAX = 100;
+    /**
+     * 迁移图片文件时同时处理的文件数量
+     */
+    private final static int MOVE_PICTURE_PARALLEL_COUNT = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+    /**
+     * 连拍时保存图片的线程数量
+     */
+    private final static int CAPTURE_PIPELINE_THREAD_COUNT = 2;
+    /**
+     * 连拍时最多同时处理的图片数量，每张都持有jpeg数据或者Bitmap，超过后暂停快门直到有图片处理完
+     */
+    private final static int MAX_PENDING_CAPTURE_COUNT = 4;
 
     private final Context mContext;
     /**
@@ -144,9 +174,65 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
      */
     List<BitmapData> mBitmapData = new ArrayList<>();
     /**
-     * 拷贝文件是否拷贝完
+     * 迁移图片文件的当前进度
+     */
+    private int mMoveProgress;
+    /**
+     * 连拍时已经按下快门但还没加入数据源的图片数量
+     */
+    private int mPendingCaptureCount;
+    /**
+     * 连拍时是否在等待相机返回数据
+     */
+    private boolean mWaitingCaptureFrame;
+    /**
+     * 连拍时下一张图片的序号
+     */
+    private int mCaptureSequence;
+    /**
+     * 连拍时下一张要加入数据源的序号，保证按照拍摄顺序显示
+     */
+    private int mNextCaptureSequence;
+    /**
+     * 多图时横向列表的缩略图边长
+     */
+    private int mThumbnailSize;
+    /**
+     * 连拍时已经保存完，但是前面的图片还没保存完的文件，保存失败的是null
+     */
+    private final SparseArray<BitmapData> mCaptureResults = new SparseArray<>();
+    /**
+     * 连拍时正在保存的任务
+     */
+    private final SparseArray<ThreadUtils.BaseSimpleBaseTask<BitmapData>> mCaptureTasks = new SparseArray<>();
+    /**
+     * 连拍时子线程已经创建、还没加入数据源的缓存文件，取消时删除
+     */
+    private final Set<String> mCaptureFiles = new HashSet<>();
+    /**
+     * 是否已经销毁，销毁后相机和子线程的回调不再处理
+     */
+    private boolean mDestroyed;
+    /**
+     * 连拍的图片还在保存时点击了提交，等保存完再迁移文件
+     */
+    private boolean mMovePictureAfterCapture;
+    /**
+     * 连拍时每张图片的耗时会话
+     */
+    private final SparseLongArray mCaptureSessions = new SparseLongArray();
+    /**
+     * 当前拍照的耗时会话
+     */
+    private long mPictureSession;
+    /**
+     * 当前录像的耗时会话
+     */
+    private long mVideoSession;
+    /**
+     * 分段录制确认后等待合并的耗时会话
      */
-    private int currentCount = 0;
+    private long mMergeSession;
     /**
      * 视频File,用于后面能随时删除
      */
@@ -199,6 +285,10 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
      * 处于分段录制模式下合成的新的视频
      */
     private String mNewSectionVideoPath;
+    /**
+     * 分段录制的后台合并
+     */
+    private SectionMergeScheduler mSectionMergeScheduler;
     /**
      * 用于延迟隐藏的事件，如果不用延迟，会有短暂闪屏现象
      */
@@ -313,6 +403,7 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
         // 初始化设置
         mCameraSpec = CameraSpec.getInstance();
         mGlobalSpec = GlobalSpec.getInstance();
+        mThumbnailSize = getResources().getDimensionPixelSize(R.dimen.photo_thumbnail_size);
         // 设置图片路径
         if (mGlobalSpec.pictureStrategy != null) {
             // 如果设置了视频的文件夹路径，就使用它的
@@ -499,6 +590,7 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
      */
     protected void onDestroy(boolean isCommit) {
         LogUtil.i("CameraLayout destroy");
+        mDestroyed = true;
         if (!isCommit) {
             if (mPhotoFile != null) {
                 // 删除图片
@@ -530,12 +622,17 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
         }
         mViewHolder.cameraView.destroy();
         mViewHolder.pvLayout.getViewHolder().btnConfirm.reset();
+        if (mSectionMergeScheduler != null) {
+            // 删除后台合并的视频，提交的除外
+            mSectionMergeScheduler.release(isCommit ? mNewSectionVideoPath : null);
+        }
         if (mCameraSpec.videoEditCoordinator != null) {
             mCameraSpec.videoEditCoordinator.onMergeDestroy();
             mCameraSpec.videoEditCoordinator = null;
         }
         mCameraViewGoneHandler.removeCallbacks(mCameraViewGoneRunnable);
         mCameraViewVisibleHandler.removeCallbacks(mCameraViewVisibleRunnable);
+        cancelCapturePipeline();
     }
 
     /**
@@ -594,6 +691,7 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
             public void onLongClickEnd(long time) {
                 Log.d(TAG, "pvLayout onLongClickEnd " + time);
                 mSectionRecordTime = time;
+                mVideoSession = CaptureLatencyTracer.begin(CaptureLatencyListener.VIDEO_STOP);
                 // 录像结束
                 stopRecord(false);
             }
@@ -632,10 +730,15 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
     private void takePhoto() {
         // 开启才能执行别的事件, 如果已经有分段视频，则不允许拍照了
         if (mViewHolder.cameraView.isOpened() && mVideoTimes.size() <= 0) {
-            // 判断数量
-            if (mPhotoAdapter.getItemCount() < currentMaxSelectable()) {
+            // 判断数量，连拍时还要算上正在保存的图片
+            if (mPhotoAdapter.getItemCount() + mPendingCaptureCount < currentMaxSelectable()) {
                 // 设置不能点击，防止多次点击报错
                 mViewHolder.rlMain.setChildClickable(false);
+                mPictureSession = CaptureLatencyTracer.begin(CaptureLatencyListener.PICTURE_SHUTTER);
+                if (isPipelinedCapture()) {
+                    mPendingCaptureCount++;
+                    mWaitingCaptureFrame = true;
+                }
                 mViewHolder.cameraView.takePictureSnapshot();
             } else {
                 Toast.makeText(mContext, getResources().getString(R.string.z_multi_library_the_camera_limit_has_been_reached), Toast.LENGTH_SHORT).show();
@@ -653,6 +756,7 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
             if (mVideoFile == null) {
                 mVideoFile = mVideoMediaStoreCompat.createFile(1, true);
             }
+            mVideoSession = CaptureLatencyTracer.begin(CaptureLatencyListener.VIDEO_RECORD);
             mViewHolder.cameraView.takeVideoSnapshot(mVideoFile);
             // 设置录制状态
             if (mIsSectionRecord) {
@@ -697,10 +801,9 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
             @Override
             public void startProgress() {
                 if (mIsSectionRecord) {
-                    // 合并视频
-                    mNewSectionVideoPath = mVideoMediaStoreCompat.createFile(1, true).getPath();
-                    mCameraSpec.videoEditCoordinator.merge(mNewSectionVideoPath, mVideoPaths,
-                            mContext.getCacheDir().getPath() + File.separator + "cam.txt");
+                    // 等待后台合并完成，一般只剩下最后一段没合并
+                    mMergeSession = CaptureLatencyTracer.begin(CaptureLatencyListener.VIDEO_MERGE);
+                    mSectionMergeScheduler.commit();
                 } else {
                     mCameraStateManagement.pvLayoutCommit();
                 }
@@ -710,8 +813,9 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
             public void stopProgress() {
                 // 重置按钮
                 mViewHolder.pvLayout.resetBtnConfirm();
-                if (mCameraSpec.videoEditCoordinator != null) {
-                    mCameraSpec.videoEditCoordinator.onMergeDispose();
+                if (mSectionMergeScheduler != null) {
+                    // 只是取消等待，后台的合并继续
+                    mSectionMergeScheduler.cancelCommit();
                 }
             }
 
@@ -738,14 +842,10 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
      */
     private void initVideoEditListener() {
         if (mCameraSpec.videoEditCoordinator != null) {
-            mCameraSpec.videoEditCoordinator.setVideoMergeListener(new VideoEditListener() {
+            mSectionMergeScheduler = new SectionMergeScheduler(mCameraSpec.videoEditCoordinator, mVideoMediaStoreCompat,
+                    mContext.getCacheDir().getPath() + File.separator + "cam.txt", new SectionMergeScheduler.Listener() {
                 @Override
-                public void onFinish() {
-                    mViewHolder.pvLayout.getViewHolder().btnConfirm.setProgress(100);
-                }
-
-                @Override
-                public void onProgress(int progress, long progressTime) {
+                public void onProgress(int progress) {
                     if (progress >= PROGRESS_MAX) {
                         mViewHolder.pvLayout.getViewHolder().btnConfirm.setProgress(99);
                     } else {
@@ -754,12 +854,14 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
                 }
 
                 @Override
-                public void onCancel() {
-                    Log.d(TAG, "onCancel");
+                public void onMerged(String path) {
+                    mNewSectionVideoPath = path;
+                    CaptureLatencyTracer.mark(mMergeSession, CaptureLatencyListener.VIDEO_MERGED);
+                    mViewHolder.pvLayout.getViewHolder().btnConfirm.setProgress(100);
                 }
 
                 @Override
-                public void onError(@NotNull String message) {
+                public void onError(String message) {
                     Log.d(TAG, "onError" + message);
                 }
             });
@@ -772,14 +874,34 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
     private void initCameraViewListener() {
         mViewHolder.cameraView.addCameraListener(new CameraListener() {
 
+            @Override
+            public void onCameraOpened(@NonNull CameraOptions options) {
+                super.onCameraOpened(options);
+                if (mMainActivity != null) {
+                    mMainActivity.markStartup(CaptureLatencyListener.STARTUP_CAMERA_OPENED);
+                }
+            }
+
             @Override
             public void onPictureTaken(@NonNull PictureResult result) {
-                result.toBitmap(bitmap -> {
-                    // 显示图片
-                    addCaptureData(bitmap);
-                    // 恢复点击
-                    mViewHolder.rlMain.setChildClickable(true);
-                });
+                long session = mPictureSession;
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_FRAME);
+                if (mWaitingCaptureFrame) {
+                    // 连拍，保存交给子线程排队处理
+                    addCaptureDataPipelined(result, session);
+                } else if (mCameraSpec.directJpegCapture && result.getFormat() == PictureFormat.JPEG) {
+                    // 直接写入相机返回的jpeg数据，不需要解码再压缩
+                    addCaptureData(result.getData(), result.getRotation(), session);
+                } else {
+                    result.toBitmap(bitmap -> {
+                        if (mDestroyed || bitmap == null) {
+                            return;
+                        }
+                        CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_BITMAP);
+                        // 子线程保存后显示图片，再恢复点击
+                        addCaptureData(bitmap, session);
+                    });
+                }
                 super.onPictureTaken(result);
             }
 
@@ -787,6 +909,7 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
             public void onVideoTaken(@NonNull VideoResult result) {
                 Log.d(TAG, "onVideoTaken");
                 super.onVideoTaken(result);
+                CaptureLatencyTracer.mark(mVideoSession, CaptureLatencyListener.VIDEO_FINALIZED);
                 // 判断是否短时间结束
                 if (!mIsShort && !isBreakOff()) {
                     if (!mIsSectionRecord) {
@@ -801,8 +924,9 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
                             mViewHolder.pvLayout.startShowLeftRightButtonsAnimator();
                             mViewHolder.pvLayout.getViewHolder().tvSectionRecord.setVisibility(View.GONE);
                         }
-                        // 加入视频列表
+                        // 加入视频列表，并且在后台合并
                         mVideoPaths.add(result.getFile().getPath());
+                        mSectionMergeScheduler.add(result.getFile().getPath());
                         // 显示当前进度
                         mViewHolder.pvLayout.setData(mVideoTimes);
                         // 创建新的file
@@ -826,6 +950,7 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
             public void onVideoRecordingStart() {
                 Log.d(TAG, "onVideoRecordingStart");
                 super.onVideoRecordingStart();
+                CaptureLatencyTracer.mark(mVideoSession, CaptureLatencyListener.VIDEO_RECORD_STARTED);
                 // 录制开始后，在没有结果之前，禁止第二次点击
                 mViewHolder.pvLayout.setEnabled(false);
             }
@@ -843,6 +968,12 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
                     mErrorListener.onError();
                 }
                 mViewHolder.pvLayout.setEnabled(true);
+                if (mWaitingCaptureFrame) {
+                    // 连拍时这张图片拍摄失败了
+                    mWaitingCaptureFrame = false;
+                    mPendingCaptureCount--;
+                    rearmShutter();
+                }
             }
 
         });
@@ -877,6 +1008,15 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
      * 刷新多个图片
      */
     public void refreshMultiPhoto(ArrayList<BitmapData> bitmapDatas) {
+        // 保留拍照时生成的缩略图
+        for (BitmapData bitmapData : bitmapDatas) {
+            for (BitmapData captureData : mCaptureDatas) {
+                if (TextUtils.equals(captureData.getPath(), bitmapData.getPath())) {
+                    bitmapData.setThumbnail(captureData.getThumbnail());
+                    break;
+                }
+            }
+        }
         mCaptureDatas = bitmapDatas;
         mPhotoAdapter.setListData(mCaptureDatas);
     }
@@ -917,12 +1057,11 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
      * 删除视频 - 多个模式
      */
     public void removeVideoMultiple() {
-        // 每次删除，后面都要重新合成,新合成的也删除
+        // 每次删除，后面都要重新确认，后台合并的视频撤销最后一段的追加，不能撤销时重新合并剩下的分段
         mViewHolder.pvLayout.setProgressMode(true);
         mViewHolder.pvLayout.resetConfim();
-        if (mNewSectionVideoPath != null) {
-            FileUtil.deleteFile(mNewSectionVideoPath);
-        }
+        mNewSectionVideoPath = null;
+        mSectionMergeScheduler.removeLast();
         // 删除最后一个视频和视频文件
         FileUtil.deleteFile(mVideoPaths.get(mVideoPaths.size() - 1));
         mVideoPaths.remove(mVideoPaths.size() - 1);
@@ -993,67 +1132,53 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
 
     /**
      * 迁移图片文件，缓存文件迁移到配置目录
-     * 在 doInBackground 线程里面也执行了 runOnUiThread 跳转UI的最终事件
+     * 每个文件的压缩、拷贝在线程池中并行执行，全部完成后统一加入相册库
      */
     public void movePictureFile() {
+        if (mPendingCaptureCount > 0) {
+            // 连拍的图片还没保存完，等保存完再迁移
+            mMovePictureAfterCapture = true;
+            return;
+        }
+        long session = CaptureLatencyTracer.begin(CaptureLatencyListener.PICTURE_CONFIRM);
         // 执行等待动画
-        mViewHolder.pvLayout.getViewHolder().btnConfirm.setProgress(1);
+        mMoveProgress = 1;
+        mViewHolder.pvLayout.getViewHolder().btnConfirm.setProgress(mMoveProgress);
         // 开始迁移文件
-        ThreadUtils.executeByIo(new ThreadUtils.BaseSimpleBaseTask<Void>() {
+        ThreadUtils.executeByIo(new ThreadUtils.BaseSimpleBaseTask<MovedPictures>() {
             @Override
-            public Void doInBackground() {
+            public MovedPictures doInBackground() throws Exception {
                 ArrayList<String> paths = getPaths();
-                ArrayList<String> newPaths = new ArrayList<>();
-                // 总长度
-                int maxCount = paths.size();
-                // 计算每个文件的进度Progress
-                int progress = 100 / maxCount;
-                // 将 缓存文件 拷贝到 配置目录
+                if (mCameraSpec.mediaStorePublish && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    return publishPictures(paths, session);
+                }
+                // 每个文件分为压缩、拷贝两个步骤，最后统一加入相册库算一个步骤
+                int totalSteps = paths.size() * 2 + 1;
+                AtomicInteger doneSteps = new AtomicInteger();
+                ExecutorService pool = ThreadUtils.getFixedPool(MOVE_PICTURE_PARALLEL_COUNT);
+                List<Future<File>> futures = new ArrayList<>();
                 for (String item : paths) {
-                    File oldFile = new File(item);
-                    // 压缩图片
-                    File compressionFile = null;
-                    if (mGlobalSpec.compressionInterface != null) {
-                        try {
-                            compressionFile = mGlobalSpec.compressionInterface.compressionFile(mContext, oldFile);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    } else {
-                        compressionFile = oldFile;
-                    }
-                    // 获取文件名称
-                    String newFileName = item.substring(item.lastIndexOf(File.separator));
-                    File newFile = mPictureMediaStoreCompat.createFile(newFileName, 0, false);
-                    Log.d(TAG, "newFile" + newFile.getAbsolutePath());
-                    FileUtil.copy(compressionFile, newFile, null, (ioProgress, file) -> {
-                        if (ioProgress >= 1) {
-                            newPaths.add(file.getAbsolutePath());
-                            Log.d(TAG, file.getAbsolutePath());
-                            ThreadUtils.runOnUiThread(() -> {
-                                mViewHolder.pvLayout.getViewHolder().btnConfirm.addProgress(progress);
-                                // 是否拷贝完所有文件
-                                currentCount++;
-                                if (currentCount >= maxCount) {
-                                    currentCount = 0;
-                                    // 拷贝完毕，进行加入相册库等操作
-                                    ArrayList<Uri> uris = getUris(newPaths);
-                                    // 加入图片到android系统库里面
-                                    for (String path : newPaths) {
-                                        BitmapUtils.displayToGallery(getContext(), new File(path), TYPE_PICTURE, -1, mPictureMediaStoreCompat.getSaveStrategy().getDirectory(), mPictureMediaStoreCompat);
-                                    }
-                                    // 执行完成
-                                    mOperateCameraListener.captureSuccess(newPaths, uris);
-                                }
-                            });
-                        }
-                    });
+                    futures.add(pool.submit(() -> movePicture(item, session, doneSteps, totalSteps)));
+                }
+                // 按照拍摄的顺序获取结果
+                List<File> newFiles = getAll(futures);
+                ArrayList<String> newPaths = new ArrayList<>();
+                for (File newFile : newFiles) {
+                    newPaths.add(newFile.getAbsolutePath());
                 }
-                return null;
+                // 加入图片到android系统库里面
+                BitmapUtils.displayToGallery(getContext(), newFiles,
+                        mPictureMediaStoreCompat.getSaveStrategy().getDirectory(), mPictureMediaStoreCompat);
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_GALLERY);
+                updateMoveProgress(doneSteps.incrementAndGet(), totalSteps);
+                return new MovedPictures(newPaths, getUris(newPaths));
             }
 
             @Override
-            public void onSuccess(Void result) {
+            public void onSuccess(MovedPictures result) {
+                // 执行完成，直接发布到相册库的使用相册库的uri
+                mOperateCameraListener.captureSuccess(result.mPaths, result.mUris);
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_SUCCESS);
                 setUiEnableTrue();
             }
 
@@ -1066,25 +1191,496 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
         });
     }
 
+    /**
+     * Android10开始直接发布图片到相册库，不再拷贝到配置目录
+     * 压缩后批量插入 IS_PENDING 的记录，每个图片只写入一次，再批量取消 IS_PENDING
+     *
+     * @param paths   缓存文件的路径
+     * @param session 耗时会话
+     * @return 相册库中的路径、uri
+     */
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    private MovedPictures publishPictures(ArrayList<String> paths, long session) throws Exception {
+        // 每个文件分为压缩、写入两个步骤，插入和发布各算一个步骤
+        int totalSteps = paths.size() * 2 + 2;
+        AtomicInteger doneSteps = new AtomicInteger();
+        ExecutorService pool = ThreadUtils.getFixedPool(MOVE_PICTURE_PARALLEL_COUNT);
+        // 压缩
+        List<Future<File>> compressFutures = new ArrayList<>();
+        for (String item : paths) {
+            compressFutures.add(pool.submit(() -> {
+                File file = compressPicture(new File(item));
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_COMPRESSED);
+                updateMoveProgress(doneSteps.incrementAndGet(), totalSteps);
+                return file;
+            }));
+        }
+        List<File> files = getAll(compressFutures);
+        // 插入
+        List<Uri> uris = MediaStorePublisher.insertPending(mContext, files,
+                mPictureMediaStoreCompat.getSaveStrategy().getDirectory());
+        updateMoveProgress(doneSteps.incrementAndGet(), totalSteps);
+        try {
+            // 写入
+            List<Future<Void>> writeFutures = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                Uri uri = uris.get(i);
+                File file = files.get(i);
+                File original = new File(paths.get(i));
+                writeFutures.add(pool.submit(() -> {
+                    MediaStorePublisher.write(mContext, uri, file, original);
+                    CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_COPIED);
+                    updateMoveProgress(doneSteps.incrementAndGet(), totalSteps);
+                    return null;
+                }));
+            }
+            getAll(writeFutures);
+            // 发布
+            MediaStorePublisher.publish(mContext, uris);
+            CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_GALLERY);
+        } catch (Exception e) {
+            MediaStorePublisher.deletePending(mContext, uris);
+            throw e;
+        }
+        // 已经发布到相册库，删除缓存文件和压缩后的文件，跟移动文件时一样不留副本
+        for (int i = 0; i < files.size(); i++) {
+            FileUtil.deleteFile(files.get(i));
+            FileUtil.deleteFile(paths.get(i));
+        }
+        updateMoveProgress(doneSteps.incrementAndGet(), totalSteps);
+        return new MovedPictures(new ArrayList<>(MediaStoreBatchResolver.getPaths(mContext, uris)),
+                new ArrayList<>(uris));
+    }
+
+    /**
+     * 按顺序获取所有任务的结果，有一个失败则取消其他任务
+     *
+     * @param futures 任务列表
+     * @param <T>     结果类型
+     * @return 结果列表
+     */
+    private <T> List<T> getAll(List<Future<T>> futures) throws Exception {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        return results;
+    }
+
+    /**
+     * 压缩图片，没有设置压缩接口则返回原文件
+     *
+     * @param oldFile 缓存文件
+     * @return 压缩后的文件
+     * @throws IOException 压缩失败
+     */
+    private File compressPicture(File oldFile) throws IOException {
+        if (mGlobalSpec.compressionInterface != null) {
+            return mGlobalSpec.compressionInterface.compressionFile(mContext, oldFile);
+        }
+        return oldFile;
+    }
+
+    /**
+     * 压缩并且移动单个图片到配置目录，在线程池中执行
+     *
+     * @param path       缓存文件的路径
+     * @param session    耗时会话
+     * @param doneSteps  已经完成的步骤数量
+     * @param totalSteps 总共的步骤数量
+     * @return 配置目录中的新文件
+     * @throws IOException 压缩或者移动失败
+     */
+    private File movePicture(String path, long session, AtomicInteger doneSteps, int totalSteps) throws IOException {
+        // 压缩图片
+        File compressionFile = compressPicture(new File(path));
+        CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_COMPRESSED);
+        updateMoveProgress(doneSteps.incrementAndGet(), totalSteps);
+        // 获取文件名称
+        String newFileName = path.substring(path.lastIndexOf(File.separator));
+        File newFile = mPictureMediaStoreCompat.createFile(newFileName, 0, false);
+        Log.d(TAG, "newFile" + newFile.getAbsolutePath());
+        if (!FileUtil.move(compressionFile, newFile, null, null)) {
+            throw new IOException("move failed: " + path);
+        }
+        CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_COPIED);
+        updateMoveProgress(doneSteps.incrementAndGet(), totalSteps);
+        return newFile;
+    }
+
+    /**
+     * 更新迁移图片的进度，完成前最多显示99，避免按钮提前进入完成状态
+     *
+     * @param doneSteps  已经完成的步骤数量
+     * @param totalSteps 总共的步骤数量
+     */
+    private void updateMoveProgress(int doneSteps, int totalSteps) {
+        int progress = Math.min(doneSteps * PROGRESS_MAX / totalSteps, PROGRESS_MAX - 1);
+        ThreadUtils.runOnUiThread(() -> {
+            // 多个线程的回调顺序不固定，只允许进度增加
+            if (progress > mMoveProgress) {
+                mMoveProgress = progress;
+                mViewHolder.pvLayout.getViewHolder().btnConfirm.setProgress(progress);
+            }
+        });
+    }
+
+    /**
+     * 添加入数据源
+     * 压缩写入缓存文件和生成缩略图都在子线程，完成后再显示
+     *
+     * @param bitmap  bitmap
+     * @param session 耗时会话
+     */
+    private void addCaptureData(Bitmap bitmap, long session) {
+        boolean isMultiplePicture = isMultiplePicture();
+        ThreadUtils.executeByIo(new ThreadUtils.BaseSimpleBaseTask<BitmapData>() {
+            @Override
+            public BitmapData doInBackground() {
+                // 初始化数据并且存储进file
+                File file = mPictureMediaStoreCompat.saveFileByBitmap(bitmap, true);
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_CACHE_FILE);
+                // 多图时生成横向列表的缩略图
+                Bitmap thumbnail = isMultiplePicture ? ThumbnailUtil.fromBitmap(bitmap, mThumbnailSize) : null;
+                // 回收bitmap
+                if (bitmap.isRecycled()) {
+                    // 回收并且置为null
+                    bitmap.recycle();
+                }
+                // 加速回收机制
+                System.gc();
+                return createCaptureData(file, thumbnail);
+            }
+
+            @Override
+            public void onSuccess(BitmapData bitmapData) {
+                if (mDestroyed) {
+                    FileUtil.deleteFile(bitmapData.getPath());
+                    return;
+                }
+                // 显示图片
+                addCaptureData(bitmapData, session);
+                // 恢复点击
+                mViewHolder.rlMain.setChildClickable(true);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                if (mDestroyed) {
+                    return;
+                }
+                Toast.makeText(mContext, t.getMessage(), Toast.LENGTH_SHORT).show();
+                mViewHolder.rlMain.setChildClickable(true);
+            }
+        });
+    }
+
     /**
      * 添加入数据源
+     * 相机返回的jpeg数据原样写入缓存文件，保留了EXIF信息，在子线程写入后再显示
+     *
+     * @param data     相机返回的jpeg数据
+     * @param rotation 图片需要旋转的角度
+     * @param session  耗时会话
+     */
+    private void addCaptureData(byte[] data, int rotation, long session) {
+        boolean isMultiplePicture = isMultiplePicture();
+        ThreadUtils.executeByIo(new ThreadUtils.BaseSimpleBaseTask<BitmapData>() {
+            @Override
+            public BitmapData doInBackground() throws IOException {
+                File file = mPictureMediaStoreCompat.createFile(0, true);
+                try (FileOutputStream out = new FileOutputStream(file)) {
+                    out.write(data);
+                }
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_CACHE_FILE);
+                // 多图时按照缩略图大小采样解码，生成横向列表的缩略图
+                return createCaptureData(file, isMultiplePicture ? ThumbnailUtil.fromJpeg(data, rotation, mThumbnailSize) : null);
+            }
+
+            @Override
+            public void onSuccess(BitmapData bitmapData) {
+                if (mDestroyed) {
+                    FileUtil.deleteFile(bitmapData.getPath());
+                    return;
+                }
+                // 显示图片
+                addCaptureData(bitmapData, session);
+                // 恢复点击
+                mViewHolder.rlMain.setChildClickable(true);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                if (mDestroyed) {
+                    return;
+                }
+                Toast.makeText(mContext, t.getMessage(), Toast.LENGTH_SHORT).show();
+                mViewHolder.rlMain.setChildClickable(true);
+            }
+        });
+    }
+
+    /**
+     * 是否连拍
      *
-     * @param bitmap bitmap
-     */
-    private void addCaptureData(Bitmap bitmap) {
-        // 初始化数据并且存储进file
-        File file = mPictureMediaStoreCompat.saveFileByBitmap(bitmap, true);
-        Uri uri = mPictureMediaStoreCompat.getUri(file.getPath());
-        BitmapData bitmapData = new BitmapData(file.getPath(), uri);
-        // 回收bitmap
-        if (bitmap.isRecycled()) {
-            // 回收并且置为null
-            bitmap.recycle();
+     * @return 开启了连拍并且是多图拍照
+     */
+    private boolean isPipelinedCapture() {
+        return mCameraSpec.pipelinedCapture && currentMaxSelectable() > 1;
+    }
+
+    /**
+     * 连拍时添加入数据源
+     * 相机返回数据后马上恢复快门，图片在子线程保存，保存完按照拍摄的顺序加入数据源
+     *
+     * @param result  相机返回的数据
+     * @param session 耗时会话
+     */
+    private void addCaptureDataPipelined(PictureResult result, long session) {
+        mWaitingCaptureFrame = false;
+        int sequence = mCaptureSequence++;
+        mCaptureSessions.put(sequence, session);
+        if (mCameraSpec.directJpegCapture && result.getFormat() == PictureFormat.JPEG) {
+            saveCaptureData(sequence, session, result.getData(), result.getRotation(), null);
+        } else {
+            result.toBitmap(bitmap -> {
+                if (mDestroyed) {
+                    // 销毁后才解码完成，连拍的数据已经清空，不再保存
+                    if (bitmap != null) {
+                        bitmap.recycle();
+                    }
+                    return;
+                }
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_BITMAP);
+                if (bitmap == null) {
+                    onCaptureSaved(sequence, null);
+                } else {
+                    saveCaptureData(sequence, session, null, 0, bitmap);
+                }
+            });
         }
-        // 加速回收机制
-        System.gc();
+        // 相机数据已经拿到，恢复快门
+        rearmShutter();
+    }
+
+    /**
+     * 连拍时在子线程保存图片，jpeg数据原样写入，Bitmap则压缩后写入
+     *
+     * @param sequence 图片的序号
+     * @param session  耗时会话
+     * @param data     相机返回的jpeg数据
+     * @param rotation jpeg数据需要旋转的角度
+     * @param bitmap   相机数据解码后的bitmap
+     */
+    private void saveCaptureData(int sequence, long session, byte[] data, int rotation, Bitmap bitmap) {
+        ThreadUtils.BaseSimpleBaseTask<BitmapData> task = new ThreadUtils.BaseSimpleBaseTask<BitmapData>() {
+            @Override
+            public BitmapData doInBackground() throws IOException {
+                // 同一毫秒可能有多张图片，文件名加上序号
+                String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmssS", Locale.getDefault()).format(new Date());
+                File file = mPictureMediaStoreCompat.createFile(
+                        String.format(Locale.US, "JPEG_%s_%d.jpg", timeStamp, sequence), 0, true);
+                if (!trackCaptureFile(this, file)) {
+                    if (bitmap != null) {
+                        bitmap.recycle();
+                    }
+                    return null;
+                }
+                // 连拍都是多图，同时生成横向列表的缩略图
+                Bitmap thumbnail;
+                try (FileOutputStream out = new FileOutputStream(file)) {
+                    if (data != null) {
+                        out.write(data);
+                        thumbnail = ThumbnailUtil.fromJpeg(data, rotation, mThumbnailSize);
+                    } else {
+                        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+                        thumbnail = ThumbnailUtil.fromBitmap(bitmap, mThumbnailSize);
+                    }
+                } catch (IOException e) {
+                    untrackCaptureFile(file, true);
+                    throw e;
+                } finally {
+                    if (bitmap != null) {
+                        bitmap.recycle();
+                    }
+                }
+                // 写入的过程中取消了，删除写了一半的文件
+                if (!trackCaptureFile(this, file)) {
+                    return null;
+                }
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_CACHE_FILE);
+                return createCaptureData(file, thumbnail);
+            }
+
+            @Override
+            public void onSuccess(BitmapData bitmapData) {
+                onCaptureSaved(sequence, bitmapData);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                if (mDestroyed) {
+                    return;
+                }
+                Toast.makeText(mContext, t.getMessage(), Toast.LENGTH_SHORT).show();
+                onCaptureSaved(sequence, null);
+            }
+        };
+        mCaptureTasks.put(sequence, task);
+        ThreadUtils.executeByFixed(CAPTURE_PIPELINE_THREAD_COUNT, task);
+    }
+
+    /**
+     * 连拍的图片保存完，按照拍摄的顺序加入数据源
+     *
+     * @param sequence   图片的序号
+     * @param bitmapData 保存后的数据，保存失败是null
+     */
+    private void onCaptureSaved(int sequence, BitmapData bitmapData) {
+        if (bitmapData != null) {
+            // 销毁前已经保存完，销毁后才回调的直接删除
+            untrackCaptureFile(new File(bitmapData.getPath()), mDestroyed);
+        }
+        if (mDestroyed) {
+            return;
+        }
+        mCaptureTasks.remove(sequence);
+        mCaptureResults.put(sequence, bitmapData);
+        int index;
+        while ((index = mCaptureResults.indexOfKey(mNextCaptureSequence)) >= 0) {
+            BitmapData result = mCaptureResults.valueAt(index);
+            mCaptureResults.removeAt(index);
+            long session = mCaptureSessions.get(mNextCaptureSequence);
+            mCaptureSessions.delete(mNextCaptureSequence);
+            mNextCaptureSequence++;
+            mPendingCaptureCount--;
+            if (result != null) {
+                addCaptureData(result, session);
+            }
+        }
+        if (mMovePictureAfterCapture) {
+            if (mPendingCaptureCount <= 0) {
+                mMovePictureAfterCapture = false;
+                movePictureFile();
+            }
+        } else {
+            rearmShutter();
+        }
+    }
+
+    /**
+     * 记录连拍正在写入的文件，任务已经取消时删除文件
+     *
+     * @param task 保存的任务
+     * @param file 缓存文件
+     * @return 任务没有取消返回true
+     */
+    private boolean trackCaptureFile(ThreadUtils.BaseSimpleBaseTask<BitmapData> task, File file) {
+        synchronized (mCaptureFiles) {
+            if (task.isCanceled()) {
+                mCaptureFiles.remove(file.getPath());
+                FileUtil.deleteFile(file);
+                return false;
+            }
+            mCaptureFiles.add(file.getPath());
+            return true;
+        }
+    }
+
+    /**
+     * 连拍的文件已经加入数据源或者保存失败，不再由取消流程删除
+     *
+     * @param file   缓存文件
+     * @param delete 是否同时删除文件
+     */
+    private void untrackCaptureFile(File file, boolean delete) {
+        synchronized (mCaptureFiles) {
+            mCaptureFiles.remove(file.getPath());
+        }
+        if (delete) {
+            FileUtil.deleteFile(file);
+        }
+    }
+
+    /**
+     * 连拍时恢复快门，正在等待相机数据或者正在保存的图片过多时不恢复
+     */
+    private void rearmShutter() {
+        if (!mWaitingCaptureFrame && !mMovePictureAfterCapture
+                && mPendingCaptureCount < MAX_PENDING_CAPTURE_COUNT) {
+            mViewHolder.rlMain.setChildClickable(true);
+        }
+    }
+
+    /**
+     * 取消连拍还没保存完的图片，删除还没加入数据源的文件
+     */
+    private void cancelCapturePipeline() {
+        for (int i = 0; i < mCaptureTasks.size(); i++) {
+            ThreadUtils.cancel(mCaptureTasks.valueAt(i));
+        }
+        mCaptureTasks.clear();
+        // 已经取消的任务可能写了一半，或者写完了但是不会再回调
+        synchronized (mCaptureFiles) {
+            for (String path : mCaptureFiles) {
+                FileUtil.deleteFile(path);
+            }
+            mCaptureFiles.clear();
+        }
+        for (int i = 0; i < mCaptureResults.size(); i++) {
+            BitmapData bitmapData = mCaptureResults.valueAt(i);
+            if (bitmapData != null) {
+                FileUtil.deleteFile(bitmapData.getPath());
+            }
+        }
+        mCaptureResults.clear();
+        mCaptureSessions.clear();
+        mPendingCaptureCount = 0;
+        mWaitingCaptureFrame = false;
+        mMovePictureAfterCapture = false;
+    }
+
+    /**
+     * 是否多图，多图时拍照后显示在横向列表
+     *
+     * @return 图片的最大数量大于1
+     */
+    private boolean isMultiplePicture() {
+        return SelectableUtils.getImageMaxCount() > 1;
+    }
+
+    /**
+     * 创建数据源，可以在子线程调用
+     *
+     * @param file      拍照后的缓存文件
+     * @param thumbnail 横向列表的缩略图，单图时是null
+     * @return 数据源
+     */
+    private BitmapData createCaptureData(File file, Bitmap thumbnail) {
+        BitmapData bitmapData = new BitmapData(file.getPath(), mPictureMediaStoreCompat.getUri(file.getPath()));
+        bitmapData.setThumbnail(thumbnail);
+        return bitmapData;
+    }
+
+    /**
+     * 添加入数据源
+     *
+     * @param bitmapData 拍照后的数据源
+     * @param session    耗时会话
+     */
+    private void addCaptureData(BitmapData bitmapData, long session) {
         // 判断是否多个图片
-        if (SelectableUtils.getImageMaxCount() > 1) {
+        if (isMultiplePicture()) {
             // 添加入数据源
             mCaptureDatas.add(bitmapData);
             showMultiplePicture();
@@ -1092,10 +1688,11 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
             mCaptureListener.add(mCaptureDatas);
         } else {
             mBitmapData.add(bitmapData);
-            showSinglePicture(bitmapData, file, uri);
+            showSinglePicture(bitmapData, new File(bitmapData.getPath()), bitmapData.getUri());
             // 回调接口：添加图片后剩下的相关数据
             mCaptureListener.add(mBitmapData);
         }
+        CaptureLatencyTracer.mark(session, CaptureLatencyListener.PICTURE_THUMBNAIL);
     }
 
     /**
@@ -1320,6 +1917,21 @@ public class CameraLayout extends RelativeLayout implements PhotoAdapterListener
         }
     }
 
+    /**
+     * 迁移或者发布后的图片
+     */
+    private static class MovedPictures {
+
+        final ArrayList<String> mPaths;
+        final ArrayList<Uri> mUris;
+
+        MovedPictures(ArrayList<String> paths, ArrayList<Uri> uris) {
+            mPaths = paths;
+            mUris = uris;
+        }
+
+    }
+
     public static class ViewHolder {
 
         View rootView;
@@ -11,9 +11,11 @@ import android.widget.VideoView;
 
 import com.zhongjh.albumcamerarecorder.R;
 import com.zhongjh.albumcamerarecorder.camera.util.FileUtil;
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
 import com.zhongjh.albumcamerarecorder.settings.CameraSpec;
 import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
 import com.zhongjh.albumcamerarecorder.utils.BitmapUtils;
+import com.zhongjh.albumcamerarecorder.utils.CaptureLatencyTracer;
 import com.zhongjh.albumcamerarecorder.widget.progressbutton.CircularProgressButton;
 
 import java.io.File;
@@ -186,9 +188,11 @@ public class PreviewVideoActivity extends AppCompatActivity {
         // 获取文件名称
         String newFileName = mPath.substring(mPath.lastIndexOf(File.separator));
         File newFile = mVideoMediaStoreCompat.createFile(newFileName, 1, false);
+        long session = CaptureLatencyTracer.begin(CaptureLatencyListener.VIDEO_COMPRESS);
         mCameraSpec.videoEditCoordinator.setVideoCompressListener(new VideoEditListener() {
             @Override
             public void onFinish() {
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.VIDEO_COMPRESSED);
                 confirm(newFile);
             }
 
@@ -217,14 +221,14 @@ public class PreviewVideoActivity extends AppCompatActivity {
         Log.d(TAG,"moveVideoFile");
         // 执行等待动画
         mBtnConfirm.setProgress(50);
-        // 开始迁移文件，将 缓存文件 拷贝到 配置目录
+        // 开始迁移文件，将 缓存文件 移动到 配置目录，同一个分区直接重命名
         ThreadUtils.executeByIo(new ThreadUtils.BaseSimpleBaseTask<Void>() {
             @Override
             public Void doInBackground() {
                 // 获取文件名称
                 String newFileName = mPath.substring(mPath.lastIndexOf(File.separator));
                 File newFile = mVideoMediaStoreCompat.createFile(newFileName, 1, false);
-                FileUtil.copy(new File(mPath), newFile, null, (ioProgress, file) -> {
+                FileUtil.move(new File(mPath), newFile, null, (ioProgress, file) -> {
                     if (ioProgress >= 1) {
                         ThreadUtils.runOnUiThread(() -> {
                             mBtnConfirm.setProgress(100);
@@ -0,0 +1,286 @@
+package com.zhongjh.albumcamerarecorder.camera;
+
+import com.zhongjh.albumcamerarecorder.camera.util.FileUtil;
+import com.zhongjh.common.coordinator.VideoEditCoordinator;
+import com.zhongjh.common.listener.VideoEditListener;
+import com.zhongjh.common.utils.MediaStoreCompat;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+
+/**
+ * 分段录制的后台合并
+ * 每录制完一段就在后台把它追加到已经合并好的视频后面，点击确认时一般只需要等待最后一段的追加
+ * 追加只写入新的分段，所有分段总共只写入一次，同时只保留一个合并的视频
+ * 删除已经追加的最后一段时撤销最后一次追加（{@link VideoEditCoordinator#undoAppend}），
+ * 不支持撤销或者正在追加这一段时才丢弃合并好的视频，重新合并剩下的分段
+ * 每次追加使用新的事件并且记录代数，停止追加后迟到的回调属于旧的代数，直接忽略
+ * 所有的回调都在主线程
+ *
+ * @author zhongjh
+ */
+class SectionMergeScheduler {
+
+    /**
+     * 确认后的合并回调
+     */
+    interface Listener {
+
+        /**
+         * 最后一次合并的进度
+         *
+         * @param progress 进度百分比
+         */
+        void onProgress(int progress);
+
+        /**
+         * 所有分段合并完成
+         *
+         * @param path 合并后的视频
+         */
+        void onMerged(String path);
+
+        /**
+         * 合并失败
+         *
+         * @param message 信息
+         */
+        void onError(String message);
+
+    }
+
+    private final VideoEditCoordinator mCoordinator;
+    private final MediaStoreCompat mMediaStoreCompat;
+    private final String mTxtPath;
+    private final Listener mListener;
+    /**
+     * 已经录制完的分段
+     */
+    private final ArrayList<String> mSegments = new ArrayList<>();
+    /**
+     * 合并的视频，已经追加了前 mMergedCount 段
+     */
+    private String mMergedPath;
+    private int mMergedCount;
+    /**
+     * 最后一次追加前已经追加的段数，撤销最后一次追加后恢复成这个段数，-1表示不能撤销
+     */
+    private int mUndoCount = -1;
+    /**
+     * 是否正在追加，追加完成后是前 mMergingCount 段
+     */
+    private boolean mMerging;
+    private int mMergingCount;
+    /**
+     * 是否点击了确认，正在等待合并完成
+     */
+    private boolean mCommitting;
+    /**
+     * 当前追加的代数，停止追加时加一
+     */
+    private int mGeneration;
+    /**
+     * 当前追加的事件，ffmpeg只弱引用事件，需要在这里持有
+     */
+    private MergeListener mMergeListener;
+
+    SectionMergeScheduler(VideoEditCoordinator coordinator, MediaStoreCompat mediaStoreCompat,
+                          String txtPath, Listener listener) {
+        mCoordinator = coordinator;
+        mMediaStoreCompat = mediaStoreCompat;
+        mTxtPath = txtPath;
+        mListener = listener;
+    }
+
+    /**
+     * 添加录制完的分段，在后台合并
+     *
+     * @param path 分段的视频
+     */
+    void add(String path) {
+        mSegments.add(path);
+        schedule();
+    }
+
+    /**
+     * 删除最后一段
+     * 已经追加了最后一段的话撤销最后一次追加，再追加剩下的分段；正在追加最后一段或者不能撤销时丢弃合并的视频
+     */
+    void removeLast() {
+        mSegments.remove(mSegments.size() - 1);
+        int count = mSegments.size();
+        if (mMerging && mMergingCount > count) {
+            // 停止的追加可能还在子线程恢复文件，不能再使用
+            discardMerged();
+        } else if (mMergedCount > count) {
+            if (mUndoCount >= 0 && mUndoCount <= count && mCoordinator.undoAppend(mMergedPath)) {
+                mMergedCount = mUndoCount;
+                mUndoCount = -1;
+            } else {
+                discardMerged();
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * 点击确认，所有分段合并完成后回调 {@link Listener#onMerged}
+     */
+    void commit() {
+        mCommitting = true;
+        schedule();
+    }
+
+    /**
+     * 取消等待，后台的合并继续执行
+     */
+    void cancelCommit() {
+        mCommitting = false;
+    }
+
+    /**
+     * 停止合并，删除合并的视频
+     *
+     * @param keepPath 不删除的视频，一般是已经提交的视频
+     */
+    void release(String keepPath) {
+        mCommitting = false;
+        stopMerging();
+        if (mMergedPath != null && !mMergedPath.equals(keepPath)) {
+            FileUtil.deleteFile(mMergedPath);
+        }
+        deleteAppendBackup();
+        mMergedPath = null;
+        mMergedCount = 0;
+        mUndoCount = -1;
+        mSegments.clear();
+    }
+
+    /**
+     * 停止追加，删除合并的视频，下次重新合并
+     * 停止的追加可能还在子线程恢复文件，不再使用这个文件
+     */
+    private void discardMerged() {
+        stopMerging();
+        if (mMergedPath != null) {
+            FileUtil.deleteFile(mMergedPath);
+        }
+        deleteAppendBackup();
+        mMergedPath = null;
+        mMergedCount = 0;
+        mUndoCount = -1;
+    }
+
+    /**
+     * 删除默认的 {@link VideoEditCoordinator#append} 重新合并时留下的旧视频
+     */
+    private void deleteAppendBackup() {
+        if (mMergedPath != null) {
+            FileUtil.deleteFile(VideoEditCoordinator.appendBackupPath(mMergedPath));
+        }
+    }
+
+    /**
+     * 停止正在进行的追加，之后它的回调都会被忽略
+     */
+    private void stopMerging() {
+        if (mMerging) {
+            mGeneration++;
+            mCoordinator.onMergeDispose();
+            mMerging = false;
+        }
+    }
+
+    /**
+     * 把还没追加的分段追加到合并的视频，同时只有一个追加
+     */
+    private void schedule() {
+        if (mMerging) {
+            return;
+        }
+        if (mMergedCount == mSegments.size()) {
+            if (mCommitting && mMergedPath != null) {
+                mCommitting = false;
+                mListener.onMerged(mMergedPath);
+            }
+            return;
+        }
+        if (mMergedPath == null) {
+            mMergedPath = mMediaStoreCompat.createFile(1, true).getPath();
+        }
+        mMerging = true;
+        mMergingCount = mSegments.size();
+        mMergeListener = new MergeListener(++mGeneration);
+        mCoordinator.setVideoMergeListener(mMergeListener);
+        mCoordinator.append(mMergedPath, new ArrayList<>(mSegments.subList(mMergedCount, mMergingCount)), mTxtPath);
+    }
+
+    private void onFinish() {
+        mMerging = false;
+        deleteAppendBackup();
+        mUndoCount = mMergedCount;
+        mMergedCount = mMergingCount;
+        schedule();
+    }
+
+    private void onProgress(int progress) {
+        // 只有确认后最后一次合并才显示进度
+        if (mCommitting && mMergingCount == mSegments.size()) {
+            mListener.onProgress(progress);
+        }
+    }
+
+    private void onError(String message) {
+        mMerging = false;
+        discardMerged();
+        if (mCommitting) {
+            mCommitting = false;
+            mListener.onError(message);
+        }
+    }
+
+    /**
+     * 一次追加的事件，只处理当前代数的回调
+     */
+    private class MergeListener implements VideoEditListener {
+
+        private final int mGeneration;
+
+        MergeListener(int generation) {
+            mGeneration = generation;
+        }
+
+        private boolean isCurrent() {
+            return mMerging && mGeneration == SectionMergeScheduler.this.mGeneration;
+        }
+
+        @Override
+        public void onFinish() {
+            if (isCurrent()) {
+                SectionMergeScheduler.this.onFinish();
+            }
+        }
+
+        @Override
+        public void onProgress(int progress, long progressTime) {
+            if (isCurrent()) {
+                SectionMergeScheduler.this.onProgress(progress);
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            // 取消都是主动调用的，在调用的地方已经处理
+        }
+
+        @Override
+        public void onError(@NotNull String message) {
+            if (isCurrent()) {
+                SectionMergeScheduler.this.onError(message);
+            }
+        }
+
+    }
+
+}
@@ -2,6 +2,7 @@ package com.zhongjh.albumcamerarecorder.camera.adapter;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -16,17 +17,21 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.zhongjh.albumcamerarecorder.R;
 import com.zhongjh.albumcamerarecorder.camera.CameraLayout;
 import com.zhongjh.albumcamerarecorder.camera.entity.BitmapData;
+import com.zhongjh.albumcamerarecorder.camera.util.ThumbnailUtil;
 import com.zhongjh.albumcamerarecorder.preview.AlbumPreviewActivity;
 import com.zhongjh.albumcamerarecorder.preview.BasePreviewActivity;
 import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import com.zhongjh.common.entity.MultiMedia;
 import com.zhongjh.common.enums.MimeType;
 import com.zhongjh.common.enums.MultimediaTypes;
+import com.zhongjh.common.utils.ThreadUtils;
 
 import static com.zhongjh.albumcamerarecorder.album.model.SelectedItemCollection.COLLECTION_IMAGE;
 import static com.zhongjh.albumcamerarecorder.album.model.SelectedItemCollection.STATE_COLLECTION_TYPE;
@@ -47,6 +52,14 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
     Fragment mFragment;
     GlobalSpec mGlobalSpec;
     List<BitmapData> mListData;
+    /**
+     * 缩略图的边长，跟列表的图片大小一致
+     */
+    private final int mThumbnailSize;
+    /**
+     * 正在生成缩略图的数据
+     */
+    private final Set<BitmapData> mLoadingThumbnails = new HashSet<>();
 
     // region 回调监听事件
 
@@ -61,6 +74,7 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         mGlobalSpec = globalSpec;
         this.mListData = listData;
         mPhotoAdapterListener = photoAdapterListener;
+        mThumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.photo_thumbnail_size);
     }
 
     @NonNull
@@ -71,12 +85,55 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
 
     @Override
     public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position) {
-        mGlobalSpec.imageEngine.loadUriImage(mContext, holder.imgPhoto, mListData.get(position).getUri());
+        BitmapData bitmapData = mListData.get(position);
+        if (bitmapData.getThumbnail() != null) {
+            // 使用拍照时生成的缩略图，不再解码原图
+            holder.imgPhoto.setImageBitmap(bitmapData.getThumbnail());
+        } else {
+            holder.imgPhoto.setImageDrawable(null);
+            loadThumbnail(bitmapData);
+        }
         // 点击图片
         holder.itemView.setOnClickListener(v -> onClickListener(position));
         holder.imgCancel.setOnClickListener(v -> removePosition(position));
     }
 
+    /**
+     * 没有缩略图时在子线程按照缩略图大小采样解码，完成后刷新该图片
+     *
+     * @param bitmapData 数据
+     */
+    private void loadThumbnail(BitmapData bitmapData) {
+        if (!mLoadingThumbnails.add(bitmapData)) {
+            return;
+        }
+        ThreadUtils.executeByIo(new ThreadUtils.BaseSimpleBaseTask<Bitmap>() {
+            @Override
+            public Bitmap doInBackground() {
+                return ThumbnailUtil.fromFile(bitmapData.getPath(), mThumbnailSize);
+            }
+
+            @Override
+            public void onSuccess(Bitmap result) {
+                mLoadingThumbnails.remove(bitmapData);
+                if (result == null) {
+                    return;
+                }
+                bitmapData.setThumbnail(result);
+                int index = mListData.indexOf(bitmapData);
+                if (index >= 0) {
+                    notifyItemChanged(index);
+                }
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                mLoadingThumbnails.remove(bitmapData);
+            }
+        });
+    }
+
     public List<BitmapData> getListData() {
         return mListData;
     }
@@ -1,5 +1,6 @@
 package com.zhongjh.albumcamerarecorder.camera.entity;
 
+import android.graphics.Bitmap;
 import android.net.Uri;
 
 import java.io.File;
@@ -13,6 +14,10 @@ public class BitmapData {
 
     private String path;
     private Uri uri;
+    /**
+     * 横向列表使用的缩略图，拍照时生成
+     */
+    private Bitmap thumbnail;
 
     public BitmapData(String path, Uri uri) {
         this.path = path;
@@ -35,4 +40,12 @@ public class BitmapData {
         this.uri = uri;
     }
 
+    public Bitmap getThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(Bitmap thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
 }
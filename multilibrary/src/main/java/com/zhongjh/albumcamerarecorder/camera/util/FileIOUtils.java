@@ -1,13 +1,19 @@
 package com.zhongjh.albumcamerarecorder.camera.util;
 
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * 文件流工具类
@@ -86,6 +92,121 @@ public class FileIOUtils {
         }
     }
 
+    /**
+     * 文件之间的拷贝，使用 FileChannel.transferTo 由内核直接拷贝，不经过用户空间的缓冲区
+     * 有进度回调时按 sBufferSize 分段拷贝，用于回调进度
+     *
+     * @param file     目标文件
+     * @param srcFile  源文件
+     * @param listener The progress update listener.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean writeFileFromFile(final File file,
+                                            final File srcFile,
+                                            final OnProgressUpdateListener listener) {
+        if (srcFile == null || !srcFile.isFile() || !FileUtil.createOrExistsFile(file)) {
+            Log.e("FileIOUtils", "create file <" + file + "> failed.");
+            return false;
+        }
+        try (FileChannel in = new FileInputStream(srcFile).getChannel();
+             FileChannel out = new FileOutputStream(file, false).getChannel()) {
+            return transfer(in, out, file, listener);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 将文件写入content类型的uri，例如相册库的记录
+     * 通过 openFileDescriptor 获取文件描述符，同样使用 FileChannel.transferTo 拷贝
+     *
+     * @param context  上下文
+     * @param uri      目标uri
+     * @param srcFile  源文件
+     * @param listener The progress update listener.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean writeUriFromFile(final Context context,
+                                           final Uri uri,
+                                           final File srcFile,
+                                           final OnProgressUpdateListener listener) {
+        if (uri == null || srcFile == null || !srcFile.isFile()) {
+            Log.e("FileIOUtils", "write uri <" + uri + "> failed.");
+            return false;
+        }
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "w")) {
+            if (pfd == null) {
+                return false;
+            }
+            try (FileChannel in = new FileInputStream(srcFile).getChannel();
+                 FileChannel out = new FileOutputStream(pfd.getFileDescriptor()).getChannel()) {
+                return transfer(in, out, srcFile, listener);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 使用 FileChannel.transferTo 拷贝，有进度回调时按 sBufferSize 分段拷贝
+     */
+    private static boolean transfer(final FileChannel in,
+                                    final FileChannel out,
+                                    final File file,
+                                    final OnProgressUpdateListener listener) throws IOException {
+        long totalSize = in.size();
+        long chunkSize = listener == null ? totalSize : sBufferSize;
+        if (listener != null) {
+            listener.onProgressUpdate(0, file);
+        }
+        long curSize = 0;
+        while (curSize < totalSize) {
+            long len = in.transferTo(curSize, Math.min(chunkSize, totalSize - curSize), out);
+            if (len <= 0) {
+                // transferTo 在部分文件系统上可能不返回数据，剩下的部分使用缓冲区拷贝
+                return writeRemainingFromChannel(in, out, curSize, totalSize, file, listener);
+            }
+            curSize += len;
+            if (listener != null && curSize < totalSize) {
+                listener.onProgressUpdate((double) curSize / totalSize, file);
+            }
+        }
+        if (listener != null) {
+            listener.onProgressUpdate(1, file);
+        }
+        return true;
+    }
+
+    /**
+     * transferTo 失败时，使用缓冲区拷贝剩下的部分
+     */
+    private static boolean writeRemainingFromChannel(final FileChannel in,
+                                                     final FileChannel out,
+                                                     long curSize,
+                                                     final long totalSize,
+                                                     final File file,
+                                                     final OnProgressUpdateListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(sBufferSize);
+        in.position(curSize);
+        for (int len; (len = in.read(buffer)) != -1; ) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+            curSize += len;
+            if (listener != null && curSize < totalSize) {
+                listener.onProgressUpdate((double) curSize / totalSize, file);
+            }
+        }
+        if (listener != null) {
+            listener.onProgressUpdate(1, file);
+        }
+        return true;
+    }
+
     public interface OnProgressUpdateListener {
         void onProgressUpdate(double progress, File file);
     }
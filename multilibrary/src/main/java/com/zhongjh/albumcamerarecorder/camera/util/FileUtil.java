@@ -1,8 +1,8 @@
 package com.zhongjh.albumcamerarecorder.camera.util;
 
+import com.zhongjh.common.utils.CacheFileManager;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 
 /**
@@ -24,7 +24,11 @@ public class FileUtil {
      * @return {@code true}: success<br>{@code false}: fail
      */
     public static boolean deleteFile(final File file) {
-        return file != null && (!file.exists() || file.isFile() && file.delete());
+        if (file == null) {
+            return false;
+        }
+        CacheFileManager.remove(file);
+        return !file.exists() || file.isFile() && file.delete();
     }
 
     /**
@@ -57,9 +61,33 @@ public class FileUtil {
         if (src.isDirectory()) {
             return copyDir(src, dest, listener, onProgressUpdateListener);
         }
+        // 缓存文件再次被使用
+        CacheFileManager.touch(src);
         return copyFile(src, dest, listener, onProgressUpdateListener);
     }
 
+    /**
+     * Move the directory or file.
+     * 同一分区下直接重命名，否则拷贝后删除源文件
+     *
+     * @param src      The source.
+     * @param dest     The destination.
+     * @param listener The replace listener.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean move(final File src,
+                               final File dest,
+                               final OnReplaceListener listener,
+                               final FileIOUtils.OnProgressUpdateListener onProgressUpdateListener) {
+        if (src == null) {
+            return false;
+        }
+        if (src.isDirectory()) {
+            return copyOrMoveDir(src, dest, listener, onProgressUpdateListener, true);
+        }
+        return copyOrMoveFile(src, dest, listener, onProgressUpdateListener, true);
+    }
+
     /**
      * Copy the directory.
      *
@@ -72,7 +100,7 @@ public class FileUtil {
                                    final File destDir,
                                    final OnReplaceListener listener,
                                    final FileIOUtils.OnProgressUpdateListener onProgressUpdateListener) {
-        return copyOrMoveDir(srcDir, destDir, listener, onProgressUpdateListener, true);
+        return copyOrMoveDir(srcDir, destDir, listener, onProgressUpdateListener, false);
     }
 
     /**
@@ -87,7 +115,7 @@ public class FileUtil {
                                     final File destFile,
                                     final OnReplaceListener listener,
                                     final FileIOUtils.OnProgressUpdateListener onProgressUpdateListener) {
-        return copyOrMoveFile(srcFile, destFile, listener, onProgressUpdateListener, true);
+        return copyOrMoveFile(srcFile, destFile, listener, onProgressUpdateListener, false);
     }
 
     private static boolean copyOrMoveDir(final File srcDir,
@@ -158,13 +186,16 @@ public class FileUtil {
         if (!createOrExistsDir(destFile.getParentFile())) {
             return false;
         }
-        try {
-            return FileIOUtils.writeFileFromIS(destFile, new FileInputStream(srcFile), false, onProgressUpdateListener)
-                    && !(isMove && !deleteFile(srcFile));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return false;
+        // 同一个分区下的移动直接重命名，不需要拷贝数据
+        if (isMove && srcFile.renameTo(destFile)) {
+            CacheFileManager.remove(srcFile);
+            if (onProgressUpdateListener != null) {
+                onProgressUpdateListener.onProgressUpdate(1, destFile);
+            }
+            return true;
         }
+        return FileIOUtils.writeFileFromFile(destFile, srcFile, onProgressUpdateListener)
+                && !(isMove && !deleteFile(srcFile));
     }
 
     /**
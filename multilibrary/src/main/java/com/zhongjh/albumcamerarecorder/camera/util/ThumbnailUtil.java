@@ -0,0 +1,129 @@
+package com.zhongjh.albumcamerarecorder.camera.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.media.ThumbnailUtils;
+
+import java.io.IOException;
+
+/**
+ * 生成拍照后横向列表使用的缩略图
+ * 缩略图是居中裁剪的正方形，解码时按照采样率缩小，不会解码完整大小的图片
+ *
+ * @author zhongjh
+ */
+public class ThumbnailUtil {
+
+    /**
+     * 从已经解码的图片生成缩略图，不会回收原图
+     *
+     * @param source 原图
+     * @param size   缩略图的边长
+     * @return 缩略图
+     */
+    public static Bitmap fromBitmap(Bitmap source, int size) {
+        return ThumbnailUtils.extractThumbnail(source, size, size);
+    }
+
+    /**
+     * 从相机返回的jpeg数据生成缩略图
+     *
+     * @param data     jpeg数据
+     * @param rotation 需要旋转的角度
+     * @param size     缩略图的边长
+     * @return 缩略图，解码失败返回null
+     */
+    public static Bitmap fromJpeg(byte[] data, int rotation, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        options.inSampleSize = getSampleSize(options, size);
+        options.inJustDecodeBounds = false;
+        return extract(BitmapFactory.decodeByteArray(data, 0, data.length, options), rotation, size);
+    }
+
+    /**
+     * 从图片文件生成缩略图，根据EXIF信息旋转
+     *
+     * @param path 图片文件
+     * @param size 缩略图的边长
+     * @return 缩略图，解码失败返回null
+     */
+    public static Bitmap fromFile(String path, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        options.inSampleSize = getSampleSize(options, size);
+        options.inJustDecodeBounds = false;
+        return extract(BitmapFactory.decodeFile(path, options), getRotation(path), size);
+    }
+
+    /**
+     * 获取采样率，保证缩小后的短边不小于缩略图的边长
+     *
+     * @param options 已经获取了宽高的参数
+     * @param size    缩略图的边长
+     * @return 采样率
+     */
+    private static int getSampleSize(BitmapFactory.Options options, int size) {
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 裁剪、旋转成缩略图，并且回收采样后的图片
+     *
+     * @param sampled  采样后的图片
+     * @param rotation 需要旋转的角度
+     * @param size     缩略图的边长
+     * @return 缩略图
+     */
+    private static Bitmap extract(Bitmap sampled, int rotation, int size) {
+        if (sampled == null) {
+            return null;
+        }
+        Bitmap thumbnail = ThumbnailUtils.extractThumbnail(sampled, size, size, ThumbnailUtils.OPTIONS_RECYCLE_INPUT);
+        if (rotation % 360 == 0) {
+            return thumbnail;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotation);
+        Bitmap rotated = Bitmap.createBitmap(thumbnail, 0, 0, thumbnail.getWidth(), thumbnail.getHeight(), matrix, true);
+        if (rotated != thumbnail) {
+            thumbnail.recycle();
+        }
+        return rotated;
+    }
+
+    /**
+     * 获取图片文件EXIF信息中的旋转角度
+     *
+     * @param path 图片文件
+     * @return 旋转角度
+     */
+    private static int getRotation(String path) {
+        try {
+            int orientation = new ExifInterface(path).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+}
@@ -23,13 +23,19 @@ public class Constant {
      */
     public static final String EXTRA_MULTIMEDIA_CHOICE = "extra_multimedia_choice";
     /**
-     * Uri的数据
+     * Uri的数据，相册选择的结果只写入 {@link #EXTRA_RESULT_SELECTION_BATCH}，
+     * 需要通过 {@link com.zhongjh.albumcamerarecorder.settings.MultiMediaSetting#obtainResult} 读取
      */
     public static final String EXTRA_RESULT_SELECTION = "extra_result_selection";
     /**
-     * path的数据
+     * path的数据，相册选择的结果只写入 {@link #EXTRA_RESULT_SELECTION_BATCH}，
+     * 需要通过 {@link com.zhongjh.albumcamerarecorder.settings.MultiMediaSetting#obtainPathResult} 读取
      */
     public static final String EXTRA_RESULT_SELECTION_PATH = "extra_result_selection_path";
+    /**
+     * 相册选择的uri和path数据，{@link com.zhongjh.albumcamerarecorder.album.entity.SelectionResult}
+     */
+    public static final String EXTRA_RESULT_SELECTION_BATCH = "extra_result_selection_batch";
     /**
      * 录像的第一帧图片
      */
@@ -0,0 +1,127 @@
+package com.zhongjh.albumcamerarecorder.listener;
+
+/**
+ * 打开界面、拍照、录像、录音各个阶段的耗时监听
+ * 一次操作是一个会话，会话的第一个阶段是开始时间，后面的阶段减去开始时间就是耗时
+ * 会在主线程和子线程回调，实现需要线程安全并且不能执行耗时操作
+ * 默认实现 {@link com.zhongjh.albumcamerarecorder.utils.CaptureLatencyAggregator}
+ *
+ * @author zhongjh
+ */
+public interface CaptureLatencyListener {
+
+    /**
+     * 打开界面：onCreate，会话开始
+     */
+    String STARTUP = "startup";
+    /**
+     * 打开界面：第一次绘制
+     */
+    String STARTUP_FIRST_FRAME = "startup_first_frame";
+    /**
+     * 打开界面：相机打开
+     */
+    String STARTUP_CAMERA_OPENED = "startup_camera_opened";
+    /**
+     * 打开界面：相册绑定第一个缩略图
+     */
+    String STARTUP_FIRST_THUMBNAIL = "startup_first_thumbnail";
+    /**
+     * 拍照：按下快门，会话开始
+     */
+    String PICTURE_SHUTTER = "picture_shutter";
+    /**
+     * 拍照：相机返回数据
+     */
+    String PICTURE_FRAME = "picture_frame";
+    /**
+     * 拍照：解码成bitmap，直接写入jpeg时没有这个阶段
+     */
+    String PICTURE_BITMAP = "picture_bitmap";
+    /**
+     * 拍照：写入缓存文件
+     */
+    String PICTURE_CACHE_FILE = "picture_cache_file";
+    /**
+     * 拍照：显示缩略图
+     */
+    String PICTURE_THUMBNAIL = "picture_thumbnail";
+    /**
+     * 提交图片：点击确认，会话开始
+     */
+    String PICTURE_CONFIRM = "picture_confirm";
+    /**
+     * 提交图片：压缩完成，多图时每个图片一次
+     */
+    String PICTURE_COMPRESSED = "picture_compressed";
+    /**
+     * 提交图片：拷贝或者写入相册库完成，多图时每个图片一次
+     */
+    String PICTURE_COPIED = "picture_copied";
+    /**
+     * 提交图片：加入相册库完成
+     */
+    String PICTURE_GALLERY = "picture_gallery";
+    /**
+     * 提交图片：回调拍照成功
+     */
+    String PICTURE_SUCCESS = "picture_success";
+    /**
+     * 录像：长按开始录制，会话开始
+     */
+    String VIDEO_RECORD = "video_record";
+    /**
+     * 录像：真正开始录制
+     */
+    String VIDEO_RECORD_STARTED = "video_record_started";
+    /**
+     * 录像：松开停止录制，会话开始
+     */
+    String VIDEO_STOP = "video_stop";
+    /**
+     * 录像：视频文件生成完成
+     */
+    String VIDEO_FINALIZED = "video_finalized";
+    /**
+     * 分段录制：点击确认，会话开始
+     */
+    String VIDEO_MERGE = "video_merge";
+    /**
+     * 分段录制：所有分段合并完成
+     */
+    String VIDEO_MERGED = "video_merged";
+    /**
+     * 压缩视频：开始压缩，会话开始
+     */
+    String VIDEO_COMPRESS = "video_compress";
+    /**
+     * 压缩视频：压缩完成
+     */
+    String VIDEO_COMPRESSED = "video_compressed";
+    /**
+     * 录音：开始录音，会话开始
+     */
+    String AUDIO_RECORD = "audio_record";
+    /**
+     * 录音：真正开始录音
+     */
+    String AUDIO_RECORD_STARTED = "audio_record_started";
+    /**
+     * 录音：停止录音，会话开始
+     */
+    String AUDIO_STOP = "audio_stop";
+    /**
+     * 录音：音频文件保存完成
+     */
+    String AUDIO_SAVED = "audio_saved";
+
+    /**
+     * 到达某个阶段
+     *
+     * @param session         会话id，同一次操作的阶段id相同
+     * @param stage           阶段
+     * @param elapsedRealtime 到达的时间 {@link android.os.SystemClock#elapsedRealtime()}
+     */
+    void onStage(long session, String stage, long elapsedRealtime);
+
+}
@@ -22,6 +22,7 @@ import androidx.annotation.Nullable;
 
 
 import com.zhongjh.albumcamerarecorder.album.entity.Album;
+import com.zhongjh.albumcamerarecorder.album.loader.AlbumMediaSnapshot;
 import com.zhongjh.albumcamerarecorder.album.model.AlbumMediaCollection;
 import com.zhongjh.albumcamerarecorder.album.model.SelectedItemCollection;
 import com.zhongjh.albumcamerarecorder.preview.adapter.PreviewPagerAdapter;
@@ -76,6 +77,12 @@ public class AlbumPreviewActivity extends BasePreviewActivity implements
 
     @Override
     public void onAlbumMediaLoad(Cursor cursor) {
+        AlbumMediaSnapshot snapshot = AlbumMediaSnapshot.of(cursor);
+        if (snapshot != null) {
+            // 只创建当前位置附近的数据
+            initSnapshot(snapshot);
+            return;
+        }
         List<MultiMedia> items = new ArrayList<>();
         while (cursor.moveToNext()) {
             items.add(MultiMedia.valueOf(cursor));
@@ -88,6 +95,16 @@ public class AlbumPreviewActivity extends BasePreviewActivity implements
         initItems(items);
     }
 
+    @Override
+    public void onAlbumMediaPageLoad(Cursor cursor, int positionStart, int itemCount) {
+        // 预览界面不分页加载
+    }
+
+    @Override
+    public void onAlbumMediaChanged(Cursor cursor, int insertedCount, int[] removedPositions) {
+        // 预览界面不监听相册数据的变化
+    }
+
     private void initItems(List<MultiMedia> items) {
         PreviewPagerAdapter adapter = (PreviewPagerAdapter) mViewHolder.pager.getAdapter();
         if (adapter != null) {
@@ -105,6 +122,27 @@ public class AlbumPreviewActivity extends BasePreviewActivity implements
         }
     }
 
+    /**
+     * 使用快照作为数据源，打开任何位置都只需要创建附近几个数据
+     *
+     * @param snapshot 快照
+     */
+    private void initSnapshot(AlbumMediaSnapshot snapshot) {
+        PreviewPagerAdapter adapter = (PreviewPagerAdapter) mViewHolder.pager.getAdapter();
+        if (adapter == null || snapshot.getCount() == 0) {
+            return;
+        }
+        adapter.setSnapshot(snapshot);
+        adapter.notifyDataSetChanged();
+        if (!mIsAlreadySetPosition) {
+            mIsAlreadySetPosition = true;
+            MultiMedia selected = getIntent().getParcelableExtra(EXTRA_ITEM);
+            int selectedIndex = selected == null ? -1 : snapshot.indexOf(selected.getId());
+            mViewHolder.pager.setCurrentItem(selectedIndex, false);
+            mPreviousPos = selectedIndex;
+        }
+    }
+
     @Override
     public void onAlbumMediaReset() {
 
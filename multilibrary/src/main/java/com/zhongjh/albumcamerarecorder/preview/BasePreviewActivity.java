@@ -100,6 +100,10 @@ public class BasePreviewActivity extends AppCompatActivity implements View.OnCli
      * 设置右上角是否检测类型
      */
     protected boolean mIsSelectedCheck = true;
+    /**
+     * 正在子线程中执行过滤器的数据，避免重复点击
+     */
+    private MultiMedia mPendingCheck;
 
     /**
      * 图片存储器
@@ -187,6 +191,8 @@ public class BasePreviewActivity extends AppCompatActivity implements View.OnCli
         item.setUri(editUri);
         item.setPath(mEditImageFile.getPath());
         mAdapter.setMediaItem(mViewHolder.pager.getCurrentItem(), item);
+        // 数据的uri已经改变，重建选择的索引
+        mSelectedCollection.refreshIndex();
         ((PreviewItemFragment) mAdapter.getFragment(mViewHolder.pager.getCurrentItem())).init();
     }
 
@@ -223,6 +229,8 @@ public class BasePreviewActivity extends AppCompatActivity implements View.OnCli
                     }
                 }
             }
+            // 数据的uri已经改变，重建选择的索引
+            mSelectedCollection.refreshIndex();
         }
 
 
@@ -251,26 +259,14 @@ public class BasePreviewActivity extends AppCompatActivity implements View.OnCli
                     mViewHolder.checkView.setChecked(false);
                 }
             } else {
-                boolean isTrue = true;
                 if (mIsSelectedCheck) {
-                    isTrue = assertAddSelection(item);
-                }
-                if (isTrue) {
-                    mSelectedCollection.add(item);
-                    if (mAlbumSpec.countable) {
-                        mViewHolder.checkView.setCheckedNum(mSelectedCollection.checkedNumOf(item));
-                    } else {
-                        mViewHolder.checkView.setChecked(true);
-                    }
+                    // 过滤器在子线程中执行，验证通过后再添加
+                    assertAddSelection(item);
+                    return;
                 }
+                addSelection(item);
             }
-            updateApplyButton();
-
-            if (mAlbumSpec.onSelectedListener != null && mIsSelectedListener) {
-                // 触发选择的接口事件
-                mAlbumSpec.onSelectedListener.onSelected(
-                        mSelectedCollection.asListOfUri(), mSelectedCollection.asListOfString());
-            }
+            onSelectionChanged();
         });
         // 点击原图事件
         mViewHolder.originalLayout.setOnClickListener(v -> {
@@ -303,6 +299,13 @@ public class BasePreviewActivity extends AppCompatActivity implements View.OnCli
         super.onSaveInstanceState(outState);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSelectedCollection.cancelListOfString();
+        mSelectedCollection.cancelAcceptable();
+    }
+
     @Override
     public void onBackPressed() {
         sendBackResult(false);
@@ -331,7 +334,8 @@ public class BasePreviewActivity extends AppCompatActivity implements View.OnCli
 
             File file;
 
-            file = mPictureMediaStoreCompat.createFile(0, true);
+            // 编辑后的图片会直接返回给调用方，不能被缓存管理删除
+            file = mPictureMediaStoreCompat.createResultFile(0);
             mEditImageFile = file;
 
             Intent intent = new Intent();
@@ -520,15 +524,60 @@ public class BasePreviewActivity extends AppCompatActivity implements View.OnCli
     }
 
     /**
-     * 处理窗口
+     * 处理窗口，符合规则则添加选择
      *
      * @param item 当前图片
-     * @return 为true则代表符合规则
      */
-    private boolean assertAddSelection(MultiMedia item) {
-        IncapableCause cause = mSelectedCollection.isAcceptable(item);
-        IncapableCause.handleCause(this, cause);
-        return cause == null;
+    private void assertAddSelection(MultiMedia item) {
+        if (mPendingCheck != null) {
+            return;
+        }
+        mPendingCheck = item;
+        mSelectedCollection.isAcceptable(item, cause -> {
+            mPendingCheck = null;
+            if (isFinishing()) {
+                return;
+            }
+            IncapableCause.handleCause(this, cause);
+            if (cause != null || mSelectedCollection.isSelected(item)) {
+                return;
+            }
+            addSelection(item);
+            onSelectionChanged();
+        });
+    }
+
+    /**
+     * 添加选择，如果是当前显示的数据则刷新右上角的选择
+     *
+     * @param item 当前图片
+     */
+    private void addSelection(MultiMedia item) {
+        mSelectedCollection.add(item);
+        if (mAdapter.getMediaItem(mViewHolder.pager.getCurrentItem()) != item) {
+            return;
+        }
+        if (mAlbumSpec.countable) {
+            mViewHolder.checkView.setCheckedNum(mSelectedCollection.checkedNumOf(item));
+        } else {
+            mViewHolder.checkView.setChecked(true);
+        }
+    }
+
+    /**
+     * 选择改变后刷新按钮，并且触发选择的接口事件
+     */
+    private void onSelectionChanged() {
+        updateApplyButton();
+
+        if (mAlbumSpec.onSelectedListener != null && mIsSelectedListener) {
+            // 触发选择的接口事件，路径在子线程查询
+            mSelectedCollection.asListOfString((uris, paths) -> {
+                if (mAlbumSpec.onSelectedListener != null) {
+                    mAlbumSpec.onSelectedListener.onSelected(uris, paths);
+                }
+            });
+        }
     }
 
     @Override
@@ -24,6 +24,7 @@ import android.util.SparseArray;
 import android.view.ViewGroup;
 
 
+import com.zhongjh.albumcamerarecorder.album.loader.AlbumMediaSnapshot;
 import com.zhongjh.albumcamerarecorder.preview.previewitem.PreviewItemFragment;
 
 import java.util.ArrayList;
@@ -35,7 +36,25 @@ import com.zhongjh.common.entity.MultiMedia;
  * @author zhongjh
  */
 public class PreviewPagerAdapter extends FragmentPagerAdapter {
+
+    /**
+     * 使用快照作为数据源时，当前位置前后各保留多少个已经创建的数据
+     */
+    private static final int WINDOW_SIZE = 5;
+
     private final ArrayList<MultiMedia> mItems = new ArrayList<>();
+    /**
+     * 快照数据源，设置后只创建当前位置附近的数据，不再使用 {@link #mItems}
+     */
+    private AlbumMediaSnapshot mSnapshot;
+    /**
+     * 当前位置附近已经创建的数据，滑动时移出范围的会被回收
+     */
+    private final SparseArray<MultiMedia> mWindowItems = new SparseArray<>();
+    /**
+     * 通过 {@link #setMediaItem} 修改过的数据，不会被回收
+     */
+    private final SparseArray<MultiMedia> mModifiedItems = new SparseArray<>();
     private final SparseArray<Fragment> fragments;
     private final OnPrimaryItemSetListener mListener;
 
@@ -66,36 +85,103 @@ public class PreviewPagerAdapter extends FragmentPagerAdapter {
     @NonNull
     @Override
     public Fragment getItem(int position) {
-        return PreviewItemFragment.newInstance(mItems.get(position));
+        if (mSnapshot != null && mModifiedItems.get(position) == null) {
+            // 宽高和旋转角度直接使用快照的，预览时不需要再打开文件读取
+            return PreviewItemFragment.newInstance(getMediaItem(position), mSnapshot.getWidth(position),
+                    mSnapshot.getHeight(position), mSnapshot.getOrientation(position));
+        }
+        return PreviewItemFragment.newInstance(getMediaItem(position));
     }
 
     @Override
     public int getCount() {
+        if (mSnapshot != null) {
+            return mSnapshot.getCount();
+        }
         return mItems.size();
     }
 
     @Override
     public void setPrimaryItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
         super.setPrimaryItem(container, position, object);
+        moveWindow(position);
         if (mListener != null) {
             mListener.onPrimaryItemSet(position);
         }
     }
 
     public MultiMedia getMediaItem(int position) {
-        return mItems.get(position);
+        if (mSnapshot == null) {
+            return mItems.get(position);
+        }
+        MultiMedia item = mModifiedItems.get(position);
+        if (item == null) {
+            item = mWindowItems.get(position);
+        }
+        if (item == null) {
+            item = mSnapshot.get(position);
+            mWindowItems.put(position, item);
+        }
+        return item;
     }
 
     public void setMediaItem(int position, MultiMedia multiMedia) {
-        mItems.set(position, multiMedia);
+        if (mSnapshot == null) {
+            mItems.set(position, multiMedia);
+        } else {
+            mModifiedItems.put(position, multiMedia);
+        }
     }
 
     public void addAll(List<MultiMedia> items) {
         mItems.addAll(items);
     }
 
+    /**
+     * 使用快照作为数据源，只有显示到的数据才会创建
+     *
+     * @param snapshot 快照
+     */
+    public void setSnapshot(AlbumMediaSnapshot snapshot) {
+        mSnapshot = snapshot;
+        mWindowItems.clear();
+    }
+
+    /**
+     * 回收当前位置附近以外的数据
+     *
+     * @param position 当前位置
+     */
+    private void moveWindow(int position) {
+        if (mSnapshot == null) {
+            return;
+        }
+        for (int i = mWindowItems.size() - 1; i >= 0; i--) {
+            if (Math.abs(mWindowItems.keyAt(i) - position) > WINDOW_SIZE) {
+                mWindowItems.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * 获取数据源，使用快照作为数据源时只返回已经创建的数据
+     *
+     * @return 数据源
+     */
     public ArrayList<MultiMedia> getmItems() {
-        return mItems;
+        if (mSnapshot == null) {
+            return mItems;
+        }
+        ArrayList<MultiMedia> items = new ArrayList<>(mModifiedItems.size() + mWindowItems.size());
+        for (int i = 0; i < mModifiedItems.size(); i++) {
+            items.add(mModifiedItems.valueAt(i));
+        }
+        for (int i = 0; i < mWindowItems.size(); i++) {
+            if (mModifiedItems.get(mWindowItems.keyAt(i)) == null) {
+                items.add(mWindowItems.valueAt(i));
+            }
+        }
+        return items;
     }
 
     interface OnPrimaryItemSetListener {
@@ -16,6 +16,7 @@
 package com.zhongjh.albumcamerarecorder.preview.previewitem;
 
 import android.content.ActivityNotFoundException;
+import android.content.ContentResolver;
 import android.content.Intent;
 import android.graphics.Point;
 import android.net.Uri;
@@ -35,10 +36,11 @@ import android.widget.Toast;
 import com.zhongjh.albumcamerarecorder.R;
 
 import com.zhongjh.albumcamerarecorder.album.utils.PhotoMetadataUtils;
+import com.zhongjh.albumcamerarecorder.album.widget.TileImageViewTouch;
 import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
 
 import com.zhongjh.common.entity.MultiMedia;
-import it.sephiroth.android.library.imagezoom.ImageViewTouch;
+import com.zhongjh.common.utils.ThreadUtils;
 import it.sephiroth.android.library.imagezoom.ImageViewTouchBase;
 
 /**
@@ -47,14 +49,37 @@ import it.sephiroth.android.library.imagezoom.ImageViewTouchBase;
 public class PreviewItemFragment extends Fragment {
 
     private static final String ARGS_ITEM = "args_item";
+    private static final String ARGS_WIDTH = "args_width";
+    private static final String ARGS_HEIGHT = "args_height";
+    private static final String ARGS_ORIENTATION = "args_orientation";
 
     View videoPlayButton;
-    ImageViewTouch image;
+    TileImageViewTouch image;
+    /**
+     * 相册数据库没有宽高时，在子线程读取宽高和旋转角度
+     */
+    private ThreadUtils.BaseSimpleBaseTask<int[]> mBoundsTask;
 
     public static PreviewItemFragment newInstance(MultiMedia item) {
+        return newInstance(item, 0, 0, 0);
+    }
+
+    /**
+     * 实例化，宽高和旋转角度来自相册数据库，有值的话不需要再打开文件读取
+     *
+     * @param item        数据
+     * @param width       图片未旋转前的宽度，0表示未知
+     * @param height      图片未旋转前的高度，0表示未知
+     * @param orientation 旋转角度
+     * @return fragment
+     */
+    public static PreviewItemFragment newInstance(MultiMedia item, int width, int height, int orientation) {
         PreviewItemFragment fragment = new PreviewItemFragment();
         Bundle bundle = new Bundle();
         bundle.putParcelable(ARGS_ITEM, item);
+        bundle.putInt(ARGS_WIDTH, width);
+        bundle.putInt(ARGS_HEIGHT, height);
+        bundle.putInt(ARGS_ORIENTATION, orientation);
         fragment.setArguments(bundle);
         return fragment;
     }
@@ -109,15 +134,18 @@ public class PreviewItemFragment extends Fragment {
 
         image.setDisplayType(ImageViewTouchBase.DisplayType.FIT_TO_SCREEN);
 
+        // 编辑后重新初始化，先关闭之前的分块解码
+        image.setTileSource(null, 0);
+        cancelBoundsTask();
         if (item.getMediaUri() != null) {
-            Point size = PhotoMetadataUtils.getBitmapSize(item.getMediaUri(), getActivity());
-            if (item.isGif()) {
-                GlobalSpec.getInstance().imageEngine.loadGifImage(getContext(), size.x, size.y, image,
-                        item.getMediaUri());
+            int width = getArguments().getInt(ARGS_WIDTH);
+            int height = getArguments().getInt(ARGS_HEIGHT);
+            int orientation = getArguments().getInt(ARGS_ORIENTATION);
+            if (width > 0 && height > 0) {
+                loadMediaImage(item, width, height, orientation);
             } else {
-                GlobalSpec.getInstance().imageEngine.loadImage(getContext(), size.x, size.y, image,
-                        item.getMediaUri());
-
+                // 相册数据库没有宽高，在子线程只读取一次文件头和EXIF
+                loadMediaImageAsync(item);
             }
         } else if (item.getUri() != null) {
             GlobalSpec.getInstance().imageEngine.loadUriImage(getContext(), image,
@@ -131,9 +159,82 @@ public class PreviewItemFragment extends Fragment {
         }
     }
 
+    /**
+     * 在子线程读取图片的宽高和旋转角度，完成后再加载
+     *
+     * @param item 数据
+     */
+    private void loadMediaImageAsync(final MultiMedia item) {
+        final ContentResolver resolver = requireContext().getApplicationContext().getContentResolver();
+        mBoundsTask = new ThreadUtils.BaseSimpleBaseTask<int[]>() {
+            @Override
+            public int[] doInBackground() {
+                Point bound = PhotoMetadataUtils.getBitmapBound(resolver, item.getMediaUri());
+                int orientation = item.isGif() ? 0 : PhotoMetadataUtils.getOrientation(resolver, item.getMediaUri());
+                return new int[]{bound.x, bound.y, orientation};
+            }
+
+            @Override
+            public void onSuccess(int[] result) {
+                if (mBoundsTask != this || getView() == null) {
+                    return;
+                }
+                mBoundsTask = null;
+                loadMediaImage(item, result[0], result[1], result[2]);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                if (mBoundsTask != this || getView() == null) {
+                    return;
+                }
+                mBoundsTask = null;
+                loadMediaImage(item, 0, 0, 0);
+            }
+        };
+        ThreadUtils.executeByIo(mBoundsTask);
+    }
+
+    /**
+     * 加载相册的图片，超大的图片放大后分块解码
+     *
+     * @param item        数据
+     * @param width       图片未旋转前的宽度，0表示未知
+     * @param height      图片未旋转前的高度，0表示未知
+     * @param orientation 旋转角度
+     */
+    private void loadMediaImage(MultiMedia item, int width, int height, int orientation) {
+        Point size = PhotoMetadataUtils.getBitmapSize(width, height, orientation, requireActivity());
+        if (item.isGif()) {
+            GlobalSpec.getInstance().imageEngine.loadGifImage(getContext(), size.x, size.y, image,
+                    item.getMediaUri());
+        } else {
+            GlobalSpec.getInstance().imageEngine.loadImage(getContext(), size.x, size.y, image,
+                    item.getMediaUri());
+            if (TileImageViewTouch.shouldTile(item.getMimeType(), width, height)) {
+                // 超大的图片放大后分块解码
+                image.setTileSource(item.getMediaUri(), orientation);
+            }
+        }
+    }
+
+    private void cancelBoundsTask() {
+        if (mBoundsTask != null) {
+            ThreadUtils.cancel(mBoundsTask);
+            mBoundsTask = null;
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        cancelBoundsTask();
+    }
+
     public void resetView() {
         if (getView() != null) {
-            ((ImageViewTouch) getView().findViewById(R.id.image_view)).resetMatrix();
+            ((TileImageViewTouch) getView().findViewById(R.id.image_view)).resetMatrix();
         }
     }
 
@@ -26,10 +26,12 @@ import com.zhongjh.albumcamerarecorder.MainActivity;
 import com.zhongjh.albumcamerarecorder.R;
 import com.zhongjh.albumcamerarecorder.camera.listener.ClickOrLongListener;
 import com.zhongjh.albumcamerarecorder.camera.util.FileUtil;
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
 import com.zhongjh.albumcamerarecorder.recorder.db.RecordingItem;
 import com.zhongjh.albumcamerarecorder.recorder.widget.SoundRecordingLayout;
 import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
 import com.zhongjh.albumcamerarecorder.settings.RecordeSpec;
+import com.zhongjh.albumcamerarecorder.utils.CaptureLatencyTracer;
 import com.zhongjh.albumcamerarecorder.utils.ViewBusinessUtils;
 import com.zhongjh.albumcamerarecorder.widget.BaseOperationLayout;
 
@@ -455,7 +457,7 @@ public class SoundRecordingFragment extends BaseFragment {
                 String newFileName = recordingItem.getFilePath().substring(recordingItem.getFilePath().lastIndexOf(File.separator));
                 File newFile = mAudioMediaStoreCompat.createFile(newFileName, 2, false);
                 Log.d(TAG, "newFile" + newFile.getAbsolutePath());
-                FileUtil.copy(new File(recordingItem.getFilePath()), newFile, null, (ioProgress, file) -> {
+                FileUtil.move(new File(recordingItem.getFilePath()), newFile, null, (ioProgress, file) -> {
                     int progress = (int) (ioProgress * 100);
                     ThreadUtils.runOnUiThread(() -> {
                         mViewHolder.pvLayout.getViewHolder().btnConfirm.addProgress(progress);
@@ -487,6 +489,7 @@ public class SoundRecordingFragment extends BaseFragment {
      * 开始录音
      */
     private void startRecording() {
+        long session = CaptureLatencyTracer.begin(CaptureLatencyListener.AUDIO_RECORD);
 
         // 根据配置创建文件配置
         GlobalSpec globalSpec = GlobalSpec.getInstance();
@@ -506,6 +509,7 @@ public class SoundRecordingFragment extends BaseFragment {
             mRecorder.prepare();
             mRecorder.start();
             mStartingTimeMillis = System.currentTimeMillis();
+            CaptureLatencyTracer.mark(session, CaptureLatencyListener.AUDIO_RECORD_STARTED);
 
             //startTimer();
             //startForeground(1, createNotification());
@@ -522,6 +526,7 @@ public class SoundRecordingFragment extends BaseFragment {
      */
     private void stopRecording(boolean isShort) {
         mViewHolder.pvLayout.setEnabled(false);
+        long session = isShort ? 0 : CaptureLatencyTracer.begin(CaptureLatencyListener.AUDIO_STOP);
 
         ThreadUtils.executeByIo(new ThreadUtils.BaseTask<Boolean>() {
             @Override
@@ -552,6 +557,7 @@ public class SoundRecordingFragment extends BaseFragment {
                     mRecorder.release();
                     mRecorder = null;
                 }
+                CaptureLatencyTracer.mark(session, CaptureLatencyListener.AUDIO_SAVED);
                 return true;
             }
 
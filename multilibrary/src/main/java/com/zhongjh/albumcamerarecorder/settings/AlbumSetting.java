@@ -105,6 +105,21 @@ public class AlbumSetting implements AlbumSettingApi {
         return this;
     }
 
+    @Override
+    public AlbumSetting pageSize(int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("pageSize cannot be less than 0");
+        }
+        mAlbumSpec.pageSize = pageSize;
+        return this;
+    }
+
+    @Override
+    public AlbumSetting albumIndexCache(boolean enable) {
+        mAlbumSpec.albumIndexCache = enable;
+        return this;
+    }
+
     @NonNull  @Override
     public AlbumSetting setOnSelectedListener(@Nullable OnSelectedListener listener) {
         mAlbumSpec.onSelectedListener = listener;
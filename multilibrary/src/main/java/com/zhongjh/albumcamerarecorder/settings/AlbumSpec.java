@@ -3,6 +3,7 @@ package com.zhongjh.albumcamerarecorder.settings;
 import com.zhongjh.common.enums.MimeType;
 
 import com.zhongjh.albumcamerarecorder.album.filter.BaseFilter;
+import com.zhongjh.albumcamerarecorder.album.filter.FilterEvaluator;
 import com.zhongjh.albumcamerarecorder.album.listener.OnCheckedListener;
 import com.zhongjh.albumcamerarecorder.album.listener.OnSelectedListener;
 import com.zhongjh.albumcamerarecorder.constants.ModuleTypes;
@@ -41,10 +42,14 @@ public class AlbumSpec {
         showSingleMediaType = false;
         countable = false;
         baseFilters = null;
+        // 过滤器重新配置，之前的结果作废
+        FilterEvaluator.clear();
         spanCount = 3;
         thumbnailScale = 0.5f;
         originalable = false;
         originalMaxSize = Integer.MAX_VALUE;
+        pageSize = 0;
+        albumIndexCache = false;
     }
 
     // region
@@ -91,6 +96,14 @@ public class AlbumSpec {
     public int originalMaxSize;
     public OnCheckedListener onCheckedListener;
     public List<BaseFilter> baseFilters;
+    /**
+     * 相册列表每页加载的数量，0表示不分页一次性加载全部
+     */
+    public int pageSize;
+    /**
+     * 是否缓存相册列表，下次打开时如果相册没有变化直接使用缓存
+     */
+    public boolean albumIndexCache;
 
     // endregion
 
@@ -103,6 +116,15 @@ public class AlbumSpec {
         return !countable && SelectableUtils.getSingleImageVideo();
     }
 
+    /**
+     * 是否分页加载相册数据
+     *
+     * @return 是否
+     */
+    public boolean pagingEnabled() {
+        return pageSize > 0;
+    }
+
     /**
      * 仅显示图片 或者 视频可选为0个
      */
@@ -55,6 +55,24 @@ public class CameraSetting implements CameraSettingApi {
         return this;
     }
 
+    @Override
+    public CameraSetting directJpegCapture(boolean directJpegCapture) {
+        mCameraSpec.directJpegCapture = directJpegCapture;
+        return this;
+    }
+
+    @Override
+    public CameraSetting mediaStorePublish(boolean mediaStorePublish) {
+        mCameraSpec.mediaStorePublish = mediaStorePublish;
+        return this;
+    }
+
+    @Override
+    public CameraSetting pipelinedCapture(boolean pipelinedCapture) {
+        mCameraSpec.pipelinedCapture = pipelinedCapture;
+        return this;
+    }
+
     @Override
     public CameraSetting videoEdit(VideoEditCoordinator videoEditManager) {
         mCameraSpec.videoEditCoordinator = videoEditManager;
@@ -51,6 +51,9 @@ public class CameraSpec {
         minDuration = 1500;
         videoEditCoordinator = null;
         watermarkResource = -1;
+        directJpegCapture = false;
+        mediaStorePublish = false;
+        pipelinedCapture = false;
     }
 
 
@@ -96,6 +99,18 @@ public class CameraSpec {
      * 是否点击即录制（点击拍摄图片功能则失效）
      */
     public boolean isClickRecord;
+    /**
+     * 拍照后直接保存相机返回的jpeg数据，不经过Bitmap解码、压缩
+     */
+    public boolean directJpegCapture;
+    /**
+     * Android10开始拍照后直接发布到相册库，不再拷贝到配置目录
+     */
+    public boolean mediaStorePublish;
+    /**
+     * 多图拍照时连拍，拿到相机数据后马上恢复快门，图片在子线程排队处理
+     */
+    public boolean pipelinedCapture;
     /**
      * 仅支持图片
      */
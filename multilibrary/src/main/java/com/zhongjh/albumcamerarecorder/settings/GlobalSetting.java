@@ -23,6 +23,7 @@ import com.zhongjh.common.enums.MimeType;
 import com.zhongjh.common.utils.MediaStoreCompat;
 
 import com.zhongjh.albumcamerarecorder.camera.util.FileUtil;
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
 import com.zhongjh.albumcamerarecorder.listener.CompressionInterface;
 import com.zhongjh.albumcamerarecorder.listener.OnMainListener;
 import com.zhongjh.albumcamerarecorder.settings.api.GlobalSettingApi;
@@ -244,12 +245,30 @@ public final class GlobalSetting implements GlobalSettingApi {
         return this;
     }
 
+    @Override
+    public GlobalSetting lazyTabs(boolean lazyTabs) {
+        mGlobalSpec.lazyTabs = lazyTabs;
+        return this;
+    }
+
+    @Override
+    public GlobalSetting cacheMaxSize(long cacheMaxSize) {
+        mGlobalSpec.cacheMaxSize = cacheMaxSize;
+        return this;
+    }
+
     @Override
     public GlobalSetting setOnCompressionInterface(@Nullable CompressionInterface listener) {
         mGlobalSpec.compressionInterface = listener;
         return this;
     }
 
+    @Override
+    public GlobalSetting setOnCaptureLatencyListener(@Nullable CaptureLatencyListener listener) {
+        mGlobalSpec.captureLatencyListener = listener;
+        return this;
+    }
+
     @NonNull
     @Override
     public GlobalSetting setOnMainListener(@Nullable OnMainListener listener) {
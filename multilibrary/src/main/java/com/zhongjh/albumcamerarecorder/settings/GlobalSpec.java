@@ -7,7 +7,9 @@ import com.zhongjh.albumcamerarecorder.album.engine.impl.GlideEngine;
 
 import com.zhongjh.common.entity.SaveStrategy;
 import com.zhongjh.common.enums.MimeType;
+import com.zhongjh.common.utils.CacheFileManager;
 
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
 import com.zhongjh.albumcamerarecorder.listener.CompressionInterface;
 import com.zhongjh.albumcamerarecorder.listener.OnMainListener;
 import com.zhongjh.albumcamerarecorder.constants.ModuleTypes;
@@ -92,10 +94,22 @@ public class GlobalSpec {
      * 图片是否开启编辑功能，涉及功能：预览、拍照
      */
     public boolean isImageEdit;
+    /**
+     * 是否延迟创建界面，开始只创建默认的界面，其他界面在第一次滑动或者空闲时再创建
+     */
+    public boolean lazyTabs;
+    /**
+     * 缓存文件夹的最大字节数
+     */
+    public long cacheMaxSize;
     /**
      * 压缩接口
      */
     public CompressionInterface compressionInterface;
+    /**
+     * 拍照、录像、录音各个阶段的耗时监听
+     */
+    public CaptureLatencyListener captureLatencyListener;
     /**
      * 主界面的有关事件
      */
@@ -140,7 +154,10 @@ public class GlobalSpec {
         imageEngine = new GlideEngine();
         isCutscenes = true;
         isImageEdit = true;
+        lazyTabs = false;
+        cacheMaxSize = CacheFileManager.DEFAULT_MAX_SIZE;
         compressionInterface = null;
+        captureLatencyListener = null;
         requestCode = 0;
     }
 
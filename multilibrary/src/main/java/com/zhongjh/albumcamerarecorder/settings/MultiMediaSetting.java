@@ -6,6 +6,7 @@ import android.net.Uri;
 import android.os.Bundle;
 
 import com.zhongjh.albumcamerarecorder.R;
+import com.zhongjh.albumcamerarecorder.album.entity.SelectionResult;
 import com.zhongjh.albumcamerarecorder.preview.AlbumPreviewActivity;
 import com.zhongjh.albumcamerarecorder.preview.BasePreviewActivity;
 import com.zhongjh.albumcamerarecorder.recorder.db.RecordingItem;
@@ -29,6 +30,7 @@ import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_MULTIMEDI
 import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_MULTIMEDIA_TYPES;
 import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_RESULT_RECORDING_ITEM;
 import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_RESULT_SELECTION;
+import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_RESULT_SELECTION_BATCH;
 import static com.zhongjh.albumcamerarecorder.constants.Constant.EXTRA_RESULT_SELECTION_PATH;
 
 /**
@@ -112,6 +114,11 @@ public final class MultiMediaSetting {
      * @return 用户选择/拍照的媒体路径列表. {@link Uri}
      */
     public static List<Uri> obtainResult(Intent data) {
+        // 相册选择的结果只有合并的数据，拍照、录像等的结果还是旧的列表
+        SelectionResult selectionResult = data.getParcelableExtra(EXTRA_RESULT_SELECTION_BATCH);
+        if (selectionResult != null) {
+            return selectionResult.getUris();
+        }
         return data.getParcelableArrayListExtra(EXTRA_RESULT_SELECTION);
     }
 
@@ -122,6 +129,10 @@ public final class MultiMediaSetting {
      * @return 用户选择/拍照的媒体路径列表.
      */
     public static List<String> obtainPathResult(Intent data) {
+        SelectionResult selectionResult = data.getParcelableExtra(EXTRA_RESULT_SELECTION_BATCH);
+        if (selectionResult != null) {
+            return selectionResult.getPaths();
+        }
         return data.getStringArrayListExtra(EXTRA_RESULT_SELECTION_PATH);
     }
 
@@ -102,6 +102,24 @@ public interface AlbumSettingApi {
      */
     AlbumSetting thumbnailScale(float scale);
 
+    /**
+     * 分页加载相册数据，首屏只查询一页，滑动接近底部时预加载下一页。
+     * 适用于几万张图片以上的相册，避免一次性查询全部数据造成打开卡顿
+     *
+     * @param pageSize 每页数量，0表示不分页。默认值为0
+     * @return {@link AlbumSetting} this
+     */
+    AlbumSetting pageSize(int pageSize);
+
+    /**
+     * 把分组好的相册列表缓存到磁盘，下次打开时先对比 MediaStore 的水位线，
+     * 没有变化就直接使用缓存，Android 11 以上只是新增了数据的话只查询新增的部分
+     *
+     * @param enable 是否启用，默认值为false
+     * @return {@link AlbumSetting} this
+     */
+    AlbumSetting albumIndexCache(boolean enable);
+
     /**
      * 当用户选择或取消选择某个内容时，立即为回调设置侦听器。
      * <p>
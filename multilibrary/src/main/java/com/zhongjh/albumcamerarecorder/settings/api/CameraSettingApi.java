@@ -60,6 +60,34 @@ public interface CameraSettingApi {
      */
     CameraSetting isClickRecord(boolean isClickReocrd);
 
+    /**
+     * 拍照后直接保存相机返回的jpeg数据，保留EXIF信息，省去Bitmap的解码和重新压缩
+     * 缩略图、单图预览都是通过图片加载引擎按控件大小加载文件，不会持有原图的Bitmap
+     *
+     * @param directJpegCapture 是：开启该功能，否：关闭该功能
+     * @return {@link CameraSetting} for fluent API.
+     */
+    CameraSetting directJpegCapture(boolean directJpegCapture);
+
+    /**
+     * Android10开始拍照确认后直接发布到相册库，每张图片只写入一次，不再拷贝到配置目录
+     * 返回的uri是相册库的uri，Android10以下该配置无效
+     *
+     * @param mediaStorePublish 是：开启该功能，否：关闭该功能
+     * @return {@link CameraSetting} for fluent API.
+     */
+    CameraSetting mediaStorePublish(boolean mediaStorePublish);
+
+    /**
+     * 多图拍照时连拍，相机返回数据后马上恢复快门，不用等上一张图片保存完
+     * 图片的保存在子线程排队处理，正在处理的图片过多时会暂停快门，拍照数量仍然受最多选择的图片数量限制
+     * 单图拍照该配置无效
+     *
+     * @param pipelinedCapture 是：开启该功能，否：关闭该功能
+     * @return {@link CameraSetting} for fluent API.
+     */
+    CameraSetting pipelinedCapture(boolean pipelinedCapture);
+
     /**
      * 启动视频编辑功能，目前只有视频分段录制，后续会增加
      * @param videoEditManager 视频编辑协调者
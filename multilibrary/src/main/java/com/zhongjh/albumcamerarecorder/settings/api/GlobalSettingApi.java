@@ -9,6 +9,7 @@ import androidx.annotation.StyleRes;
 import com.zhongjh.albumcamerarecorder.album.engine.ImageEngine;
 import com.zhongjh.albumcamerarecorder.album.engine.impl.GlideEngine;
 import com.zhongjh.albumcamerarecorder.album.engine.impl.PicassoEngine;
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
 import com.zhongjh.albumcamerarecorder.listener.CompressionInterface;
 import com.zhongjh.albumcamerarecorder.listener.OnMainListener;
 import com.zhongjh.albumcamerarecorder.settings.AlbumSetting;
@@ -172,6 +173,25 @@ public interface GlobalSettingApi {
      */
     GlobalSetting isImageEdit(boolean isImageEdit);
 
+    /**
+     * 设置是否延迟创建相册、拍摄、录音界面
+     * 开启后打开界面时只创建默认的界面，其他界面在第一次滑动到的时候或者主线程空闲时再创建，加快打开速度
+     *
+     * @param lazyTabs 是否延迟创建
+     * @return {@link GlobalSetting} this
+     */
+    GlobalSetting lazyTabs(boolean lazyTabs);
+
+    /**
+     * 设置缓存文件夹的最大字节数
+     * 拍照、录像、录音的缓存文件超过后，按照最近最少使用删除已经关闭的界面遗留的文件，
+     * 每次启动后第一次打开界面时也会在子线程清理以前崩溃或者中途退出遗留的文件
+     *
+     * @param cacheMaxSize 最大字节数，默认 {@link CacheFileManager#DEFAULT_MAX_SIZE}
+     * @return {@link GlobalSetting} this
+     */
+    GlobalSetting cacheMaxSize(long cacheMaxSize);
+
     /**
      * 有关压缩操作的接口
      *
@@ -180,6 +200,15 @@ public interface GlobalSettingApi {
      */
     GlobalSetting setOnCompressionInterface(@Nullable CompressionInterface listener);
 
+    /**
+     * 拍照、录像、录音各个阶段的耗时监听，用于统计从按下快门到回调结果之间的时间花在哪里
+     * 可以使用默认的 {@link com.zhongjh.albumcamerarecorder.utils.CaptureLatencyAggregator} 统计百分位数
+     *
+     * @param listener 接口 {@link CaptureLatencyListener}
+     * @return {@link GlobalSetting} for fluent API.
+     */
+    GlobalSetting setOnCaptureLatencyListener(@Nullable CaptureLatencyListener listener);
+
     /**
      * 有关首页的一些事件
      * <p>
@@ -4,23 +4,28 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.media.MediaPlayer;
+import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
-import android.os.FileUtils;
+import android.os.RemoteException;
 import android.provider.MediaStore;
 
+import androidx.annotation.RequiresApi;
 import androidx.exifinterface.media.ExifInterface;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 
+import com.zhongjh.albumcamerarecorder.camera.util.FileIOUtils;
 import com.zhongjh.common.utils.MediaStoreCompat;
 
 import static com.zhongjh.albumcamerarecorder.camera.common.Constants.TYPE_PICTURE;
@@ -87,15 +92,7 @@ public class BitmapUtils {
             ContentResolver resolver = context.getContentResolver();
             uri = resolver.insert(external, values);
 
-            try {
-                OutputStream out = resolver.openOutputStream(uri);
-                FileInputStream fis = new FileInputStream(file);
-                FileUtils.copy(fis, out);
-                fis.close();
-                out.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            FileIOUtils.writeUriFromFile(context, uri, file, null);
         } else {
             String photoPath = file.getAbsolutePath();
             uri = mediaStoreCompat.getUri(photoPath);
@@ -129,4 +126,83 @@ public class BitmapUtils {
         }
         return uri;
     }
-}
\ No newline at end of file
+
+    /**
+     * 批量插入图片到图库
+     * Android10之前只是插入数据库记录，使用一次 bulkInsert 完成，再一次性通知媒体扫描所有文件
+     * Android10开始通过 {@link MediaStorePublisher} 一次 applyBatch 插入所有 IS_PENDING 的记录，
+     * 各自写入数据流后再一次 applyBatch 取消 IS_PENDING，批量失败时删除已经插入的记录再逐个插入
+     *
+     * @param context          上下文
+     * @param files            要保存的图片文件
+     * @param directory        目录
+     * @param mediaStoreCompat 文件配置
+     */
+    public static void displayToGallery(Context context, List<File> files, String directory, MediaStoreCompat mediaStoreCompat) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            displayToGalleryQ(context, files, directory, mediaStoreCompat);
+            return;
+        }
+        List<ContentValues> valuesList = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (File file : files) {
+            if (file == null || !file.exists()) {
+                continue;
+            }
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Images.Media.DATA, file.getAbsolutePath());
+            values.put(MediaStore.Images.Media.TITLE, AppUtils.getAppName(context));
+            values.put(MediaStore.Images.Media.DISPLAY_NAME, file.getName());
+            values.put(MediaStore.Images.Media.SIZE, file.length());
+            values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+            valuesList.add(values);
+            paths.add(file.getAbsolutePath());
+        }
+        if (!valuesList.isEmpty()) {
+            context.getContentResolver().bulkInsert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                    valuesList.toArray(new ContentValues[0]));
+            // 跟单个插入时的 ACTION_MEDIA_SCANNER_SCAN_FILE 一样让媒体库扫描文件，一次连接扫描全部
+            String[] mimeTypes = new String[paths.size()];
+            Arrays.fill(mimeTypes, "image/jpeg");
+            MediaScannerConnection.scanFile(context.getApplicationContext(),
+                    paths.toArray(new String[0]), mimeTypes, null);
+        }
+    }
+
+    /**
+     * Android10开始批量插入图片到图库
+     *
+     * @param context          上下文
+     * @param files            要保存的图片文件
+     * @param directory        目录
+     * @param mediaStoreCompat 文件配置
+     */
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    private static void displayToGalleryQ(Context context, List<File> files, String directory, MediaStoreCompat mediaStoreCompat) {
+        List<File> existFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file != null && file.exists()) {
+                existFiles.add(file);
+            }
+        }
+        if (existFiles.isEmpty()) {
+            return;
+        }
+        List<Uri> uris = null;
+        try {
+            uris = MediaStorePublisher.insertPending(context, existFiles, directory);
+            for (int i = 0; i < existFiles.size(); i++) {
+                MediaStorePublisher.write(context, uris.get(i), existFiles.get(i), existFiles.get(i));
+            }
+            MediaStorePublisher.publish(context, uris);
+        } catch (RemoteException | OperationApplicationException | IOException e) {
+            e.printStackTrace();
+            if (uris != null) {
+                MediaStorePublisher.deletePending(context, uris);
+            }
+            for (File file : existFiles) {
+                displayToGallery(context, file, TYPE_PICTURE, -1, directory, mediaStoreCompat);
+            }
+        }
+    }
+}
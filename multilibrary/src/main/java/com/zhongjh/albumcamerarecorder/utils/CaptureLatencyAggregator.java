@@ -0,0 +1,146 @@
+package com.zhongjh.albumcamerarecorder.utils;
+
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 统计各个阶段耗时的百分位数
+ * 每个阶段只保留最近的若干次耗时，耗时是阶段时间减去会话开始的时间
+ * 可以定时调用 {@link #getSummary()} 上报
+ *
+ * @author zhongjh
+ */
+public class CaptureLatencyAggregator implements CaptureLatencyListener {
+
+    /**
+     * 同时记录的会话数量，超过时删除最早的会话
+     */
+    private static final int MAX_SESSION_COUNT = 64;
+    private static final int DEFAULT_SAMPLE_COUNT = 256;
+
+    private final int mSampleCount;
+    /**
+     * 会话的开始时间
+     */
+    private final Map<Long, Long> mSessionStarts = new LinkedHashMap<Long, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > MAX_SESSION_COUNT;
+        }
+    };
+    /**
+     * 每个阶段的耗时
+     */
+    private final Map<String, Samples> mSamples = new LinkedHashMap<>();
+
+    public CaptureLatencyAggregator() {
+        this(DEFAULT_SAMPLE_COUNT);
+    }
+
+    /**
+     * @param sampleCount 每个阶段保留的耗时数量
+     */
+    public CaptureLatencyAggregator(int sampleCount) {
+        mSampleCount = sampleCount;
+    }
+
+    @Override
+    public synchronized void onStage(long session, String stage, long elapsedRealtime) {
+        Long start = mSessionStarts.get(session);
+        if (start == null) {
+            mSessionStarts.put(session, elapsedRealtime);
+            return;
+        }
+        Samples samples = mSamples.get(stage);
+        if (samples == null) {
+            samples = new Samples(mSampleCount);
+            mSamples.put(stage, samples);
+        }
+        samples.add(elapsedRealtime - start);
+    }
+
+    /**
+     * 获取阶段耗时的百分位数
+     *
+     * @param stage      阶段
+     * @param percentile 百分位，0到100
+     * @return 耗时毫秒，没有记录时返回-1
+     */
+    public synchronized long getPercentile(String stage, double percentile) {
+        Samples samples = mSamples.get(stage);
+        if (samples == null) {
+            return -1;
+        }
+        return samples.percentile(percentile);
+    }
+
+    /**
+     * 获取阶段记录的次数，包括已经被覆盖的
+     *
+     * @param stage 阶段
+     * @return 次数
+     */
+    public synchronized long getCount(String stage) {
+        Samples samples = mSamples.get(stage);
+        return samples == null ? 0 : samples.mTotal;
+    }
+
+    /**
+     * 所有阶段的次数、p50、p90、p99，每行一个阶段
+     *
+     * @return 统计文本
+     */
+    public synchronized String getSummary() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Samples> entry : mSamples.entrySet()) {
+            Samples samples = entry.getValue();
+            builder.append(String.format(Locale.US, "%s count=%d p50=%dms p90=%dms p99=%dms%n",
+                    entry.getKey(), samples.mTotal,
+                    samples.percentile(50), samples.percentile(90), samples.percentile(99)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 清除所有记录
+     */
+    public synchronized void reset() {
+        mSessionStarts.clear();
+        mSamples.clear();
+    }
+
+    /**
+     * 循环覆盖的耗时记录
+     */
+    private static class Samples {
+
+        private final long[] mValues;
+        private int mSize;
+        private int mNext;
+        private long mTotal;
+
+        Samples(int capacity) {
+            mValues = new long[capacity];
+        }
+
+        void add(long value) {
+            mValues[mNext] = value;
+            mNext = (mNext + 1) % mValues.length;
+            mSize = Math.min(mSize + 1, mValues.length);
+            mTotal++;
+        }
+
+        long percentile(double percentile) {
+            long[] sorted = Arrays.copyOf(mValues, mSize);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * mSize) - 1;
+            return sorted[Math.max(0, Math.min(index, mSize - 1))];
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.zhongjh.albumcamerarecorder.utils;
+
+import android.os.SystemClock;
+
+import com.zhongjh.albumcamerarecorder.listener.CaptureLatencyListener;
+import com.zhongjh.albumcamerarecorder.settings.GlobalSpec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把各个阶段的时间发送给 {@link GlobalSpec#captureLatencyListener}
+ * 没有设置监听时会话id是0，后面的阶段都不再处理，可以在任何线程调用
+ *
+ * @author zhongjh
+ */
+public class CaptureLatencyTracer {
+
+    private static final AtomicLong SESSION = new AtomicLong();
+
+    /**
+     * 开始一个会话
+     *
+     * @param stage 会话的第一个阶段
+     * @return 会话id，没有设置监听时是0
+     */
+    public static long begin(String stage) {
+        CaptureLatencyListener listener = GlobalSpec.getInstance().captureLatencyListener;
+        if (listener == null) {
+            return 0;
+        }
+        long session = SESSION.incrementAndGet();
+        listener.onStage(session, stage, SystemClock.elapsedRealtime());
+        return session;
+    }
+
+    /**
+     * 记录会话到达某个阶段
+     *
+     * @param session 会话id
+     * @param stage   阶段
+     */
+    public static void mark(long session, String stage) {
+        if (session == 0) {
+            return;
+        }
+        CaptureLatencyListener listener = GlobalSpec.getInstance().captureLatencyListener;
+        if (listener != null) {
+            listener.onStage(session, stage, SystemClock.elapsedRealtime());
+        }
+    }
+
+}
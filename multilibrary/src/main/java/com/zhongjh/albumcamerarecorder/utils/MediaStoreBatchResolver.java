@@ -0,0 +1,250 @@
+package com.zhongjh.albumcamerarecorder.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.webkit.MimeTypeMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 批量查询MediaStore的uri信息
+ * 相册的uri都是 content://media/{volume}/.../{id} 的格式，同一个volume的uri只需要一次 _id IN(...) 查询，
+ * 其他uri再逐个查询，查询到的路径可以缓存在调用方提供的缓存中
+ *
+ * @author zhongjh
+ */
+public class MediaStoreBatchResolver {
+
+    private static final String MEDIA_AUTHORITY = "media";
+    /**
+     * 每次 IN(...) 查询的最大数量，避免超过sqlite的参数上限
+     */
+    private static final int MAX_IN_SIZE = 500;
+
+    /**
+     * 批量获取uri的路径
+     * 相册的uri按照volume分组后通过 _id IN(...) 查询，查询不到的再使用 {@link PathUtils#getPath} 逐个查询
+     * 该方法会查询数据库，不要在主线程调用
+     *
+     * @param context 上下文
+     * @param uris    uri列表
+     * @return 跟uri列表一一对应的路径，查询不到的为null
+     */
+    public static List<String> getPaths(Context context, List<Uri> uris) {
+        return getPaths(context, uris, null);
+    }
+
+    /**
+     * 批量获取uri的路径，先从缓存中获取，查询到的路径会放进缓存
+     * 该方法会查询数据库，不要在主线程调用
+     *
+     * @param context   上下文
+     * @param uris      uri列表
+     * @param pathCache 路径的缓存，null则不缓存
+     * @return 跟uri列表一一对应的路径，查询不到的为null
+     */
+    public static List<String> getPaths(Context context, List<Uri> uris, LruCache<Uri, String> pathCache) {
+        Map<Uri, String> paths = new HashMap<>(uris.size());
+        List<Uri> missing = new ArrayList<>();
+        for (Uri uri : uris) {
+            if (uri == null) {
+                continue;
+            }
+            String path = pathCache == null ? null : pathCache.get(uri);
+            if (path != null) {
+                paths.put(uri, path);
+            } else {
+                missing.add(uri);
+            }
+        }
+        if (!missing.isEmpty()) {
+            ContentResolver resolver = context.getContentResolver();
+            Map<String, Map<Long, List<Uri>>> groups = groupByVolume(missing, new ArrayList<>());
+            for (Map.Entry<String, Map<Long, List<Uri>>> group : groups.entrySet()) {
+                queryByIds(resolver, group.getKey(), group.getValue(), MediaStore.MediaColumns.DATA, paths);
+            }
+            for (Uri uri : missing) {
+                String path = paths.get(uri);
+                if (path == null) {
+                    path = PathUtils.getPath(context, uri);
+                }
+                if (path != null) {
+                    paths.put(uri, path);
+                    if (pathCache != null) {
+                        pathCache.put(uri, path);
+                    }
+                }
+            }
+        }
+        List<String> result = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            result.add(uri == null ? null : paths.get(uri));
+        }
+        return result;
+    }
+
+    /**
+     * 批量获取uri的类型
+     *
+     * @param context 上下文
+     * @param uris    uri列表
+     * @return key是uri，value是类型，查询不到类型的uri不会在里面
+     */
+    public static Map<Uri, String> getMimeTypes(Context context, List<Uri> uris) {
+        Map<Uri, String> mimeTypes = new HashMap<>(uris.size());
+        ContentResolver resolver = context.getContentResolver();
+        List<Uri> others = new ArrayList<>();
+        // 按照volume分组
+        Map<String, Map<Long, List<Uri>>> groups = groupByVolume(uris, others);
+        for (Map.Entry<String, Map<Long, List<Uri>>> group : groups.entrySet()) {
+            queryByIds(resolver, group.getKey(), group.getValue(), MediaStore.MediaColumns.MIME_TYPE, mimeTypes);
+        }
+        // 非相册的uri只能逐个查询
+        for (Uri uri : others) {
+            String mimeType = null;
+            if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+                mimeType = resolver.getType(uri);
+            }
+            if (TextUtils.isEmpty(mimeType)) {
+                mimeType = getMimeTypeFromExtension(uri.getPath());
+            }
+            if (mimeType != null) {
+                mimeTypes.put(uri, mimeType);
+            }
+        }
+        return mimeTypes;
+    }
+
+    /**
+     * 批量获取相册uri的修改时间
+     * 该方法会查询数据库，不要在主线程调用
+     *
+     * @param context 上下文
+     * @param uris    uri列表
+     * @return key是uri，value是修改时间，不是相册的uri或者查询不到的不会在里面
+     */
+    public static Map<Uri, String> getDateModified(Context context, List<Uri> uris) {
+        Map<Uri, String> dateModified = new HashMap<>(uris.size());
+        ContentResolver resolver = context.getContentResolver();
+        Map<String, Map<Long, List<Uri>>> groups = groupByVolume(uris, new ArrayList<>());
+        for (Map.Entry<String, Map<Long, List<Uri>>> group : groups.entrySet()) {
+            queryByIds(resolver, group.getKey(), group.getValue(), MediaStore.MediaColumns.DATE_MODIFIED, dateModified);
+        }
+        return dateModified;
+    }
+
+    /**
+     * 根据后缀获取类型
+     *
+     * @param path 地址
+     * @return 类型
+     */
+    private static String getMimeTypeFromExtension(String path) {
+        if (path == null || path.lastIndexOf('.') < 0) {
+            return null;
+        }
+        String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase(Locale.US);
+        return MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+    }
+
+    /**
+     * 将相册的uri按照volume分组，其他uri放进others
+     *
+     * @param uris   uri列表
+     * @param others 不是相册的uri
+     * @return key是volume，value是 id 跟 uri 的对应关系
+     */
+    private static Map<String, Map<Long, List<Uri>>> groupByVolume(List<Uri> uris, List<Uri> others) {
+        Map<String, Map<Long, List<Uri>>> groups = new HashMap<>();
+        for (Uri uri : uris) {
+            if (uri == null) {
+                continue;
+            }
+            long id = getMediaId(uri);
+            if (id < 0) {
+                others.add(uri);
+                continue;
+            }
+            String volume = uri.getPathSegments().get(0);
+            Map<Long, List<Uri>> group = groups.get(volume);
+            if (group == null) {
+                group = new HashMap<>();
+                groups.put(volume, group);
+            }
+            List<Uri> sameIdUris = group.get(id);
+            if (sameIdUris == null) {
+                sameIdUris = new ArrayList<>(1);
+                group.put(id, sameIdUris);
+            }
+            sameIdUris.add(uri);
+        }
+        return groups;
+    }
+
+    /**
+     * 获取相册uri的id
+     *
+     * @param uri uri
+     * @return id，如果不是相册的uri则返回-1
+     */
+    private static long getMediaId(Uri uri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+                || !MEDIA_AUTHORITY.equals(uri.getAuthority())
+                || uri.getPathSegments().size() < 2) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(uri.getLastPathSegment());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 通过 _id IN(...) 查询同一个volume的某列数据
+     *
+     * @param resolver ContentResolver
+     * @param volume   volume
+     * @param ids      id 跟 uri 的对应关系
+     * @param column   要查询的列
+     * @param result   查询的结果，key是uri，value是该列的值
+     */
+    private static void queryByIds(ContentResolver resolver, String volume, Map<Long, List<Uri>> ids,
+                                   String column, Map<Uri, String> result) {
+        Uri contentUri = MediaStore.Files.getContentUri(volume);
+        String[] projection = {MediaStore.MediaColumns._ID, column};
+        List<Long> idList = new ArrayList<>(ids.keySet());
+        for (int start = 0; start < idList.size(); start += MAX_IN_SIZE) {
+            List<Long> subList = idList.subList(start, Math.min(start + MAX_IN_SIZE, idList.size()));
+            String selection = MediaStore.MediaColumns._ID + " IN(" + TextUtils.join(",", subList) + ")";
+            try (Cursor cursor = resolver.query(contentUri, projection, selection, null, null)) {
+                if (cursor == null) {
+                    continue;
+                }
+                while (cursor.moveToNext()) {
+                    String value = cursor.getString(1);
+                    List<Uri> uris = ids.get(cursor.getLong(0));
+                    if (value == null || uris == null) {
+                        continue;
+                    }
+                    for (Uri uri : uris) {
+                        result.put(uri, value);
+                    }
+                }
+            } catch (SecurityException | IllegalArgumentException e) {
+                // 没有权限或者不支持的volume，交给调用者处理查询不到的情况
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
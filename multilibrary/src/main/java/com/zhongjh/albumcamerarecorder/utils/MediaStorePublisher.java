@@ -0,0 +1,146 @@
+package com.zhongjh.albumcamerarecorder.utils;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.provider.MediaStore;
+
+import androidx.annotation.RequiresApi;
+import androidx.exifinterface.media.ExifInterface;
+
+import com.zhongjh.albumcamerarecorder.camera.util.FileIOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Android10开始直接发布图片到相册库
+ * 先通过一次 applyBatch 插入所有 IS_PENDING 的记录，再把文件数据各自写入一次并补上EXIF，最后通过一次 applyBatch 取消 IS_PENDING。
+ * 相比 {@link BitmapUtils#displayToGallery} 不需要先拷贝到配置目录再拷贝进相册库
+ *
+ * @author zhongjh
+ */
+@RequiresApi(api = Build.VERSION_CODES.Q)
+public class MediaStorePublisher {
+
+    private MediaStorePublisher() {
+    }
+
+    /**
+     * 批量插入 IS_PENDING 的图片记录，此时其他应用还看不到这些图片
+     * 拍摄时间写在记录的 DATE_TAKEN，扫描没有拍摄时间EXIF的图片时不会覆盖它
+     * 相册库的 applyBatch 在一个事务中执行，抛出异常时不会留下记录；
+     * 没有抛出异常但是有记录插入失败时，按照返回的uri删除已经插入的记录
+     *
+     * @param context   上下文
+     * @param files     要发布的图片
+     * @param directory 相册里面的目录
+     * @return 跟files一一对应的uri
+     */
+    public static List<Uri> insertPending(Context context, List<File> files, String directory)
+            throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(files.size());
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Images.Media.TITLE, AppUtils.getAppName(context));
+            values.put(MediaStore.Images.Media.DISPLAY_NAME, file.getName());
+            values.put(MediaStore.Images.Media.DATE_TAKEN, now);
+            values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + File.separator + directory);
+            values.put(MediaStore.Images.Media.IS_PENDING, 1);
+            operations.add(ContentProviderOperation.newInsert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI)
+                    .withValues(values).build());
+        }
+        ContentProviderResult[] results = context.getContentResolver().applyBatch(MediaStore.AUTHORITY, operations);
+        List<Uri> uris = new ArrayList<>(results.length);
+        boolean failed = results.length != files.size();
+        for (ContentProviderResult result : results) {
+            uris.add(result.uri);
+            failed |= result.uri == null;
+        }
+        if (failed) {
+            deletePending(context, uris);
+            throw new OperationApplicationException("insert pending failed");
+        }
+        return uris;
+    }
+
+    /**
+     * 将图片写入 IS_PENDING 的记录，只写入一次，不会修改源文件
+     * 写入后在记录的数据流中补上旋转角度和拍摄时间，压缩接口可能去掉了这些EXIF
+     *
+     * @param context  上下文
+     * @param uri      {@link #insertPending} 返回的uri
+     * @param file     要写入的文件，一般是缓存文件或者压缩后的文件
+     * @param original 拍照的缓存文件，从这里读取旋转角度和拍摄时间
+     */
+    public static void write(Context context, Uri uri, File file, File original) throws IOException {
+        if (!FileIOUtils.writeUriFromFile(context, uri, file, null)) {
+            throw new IOException("write failed: " + uri);
+        }
+        ExifInterface source = new ExifInterface(original.getPath());
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "rw")) {
+            if (pfd == null) {
+                throw new IOException("open failed: " + uri);
+            }
+            ExifInterface exif = new ExifInterface(pfd.getFileDescriptor());
+            String orientation = source.getAttribute(ExifInterface.TAG_ORIENTATION);
+            if (orientation != null) {
+                exif.setAttribute(ExifInterface.TAG_ORIENTATION, orientation);
+            }
+            // 需要增加这个，不然AndroidQ识别不到TAG_DATETIME_ORIGINAL创建时间
+            String dateTime = source.getAttribute(ExifInterface.TAG_DATETIME_ORIGINAL);
+            if (dateTime == null) {
+                SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.getDefault());
+                dateTime = simpleDateFormat.format(original.lastModified());
+            }
+            exif.setAttribute(ExifInterface.TAG_DATETIME_ORIGINAL, dateTime);
+            exif.saveAttributes();
+        }
+    }
+
+    /**
+     * 批量取消 IS_PENDING，图片对其他应用可见
+     *
+     * @param context 上下文
+     * @param uris    uri列表
+     */
+    public static void publish(Context context, List<Uri> uris)
+            throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            operations.add(ContentProviderOperation.newUpdate(uri)
+                    .withValue(MediaStore.Images.Media.IS_PENDING, 0).build());
+        }
+        context.getContentResolver().applyBatch(MediaStore.AUTHORITY, operations);
+    }
+
+    /**
+     * 发布失败时删除 IS_PENDING 的记录
+     *
+     * @param context 上下文
+     * @param uris    uri列表
+     */
+    public static void deletePending(Context context, List<Uri> uris) {
+        ContentResolver resolver = context.getContentResolver();
+        for (Uri uri : uris) {
+            if (uri != null) {
+                resolver.delete(uri, null, null);
+            }
+        }
+    }
+
+}
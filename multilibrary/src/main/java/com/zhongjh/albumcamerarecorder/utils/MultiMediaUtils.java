@@ -1,7 +1,12 @@
 package com.zhongjh.albumcamerarecorder.utils;
 
+import android.content.Context;
+import android.net.Uri;
+import android.util.LruCache;
+
 import com.zhongjh.albumcamerarecorder.album.widget.CheckView;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.zhongjh.common.entity.MultiMedia;
@@ -11,6 +16,38 @@ import com.zhongjh.common.entity.MultiMedia;
  */
 public class MultiMediaUtils {
 
+    /**
+     * 获取数据的路径集合，相册数据的路径通过 {@link MediaStoreBatchResolver} 批量查询
+     * 该方法会查询数据库，不要在主线程调用
+     *
+     * @param context   上下文
+     * @param items     数据列表
+     * @param pathCache 路径的缓存，null则不缓存
+     * @return 路径集合
+     */
+    public static List<String> getPaths(Context context, List<MultiMedia> items, LruCache<Uri, String> pathCache) {
+        // 先收集需要查询的uri，再一次性批量查询
+        List<Uri> uris = new ArrayList<>();
+        for (MultiMedia item : items) {
+            if (item.getMediaUri() != null) {
+                uris.add(item.getMediaUri());
+            } else if (item.getUri() != null) {
+                uris.add(item.getUri());
+            }
+        }
+        List<String> uriPaths = MediaStoreBatchResolver.getPaths(context, uris, pathCache);
+        List<String> paths = new ArrayList<>();
+        int uriIndex = 0;
+        for (MultiMedia item : items) {
+            if (item.getMediaUri() != null || item.getUri() != null) {
+                paths.add(uriPaths.get(uriIndex++));
+            } else if (item.getUrl() != null) {
+                paths.add(item.getUrl());
+            }
+        }
+        return paths;
+    }
+
     /**
      * 获取相同数据的索引
      *
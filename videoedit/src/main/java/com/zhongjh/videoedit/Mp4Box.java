@@ -0,0 +1,214 @@
+package com.zhongjh.videoedit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MP4(ISO-BMFF) 的box
+ * 只有moov里面的box会读取到内存，mdat只记录在文件中的位置
+ *
+ * @author zhongjh
+ */
+final class Mp4Box {
+
+    /**
+     * 需要解析子box的容器
+     */
+    private static final List<String> CONTAINERS = Arrays.asList("moov", "trak", "mdia", "minf", "stbl");
+
+    final String type;
+    /**
+     * box的内容，不包括头部
+     */
+    final ByteBuffer payload;
+    /**
+     * 子box，不是容器的为null
+     */
+    final List<Mp4Box> children;
+
+    private Mp4Box(String type, ByteBuffer payload) throws IOException {
+        this.type = type;
+        this.payload = payload;
+        this.children = CONTAINERS.contains(type) ? parse(payload.duplicate()) : null;
+    }
+
+    /**
+     * 解析buffer里面的所有box
+     *
+     * @param buffer 剩余部分都是box的buffer
+     * @return box列表
+     */
+    static List<Mp4Box> parse(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        List<Mp4Box> boxes = new ArrayList<>();
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            String type = readType(buffer);
+            if (size == 1) {
+                size = buffer.getLong();
+            } else if (size == 0) {
+                size = buffer.limit() - start;
+            }
+            int headerSize = buffer.position() - start;
+            if (size < headerSize || size > buffer.limit() - start) {
+                throw new Mp4Concatenator.UnsupportedMp4Exception("invalid box size: " + type);
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit((int) size - headerSize);
+            boxes.add(new Mp4Box(type, payload.order(ByteOrder.BIG_ENDIAN)));
+            buffer.position(start + (int) size);
+        }
+        return boxes;
+    }
+
+    static String readType(ByteBuffer buffer) {
+        byte[] type = new byte[4];
+        buffer.get(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param type 类型
+     * @return 第一个该类型的子box，没有则返回null
+     */
+    Mp4Box child(String type) {
+        if (children != null) {
+            for (Mp4Box child : children) {
+                if (child.type.equals(type)) {
+                    return child;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param type 类型
+     * @return 所有该类型的子box
+     */
+    List<Mp4Box> children(String type) {
+        List<Mp4Box> result = new ArrayList<>();
+        if (children != null) {
+            for (Mp4Box child : children) {
+                if (child.type.equals(type)) {
+                    result.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按照路径获取子box，例如 path("mdia", "minf", "stbl")
+     *
+     * @param path 路径
+     * @return box，没有则返回null
+     */
+    Mp4Box path(String... path) {
+        Mp4Box box = this;
+        for (String type : path) {
+            box = box.child(type);
+            if (box == null) {
+                return null;
+            }
+        }
+        return box;
+    }
+
+    /**
+     * 获取box的内容，从头开始读取
+     */
+    ByteBuffer content() {
+        return payload.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * 拷贝box的内容
+     */
+    byte[] copyContent() {
+        byte[] bytes = new byte[payload.remaining()];
+        content().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 写入box，写入时会在结束时回填box的大小
+     */
+    static final class Writer {
+
+        private byte[] mBuffer = new byte[64 * 1024];
+        private int mSize;
+        private final int[] mStarts = new int[16];
+        private int mDepth;
+
+        void start(String type) {
+            mStarts[mDepth++] = mSize;
+            writeInt(0);
+            writeBytes(type.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        void end() {
+            int start = mStarts[--mDepth];
+            int size = mSize - start;
+            mBuffer[start] = (byte) (size >>> 24);
+            mBuffer[start + 1] = (byte) (size >>> 16);
+            mBuffer[start + 2] = (byte) (size >>> 8);
+            mBuffer[start + 3] = (byte) size;
+        }
+
+        /**
+         * 原样写入box
+         */
+        void write(Mp4Box box) {
+            start(box.type);
+            writeBytes(box.copyContent());
+            end();
+        }
+
+        /**
+         * 写入box，内容替换成bytes
+         */
+        void write(String type, byte[] bytes) {
+            start(type);
+            writeBytes(bytes);
+            end();
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            mBuffer[mSize++] = (byte) (value >>> 24);
+            mBuffer[mSize++] = (byte) (value >>> 16);
+            mBuffer[mSize++] = (byte) (value >>> 8);
+            mBuffer[mSize++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, mBuffer, mSize, bytes.length);
+            mSize += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBuffer, mSize);
+        }
+
+        private void ensure(int length) {
+            if (mSize + length > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mSize + length));
+            }
+        }
+
+    }
+
+}
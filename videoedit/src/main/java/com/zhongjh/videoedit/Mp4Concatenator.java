@@ -0,0 +1,864 @@
+package com.zhongjh.videoedit;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 纯Java的MP4拼接，用于合并分段录制的多个视频
+ * 多个视频的轨道、sample描述必须一致（同一次录制的分段都是一致的），
+ * 重新生成moov的sample表、chunk偏移，mdat的数据通过 FileChannel 直接拷贝，不需要解码、重新封装
+ * 输出的文件是 ftyp + moov + mdat，moov在前面，可以边下载边播放
+ * 分段录制时可以用 {@link #append} 每录完一段就追加到同一个文件，不需要每次都重新拼接所有分段
+ *
+ * @author zhongjh
+ */
+public final class Mp4Concatenator {
+
+    /**
+     * 每次拷贝mdat的大小，拷贝之间检查是否被中断
+     */
+    private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+    private static final long UINT32_MAX = 0xFFFFFFFFL;
+    private static final String TAG = "Mp4Concatenator";
+
+    private Mp4Concatenator() {
+    }
+
+    /**
+     * 拼接的进度
+     */
+    public interface ProgressListener {
+
+        /**
+         * 进度
+         *
+         * @param written 已经写入的mdat数据大小
+         * @param total   mdat数据的总大小
+         */
+        void onProgress(long written, long total);
+
+    }
+
+    /**
+     * 追加前 target 的状态，用于 {@link #restore} 撤销这次追加
+     * 只记录mdat的位置和原来的moov，不需要复制视频的数据
+     */
+    public static final class Checkpoint {
+
+        /**
+         * 追加前是空文件，撤销时清空
+         */
+        private final boolean mEmpty;
+        private final long mMdatStart;
+        /**
+         * 追加前mdat的结束位置，也就是追加的数据开始写入的位置
+         */
+        private final long mWriteStart;
+        private final byte[] mMoov;
+
+        private Checkpoint(boolean empty, long mdatStart, long writeStart, byte[] moov) {
+            mEmpty = empty;
+            mMdatStart = mdatStart;
+            mWriteStart = writeStart;
+            mMoov = moov;
+        }
+
+    }
+
+    /**
+     * 不支持拼接的MP4，例如分片的MP4、轨道不一致的MP4，可以改用ffmpeg合并
+     */
+    public static class UnsupportedMp4Exception extends IOException {
+
+        private static final long serialVersionUID = 6853027190421765833L;
+
+        public UnsupportedMp4Exception(String message) {
+            super(message);
+        }
+
+        public UnsupportedMp4Exception(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+    }
+
+    /**
+     * 拼接多个MP4
+     * 该方法会读写文件，不要在主线程调用，线程被中断时会抛出异常并且删除输出的文件
+     *
+     * @param inputs   按照顺序拼接的视频
+     * @param output   拼接后的视频
+     * @param listener 进度，可以为null
+     * @throws UnsupportedMp4Exception 不支持拼接的MP4
+     */
+    public static void concat(List<File> inputs, File output, ProgressListener listener) throws IOException {
+        concat(inputs, output, listener, UINT32_MAX);
+    }
+
+    /**
+     * @param offsetLimit chunk偏移超过这个值时使用co64，测试时可以改小
+     */
+    static void concat(List<File> inputs, File output, ProgressListener listener, long offsetLimit)
+            throws IOException {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("inputs is empty");
+        }
+        List<Source> sources = new ArrayList<>(inputs.size());
+        try {
+            for (File input : inputs) {
+                Source source = new Source(input);
+                sources.add(source);
+                source.parse();
+            }
+            write(sources, output, listener, offsetLimit);
+        } catch (IOException | RuntimeException e) {
+            if (output.exists() && !output.delete()) {
+                output.deleteOnExit();
+            }
+            throw e;
+        } finally {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * 把多个MP4追加到 target 后面，直接修改 target，只写入新视频的数据和新的moov
+     * target 不存在或者是空文件时创建新的视频，之后可以继续追加
+     * 可以追加的文件是 ftyp + mdat + moov，moov在最后，mdat使用64位的大小，追加时mdat的数据不需要移动
+     * 该方法会读写文件，不要在主线程调用，线程被中断或者失败时 target 会恢复成追加前的内容
+     *
+     * @param target   已经追加好的视频，由该方法生成
+     * @param inputs   按照顺序追加的视频
+     * @param listener 进度，只统计追加的数据，可以为null
+     * @return 追加前的状态，可以通过 {@link #restore} 撤销这次追加
+     * @throws UnsupportedMp4Exception 不支持追加的MP4，例如 target 不是该方法生成的
+     */
+    public static Checkpoint append(File target, List<File> inputs, ProgressListener listener) throws IOException {
+        return append(target, inputs, listener, UINT32_MAX);
+    }
+
+    /**
+     * 撤销 {@link #append} 追加的数据，target 恢复成追加前的内容
+     * 只截断文件并且写回原来的moov，要在 target 之后没有再次追加的时候调用
+     *
+     * @param target     追加的视频
+     * @param checkpoint {@link #append} 返回的状态
+     */
+    public static void restore(File target, Checkpoint checkpoint) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw");
+             FileChannel out = file.getChannel()) {
+            restore(out, checkpoint);
+        }
+    }
+
+    private static void restore(FileChannel out, Checkpoint checkpoint) throws IOException {
+        if (checkpoint.mEmpty) {
+            out.truncate(0);
+            return;
+        }
+        out.truncate(checkpoint.mWriteStart);
+        out.position(checkpoint.mMdatStart);
+        writeFully(out, mdatHeader(checkpoint.mWriteStart - checkpoint.mMdatStart));
+        out.position(checkpoint.mWriteStart);
+        writeFully(out, ByteBuffer.wrap(checkpoint.mMoov));
+    }
+
+    /**
+     * @param offsetLimit chunk偏移超过这个值时使用co64，测试时可以改小
+     */
+    static Checkpoint append(File target, List<File> inputs, ProgressListener listener, long offsetLimit)
+            throws IOException {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("inputs is empty");
+        }
+        boolean created = target.length() == 0;
+        List<Source> sources = new ArrayList<>(inputs.size() + 1);
+        try {
+            if (!created) {
+                Source base = new Source(target);
+                sources.add(base);
+                base.parse();
+                if (!base.isAppendable()) {
+                    throw new UnsupportedMp4Exception("not appendable: " + target);
+                }
+            }
+            for (File input : inputs) {
+                Source source = new Source(input);
+                sources.add(source);
+                source.parse();
+            }
+            return append(sources, target, created, listener, offsetLimit);
+        } finally {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    private static Checkpoint append(List<Source> sources, File target, boolean created,
+                                     ProgressListener listener, long offsetLimit) throws IOException {
+        checkTracks(sources);
+        Source first = sources.get(0);
+        long total = layout(sources);
+        List<MergedTrack> tracks = new ArrayList<>(first.tracks.size());
+        for (int i = 0; i < first.tracks.size(); i++) {
+            tracks.add(new MergedTrack(sources, i));
+        }
+
+        // 新建的时候是 ftyp + mdat头部，追加的时候从原来mdat的结束位置（也就是原来moov的位置）开始写入
+        byte[] head = null;
+        long mdatStart;
+        long dataStart;
+        long writeStart;
+        if (created) {
+            Mp4Box.Writer writer = new Mp4Box.Writer();
+            writer.write(first.ftyp);
+            head = writer.toByteArray();
+            mdatStart = head.length;
+            dataStart = mdatStart + 16;
+            writeStart = dataStart;
+        } else {
+            long[] mdat = first.mdats.get(0);
+            mdatStart = mdat[2];
+            dataStart = mdat[0];
+            writeStart = mdat[1];
+        }
+        Checkpoint checkpoint;
+        if (created) {
+            checkpoint = new Checkpoint(true, 0, 0, null);
+        } else {
+            Mp4Box.Writer writer = new Mp4Box.Writer();
+            writer.write(first.moov);
+            checkpoint = new Checkpoint(false, mdatStart, writeStart, writer.toByteArray());
+        }
+        byte[] moov = buildMoov(first, tracks, dataStart, dataStart + total > offsetLimit);
+
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw");
+             FileChannel out = file.getChannel()) {
+            try {
+                if (created) {
+                    out.truncate(0);
+                    writeFully(out, ByteBuffer.wrap(head));
+                    writeFully(out, mdatHeader(16));
+                }
+                out.position(writeStart);
+                long written = 0;
+                long appended = dataStart + total - writeStart;
+                for (int i = created ? 0 : 1; i < sources.size(); i++) {
+                    written = transfer(sources.get(i), out, written, appended, listener);
+                }
+                out.position(mdatStart);
+                writeFully(out, mdatHeader(total + 16));
+                out.position(dataStart + total);
+                writeFully(out, ByteBuffer.wrap(moov));
+                out.truncate(out.position());
+            } catch (IOException | RuntimeException e) {
+                // 恢复成追加前的内容
+                restore(out, checkpoint);
+                throw e;
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @param size mdat的大小，包括头部
+     * @return 64位大小的mdat头部
+     */
+    private static ByteBuffer mdatHeader(long size) {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt(1).put(new byte[]{'m', 'd', 'a', 't'}).putLong(size);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * 检查所有视频的轨道、sample描述是否一致
+     */
+    private static void checkTracks(List<Source> sources) throws UnsupportedMp4Exception {
+        Source first = sources.get(0);
+        for (Source source : sources) {
+            if (source.tracks.size() != first.tracks.size()) {
+                throw new UnsupportedMp4Exception("track count mismatch: " + source.file);
+            }
+            for (int i = 0; i < first.tracks.size(); i++) {
+                if (!first.tracks.get(i).isSameDescription(source.tracks.get(i))) {
+                    throw new UnsupportedMp4Exception("sample description mismatch: " + source.file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按照顺序排列所有mdat的数据，记录每个mdat在新mdat里面的位置
+     *
+     * @return 新mdat数据的总大小
+     */
+    private static long layout(List<Source> sources) {
+        long total = 0;
+        for (Source source : sources) {
+            source.mdatTargets = new long[source.mdats.size()];
+            for (int i = 0; i < source.mdats.size(); i++) {
+                long[] mdat = source.mdats.get(i);
+                source.mdatTargets[i] = total;
+                total += mdat[1] - mdat[0];
+            }
+        }
+        return total;
+    }
+
+    private static void write(List<Source> sources, File output, ProgressListener listener, long offsetLimit)
+            throws IOException {
+        checkTracks(sources);
+        Source first = sources.get(0);
+        long total = layout(sources);
+
+        List<MergedTrack> tracks = new ArrayList<>(first.tracks.size());
+        for (int i = 0; i < first.tracks.size(); i++) {
+            tracks.add(new MergedTrack(sources, i));
+        }
+
+        // 先算出moov的大小，才能知道mdat数据的起始位置
+        Mp4Box.Writer ftypWriter = new Mp4Box.Writer();
+        ftypWriter.write(first.ftyp);
+        byte[] ftyp = ftypWriter.toByteArray();
+        int mdatHeaderSize = total + 8 > UINT32_MAX ? 16 : 8;
+        byte[] moov = buildMoov(first, tracks, 0, false);
+        boolean use64 = ftyp.length + moov.length + mdatHeaderSize + total > offsetLimit;
+        if (use64) {
+            moov = buildMoov(first, tracks, 0, true);
+        }
+        long dataStart = ftyp.length + moov.length + mdatHeaderSize;
+        moov = buildMoov(first, tracks, dataStart, use64);
+
+        try (FileOutputStream outputStream = new FileOutputStream(output);
+             FileChannel out = outputStream.getChannel()) {
+            writeFully(out, ByteBuffer.wrap(ftyp));
+            writeFully(out, ByteBuffer.wrap(moov));
+            ByteBuffer header = ByteBuffer.allocate(mdatHeaderSize);
+            if (mdatHeaderSize == 16) {
+                header.putInt(1).put(new byte[]{'m', 'd', 'a', 't'}).putLong(total + 16);
+            } else {
+                header.putInt((int) (total + 8)).put(new byte[]{'m', 'd', 'a', 't'});
+            }
+            header.flip();
+            writeFully(out, header);
+            long written = 0;
+            for (Source source : sources) {
+                written = transfer(source, out, written, total, listener);
+            }
+        }
+    }
+
+    /**
+     * 把视频所有mdat的数据写入到 out 的当前位置
+     *
+     * @param written 之前已经写入的大小
+     * @param total   总共需要写入的大小
+     * @return 已经写入的大小
+     */
+    private static long transfer(Source source, FileChannel out, long written, long total,
+                                 ProgressListener listener) throws IOException {
+        for (long[] mdat : source.mdats) {
+            long position = mdat[0];
+            while (position < mdat[1]) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("concat interrupted");
+                }
+                long count = source.channel.transferTo(position, Math.min(TRANSFER_SIZE, mdat[1] - position), out);
+                if (count <= 0) {
+                    throw new IOException("transfer failed: " + source.file);
+                }
+                position += count;
+                written += count;
+                if (listener != null) {
+                    listener.onProgress(written, total);
+                }
+            }
+        }
+        return written;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] buildMoov(Source first, List<MergedTrack> tracks, long dataStart, boolean use64) {
+        long movieDuration = 0;
+        for (MergedTrack track : tracks) {
+            movieDuration = Math.max(movieDuration, track.getMovieDuration(first.timescale));
+        }
+        Mp4Box.Writer writer = new Mp4Box.Writer();
+        writer.start("moov");
+        int trackIndex = 0;
+        for (Mp4Box child : first.moov.children) {
+            switch (child.type) {
+                case "mvhd":
+                    writer.write("mvhd", patchDuration(child, 16, 24, movieDuration));
+                    break;
+                case "trak":
+                    writeTrak(writer, tracks.get(trackIndex++), first.timescale, dataStart, use64);
+                    break;
+                default:
+                    writer.write(child);
+                    break;
+            }
+        }
+        writer.end();
+        return writer.toByteArray();
+    }
+
+    private static void writeTrak(Mp4Box.Writer writer, MergedTrack track, long movieTimescale,
+                                  long dataStart, boolean use64) {
+        writer.start("trak");
+        for (Mp4Box child : track.first.trak.children) {
+            switch (child.type) {
+                case "tkhd":
+                    writer.write("tkhd", patchDuration(child, 20, 28, track.getMovieDuration(movieTimescale)));
+                    break;
+                case "edts":
+                    // 编辑列表只对应第一段视频，拼接后不再适用
+                    break;
+                case "mdia":
+                    writer.start("mdia");
+                    for (Mp4Box mdiaChild : child.children) {
+                        if ("mdhd".equals(mdiaChild.type)) {
+                            writer.write("mdhd", patchDuration(mdiaChild, 16, 24, track.duration));
+                        } else if ("minf".equals(mdiaChild.type)) {
+                            writer.start("minf");
+                            for (Mp4Box minfChild : mdiaChild.children) {
+                                if ("stbl".equals(minfChild.type)) {
+                                    writeStbl(writer, track, dataStart, use64);
+                                } else {
+                                    writer.write(minfChild);
+                                }
+                            }
+                            writer.end();
+                        } else {
+                            writer.write(mdiaChild);
+                        }
+                    }
+                    writer.end();
+                    break;
+                default:
+                    writer.write(child);
+                    break;
+            }
+        }
+        writer.end();
+    }
+
+    private static void writeStbl(Mp4Box.Writer writer, MergedTrack track, long dataStart, boolean use64) {
+        writer.start("stbl");
+        writer.write(track.first.stsd);
+
+        writer.start("stts");
+        writer.writeInt(0);
+        writeRuns(writer, track.sampleDeltas);
+        writer.end();
+
+        if (track.compositionOffsets != null) {
+            writer.start("ctts");
+            writer.writeInt(track.signedCompositionOffsets ? 1 << 24 : 0);
+            writeRuns(writer, track.compositionOffsets);
+            writer.end();
+        }
+
+        if (track.syncSamples != null) {
+            writer.start("stss");
+            writer.writeInt(0);
+            writer.writeInt(track.syncSamples.length);
+            for (int sample : track.syncSamples) {
+                writer.writeInt(sample);
+            }
+            writer.end();
+        }
+
+        writer.start("stsc");
+        writer.writeInt(0);
+        int entryCount = 0;
+        for (int i = 0; i < track.chunkSampleCounts.length; i++) {
+            if (isNewStscEntry(track, i)) {
+                entryCount++;
+            }
+        }
+        writer.writeInt(entryCount);
+        for (int i = 0; i < track.chunkSampleCounts.length; i++) {
+            if (isNewStscEntry(track, i)) {
+                writer.writeInt(i + 1);
+                writer.writeInt(track.chunkSampleCounts[i]);
+                writer.writeInt(track.chunkDescriptionIndexes[i]);
+            }
+        }
+        writer.end();
+
+        writer.start("stsz");
+        writer.writeInt(0);
+        boolean sameSize = track.sampleSizes.length > 0;
+        for (int size : track.sampleSizes) {
+            if (size != track.sampleSizes[0]) {
+                sameSize = false;
+                break;
+            }
+        }
+        writer.writeInt(sameSize ? track.sampleSizes[0] : 0);
+        writer.writeInt(track.sampleSizes.length);
+        if (!sameSize) {
+            for (int size : track.sampleSizes) {
+                writer.writeInt(size);
+            }
+        }
+        writer.end();
+
+        writer.start(use64 ? "co64" : "stco");
+        writer.writeInt(0);
+        writer.writeInt(track.chunkOffsets.length);
+        for (long offset : track.chunkOffsets) {
+            if (use64) {
+                writer.writeLong(dataStart + offset);
+            } else {
+                writer.writeInt((int) (dataStart + offset));
+            }
+        }
+        writer.end();
+
+        writer.end();
+    }
+
+    private static boolean isNewStscEntry(MergedTrack track, int chunk) {
+        return chunk == 0
+                || track.chunkSampleCounts[chunk] != track.chunkSampleCounts[chunk - 1]
+                || track.chunkDescriptionIndexes[chunk] != track.chunkDescriptionIndexes[chunk - 1];
+    }
+
+    /**
+     * 写入 entry_count + (sample_count, value) 的表，相邻相同的值合并成一条
+     */
+    private static void writeRuns(Mp4Box.Writer writer, long[] values) {
+        int entryCount = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                entryCount++;
+            }
+        }
+        writer.writeInt(entryCount);
+        int start = 0;
+        for (int i = 1; i <= values.length; i++) {
+            if (i == values.length || values[i] != values[start]) {
+                writer.writeInt(i - start);
+                writer.writeInt((int) values[start]);
+                start = i;
+            }
+        }
+    }
+
+    /**
+     * 修改mvhd、tkhd、mdhd的时长
+     *
+     * @param box      box
+     * @param offset   version为0时时长的位置
+     * @param offset64 version为1时时长的位置
+     * @param duration 时长
+     * @return 修改后的内容
+     */
+    private static byte[] patchDuration(Mp4Box box, int offset, int offset64, long duration) {
+        byte[] content = box.copyContent();
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if (content[0] == 1) {
+            buffer.putLong(offset64, duration);
+        } else {
+            buffer.putInt(offset, (int) Math.min(duration, UINT32_MAX));
+        }
+        return content;
+    }
+
+    /**
+     * 一个要拼接的视频
+     */
+    private static final class Source {
+
+        final File file;
+        final FileInputStream inputStream;
+        final FileChannel channel;
+        Mp4Box ftyp;
+        Mp4Box moov;
+        long timescale;
+        final List<Mp4Track> tracks = new ArrayList<>();
+        /**
+         * 每个mdat的数据在文件中的 起始位置、结束位置、mdat头部的位置
+         */
+        final List<long[]> mdats = new ArrayList<>();
+        /**
+         * 每个mdat的数据在新mdat里面的位置
+         */
+        long[] mdatTargets;
+        /**
+         * moov在文件中的 起始位置、结束位置
+         */
+        long moovStart;
+        long moovEnd;
+
+        Source(File file) throws IOException {
+            this.file = file;
+            inputStream = new FileInputStream(file);
+            channel = inputStream.getChannel();
+        }
+
+        /**
+         * 读取ftyp、moov，记录mdat的位置
+         * box的内容不完整时读取buffer会抛出运行时异常，统一转换成 {@link UnsupportedMp4Exception}
+         */
+        void parse() throws IOException {
+            try {
+                parseBoxes();
+            } catch (RuntimeException e) {
+                throw new UnsupportedMp4Exception("invalid mp4: " + file, e);
+            }
+        }
+
+        private void parseBoxes() throws IOException {
+            long fileSize = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (position + 8 <= fileSize) {
+                header.clear();
+                readFully(header, position, 8);
+                long size = header.getInt() & UINT32_MAX;
+                String type = Mp4Box.readType(header);
+                int headerSize = 8;
+                if (size == 1) {
+                    header.clear();
+                    readFully(header, position + 8, 8);
+                    size = header.getLong();
+                    headerSize = 16;
+                } else if (size == 0) {
+                    size = fileSize - position;
+                }
+                if (size < headerSize || position + size > fileSize) {
+                    throw new UnsupportedMp4Exception("invalid box size: " + type + " " + file);
+                }
+                switch (type) {
+                    case "ftyp":
+                    case "moov":
+                        if (size > Integer.MAX_VALUE) {
+                            throw new UnsupportedMp4Exception("box too large: " + type + " " + file);
+                        }
+                        ByteBuffer box = ByteBuffer.allocate((int) size);
+                        readFully(box, position, (int) size);
+                        if ("ftyp".equals(type)) {
+                            ftyp = Mp4Box.parse(box).get(0);
+                        } else {
+                            moov = Mp4Box.parse(box).get(0);
+                            moovStart = position;
+                            moovEnd = position + size;
+                        }
+                        break;
+                    case "mdat":
+                        mdats.add(new long[]{position + headerSize, position + size, position});
+                        break;
+                    case "moof":
+                        throw new UnsupportedMp4Exception("fragmented mp4: " + file);
+                    default:
+                        break;
+                }
+                position += size;
+            }
+            if (ftyp == null || moov == null || moov.child("mvex") != null) {
+                throw new UnsupportedMp4Exception("unsupported mp4: " + file);
+            }
+            Mp4Box mvhd = moov.child("mvhd");
+            if (mvhd == null) {
+                throw new UnsupportedMp4Exception("missing mvhd: " + file);
+            }
+            ByteBuffer content = mvhd.content();
+            timescale = content.getInt(content.get(0) == 1 ? 20 : 12) & UINT32_MAX;
+            for (Mp4Box trak : moov.children("trak")) {
+                tracks.add(new Mp4Track(trak));
+            }
+        }
+
+        private void readFully(ByteBuffer buffer, long position, int length) throws IOException {
+            buffer.limit(buffer.position() + length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new UnsupportedMp4Exception("unexpected end of file: " + file);
+                }
+            }
+            buffer.flip();
+        }
+
+        /**
+         * 是否是 {@link #append} 生成的文件：只有一个64位大小的mdat，后面紧接着是文件最后的moov
+         */
+        boolean isAppendable() throws IOException {
+            if (mdats.size() != 1) {
+                return false;
+            }
+            long[] mdat = mdats.get(0);
+            return mdat[0] - mdat[2] == 16 && mdat[1] == moovStart && moovEnd == channel.size();
+        }
+
+        /**
+         * @return 视频的时长，也就是最长的轨道的时长，单位是mvhd的timescale
+         */
+        long getDuration() {
+            long duration = 0;
+            for (Mp4Track track : tracks) {
+                duration = Math.max(duration, scale(track.getDuration(), track.timescale, timescale));
+            }
+            return duration;
+        }
+
+        /**
+         * 把chunk在原文件的偏移转换成在新mdat数据里面的偏移
+         */
+        long mapOffset(long offset) throws UnsupportedMp4Exception {
+            for (int i = 0; i < mdats.size(); i++) {
+                long[] mdat = mdats.get(i);
+                if (offset >= mdat[0] && offset < mdat[1]) {
+                    return mdatTargets[i] + offset - mdat[0];
+                }
+            }
+            throw new UnsupportedMp4Exception("chunk outside mdat: " + file);
+        }
+
+        void close() {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                Log.w(TAG, "close: " + file, e);
+            }
+        }
+
+    }
+
+    /**
+     * 多个视频同一条轨道拼接后的sample表
+     */
+    private static final class MergedTrack {
+
+        final Mp4Track first;
+        final int[] sampleSizes;
+        final long[] sampleDeltas;
+        final long[] compositionOffsets;
+        final boolean signedCompositionOffsets;
+        final int[] syncSamples;
+        /**
+         * chunk在新mdat数据里面的偏移，写入时再加上mdat数据的起始位置
+         */
+        final long[] chunkOffsets;
+        final int[] chunkSampleCounts;
+        final int[] chunkDescriptionIndexes;
+        /**
+         * 时长，单位是轨道的timescale
+         */
+        final long duration;
+
+        MergedTrack(List<Source> sources, int index) throws UnsupportedMp4Exception {
+            first = sources.get(0).tracks.get(index);
+            int sampleCount = 0;
+            int chunkCount = 0;
+            int syncCount = 0;
+            boolean hasComposition = false;
+            boolean hasSync = false;
+            boolean signed = false;
+            for (Source source : sources) {
+                Mp4Track track = source.tracks.get(index);
+                sampleCount += track.sampleSizes.length;
+                chunkCount += track.chunkOffsets.length;
+                syncCount += track.syncSamples != null ? track.syncSamples.length : track.sampleSizes.length;
+                hasComposition |= track.compositionOffsets != null;
+                hasSync |= track.syncSamples != null;
+                signed |= track.signedCompositionOffsets;
+            }
+            sampleSizes = new int[sampleCount];
+            sampleDeltas = new long[sampleCount];
+            compositionOffsets = hasComposition ? new long[sampleCount] : null;
+            signedCompositionOffsets = signed;
+            syncSamples = hasSync ? new int[syncCount] : null;
+            chunkOffsets = new long[chunkCount];
+            chunkSampleCounts = new int[chunkCount];
+            chunkDescriptionIndexes = new int[chunkCount];
+
+            int sample = 0;
+            int chunk = 0;
+            int sync = 0;
+            long totalDuration = 0;
+            for (int s = 0; s < sources.size(); s++) {
+                Source source = sources.get(s);
+                Mp4Track track = source.tracks.get(index);
+                int count = track.sampleSizes.length;
+                System.arraycopy(track.sampleSizes, 0, sampleSizes, sample, count);
+                System.arraycopy(track.sampleDeltas, 0, sampleDeltas, sample, count);
+                long trackDuration = track.getDuration();
+                if (s < sources.size() - 1 && count > 0) {
+                    // 各轨道的时长不完全一样，下一段的所有轨道都从这一段最长的轨道结束后开始，避免音视频越来越不同步
+                    long target = scale(source.getDuration(), source.timescale, track.timescale);
+                    if (target > trackDuration) {
+                        sampleDeltas[sample + count - 1] += target - trackDuration;
+                        trackDuration = target;
+                    }
+                }
+                totalDuration += trackDuration;
+                if (compositionOffsets != null && track.compositionOffsets != null) {
+                    for (int i = 0; i < count; i++) {
+                        compositionOffsets[sample + i] = track.compositionOffsets[i];
+                    }
+                }
+                if (syncSamples != null) {
+                    if (track.syncSamples != null) {
+                        for (int syncSample : track.syncSamples) {
+                            syncSamples[sync++] = sample + syncSample;
+                        }
+                    } else {
+                        for (int i = 1; i <= count; i++) {
+                            syncSamples[sync++] = sample + i;
+                        }
+                    }
+                }
+                for (int i = 0; i < track.chunkOffsets.length; i++) {
+                    chunkOffsets[chunk + i] = source.mapOffset(track.chunkOffsets[i]);
+                }
+                System.arraycopy(track.chunkSampleCounts, 0, chunkSampleCounts, chunk, track.chunkOffsets.length);
+                System.arraycopy(track.chunkDescriptionIndexes, 0, chunkDescriptionIndexes, chunk, track.chunkOffsets.length);
+                sample += count;
+                chunk += track.chunkOffsets.length;
+            }
+            duration = totalDuration;
+        }
+
+        /**
+         * @param movieTimescale mvhd的timescale
+         * @return 时长，单位是mvhd的timescale
+         */
+        long getMovieDuration(long movieTimescale) {
+            return scale(duration, first.timescale, movieTimescale);
+        }
+
+    }
+
+    /**
+     * 转换时间单位，向上取整
+     */
+    private static long scale(long value, long from, long to) {
+        if (from == to || from == 0) {
+            return value;
+        }
+        return (value * to + from - 1) / from;
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.zhongjh.videoedit;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MP4的一条轨道，sample表展开成数组，方便多个文件首尾相接
+ *
+ * @author zhongjh
+ */
+final class Mp4Track {
+
+    final Mp4Box trak;
+    /**
+     * 轨道类型，vide、soun等
+     */
+    final String handlerType;
+    final long timescale;
+    final Mp4Box stsd;
+
+    /**
+     * 每个sample的大小
+     */
+    final int[] sampleSizes;
+    /**
+     * 每个sample的时长，stts展开后的数据
+     */
+    final long[] sampleDeltas;
+    /**
+     * 每个sample的显示时间偏移，没有ctts的为null
+     */
+    final int[] compositionOffsets;
+    final boolean signedCompositionOffsets;
+    /**
+     * 关键帧的序号，从1开始，没有stss(全部都是关键帧)的为null
+     */
+    final int[] syncSamples;
+    /**
+     * 每个chunk在文件中的偏移
+     */
+    final long[] chunkOffsets;
+    /**
+     * 每个chunk的sample数量
+     */
+    final int[] chunkSampleCounts;
+    /**
+     * 每个chunk的sample描述序号
+     */
+    final int[] chunkDescriptionIndexes;
+
+    Mp4Track(Mp4Box trak) throws Mp4Concatenator.UnsupportedMp4Exception {
+        this.trak = trak;
+        Mp4Box mdhd = trak.path("mdia", "mdhd");
+        Mp4Box hdlr = trak.path("mdia", "hdlr");
+        Mp4Box stbl = trak.path("mdia", "minf", "stbl");
+        if (mdhd == null || hdlr == null || stbl == null) {
+            throw new Mp4Concatenator.UnsupportedMp4Exception("incomplete trak");
+        }
+        ByteBuffer buffer = mdhd.content();
+        int version = buffer.get(0);
+        buffer.position(version == 1 ? 20 : 12);
+        timescale = buffer.getInt() & 0xFFFFFFFFL;
+        buffer = hdlr.content();
+        buffer.position(8);
+        handlerType = Mp4Box.readType(buffer);
+
+        stsd = stbl.child("stsd");
+        Mp4Box stsz = stbl.child("stsz");
+        Mp4Box stts = stbl.child("stts");
+        Mp4Box stsc = stbl.child("stsc");
+        Mp4Box stco = stbl.child("stco");
+        Mp4Box co64 = stbl.child("co64");
+        if (stsd == null || stsz == null || stts == null || stsc == null || (stco == null && co64 == null)) {
+            throw new Mp4Concatenator.UnsupportedMp4Exception("unsupported sample table: " + handlerType);
+        }
+
+        // stsz
+        buffer = stsz.content();
+        buffer.position(4);
+        int sampleSize = buffer.getInt();
+        int sampleCount = buffer.getInt();
+        sampleSizes = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            sampleSizes[i] = sampleSize != 0 ? sampleSize : buffer.getInt();
+        }
+
+        // stts
+        sampleDeltas = new long[sampleCount];
+        buffer = stts.content();
+        buffer.position(4);
+        int entryCount = buffer.getInt();
+        int sample = 0;
+        for (int i = 0; i < entryCount; i++) {
+            int count = buffer.getInt();
+            long delta = buffer.getInt() & 0xFFFFFFFFL;
+            for (int j = 0; j < count && sample < sampleCount; j++) {
+                sampleDeltas[sample++] = delta;
+            }
+        }
+        if (sample != sampleCount) {
+            throw new Mp4Concatenator.UnsupportedMp4Exception("stts does not match stsz: " + handlerType);
+        }
+
+        // ctts
+        Mp4Box ctts = stbl.child("ctts");
+        if (ctts != null) {
+            buffer = ctts.content();
+            signedCompositionOffsets = buffer.get(0) == 1;
+            buffer.position(4);
+            compositionOffsets = new int[sampleCount];
+            entryCount = buffer.getInt();
+            sample = 0;
+            for (int i = 0; i < entryCount; i++) {
+                int count = buffer.getInt();
+                int offset = buffer.getInt();
+                for (int j = 0; j < count && sample < sampleCount; j++) {
+                    compositionOffsets[sample++] = offset;
+                }
+            }
+        } else {
+            signedCompositionOffsets = false;
+            compositionOffsets = null;
+        }
+
+        // stss
+        Mp4Box stss = stbl.child("stss");
+        if (stss != null) {
+            buffer = stss.content();
+            buffer.position(4);
+            syncSamples = new int[buffer.getInt()];
+            for (int i = 0; i < syncSamples.length; i++) {
+                syncSamples[i] = buffer.getInt();
+            }
+        } else {
+            syncSamples = null;
+        }
+
+        // stco、co64
+        buffer = (co64 != null ? co64 : stco).content();
+        buffer.position(4);
+        chunkOffsets = new long[buffer.getInt()];
+        for (int i = 0; i < chunkOffsets.length; i++) {
+            chunkOffsets[i] = co64 != null ? buffer.getLong() : buffer.getInt() & 0xFFFFFFFFL;
+        }
+
+        // stsc，展开成每个chunk的sample数量
+        chunkSampleCounts = new int[chunkOffsets.length];
+        chunkDescriptionIndexes = new int[chunkOffsets.length];
+        buffer = stsc.content();
+        buffer.position(4);
+        entryCount = buffer.getInt();
+        int total = 0;
+        for (int i = 0; i < entryCount; i++) {
+            int firstChunk = buffer.getInt();
+            int samplesPerChunk = buffer.getInt();
+            int descriptionIndex = buffer.getInt();
+            int nextFirstChunk = i + 1 < entryCount ? buffer.getInt(buffer.position()) : chunkOffsets.length + 1;
+            for (int chunk = firstChunk; chunk < nextFirstChunk && chunk <= chunkOffsets.length; chunk++) {
+                chunkSampleCounts[chunk - 1] = samplesPerChunk;
+                chunkDescriptionIndexes[chunk - 1] = descriptionIndex;
+                total += samplesPerChunk;
+            }
+        }
+        if (total != sampleCount) {
+            throw new Mp4Concatenator.UnsupportedMp4Exception("stsc does not match stsz: " + handlerType);
+        }
+    }
+
+    /**
+     * @return 轨道的时长，单位是轨道的timescale
+     */
+    long getDuration() {
+        long duration = 0;
+        for (long delta : sampleDeltas) {
+            duration += delta;
+        }
+        return duration;
+    }
+
+    /**
+     * sample描述是否相同，不同的话播放器不能用同一个解码器解码
+     */
+    boolean isSameDescription(Mp4Track other) {
+        return handlerType.equals(other.handlerType)
+                && timescale == other.timescale
+                && stsd.payload.equals(other.stsd.payload);
+    }
+
+}
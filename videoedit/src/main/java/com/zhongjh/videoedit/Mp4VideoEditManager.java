@@ -0,0 +1,189 @@
+package com.zhongjh.videoedit;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.zhongjh.common.listener.VideoEditListener;
+import com.zhongjh.common.utils.ThreadUtils;
+
+/**
+ * 视频编辑管理
+ * 合并视频使用 {@link Mp4Concatenator} 直接拼接MP4，不需要启动ffmpeg、生成合并的文本文件
+ * 追加视频使用 {@link Mp4Concatenator#append} 直接修改合并好的视频，只写入新的视频，
+ * 并且记录最后一次追加前的状态，{@link #undoAppend} 只截断文件、写回原来的moov
+ * 拼接失败（不支持的格式、解析出错等）的视频仍然使用ffmpeg合并，压缩视频仍然使用ffmpeg
+ *
+ * @author zhongjh
+ */
+public class Mp4VideoEditManager extends VideoEditManager {
+
+    private static final String TAG = "Mp4VideoEditManager";
+
+    private ThreadUtils.BaseSimpleBaseTask<Boolean> mMergeTask;
+    /**
+     * 最后一次追加的视频和追加前的状态，改用ffmpeg或者再次拼接后失效
+     */
+    private String mCheckpointPath;
+    private Mp4Concatenator.Checkpoint mCheckpoint;
+
+    @Override
+    public void merge(String newPath, ArrayList<String> paths, String txtPath) {
+        execute(null, paths, (files, listener) -> {
+                    Mp4Concatenator.concat(files, new File(newPath), listener);
+                    return null;
+                },
+                () -> Mp4VideoEditManager.super.merge(newPath, paths, txtPath));
+    }
+
+    @Override
+    public void append(String targetPath, ArrayList<String> paths, String txtPath) {
+        execute(targetPath, paths, (files, listener) -> Mp4Concatenator.append(new File(targetPath), files, listener),
+                () -> Mp4VideoEditManager.super.append(targetPath, paths, txtPath));
+    }
+
+    @Override
+    public boolean undoAppend(String targetPath) {
+        if (mMergeTask != null || mCheckpoint == null || !mCheckpointPath.equals(targetPath)) {
+            return false;
+        }
+        Mp4Concatenator.Checkpoint checkpoint = mCheckpoint;
+        mCheckpoint = null;
+        mCheckpointPath = null;
+        try {
+            // 只截断文件并且写回几KB的moov，直接在当前线程执行
+            Mp4Concatenator.restore(new File(targetPath), checkpoint);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "undo append failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * 在子线程拼接视频
+     *
+     * @param targetPath 追加的视频，合并时是null
+     * @param paths      拼接的视频
+     * @param action     拼接
+     * @param fallback   不支持拼接时改用ffmpeg
+     */
+    private void execute(String targetPath, ArrayList<String> paths, Mp4Action action, Runnable fallback) {
+        onMergeDispose();
+        mCheckpoint = null;
+        mCheckpointPath = null;
+        List<File> files = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            files.add(new File(path));
+        }
+        // 回调给开始拼接时的事件，拼接过程中更换了事件也不会回调给新的事件
+        VideoEditListener videoMergeListener = mVideoMergeListener;
+        mMergeTask = new ThreadUtils.BaseSimpleBaseTask<Boolean>() {
+
+            private int mProgress = -1;
+            private volatile Mp4Concatenator.Checkpoint mResult;
+
+            @Override
+            public Boolean doInBackground() throws Throwable {
+                try {
+                    mResult = action.run(files, (written, total) -> {
+                        int progress = total == 0 ? 100 : (int) (written * 100 / total);
+                        if (progress != mProgress) {
+                            mProgress = progress;
+                            ThreadUtils.runOnUiThread(() -> {
+                                if (videoMergeListener != null && !isCanceled()) {
+                                    videoMergeListener.onProgress(progress, 0);
+                                }
+                            });
+                        }
+                    });
+                    return true;
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    // 解析、拼接失败都改用ffmpeg，append失败时已经恢复了原来的文件
+                    Log.w(TAG, "fall back to ffmpeg", e);
+                    return false;
+                }
+            }
+
+            @Override
+            public void onSuccess(Boolean result) {
+                mMergeTask = null;
+                if (!result) {
+                    // 拼接失败的视频，改用ffmpeg合并
+                    fallback.run();
+                    return;
+                }
+                if (targetPath != null) {
+                    mCheckpointPath = targetPath;
+                    mCheckpoint = mResult;
+                }
+                if (videoMergeListener != null) {
+                    videoMergeListener.onFinish();
+                }
+            }
+
+            @Override
+            public void onCancel() {
+                super.onCancel();
+                if (videoMergeListener != null) {
+                    videoMergeListener.onCancel();
+                }
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                super.onFail(t);
+                mMergeTask = null;
+                if (videoMergeListener != null) {
+                    videoMergeListener.onError(String.valueOf(t.getMessage()));
+                }
+            }
+        };
+        ThreadUtils.executeByIo(mMergeTask);
+    }
+
+    @Override
+    public void onMergeDestroy() {
+        mVideoMergeListener = null;
+        mCheckpoint = null;
+        mCheckpointPath = null;
+        cancelMerge();
+        super.onMergeDestroy();
+    }
+
+    @Override
+    public void onMergeDispose() {
+        cancelMerge();
+        super.onMergeDispose();
+    }
+
+    /**
+     * 使用 {@link Mp4Concatenator} 的拼接
+     */
+    private interface Mp4Action {
+
+        /**
+         * 拼接
+         *
+         * @param files    拼接的视频
+         * @param listener 进度
+         * @return 追加前的状态，合并时是null
+         */
+        Mp4Concatenator.Checkpoint run(List<File> files, Mp4Concatenator.ProgressListener listener) throws IOException;
+
+    }
+
+    private void cancelMerge() {
+        if (mMergeTask != null) {
+            ThreadUtils.cancel(mMergeTask);
+            mMergeTask = null;
+        }
+    }
+
+}
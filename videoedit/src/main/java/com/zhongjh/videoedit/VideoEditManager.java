@@ -33,8 +33,38 @@ public class VideoEditManager implements VideoEditCoordinator {
         mVideoCompressListener = videoCompressListener;
     }
 
+    /**
+     * ffmpeg追加时的临时文件、回调
+     */
+    AppendListener mAppendListener;
+
     @Override
     public void merge(String newPath, ArrayList<String> paths,String txtPath) {
+        merge(newPath, paths, txtPath, mVideoMergeListener);
+    }
+
+    /**
+     * ffmpeg不能直接修改视频，每次追加都把合并好的视频和新的分段重新合并到临时文件再替换，
+     * 写入量跟已经合并的时长成正比，分段录制时总的写入量仍然是分段数量的平方级别，
+     * 只有 {@link Mp4VideoEditManager} 的追加是增量的
+     */
+    @Override
+    public void append(String targetPath, ArrayList<String> paths, String txtPath) {
+        File target = new File(targetPath);
+        if (target.length() == 0) {
+            merge(targetPath, paths, txtPath, mVideoMergeListener);
+            return;
+        }
+        // ffmpeg不能直接修改视频，合并到临时文件后再替换
+        ArrayList<String> mergePaths = new ArrayList<>(paths.size() + 1);
+        mergePaths.add(targetPath);
+        mergePaths.addAll(paths);
+        File temp = new File(target.getParent(), "VIDEO_APPEND_" + target.getName());
+        mAppendListener = new AppendListener(temp, target, mVideoMergeListener);
+        merge(temp.getPath(), mergePaths, txtPath, mAppendListener);
+    }
+
+    private void merge(String newPath, ArrayList<String> paths, String txtPath, VideoEditListener listener) {
         boolean isMerge = false;
         // 创建文本文件
         File file = new File(txtPath);
@@ -72,7 +102,7 @@ public class VideoEditManager implements VideoEditCoordinator {
 
         String commands = "ffmpeg -y -f concat -safe 0 -i " + file.getPath() + " -c copy " + newPath;
 
-        mMyRxFfmpegMergeSubscriber = new MyRxFfmpegSubscriber(mVideoMergeListener);
+        mMyRxFfmpegMergeSubscriber = new MyRxFfmpegSubscriber(listener);
 
         // 开始执行FFmpeg命令
         RxFFmpegInvoke.getInstance()
@@ -106,6 +136,7 @@ public class VideoEditManager implements VideoEditCoordinator {
             mMyRxFfmpegMergeSubscriber.dispose();
             mVideoMergeListener = null;
         }
+        disposeAppend();
     }
 
     @Override
@@ -113,6 +144,17 @@ public class VideoEditManager implements VideoEditCoordinator {
         if (mMyRxFfmpegMergeSubscriber != null) {
             mMyRxFfmpegMergeSubscriber.dispose();
         }
+        disposeAppend();
+    }
+
+    /**
+     * 取消追加，删除临时文件
+     */
+    private void disposeAppend() {
+        if (mAppendListener != null) {
+            mAppendListener.deleteTemp();
+            mAppendListener = null;
+        }
     }
 
     @Override
@@ -125,6 +167,65 @@ public class VideoEditManager implements VideoEditCoordinator {
 
 
 
+    /**
+     * ffmpeg追加完成后用临时文件替换原来的视频
+     */
+    static class AppendListener implements VideoEditListener {
+
+        private final File mTemp;
+        private final File mTarget;
+        private final VideoEditListener mVideoEditListener;
+
+        AppendListener(File temp, File target, VideoEditListener videoEditListener) {
+            mTemp = temp;
+            mTarget = target;
+            mVideoEditListener = videoEditListener;
+        }
+
+        void deleteTemp() {
+            if (mTemp.exists() && !mTemp.delete()) {
+                mTemp.deleteOnExit();
+            }
+        }
+
+        @Override
+        public void onFinish() {
+            if (mVideoEditListener == null) {
+                return;
+            }
+            if (mTemp.renameTo(mTarget)) {
+                mVideoEditListener.onFinish();
+            } else {
+                deleteTemp();
+                mVideoEditListener.onError("rename failed: " + mTemp);
+            }
+        }
+
+        @Override
+        public void onProgress(int progress, long progressTime) {
+            if (mVideoEditListener != null) {
+                mVideoEditListener.onProgress(progress, progressTime);
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            deleteTemp();
+            if (mVideoEditListener != null) {
+                mVideoEditListener.onCancel();
+            }
+        }
+
+        @Override
+        public void onError(String message) {
+            deleteTemp();
+            if (mVideoEditListener != null) {
+                mVideoEditListener.onError(message);
+            }
+        }
+
+    }
+
     public static class MyRxFfmpegSubscriber extends RxFFmpegSubscriber {
 
         private final WeakReference<VideoEditListener> mWeakReference;
@@ -0,0 +1,119 @@
+package com.zhongjh.videoedit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link Mp4Concatenator} 的耗时，结果通过 {@link Logger} 输出
+ * 模拟分段录制：每段1秒30帧的视频，比较一次拼接所有分段、每录完一段重新拼接、每录完一段追加的耗时和写入量
+ * 每次运行大约写入470MB，默认不运行，需要时去掉 {@link Ignore} 手动运行
+ * 没有跟ffmpeg比较：ffmpeg是Android的so库，不能在JVM中加载，并且这里生成的分段只有结构没有真正的编码数据
+ *
+ * @author zhongjh
+ */
+@Ignore("写入大约470MB，需要时手动运行")
+public class Mp4ConcatenatorBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(Mp4ConcatenatorBenchmark.class.getSimpleName());
+
+    private static final int SEGMENT_COUNT = 20;
+    private static final int FRAME_COUNT = 30;
+    private static final int FRAME_SIZE = 64 * 1024;
+
+    private File mDirectory;
+    private final List<File> mSegments = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("mp4").toFile();
+        int[] sizes = new int[FRAME_COUNT];
+        long[] deltas = new long[FRAME_COUNT];
+        int[] chunks = new int[FRAME_COUNT];
+        Arrays.fill(sizes, FRAME_SIZE);
+        Arrays.fill(deltas, 3000);
+        Arrays.fill(chunks, 1);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            File file = new File(mDirectory, "segment" + i + ".mp4");
+            Mp4Fixture.write(file, 1000, false, new Mp4Fixture.Track()
+                    .sizes(sizes).deltas(deltas).chunks(chunks).syncSamples(1).seed(i));
+            mSegments.add(file);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void benchmark() throws IOException {
+        // 预热
+        Mp4Concatenator.concat(mSegments, new File(mDirectory, "warmup.mp4"), null);
+
+        long[] written = new long[1];
+        Mp4Concatenator.ProgressListener listener = (bytes, total) -> written[0] = bytes;
+
+        File output = new File(mDirectory, "concat.mp4");
+        long start = System.nanoTime();
+        Mp4Concatenator.concat(mSegments, output, listener);
+        report("concat all", System.nanoTime() - start, written[0]);
+
+        // 每录完一段，把上一次的结果和新的分段拼接成新的文件
+        long totalWritten = 0;
+        start = System.nanoTime();
+        File merged = null;
+        for (int i = 0; i < mSegments.size(); i++) {
+            List<File> inputs = new ArrayList<>();
+            if (merged != null) {
+                inputs.add(merged);
+            }
+            inputs.add(mSegments.get(i));
+            File next = new File(mDirectory, "merged" + i + ".mp4");
+            Mp4Concatenator.concat(inputs, next, listener);
+            totalWritten += written[0];
+            if (merged != null) {
+                merged.delete();
+            }
+            merged = next;
+        }
+        long reconcatWritten = totalWritten;
+        report("re-concat per segment", System.nanoTime() - start, reconcatWritten);
+
+        // 每录完一段，追加到同一个文件
+        totalWritten = 0;
+        File target = new File(mDirectory, "append.mp4");
+        start = System.nanoTime();
+        for (File segment : mSegments) {
+            Mp4Concatenator.append(target, Arrays.asList(segment), listener);
+            totalWritten += written[0];
+        }
+        report("append per segment", System.nanoTime() - start, totalWritten);
+
+        assertTrue(totalWritten * 2 < reconcatWritten);
+    }
+
+    private static void report(String name, long nanos, long bytes) {
+        LOGGER.info(String.format(Locale.US, "%s: %.1fms, %.1fMB written",
+                name, nanos / 1e6, bytes / 1024.0 / 1024.0));
+    }
+
+}
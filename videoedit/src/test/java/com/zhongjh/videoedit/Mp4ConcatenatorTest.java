@@ -0,0 +1,335 @@
+package com.zhongjh.videoedit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link Mp4Concatenator} 的拼接、追加
+ * 测试的MP4由 {@link Mp4Fixture} 生成，轨道的timescale和mvhd一样都是1000，时长不会有取整误差
+ *
+ * @author zhongjh
+ */
+public class Mp4ConcatenatorTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("mp4").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private static Mp4Fixture.Track video(int seed) {
+        return new Mp4Fixture.Track().handler("vide", 1000)
+                .sizes(10, 20, 30).deltas(100, 100, 100)
+                .compositionOffsets(0, 200, 100).syncSamples(1, 3)
+                .chunks(2, 1).seed(seed);
+    }
+
+    private static Mp4Fixture.Track audio(int seed) {
+        return new Mp4Fixture.Track().handler("soun", 1000)
+                .sizes(4, 4).deltas(100, 100)
+                .chunks(1, 1).seed(seed + 100);
+    }
+
+    private File write(String name, boolean co64, Mp4Fixture.Track... tracks) throws IOException {
+        File file = new File(mDirectory, name);
+        Mp4Fixture.write(file, 1000, co64, tracks);
+        return file;
+    }
+
+    @Test
+    public void concat_offsetsDurationsByLongestTrack() throws IOException {
+        File first = write("a.mp4", false, video(1), audio(1));
+        File second = write("b.mp4", false, video(2), audio(2));
+        File output = new File(mDirectory, "out.mp4");
+        Mp4Concatenator.concat(Arrays.asList(first, second), output, null);
+
+        Result result = Result.read(output);
+        // 音频比视频短100，下一段的音频要从视频结束后开始，所以第一段最后一个音频sample加长
+        assertArrayEquals(new long[]{100, 100, 100, 100, 100, 100}, result.track(0).sampleDeltas);
+        assertArrayEquals(new long[]{100, 200, 100, 100}, result.track(1).sampleDeltas);
+        assertEquals(600, result.mdhdDuration(0));
+        assertEquals(500, result.mdhdDuration(1));
+        assertEquals(600, result.mvhdDuration());
+        assertArrayEquals(new String[]{"ftyp", "moov", "mdat"}, Mp4Fixture.topLevelTypes(output));
+        result.assertSamples(0, video(1), video(2));
+        result.assertSamples(1, audio(1), audio(2));
+    }
+
+    @Test
+    public void concat_expandsAndRebuildsStsc() throws IOException {
+        File first = write("a.mp4", false, video(1));
+        File second = write("b.mp4", false, video(2).chunks(1, 2));
+        File output = new File(mDirectory, "out.mp4");
+        Mp4Concatenator.concat(Arrays.asList(first, second), output, null);
+
+        Result result = Result.read(output);
+        assertArrayEquals(new int[]{2, 1, 1, 2}, result.track(0).chunkSampleCounts);
+        // 相邻相同数量的chunk合并：(1,2) (2,1) (4,2)
+        ByteBuffer stsc = result.stbl(0).child("stsc").content();
+        assertEquals(3, stsc.getInt(4));
+        assertEquals(1, stsc.getInt(8));
+        assertEquals(2, stsc.getInt(20));
+        assertEquals(4, stsc.getInt(32));
+        result.assertSamples(0, video(1), video(2).chunks(1, 2));
+    }
+
+    @Test
+    public void concat_renumbersSyncSamples() throws IOException {
+        File first = write("a.mp4", false, video(1));
+        File second = write("b.mp4", false, video(2).syncSamples(1));
+        File third = write("c.mp4", false, video(3).syncSamples((int[]) null));
+        File output = new File(mDirectory, "out.mp4");
+        Mp4Concatenator.concat(Arrays.asList(first, second, third), output, null);
+
+        // 没有stss的视频所有sample都是关键帧
+        assertArrayEquals(new int[]{1, 3, 4, 7, 8, 9}, Result.read(output).track(0).syncSamples);
+    }
+
+    @Test
+    public void concat_keepsCompositionOffsets() throws IOException {
+        File first = write("a.mp4", false, video(1));
+        File second = write("b.mp4", false, video(2).compositionOffsets((int[]) null));
+        File output = new File(mDirectory, "out.mp4");
+        Mp4Concatenator.concat(Arrays.asList(first, second), output, null);
+
+        Mp4Track track = Result.read(output).track(0);
+        assertArrayEquals(new int[]{0, 200, 100, 0, 0, 0}, track.compositionOffsets);
+    }
+
+    @Test
+    public void concat_readsCo64Input() throws IOException {
+        File first = write("a.mp4", true, video(1), audio(1));
+        File second = write("b.mp4", false, video(2), audio(2));
+        File output = new File(mDirectory, "out.mp4");
+        Mp4Concatenator.concat(Arrays.asList(first, second), output, null);
+
+        Result result = Result.read(output);
+        assertNotNull(result.stbl(0).child("stco"));
+        assertNull(result.stbl(0).child("co64"));
+        result.assertSamples(0, video(1), video(2));
+        result.assertSamples(1, audio(1), audio(2));
+    }
+
+    @Test
+    public void concat_switchesToCo64WhenOffsetsOverflow() throws IOException {
+        File first = write("a.mp4", false, video(1), audio(1));
+        File second = write("b.mp4", false, video(2), audio(2));
+        File output = new File(mDirectory, "out.mp4");
+        Mp4Concatenator.concat(Arrays.asList(first, second), output, null, 64);
+
+        Result result = Result.read(output);
+        assertNull(result.stbl(0).child("stco"));
+        assertNotNull(result.stbl(0).child("co64"));
+        result.assertSamples(0, video(1), video(2));
+        result.assertSamples(1, audio(1), audio(2));
+    }
+
+    @Test
+    public void concat_rejectsDifferentDescriptions() throws IOException {
+        Mp4Fixture.Track other = video(2);
+        other.description = "hvc1-test".getBytes();
+        File first = write("a.mp4", false, video(1));
+        File second = write("b.mp4", false, other);
+        File output = new File(mDirectory, "out.mp4");
+        try {
+            Mp4Concatenator.concat(Arrays.asList(first, second), output, null);
+            fail();
+        } catch (Mp4Concatenator.UnsupportedMp4Exception expected) {
+            assertFalse(output.exists());
+        }
+    }
+
+    @Test
+    public void concat_rejectsTruncatedSampleTable() throws IOException {
+        File first = write("a.mp4", false, video(1));
+        File second = write("b.mp4", false, video(2));
+        // stts的条数改大，读取时超出box的范围
+        byte[] bytes = Files.readAllBytes(second.toPath());
+        int stts = new String(bytes, "ISO-8859-1").indexOf("stts");
+        ByteBuffer.wrap(bytes).putInt(stts + 8, 1000);
+        Files.write(second.toPath(), bytes);
+        File output = new File(mDirectory, "out.mp4");
+        try {
+            Mp4Concatenator.concat(Arrays.asList(first, second), output, null);
+            fail();
+        } catch (Mp4Concatenator.UnsupportedMp4Exception expected) {
+            assertFalse(output.exists());
+        }
+    }
+
+    @Test
+    public void append_matchesConcat() throws IOException {
+        File first = write("a.mp4", false, video(1), audio(1));
+        File second = write("b.mp4", true, video(2), audio(2));
+        File third = write("c.mp4", false, video(3).chunks(1, 2), audio(3));
+        File concat = new File(mDirectory, "concat.mp4");
+        Mp4Concatenator.concat(Arrays.asList(first, second, third), concat, null);
+        File target = new File(mDirectory, "append.mp4");
+        Mp4Concatenator.append(target, Arrays.asList(first), null);
+        Mp4Concatenator.append(target, Arrays.asList(second, third), null);
+
+        assertArrayEquals(new String[]{"ftyp", "mdat", "moov"}, Mp4Fixture.topLevelTypes(target));
+        Result expected = Result.read(concat);
+        Result actual = Result.read(target);
+        for (int i = 0; i < 2; i++) {
+            Mp4Track expectedTrack = expected.track(i);
+            Mp4Track actualTrack = actual.track(i);
+            assertArrayEquals(expectedTrack.sampleSizes, actualTrack.sampleSizes);
+            assertArrayEquals(expectedTrack.sampleDeltas, actualTrack.sampleDeltas);
+            assertArrayEquals(expectedTrack.compositionOffsets, actualTrack.compositionOffsets);
+            assertArrayEquals(expectedTrack.syncSamples, actualTrack.syncSamples);
+            assertArrayEquals(expectedTrack.chunkSampleCounts, actualTrack.chunkSampleCounts);
+            assertEquals(expected.mdhdDuration(i), actual.mdhdDuration(i));
+        }
+        assertEquals(expected.mvhdDuration(), actual.mvhdDuration());
+        actual.assertSamples(0, video(1), video(2), video(3).chunks(1, 2));
+        actual.assertSamples(1, audio(1), audio(2), audio(3));
+    }
+
+    @Test
+    public void append_switchesToCo64WhenOffsetsOverflow() throws IOException {
+        File first = write("a.mp4", false, video(1));
+        File second = write("b.mp4", false, video(2));
+        File target = new File(mDirectory, "append.mp4");
+        Mp4Concatenator.append(target, Arrays.asList(first), null, 128);
+        assertNotNull(Result.read(target).stbl(0).child("stco"));
+        Mp4Concatenator.append(target, Arrays.asList(second), null, 128);
+
+        Result result = Result.read(target);
+        assertNotNull(result.stbl(0).child("co64"));
+        result.assertSamples(0, video(1), video(2));
+    }
+
+    @Test
+    public void restore_undoesLastAppend() throws IOException {
+        File first = write("a.mp4", false, video(1), audio(1));
+        File second = write("b.mp4", false, video(2), audio(2));
+        File target = new File(mDirectory, "append.mp4");
+        Mp4Concatenator.Checkpoint empty = Mp4Concatenator.append(target, Arrays.asList(first), null);
+        byte[] before = Files.readAllBytes(target.toPath());
+        Mp4Concatenator.Checkpoint checkpoint = Mp4Concatenator.append(target, Arrays.asList(second), null);
+
+        Mp4Concatenator.restore(target, checkpoint);
+        assertArrayEquals(before, Files.readAllBytes(target.toPath()));
+        // 撤销后可以继续追加
+        Mp4Concatenator.append(target, Arrays.asList(second), null);
+        Result.read(target).assertSamples(0, video(1), video(2));
+
+        Mp4Concatenator.restore(target, empty);
+        assertEquals(0, target.length());
+    }
+
+    @Test
+    public void append_rejectsTargetNotCreatedByAppend() throws IOException {
+        File target = write("a.mp4", false, video(1));
+        File second = write("b.mp4", false, video(2));
+        byte[] before = Files.readAllBytes(target.toPath());
+        try {
+            Mp4Concatenator.append(target, Arrays.asList(second), null);
+            fail();
+        } catch (Mp4Concatenator.UnsupportedMp4Exception expected) {
+            assertArrayEquals(before, Files.readAllBytes(target.toPath()));
+        }
+    }
+
+    /**
+     * 读取拼接后的文件
+     */
+    private static final class Result {
+
+        final byte[] bytes;
+        final Mp4Box moov;
+        final List<Mp4Track> tracks = new ArrayList<>();
+
+        private Result(byte[] bytes) throws IOException {
+            this.bytes = bytes;
+            Mp4Box moovBox = null;
+            for (Mp4Box box : Mp4Box.parse(ByteBuffer.wrap(bytes))) {
+                if ("moov".equals(box.type)) {
+                    moovBox = box;
+                }
+            }
+            assertNotNull(moovBox);
+            moov = moovBox;
+            for (Mp4Box trak : moov.children("trak")) {
+                assertNull(trak.child("edts"));
+                tracks.add(new Mp4Track(trak));
+            }
+        }
+
+        static Result read(File file) throws IOException {
+            return new Result(Files.readAllBytes(file.toPath()));
+        }
+
+        Mp4Track track(int index) {
+            return tracks.get(index);
+        }
+
+        Mp4Box stbl(int index) {
+            return tracks.get(index).trak.path("mdia", "minf", "stbl");
+        }
+
+        long mdhdDuration(int index) {
+            return tracks.get(index).trak.path("mdia", "mdhd").content().getInt(16) & 0xFFFFFFFFL;
+        }
+
+        long mvhdDuration() {
+            return moov.child("mvhd").content().getInt(16) & 0xFFFFFFFFL;
+        }
+
+        /**
+         * 按照chunk偏移读取轨道的每个sample，检查和原来的sample一样
+         */
+        void assertSamples(int index, Mp4Fixture.Track... sources) {
+            Mp4Track track = tracks.get(index);
+            List<byte[]> expected = new ArrayList<>();
+            for (Mp4Fixture.Track source : sources) {
+                for (int i = 0; i < source.sampleSizes.length; i++) {
+                    expected.add(source.sampleData(i));
+                }
+            }
+            assertEquals(expected.size(), track.sampleSizes.length);
+            int sample = 0;
+            for (int chunk = 0; chunk < track.chunkOffsets.length; chunk++) {
+                long offset = track.chunkOffsets[chunk];
+                for (int i = 0; i < track.chunkSampleCounts[chunk]; i++) {
+                    int size = track.sampleSizes[sample];
+                    assertArrayEquals("sample " + sample, expected.get(sample),
+                            Mp4Fixture.copyOfRange(bytes, offset, size));
+                    offset += size;
+                    sample++;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,288 @@
+package com.zhongjh.videoedit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 测试用的MP4文件，只包含拼接需要的box：ftyp、moov(mvhd、trak(tkhd、mdia(mdhd、hdlr、minf(stbl))))、mdat
+ * sample的内容由轨道序号、sample序号生成，可以检查拼接后每个sample的数据
+ *
+ * @author zhongjh
+ */
+final class Mp4Fixture {
+
+    /**
+     * 一条轨道
+     */
+    static final class Track {
+
+        String handlerType = "vide";
+        long timescale = 90000;
+        /**
+         * sample描述，相同的描述才能拼接
+         */
+        byte[] description = "avc1-test".getBytes(StandardCharsets.ISO_8859_1);
+        int[] sampleSizes;
+        long[] sampleDeltas;
+        /**
+         * 为null时不写入ctts
+         */
+        int[] compositionOffsets;
+        /**
+         * 为null时不写入stss
+         */
+        int[] syncSamples;
+        /**
+         * 每个chunk的sample数量
+         */
+        int[] chunkSampleCounts;
+        /**
+         * sample内容的种子，不同文件使用不同的种子
+         */
+        int seed;
+
+        Track sizes(int... sizes) {
+            sampleSizes = sizes;
+            return this;
+        }
+
+        Track deltas(long... deltas) {
+            sampleDeltas = deltas;
+            return this;
+        }
+
+        Track compositionOffsets(int... offsets) {
+            compositionOffsets = offsets;
+            return this;
+        }
+
+        Track syncSamples(int... samples) {
+            syncSamples = samples;
+            return this;
+        }
+
+        Track chunks(int... counts) {
+            chunkSampleCounts = counts;
+            return this;
+        }
+
+        Track handler(String type, long scale) {
+            handlerType = type;
+            timescale = scale;
+            return this;
+        }
+
+        Track seed(int value) {
+            seed = value;
+            return this;
+        }
+
+        /**
+         * @return 第 sample 个sample的内容，sample从0开始
+         */
+        byte[] sampleData(int sample) {
+            byte[] data = new byte[sampleSizes[sample]];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (seed * 31 + sample * 7 + i);
+            }
+            return data;
+        }
+
+    }
+
+    private Mp4Fixture() {
+    }
+
+    /**
+     * 写入文件，chunk按照轨道交替排列，mdat在moov后面
+     *
+     * @param file           文件
+     * @param movieTimescale mvhd的timescale
+     * @param co64           是否使用co64记录chunk偏移
+     * @param tracks         轨道
+     */
+    static void write(File file, long movieTimescale, boolean co64, Track... tracks) throws IOException {
+        // 先按照交替的顺序排列chunk，得到每个chunk在mdat数据里面的偏移
+        long[][] chunkOffsets = new long[tracks.length][];
+        int[] firstSamples = new int[tracks.length];
+        int maxChunkCount = 0;
+        for (int t = 0; t < tracks.length; t++) {
+            chunkOffsets[t] = new long[tracks[t].chunkSampleCounts.length];
+            maxChunkCount = Math.max(maxChunkCount, chunkOffsets[t].length);
+        }
+        ByteBuffer data = ByteBuffer.allocate(totalSize(tracks));
+        for (int chunk = 0; chunk < maxChunkCount; chunk++) {
+            for (int t = 0; t < tracks.length; t++) {
+                Track track = tracks[t];
+                if (chunk >= track.chunkSampleCounts.length) {
+                    continue;
+                }
+                chunkOffsets[t][chunk] = data.position();
+                for (int i = 0; i < track.chunkSampleCounts[chunk]; i++) {
+                    data.put(track.sampleData(firstSamples[t]++));
+                }
+            }
+        }
+
+        byte[] ftyp = box("ftyp", concat("isom".getBytes(StandardCharsets.ISO_8859_1), new byte[]{0, 0, 2, 0},
+                "isomiso2mp41".getBytes(StandardCharsets.ISO_8859_1)));
+        // moov的大小和偏移无关，先用0算出大小
+        long dataStart = ftyp.length + moov(movieTimescale, co64, tracks, chunkOffsets, 0).length + 8;
+        byte[] moov = moov(movieTimescale, co64, tracks, chunkOffsets, dataStart);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(ftyp);
+            out.write(moov);
+            out.write(ByteBuffer.allocate(8).putInt(data.capacity() + 8).put(type("mdat")).array());
+            out.write(data.array());
+        }
+    }
+
+    private static int totalSize(Track... tracks) {
+        int total = 0;
+        for (Track track : tracks) {
+            for (int size : track.sampleSizes) {
+                total += size;
+            }
+        }
+        return total;
+    }
+
+    private static byte[] moov(long movieTimescale, boolean co64, Track[] tracks, long[][] chunkOffsets,
+                               long dataStart) {
+        long movieDuration = 0;
+        byte[][] traks = new byte[tracks.length][];
+        for (int t = 0; t < tracks.length; t++) {
+            Track track = tracks[t];
+            long duration = 0;
+            for (long delta : track.sampleDeltas) {
+                duration += delta;
+            }
+            long scaled = duration * movieTimescale / track.timescale;
+            movieDuration = Math.max(movieDuration, scaled);
+            traks[t] = box("trak", concat(
+                    fullBox("tkhd", 0, ByteBuffer.allocate(80).putInt(8, t + 1).putInt(16, (int) scaled).array()),
+                    box("mdia", concat(
+                            fullBox("mdhd", 0, ByteBuffer.allocate(20)
+                                    .putInt(8, (int) track.timescale).putInt(12, (int) duration).array()),
+                            fullBox("hdlr", 0, concat(new byte[4], type(track.handlerType), new byte[13])),
+                            box("minf", box("stbl", stbl(track, co64, chunkOffsets[t], dataStart)))))));
+        }
+        byte[] mvhd = fullBox("mvhd", 0, ByteBuffer.allocate(96)
+                .putInt(8, (int) movieTimescale).putInt(12, (int) movieDuration).putInt(92, tracks.length + 1).array());
+        return box("moov", concat(mvhd, concat(traks)));
+    }
+
+    private static byte[] stbl(Track track, boolean co64, long[] chunkOffsets, long dataStart) {
+        int count = track.sampleSizes.length;
+        byte[] stsd = fullBox("stsd", 0, concat(ByteBuffer.allocate(4).putInt(1).array(),
+                box("test", track.description)));
+
+        // stts每个sample一条，不合并，检查解析时的展开
+        ByteBuffer stts = ByteBuffer.allocate(4 + count * 8).putInt(count);
+        for (long delta : track.sampleDeltas) {
+            stts.putInt(1).putInt((int) delta);
+        }
+        byte[] ctts = new byte[0];
+        if (track.compositionOffsets != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 + count * 8).putInt(count);
+            for (int offset : track.compositionOffsets) {
+                buffer.putInt(1).putInt(offset);
+            }
+            ctts = fullBox("ctts", 0, buffer.array());
+        }
+        byte[] stss = new byte[0];
+        if (track.syncSamples != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 + track.syncSamples.length * 4).putInt(track.syncSamples.length);
+            for (int sample : track.syncSamples) {
+                buffer.putInt(sample);
+            }
+            stss = fullBox("stss", 0, buffer.array());
+        }
+
+        // stsc相邻相同数量的chunk合并成一条
+        int[] counts = track.chunkSampleCounts;
+        int entryCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (i == 0 || counts[i] != counts[i - 1]) {
+                entryCount++;
+            }
+        }
+        ByteBuffer stsc = ByteBuffer.allocate(4 + entryCount * 12).putInt(entryCount);
+        for (int i = 0; i < counts.length; i++) {
+            if (i == 0 || counts[i] != counts[i - 1]) {
+                stsc.putInt(i + 1).putInt(counts[i]).putInt(1);
+            }
+        }
+
+        ByteBuffer stsz = ByteBuffer.allocate(8 + count * 4).putInt(0).putInt(count);
+        for (int size : track.sampleSizes) {
+            stsz.putInt(size);
+        }
+
+        ByteBuffer stco = ByteBuffer.allocate(4 + chunkOffsets.length * (co64 ? 8 : 4)).putInt(chunkOffsets.length);
+        for (long offset : chunkOffsets) {
+            if (co64) {
+                stco.putLong(dataStart + offset);
+            } else {
+                stco.putInt((int) (dataStart + offset));
+            }
+        }
+
+        return concat(stsd, fullBox("stts", 0, stts.array()), ctts, stss, fullBox("stsc", 0, stsc.array()),
+                fullBox("stsz", 0, stsz.array()), fullBox(co64 ? "co64" : "stco", 0, stco.array()));
+    }
+
+    private static byte[] box(String type, byte[] payload) {
+        return ByteBuffer.allocate(8 + payload.length).putInt(8 + payload.length).put(type(type)).put(payload).array();
+    }
+
+    private static byte[] fullBox(String type, int version, byte[] payload) {
+        return box(type, concat(new byte[]{(byte) version, 0, 0, 0}, payload));
+    }
+
+    private static byte[] type(String type) {
+        return type.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+
+    /**
+     * @return 文件所有的box类型，按照顺序
+     */
+    static String[] topLevelTypes(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(java.nio.file.Files.readAllBytes(file.toPath()));
+        StringBuilder builder = new StringBuilder();
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            String type = Mp4Box.readType(buffer);
+            if (size == 1) {
+                size = buffer.getLong();
+            }
+            builder.append(type).append(' ');
+            buffer.position(start + (int) size);
+        }
+        return builder.toString().trim().split(" ");
+    }
+
+    static byte[] copyOfRange(byte[] bytes, long from, int length) {
+        return Arrays.copyOfRange(bytes, (int) from, (int) from + length);
+    }
+
+}